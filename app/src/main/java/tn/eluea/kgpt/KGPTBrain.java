@@ -15,24 +15,34 @@ import tn.eluea.kgpt.instruction.command.CommandManager;
 import tn.eluea.kgpt.listener.DialogDismissListener;
 import tn.eluea.kgpt.listener.InputEventListener;
 import tn.eluea.kgpt.llm.GenerativeAIController;
+import tn.eluea.kgpt.provider.ConfigClient;
+import tn.eluea.kgpt.provider.ConfigSnapshot;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.provider.XposedConfigReader;
+import tn.eluea.kgpt.settings.OtherSettingsType;
+import tn.eluea.kgpt.text.ParseStage;
 import tn.eluea.kgpt.text.TextParser;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
 import tn.eluea.kgpt.features.textactions.SelectionHandler;
 import tn.eluea.kgpt.features.textactions.domain.TextAction;
 import tn.eluea.kgpt.features.textactions.TextActionPrompts;
 import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.TextMirror;
 import tn.eluea.kgpt.ui.UiInteractor;
 import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
 
 public class KGPTBrain implements InputEventListener, DialogDismissListener {
 
-    private long lastConfigReload = 0;
-    private static final long CONFIG_RELOAD_INTERVAL = 5000; // Reload config every 5 seconds
+    private static final String PREF_INLINE_ASK_PREFIX = "inline_ask_prefix";
+    private static final String PREF_ENABLE_LOGS = "other_setting." + OtherSettingsType.EnableLogs.name();
+
+    // Config changes are pushed by HookConfig instead of polled per keystroke
+    private final ConfigClient.OnConfigChangeListener mConfigListener = this::onConfigChanged;
 
     private final GenerativeAIController mAIController; // Kept for reference if needed
     private final CommandManager mCommandManager;
     private final TextParser mTextParser;
+    private final ParseStage mParseStage;
     private final SPUpdater mSPUpdater;
     private final AppTriggerManager mAppTriggerManager;
     private final SelectionHandler mSelectionHandler;
@@ -68,66 +78,90 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
         // Initialize App Trigger Manager via Factory
         mAppTriggerManager = locator.createAppTriggerManager(context);
         mTextParser.setAppTriggerManager(mAppTriggerManager);
+        mParseStage = new ParseStage(mTextParser, this::onParsed);
 
         // Initialize Selection Handler for Text Actions
         mSelectionHandler = new SelectionHandler(context, this::onTextActionRequested);
 
         // Load inline ask prefix from config
         loadInlineAskPrefix();
+        HookConfig.addListener(mConfigListener);
 
         tn.eluea.kgpt.util.Logger.log("KGPTBrain initialized (Refactored)");
         tn.eluea.kgpt.util.Logger.log("XSharedPreferences available: " + XposedConfigReader.isAvailable());
     }
 
     /**
-     * Load inline ask prefix from XSharedPreferences
+     * Load inline ask prefix from the config snapshot
      */
     private void loadInlineAskPrefix() {
-        String prefix = XposedConfigReader.getString("inline_ask_prefix",
-                tn.eluea.kgpt.instruction.command.InlineAskCommand.DEFAULT_PREFIX);
+        String defaultPrefix = tn.eluea.kgpt.instruction.command.InlineAskCommand.DEFAULT_PREFIX;
+        ConfigSnapshot snapshot = HookConfig.get();
+        String prefix = snapshot != null
+                ? snapshot.getString(PREF_INLINE_ASK_PREFIX, defaultPrefix)
+                : XposedConfigReader.getString(PREF_INLINE_ASK_PREFIX, defaultPrefix);
         tn.eluea.kgpt.instruction.command.InlineAskCommand.setPrefix(prefix);
-        tn.eluea.kgpt.util.Logger.log("Loaded inline_ask_prefix: " + prefix);
+        mTextParser.setInlineAskPrefix(prefix);
+        tn.eluea.kgpt.util.Logger.log(() -> "Loaded inline_ask_prefix: " + prefix);
     }
 
     /**
-     * Periodically reload config from XSharedPreferences to pick up changes
+     * A setting changed, called on the main thread by HookConfig. App triggers
+     * follow their own key through AppTriggerManager.
      */
-    private void reloadConfigIfNeeded() {
-        long now = System.currentTimeMillis();
-        if (now - lastConfigReload > CONFIG_RELOAD_INTERVAL) {
-            lastConfigReload = now;
-            // Force XSharedPreferences to reload
-            XposedConfigReader.forceReload();
-            // Reload app triggers
-            if (mAppTriggerManager != null) {
-                mAppTriggerManager.reloadTriggers();
-            }
-            // Reload inline ask prefix
-            loadInlineAskPrefix();
+    private void onConfigChanged(String key, Object newValue) {
+        if (PREF_INLINE_ASK_PREFIX.equals(key)) {
+            // Rebuilds the parse plan, keep it off the main thread
+            mConfigHandler.post(this::loadInlineAskPrefix);
+        } else if (PREF_ENABLE_LOGS.equals(key)) {
+            // Pick up a logging switch made while no broadcast reached us
+            tn.eluea.kgpt.util.Logger.setEnabled(newValue == null || Boolean.parseBoolean(newValue.toString()));
         }
     }
 
     @Override
-    public void onTextUpdate(String text, int cursor) {
-        // SOLVED: Offload config check to background thread
-        mConfigHandler.post(this::reloadConfigIfNeeded);
-
+    public void onTextUpdate(CharSequence text, int cursor, boolean inserted) {
+        if (mTextParser.isLeadingSignal(text, cursor, inserted)) {
+            // A request is probably coming, get the connection ready meanwhile
+            mAIController.prewarm();
+        }
+        // Parsing happens on the parse thread, only text that may end with a
+        // trigger is copied and handed over
+        if (!mTextParser.mayContainTrigger(text, cursor)) {
+            return;
+        }
         IMSController imsController = UiInteractor.getInstance().getIMSController();
-        ParseResult result = mTextParser.parse(text, cursor);
-        if (result != null) {
-            if (result.indexEnd == cursor) {
-                int deleteCount = result.indexEnd - result.indexStart;
+        mParseStage.submit(imsController.getTextMirror().snapshot(inserted));
+    }
+
+    @Override
+    public void onInterrupt() {
+        // Backspace during generation stops it
+        aiResponseManager.cancel();
+    }
 
-                imsController.stopNotifyInput();
-                imsController.delete(deleteCount);
-                imsController.startNotifyInput();
+    /**
+     * A trigger was parsed from {@code snapshot}, called on the main thread.
+     */
+    private void onParsed(TextMirror.Snapshot snapshot, ParseResult result) {
+        IMSController imsController = UiInteractor.getInstance().getIMSController();
+        TextMirror mirror = imsController.getTextMirror();
+        if (!mirror.isCurrent(snapshot)) {
+            // The user kept typing, the newer text has been queued if it can trigger
+            return;
+        }
 
-                processParsedText(text, result);
-            }
+        // The mirror follows the keyboard's edits, make sure the editor didn't
+        // change the text on its own before deleting anything
+        if (imsController.refreshTextMirror()) {
+            mParseStage.submit(mirror.snapshot(snapshot.inserted));
+            return;
         }
+
+        brainDispatcher.dispatch(result, snapshot);
     }
 
-    public void processParsedText(String text, ParseResult parseResult) {
+    public void processParsedText(ParseResult parseResult) {
         brainDispatcher.dispatch(parseResult);
     }
 
@@ -187,6 +221,9 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
             mSelectionHandler.destroy();
         }
 
+        mParseStage.quit();
+        HookConfig.removeListener(mConfigListener);
+
         // Stop the config handler thread
         if (mConfigHandlerThread != null) {
             mConfigHandlerThread.quitSafely();
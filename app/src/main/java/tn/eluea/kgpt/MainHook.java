@@ -14,6 +14,7 @@ import android.content.Context;
 import android.inputmethodservice.InputMethodService;
 import android.os.Build;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.inputmethod.EditorInfo;
 
 import de.robv.android.xposed.IXposedHookLoadPackage;
@@ -24,8 +25,10 @@ import de.robv.android.xposed.callbacks.XC_LoadPackage;
 import tn.eluea.kgpt.hook.HookManager;
 import tn.eluea.kgpt.hook.MethodHook;
 import tn.eluea.kgpt.hook.TextSelectionHook;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.TextMirror;
 import tn.eluea.kgpt.ui.UiInteractor;
 
 public class MainHook implements IXposedHookLoadPackage {
@@ -82,6 +85,8 @@ public class MainHook implements IXposedHookLoadPackage {
         if (MainHook.applicationContext == null) {
             MainHook.applicationContext = applicationContext;
 
+            // One bulk read of the settings, SPManager and friends read from it
+            HookConfig.init(applicationContext);
             SPManager.init(applicationContext);
             UiInteractor.init(applicationContext);
 
@@ -179,6 +184,7 @@ public class MainHook implements IXposedHookLoadPackage {
         hookManager.hook(inputMethodServiceClass, "onStartInput",
                 new Class<?>[] { EditorInfo.class, boolean.class }, MethodHook.after(param -> {
                     InputMethodService ims = (InputMethodService) param.thisObject;
+                    IMSController.getInstance().onStartInput();
                     
                     // Performance optimization: Skip if InputConnection hasn't changed
                     if (ims.getCurrentInputConnection() == null) {
@@ -214,45 +220,100 @@ public class MainHook implements IXposedHookLoadPackage {
 
     @SuppressLint("ObsoleteSdkInt")
     private void hookInputConnection() {
-        XC_MethodHook conditionalGate = MethodHook.before(param -> {
-            if (IMSController.getInstance().isInputLocked()) {
-                param.setResult(false);
-            }
-        });
-
         hookManager.hook(inputConnectionClass, "commitText",
-                new Class<?>[] { CharSequence.class, int.class }, conditionalGate);
+                new Class<?>[] { CharSequence.class, int.class },
+                gatedEdit(param -> mirror().onCommitText((CharSequence) param.args[0], (int) param.args[1])));
         hookManager.hook(inputConnectionClass, "commitCorrection",
-                new Class<?>[] { android.view.inputmethod.CorrectionInfo.class }, conditionalGate);
+                new Class<?>[] { android.view.inputmethod.CorrectionInfo.class },
+                gatedEdit(param -> mirror().invalidate()));
         hookManager.hook(inputConnectionClass, "commitCompletion",
-                new Class<?>[] { android.view.inputmethod.CompletionInfo.class }, conditionalGate);
+                new Class<?>[] { android.view.inputmethod.CompletionInfo.class },
+                gatedEdit(param -> mirror().invalidate()));
         hookManager.hook(inputConnectionClass, "setComposingText",
-                new Class<?>[] { CharSequence.class, int.class }, conditionalGate);
+                new Class<?>[] { CharSequence.class, int.class },
+                gatedEdit(param -> mirror().onSetComposingText((CharSequence) param.args[0], (int) param.args[1])));
         hookManager.hook(inputConnectionClass, "finishComposingText",
-                new Class<?>[] {}, conditionalGate);
+                new Class<?>[] {}, gatedEdit(param -> mirror().onFinishComposingText()));
         hookManager.hook(inputConnectionClass, "deleteSurroundingText",
-                new Class<?>[] { int.class, int.class }, conditionalGate);
+                new Class<?>[] { int.class, int.class },
+                gatedEdit(true, param -> mirror().onDeleteSurroundingText((int) param.args[0], (int) param.args[1])));
 
         if (Build.VERSION.SDK_INT >= 24) {
             hookManager.hook(inputConnectionClass, "deleteSurroundingTextInCodePoints",
-                    new Class<?>[] { int.class, int.class }, conditionalGate);
+                    new Class<?>[] { int.class, int.class },
+                    gatedEdit(true, param -> mirror().onDeleteSurroundingTextInCodePoints(
+                            (int) param.args[0], (int) param.args[1])));
         }
+        // Keyboards that send backspace as a key event
+        hookManager.hook(inputConnectionClass, "sendKeyEvent",
+                new Class<?>[] { KeyEvent.class }, MethodHook.before(param -> {
+                    KeyEvent event = (KeyEvent) param.args[0];
+                    if (event.getKeyCode() == KeyEvent.KEYCODE_DEL
+                            && IMSController.getInstance().isInputLocked()) {
+                        param.setResult(false);
+                        if (event.getAction() == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
+                            IMSController.getInstance().notifyInterrupt();
+                        }
+                    }
+                }));
         if (Build.VERSION.SDK_INT >= 33) {
             hookManager.hook(inputConnectionClass, "commitText",
                     new Class<?>[] { CharSequence.class, int.class,
                             android.view.inputmethod.TextAttribute.class },
-                    conditionalGate);
+                    gatedEdit(param -> mirror().onCommitText((CharSequence) param.args[0], (int) param.args[1])));
         }
         if (Build.VERSION.SDK_INT >= 34) {
             hookManager.hook(inputConnectionClass, "replaceText",
                     new Class<?>[] { int.class, int.class, CharSequence.class, int.class,
                             android.view.inputmethod.TextAttribute.class },
-                    conditionalGate);
+                    gatedEdit(param -> mirror().invalidate()));
         }
+        // Not gated, but they move the cursor or the composing region
+        hookManager.hook(inputConnectionClass, "setComposingRegion",
+                new Class<?>[] { int.class, int.class }, MethodHook.after(param -> mirror().invalidate()));
+        hookManager.hook(inputConnectionClass, "setSelection",
+                new Class<?>[] { int.class, int.class }, MethodHook.after(param -> mirror().invalidate()));
 
         MainHook.log("Done hooking InputConnection : " + inputConnectionClass.getName());
     }
 
+    // Nesting depth of hooked edits, some InputConnections implement one edit on top of another.
+    // InputConnection calls come from the keyboard's main thread.
+    private static int editDepth = 0;
+
+    /**
+     * Blocks the edit while the input is locked, and mirrors it once it went through.
+     */
+    private static XC_MethodHook gatedEdit(java.util.function.Consumer<XC_MethodHook.MethodHookParam> mirrorEdit) {
+        return gatedEdit(false, mirrorEdit);
+    }
+
+    /**
+     * @param interrupts whether a blocked call is the user deleting text, which
+     *                   stops the response that holds the lock
+     */
+    private static XC_MethodHook gatedEdit(boolean interrupts,
+            java.util.function.Consumer<XC_MethodHook.MethodHookParam> mirrorEdit) {
+        return new MethodHook(param -> {
+            editDepth++;
+            if (IMSController.getInstance().isInputLocked()) {
+                param.setResult(false);
+                if (interrupts && editDepth == 1) {
+                    IMSController.getInstance().notifyInterrupt();
+                }
+            }
+        }, param -> {
+            editDepth = Math.max(0, editDepth - 1);
+            if (editDepth == 0 && Boolean.TRUE.equals(param.getResult())) {
+                mirrorEdit.accept(param);
+            }
+        });
+    }
+
+    private static TextMirror mirror() {
+        return IMSController.getInstance().getTextMirror();
+    }
+
     // Flag to check if we're in Xposed context
     private static final boolean IS_XPOSED_CONTEXT;
     static {
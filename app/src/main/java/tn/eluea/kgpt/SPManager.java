@@ -10,6 +10,7 @@ package tn.eluea.kgpt;
 import android.content.Context;
 import android.os.Bundle;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -19,6 +20,8 @@ import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.listener.ConfigInfoProvider;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.provider.ConfigClient;
+import tn.eluea.kgpt.provider.ConfigSnapshot;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.settings.OtherSettingsType;
 import tn.eluea.kgpt.text.parse.ParsePattern;
 
@@ -40,6 +43,8 @@ public class SPManager implements ConfigInfoProvider {
 
     public static void init(Context context) {
         instance = new SPManager(context);
+        // Logger caches the setting, it is pushed again by setOtherSetting
+        tn.eluea.kgpt.util.Logger.setEnabled(instance.getEnableLogs());
     }
 
     public static SPManager getInstance() {
@@ -156,6 +161,11 @@ public class SPManager implements ConfigInfoProvider {
     }
 
     public List<GenerativeAICommand> getGenerativeAICommands() {
+        // In the keyboard the snapshot keeps them decoded until they change
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getGenerativeAICommands();
+        }
         // Always get fresh data
         updateGenerativeAICommands();
         return generativeAICommands;
@@ -170,6 +180,10 @@ public class SPManager implements ConfigInfoProvider {
     }
 
     public List<ParsePattern> getParsePatterns() {
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getParsePatterns();
+        }
         return ParsePattern.decode(getParsePatternsRaw());
     }
 
@@ -216,6 +230,9 @@ public class SPManager implements ConfigInfoProvider {
 
     public void setOtherSetting(OtherSettingsType type, Object value) {
         String key = String.format(PREF_OTHER_SETTING, type.name());
+        if (type == OtherSettingsType.EnableLogs && value instanceof Boolean) {
+            tn.eluea.kgpt.util.Logger.setEnabled((Boolean) value);
+        }
         switch (type.nature) {
             case Boolean:
                 mClient.putBoolean(key, (Boolean) value);
@@ -251,6 +268,58 @@ public class SPManager implements ConfigInfoProvider {
         return (Boolean) getOtherSetting(OtherSettingsType.EnableExternalInternet);
     }
 
+    public boolean getEnableResponseCache() {
+        return (Boolean) getOtherSetting(OtherSettingsType.EnableResponseCache);
+    }
+
+    public double getResponseCacheMaxTemperature() {
+        return (Integer) getOtherSetting(OtherSettingsType.ResponseCacheMaxTemperature) / 100.0;
+    }
+
+    /**
+     * Model to hedge slow requests to, null when hedging is off.
+     */
+    public LanguageModel getHedgeLanguageModel() {
+        return parseLanguageModel((String) getOtherSetting(OtherSettingsType.HedgeLanguageModel));
+    }
+
+    public static LanguageModel parseLanguageModel(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return LanguageModel.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public int getHedgeMaxPercent() {
+        return (Integer) getOtherSetting(OtherSettingsType.HedgeMaxPercent);
+    }
+
+    public List<LanguageModel> getFallbackLanguageModels() {
+        return parseLanguageModels((String) getOtherSetting(OtherSettingsType.FallbackLanguageModels));
+    }
+
+    /**
+     * Models named in a comma separated list, in order, without unknown
+     * names and repeats.
+     */
+    public static List<LanguageModel> parseLanguageModels(String names) {
+        List<LanguageModel> models = new ArrayList<>();
+        if (names == null) {
+            return models;
+        }
+        for (String name : names.split(",")) {
+            LanguageModel model = parseLanguageModel(name.trim());
+            if (model != null && !models.contains(model)) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
     public void setSearchEngine(String searchEngine) {
         setOtherSetting(OtherSettingsType.SearchEngine, searchEngine);
     }
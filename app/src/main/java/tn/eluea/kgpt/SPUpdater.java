@@ -12,6 +12,7 @@ import android.os.Bundle;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.provider.ConfigClient;
 import tn.eluea.kgpt.settings.OtherSettingsType;
 import tn.eluea.kgpt.ui.UiInteractor;
 
@@ -54,6 +55,17 @@ public class SPUpdater implements ConfigChangeListener {
 
     @Override
     public void onOtherSettingsChange(Bundle otherSettings) {
+        // One provider call for the whole bundle instead of one per setting
+        ConfigClient client = mSPManager.getConfigClient();
+        client.beginBatch();
+        try {
+            applyOtherSettings(otherSettings);
+        } finally {
+            client.applyBatch();
+        }
+    }
+
+    private void applyOtherSettings(Bundle otherSettings) {
         for (String key : otherSettings.keySet()) {
             Object value = otherSettings.get(key);
 
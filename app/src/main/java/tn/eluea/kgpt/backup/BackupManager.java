@@ -78,7 +78,8 @@ public class BackupManager {
         this.context = context;
         this.spManager = SPManager.getInstance();
         this.uiPrefs = context.getSharedPreferences("keyboard_gpt_ui", Context.MODE_PRIVATE);
-        this.configClient = new ConfigClient(context);
+        // Shared with SPManager so a restore's writes all go in one batch
+        this.configClient = spManager.getConfigClient();
     }
 
     public String createBackup() throws JSONException {
@@ -248,6 +249,8 @@ public class BackupManager {
     }
 
     public RestoreResult restoreBackup(String backupJson, BackupOptions options) {
+        // Send every provider write of the restore in one call, one commit
+        configClient.beginBatch();
         try {
             JSONObject backup = new JSONObject(backupJson);
             int restoredCount = 0;
@@ -451,9 +454,15 @@ public class BackupManager {
                 }
             }
 
+            if (!configClient.applyBatch()) {
+                return new RestoreResult(false, 0, new ArrayList<>(), "Failed to save the restored settings");
+            }
             return new RestoreResult(true, restoredCount, restoredItems, null);
         } catch (JSONException e) {
             return new RestoreResult(false, 0, new ArrayList<>(), "Invalid backup file: " + e.getMessage());
+        } finally {
+            // Keep what was read before a failure, as the per-key writes did
+            configClient.applyBatch();
         }
     }
 
@@ -104,6 +104,9 @@ public class LogExporter {
             addModuleLogs(zos);
             result.moduleLogs = true;
 
+            // Add the records still held by the in-memory logger
+            addLogBuffer(zos);
+
             // Add boot logs (dmesg/kernel) - requires root
             addBootLogs(zos);
             result.bootLogs = true;
@@ -215,6 +218,21 @@ public class LogExporter {
         addZipEntry(zos, "module_logs.txt", logs.toString());
     }
 
+    private void addLogBuffer(ZipOutputStream zos) throws IOException {
+        StringBuilder logs = new StringBuilder();
+        logs.append("=== KGPT In-Memory Log Buffer ===\n");
+        logs.append("Logging Enabled: ").append(tn.eluea.kgpt.util.Logger.isEnabled() ? "Yes" : "No").append("\n\n");
+
+        String buffered = tn.eluea.kgpt.util.Logger.dump();
+        if (buffered.isEmpty()) {
+            logs.append("No buffered log records.\n");
+        } else {
+            logs.append(buffered);
+        }
+
+        addZipEntry(zos, "log_buffer.txt", logs.toString());
+    }
+
     private void addBootLogs(ZipOutputStream zos) throws IOException {
         StringBuilder logs = new StringBuilder();
         logs.append("=== Boot/Kernel Logs ===\n");
@@ -31,6 +31,9 @@ public class AiResponseManager implements GenerativeAIListener {
     // Store original prompt to restore it in case of failure
     private String lastPrompt = null;
 
+    // Set from the request until its response ends or is cancelled, main thread
+    private boolean generating = false;
+
     // Use method to get string to support locale changes and resources
     private String getGeneratingContentString() {
         Context ctx = UiInteractor.getInstance().getContext();
@@ -46,7 +49,9 @@ public class AiResponseManager implements GenerativeAIListener {
         return "<Generating Content...>";
     }
 
-    // Thread pool for AI requests - reuse threads instead of creating new ones
+    // Builds and sends requests off the main thread. Sending doesn't wait for the
+    // response, which is read on the publishers' own threads, so this pool
+    // doesn't bound how many responses are generated at once
     private static final ExecutorService aiExecutor = Executors.newFixedThreadPool(2);
 
     // Shutdown hook to clean up executor
@@ -110,8 +115,43 @@ public class AiResponseManager implements GenerativeAIListener {
             return;
         }
 
+        // A text action requested from the menu replaces the response still
+        // being generated. Typed triggers can't get here meanwhile, the input
+        // lock keeps their text out of the field
+        cancel();
+        generating = true;
+        // Set again by onAIPrepare once the placeholder is in the field
+        justPrepared = false;
+
         // Use thread pool instead of creating new threads
-        aiExecutor.execute(() -> mAIController.generateResponse(prompt, systemMessage));
+        int generation = mAIController.getGeneration();
+        aiExecutor.execute(() -> mAIController.generateResponse(prompt, systemMessage, generation));
+    }
+
+    public boolean isGenerating() {
+        return generating;
+    }
+
+    /**
+     * Stop the response being generated, if any: its request is aborted down
+     * to the connection, the text received so far stays and the input is
+     * unlocked. Called on the main thread on backspace and on a new text
+     * action. Backspace is the only key that stops a live stream: the input
+     * lock blocks every other edit, so nothing typed is parsed until the
+     * response ends.
+     */
+    public void cancel() {
+        if (!generating) {
+            return;
+        }
+        generating = false;
+        tn.eluea.kgpt.util.Logger.log("Cancelling response");
+        mAIController.cancel();
+
+        IMSController.getInstance().endInputLock();
+        clearGeneratingContent();
+        IMSController.getInstance().startNotifyInput();
+        setTextActionMode(false, null);
     }
 
     public void setTextActionMode(boolean enabled, String selectedText) {
@@ -167,6 +207,7 @@ public class AiResponseManager implements GenerativeAIListener {
 
     @Override
     public void onAIError(Throwable t) {
+        generating = false;
         IMSController.getInstance().endInputLock();
         clearGeneratingContent();
 
@@ -205,6 +246,7 @@ public class AiResponseManager implements GenerativeAIListener {
 
     @Override
     public void onAIComplete() {
+        generating = false;
         IMSController.getInstance().endInputLock();
 
         // If content was just prepared but never received any chunks (onAINext never
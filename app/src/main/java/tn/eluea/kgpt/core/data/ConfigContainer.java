@@ -104,6 +104,9 @@ public class ConfigContainer {
                         case String:
                             mClient.putString(key, otherExtras.getString(type.name()));
                             break;
+                        case Integer:
+                            mClient.putInt(key, otherExtras.getInt(type.name()));
+                            break;
                     }
                 }
             }
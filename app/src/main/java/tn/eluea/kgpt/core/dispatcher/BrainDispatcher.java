@@ -28,6 +28,7 @@ import tn.eluea.kgpt.text.parse.result.WebSearchParseResult;
 import tn.eluea.kgpt.text.transform.format.TextUnicodeConverter;
 import tn.eluea.kgpt.features.textactions.TextActionPrompts;
 import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.TextMirror;
 import tn.eluea.kgpt.ui.UiInteractor;
 
 public class BrainDispatcher {
@@ -40,6 +41,29 @@ public class BrainDispatcher {
         this.commandManager = commandManager;
     }
 
+    /**
+     * Delete the matched text and dispatch a result parsed off the main thread.
+     * Nothing is deleted if the field changed after {@code snapshot} was taken,
+     * the result would point at text that isn't there anymore.
+     *
+     * @return false if the result was stale and dropped
+     */
+    public boolean dispatch(ParseResult parseResult, TextMirror.Snapshot snapshot) {
+        IMSController imsController = UiInteractor.getInstance().getIMSController();
+        if (!imsController.getTextMirror().isCurrent(snapshot)) {
+            return false;
+        }
+
+        int deleteCount = parseResult.indexEnd - parseResult.indexStart;
+
+        imsController.stopNotifyInput();
+        imsController.delete(deleteCount);
+        imsController.startNotifyInput();
+
+        dispatch(parseResult);
+        return true;
+    }
+
     public void dispatch(ParseResult parseResult) {
         IMSController imsController = UiInteractor.getInstance().getIMSController();
 
@@ -14,17 +14,20 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
-import java.io.BufferedReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
@@ -32,69 +35,136 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Response;
+import tn.eluea.kgpt.llm.internet.ConnectionPrewarmer;
+import tn.eluea.kgpt.llm.internet.HttpTransport;
 
 public class InternetService extends Service {
     public static final int SEND_REQUEST_WHAT = 2608;
     public static final int REQUEST_RESULT_WHAT = 2609;
+    public static final int PREWARM_WHAT = 2610;
+    public static final int CANCEL_WHAT = 2611;
 
-    private final Handler incomingHandler = new Handler(new Handler.Callback() {
-        private void handleMessageAsync(Messenger replyMessenger, Bundle requestBundle, int what) {
-            Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Received new message what" + what);
-            if (what == SEND_REQUEST_WHAT) {
-                long requestId = requestBundle.getLong("request_id");
-                URL url = (URL) requestBundle.getSerializable("url");
-                // noinspection unchecked
-                HashMap<String, List<String>> headers = (HashMap<String, List<String>>) requestBundle
-                        .getSerializable("request_headers");
-                String method = requestBundle.getString("request_method");
-                String body = requestBundle.getString("request_body");
-
-                if (url == null)
-                    throw new IllegalArgumentException("url cannot be null");
+    // Requests running at once, more wait in the queue
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final int MAX_QUEUED_REQUESTS = 16;
+    // Deadline for the response headers when the client doesn't send one,
+    // the body is only bound by the read timeout between chunks
+    private static final long DEFAULT_DEADLINE_MS = 120_000;
 
-                try {
-                    Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Opening connection");
-                    HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                    if (headers != null) {
-                        applyHeaders(headers, con);
-                    }
+    // Cancels calls whose response headers are late
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(
+            MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_QUEUED_REQUESTS),
+            runnable -> new Thread(runnable, "KGPT_InternetWorker"));
 
-                    if (method != null) {
-                        con.setRequestMethod(method);
-                    }
+    // Requests queued or in flight, by client and request id, so CANCEL can
+    // abort them at any point
+    private final Map<String, CallSlot> activeCalls = new ConcurrentHashMap<>();
 
-                    if (body != null) {
-                        con.setDoOutput(true);
-                        try (OutputStream os = con.getOutputStream()) {
-                            byte[] input = body.getBytes(StandardCharsets.UTF_8);
-                            os.write(input, 0, input.length);
-                        }
+    {
+        workers.allowCoreThreadTimeOut(true);
+    }
 
-                        int responseCode = con.getResponseCode();
-                        replyMessenger.send(craftStatusCodeReply(requestId, responseCode));
+    private final Handler incomingHandler = new Handler(new Handler.Callback() {
+        private void handleRequest(Messenger replyMessenger, Bundle requestBundle, CallSlot slot) {
+            long requestId = requestBundle.getLong("request_id");
+            String callKey = callKey(replyMessenger, requestId);
+            String url = requestBundle.getString("url");
+            Map<String, List<String>> headers = bundleToHeaders(requestBundle.getBundle("request_headers"));
+            String method = requestBundle.getString("request_method");
+            long deadlineMs = requestBundle.getLong("deadline_ms", DEFAULT_DEADLINE_MS);
+            // Chosen by the keyboard from the provider's recent latency, 0 for the defaults
+            int connectTimeoutMs = requestBundle.getInt("connect_timeout_ms", 0);
+            int readTimeoutMs = requestBundle.getInt("read_timeout_ms", 0);
+            ParcelFileDescriptor requestBodyFd = requestBundle.getParcelable("request_body_fd");
+            ParcelFileDescriptor responseBodyFd = requestBundle.getParcelable("response_body_fd");
 
-                        Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Got response code " + responseCode);
-                        InputStream is = responseCode == 200 ? con.getInputStream() : con.getErrorStream();
+            if (slot.isCancelled()) {
+                Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Request " + requestId + " cancelled while queued");
+                closeQuietly(requestBodyFd);
+                closeQuietly(responseBodyFd);
+                sendComplete(replyMessenger, requestId);
+                return;
+            }
 
-                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                Log.d("LSPosed-Bridge",
-                                        "(KeyboardGPT) [External] Sending line with length " + line.length());
-                                replyMessenger.send(craftInputStreamReply(requestId, line));
-                            }
-                        }
+            boolean statusSent = false;
+            AtomicBoolean timedOut = new AtomicBoolean();
+            try (OutputStream os = new ParcelFileDescriptor.AutoCloseOutputStream(responseBodyFd)) {
+                try {
+                    String body = readFully(new ParcelFileDescriptor.AutoCloseInputStream(requestBodyFd));
 
-                        replyMessenger.send(craftCompleteReply(requestId));
+                    Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Sending request " + requestId);
+                    // Pooled connection, reused by the next request to the same host
+                    Call call = HttpTransport.newCall(new URL(url), method, headers, body, connectTimeoutMs,
+                            readTimeoutMs);
+                    // Cancelled right away if a CANCEL came while the body was read
+                    slot.attach(call);
+                    // Not OkHttp's call timeout, that one also cuts long generations short
+                    ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+                        timedOut.set(true);
+                        call.cancel();
+                    }, deadlineMs, TimeUnit.MILLISECONDS);
+                    Response executed;
+                    try {
+                        executed = call.execute();
+                    } finally {
+                        deadline.cancel(false);
                     }
+                    try (Response response = executed) {
+                        int responseCode = response.code();
+                        Message statusReply = craftStatusCodeReply(requestId, responseCode);
+                        // Rate limit headers let the keyboard pace its API keys
+                        statusReply.getData().putBundle("response_headers",
+                                headersToBundle(response.headers().toMultimap()));
+                        replyMessenger.send(statusReply);
+                        statusSent = true;
 
+                        Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Got response code " + responseCode
+                                + " (" + response.protocol() + ")");
+                        if (response.body() != null) {
+                            // Forward bytes as they arrive, the keyboard decodes them
+                            InputStream is = response.body().byteStream();
+                            byte[] buffer = new byte[8192];
+                            int read;
+                            while ((read = is.read(buffer)) != -1) {
+                                os.write(buffer, 0, read);
+                                os.flush();
+                            }
+                        }
+                    }
                 } catch (Throwable t) {
-                    Log.e("LSPosed-Bridge", "Unexpected error while processing request", t);
-                    // Toast.makeText(InternetService.this, t.getClass().getName() + ":" +
-                    // t.getMessage(), Toast.LENGTH_SHORT).show();
+                    Log.e("LSPosed-Bridge", "Request " + requestId + " failed", t);
+                    if (!statusSent) {
+                        // Let the client's error callback report it instead of waiting forever
+                        replyMessenger.send(craftStatusCodeReply(requestId, 0));
+                        String reason = timedOut.get() ? "Request timed out" : t.getMessage();
+                        os.write(errorBody(reason).getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        // The body is cut off, sent before the pipe closes so the
+                        // client doesn't take its end for a finished response
+                        replyMessenger.send(craftErrorReply(requestId, t.getMessage()));
+                    }
                 }
-
+            } catch (Throwable t) {
+                Log.e("LSPosed-Bridge", "Failed to reply to request " + requestId, t);
+            } finally {
+                activeCalls.remove(callKey, slot);
             }
+
+            sendComplete(replyMessenger, requestId);
         }
 
         @Override
@@ -102,9 +172,60 @@ public class InternetService extends Service {
             Messenger messenger = msg.replyTo;
             Bundle data = msg.getData();
             int what = msg.what;
-            new Thread(() -> handleMessageAsync(messenger, data, what)).start();
+            Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Received new message what" + what);
+
+            switch (what) {
+                case PREWARM_WHAT:
+                    // Asynchronous already
+                    ConnectionPrewarmer.prewarm(InternetService.this, data.getString("url"));
+                    break;
+                case CANCEL_WHAT:
+                    CallSlot slot = activeCalls.remove(callKey(messenger, data.getLong("request_id")));
+                    if (slot != null) {
+                        // A queued request is skipped, a running call aborts its
+                        // connection and the worker sees an IOException
+                        slot.cancel();
+                    }
+                    break;
+                case SEND_REQUEST_WHAT:
+                    submitRequest(messenger, data);
+                    break;
+                default:
+                    break;
+            }
             return true;
         }
+
+        private void submitRequest(Messenger messenger, Bundle data) {
+            long requestId = data.getLong("request_id");
+            ParcelFileDescriptor requestBodyFd = data.getParcelable("request_body_fd");
+            ParcelFileDescriptor responseBodyFd = data.getParcelable("response_body_fd");
+            if (data.getString("url") == null || requestBodyFd == null || responseBodyFd == null) {
+                Log.e("LSPosed-Bridge", "Malformed request " + requestId);
+                closeQuietly(requestBodyFd);
+                closeQuietly(responseBodyFd);
+                sendComplete(messenger, requestId);
+                return;
+            }
+            String key = callKey(messenger, requestId);
+            CallSlot slot = new CallSlot();
+            activeCalls.put(key, slot);
+            try {
+                workers.execute(() -> handleRequest(messenger, data, slot));
+            } catch (RejectedExecutionException e) {
+                activeCalls.remove(key, slot);
+                Log.w("LSPosed-Bridge", "Too many requests, rejecting " + requestId);
+                closeQuietly(requestBodyFd);
+                try (OutputStream os = new ParcelFileDescriptor.AutoCloseOutputStream(responseBodyFd)) {
+                    messenger.send(craftStatusCodeReply(requestId, 0));
+                    os.write(errorBody("Too many requests in progress, try again")
+                            .getBytes(StandardCharsets.UTF_8));
+                } catch (IOException | RemoteException ex) {
+                    Log.e("LSPosed-Bridge", "Failed to reject request " + requestId, ex);
+                }
+                sendComplete(messenger, requestId);
+            }
+        }
     });
 
     private final Messenger serviceMessenger = new Messenger(incomingHandler);
@@ -113,7 +234,7 @@ public class InternetService extends Service {
         Message reply = Message.obtain(null, REQUEST_RESULT_WHAT);
         Bundle data = new Bundle();
         data.putLong("request_id", requestId);
-        data.putSerializable("message_type", type);
+        data.putInt("message_type", type.ordinal());
         reply.setData(data);
         return reply;
     }
@@ -124,9 +245,9 @@ public class InternetService extends Service {
         return reply;
     }
 
-    private static Message craftInputStreamReply(long requestId, String chunk) {
-        Message reply = craftReply(requestId, InternetServiceMessageType.INPUT_STREAM);
-        reply.getData().putString("inputstream_chunk", chunk);
+    private static Message craftErrorReply(long requestId, String reason) {
+        Message reply = craftReply(requestId, InternetServiceMessageType.ERROR);
+        reply.getData().putString("reason", reason != null ? reason : "Response interrupted");
         return reply;
     }
 
@@ -134,11 +255,71 @@ public class InternetService extends Service {
         return craftReply(requestId, InternetServiceMessageType.COMPLETE);
     }
 
+    private static void sendComplete(Messenger messenger, long requestId) {
+        try {
+            messenger.send(craftCompleteReply(requestId));
+        } catch (RemoteException e) {
+            Log.e("LSPosed-Bridge", "Failed to send completion", e);
+        }
+    }
+
+    private static String callKey(Messenger messenger, long requestId) {
+        // Request ids are only unique per client
+        return System.identityHashCode(messenger.getBinder()) + ":" + requestId;
+    }
+
+    /**
+     * One request from the moment it is queued. A CANCEL can come before the
+     * worker has a call, the call is then cancelled as soon as it is attached.
+     */
+    private static final class CallSlot {
+        private Call call;
+        private boolean cancelled;
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void attach(Call call) {
+            this.call = call;
+            if (cancelled) {
+                call.cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (call != null) {
+                call.cancel();
+            }
+        }
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor fd) {
+        if (fd != null) {
+            try {
+                fd.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return serviceMessenger.getBinder();
     }
 
+    @Override
+    public void onDestroy() {
+        for (Call call : activeCalls.values()) {
+            call.cancel();
+        }
+        activeCalls.clear();
+        workers.shutdownNow();
+        deadlines.shutdownNow();
+        super.onDestroy();
+    }
+
     public static HashMap<String, List<String>> extractHeaders(URLConnection conn) {
         HashMap<String, List<String>> headers = new HashMap<>();
         for (Map.Entry<String, List<String>> entry : conn.getRequestProperties().entrySet()) {
@@ -150,6 +331,60 @@ public class InternetService extends Service {
         return headers;
     }
 
+    /**
+     * Request headers of {@code conn} as a Bundle of string lists, for sending
+     * to the service without Serializable.
+     */
+    public static Bundle headersToBundle(URLConnection conn) {
+        return headersToBundle(extractHeaders(conn));
+    }
+
+    public static Bundle headersToBundle(Map<String, List<String>> headers) {
+        Bundle bundle = new Bundle();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            bundle.putStringArrayList(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return bundle;
+    }
+
+    public static Map<String, List<String>> bundleToHeaders(Bundle bundle) {
+        HashMap<String, List<String>> headers = new HashMap<>();
+        if (bundle != null) {
+            for (String key : bundle.keySet()) {
+                List<String> values = bundle.getStringArrayList(key);
+                if (values != null) {
+                    headers.put(key, values);
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static String readFully(InputStream stream) throws IOException {
+        try (InputStream is = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Body standing in for a response that never came, in the error format
+     * the clients' error callbacks read.
+     */
+    public static String errorBody(String message) {
+        try {
+            return new JSONObject().put("error", new JSONObject()
+                    .put("message", String.valueOf(message))).toString();
+        } catch (JSONException e) {
+            return String.valueOf(message);
+        }
+    }
+
     public static void applyHeaders(Map<String, List<String>> headers, URLConnection conn) {
         for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
             for (String value : entry.getValue()) {
@@ -7,8 +7,19 @@
  */
 package tn.eluea.kgpt.core.network;
 
+/**
+ * Control messages sent back by {@link InternetService}, as their ordinal. The
+ * response body itself goes through a pipe.
+ */
 public enum InternetServiceMessageType {
     STATUS_CODE,
-    INPUT_STREAM,
-    COMPLETE
+    COMPLETE,
+    // The response failed after its status code was sent, before COMPLETE
+    ERROR;
+
+    private static final InternetServiceMessageType[] VALUES = values();
+
+    public static InternetServiceMessageType fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
 }
@@ -174,6 +174,9 @@ public abstract class DialogBox {
                 case String:
                     otherSettings.putString(type.name(), mClient.getString(key, (String) type.defaultValue));
                     break;
+                case Integer:
+                    otherSettings.putInt(type.name(), mClient.getInt(key, (Integer) type.defaultValue));
+                    break;
             }
         }
         return otherSettings;
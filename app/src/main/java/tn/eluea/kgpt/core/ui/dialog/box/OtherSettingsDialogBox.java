@@ -11,21 +11,33 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextWatcher;
 import android.view.View;
 import android.content.Context;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.core.content.ContextCompat;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.materialswitch.MaterialSwitch;
+import com.google.android.material.textfield.TextInputEditText;
+import com.google.android.material.textfield.TextInputLayout;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import tn.eluea.kgpt.R;
+import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.core.data.ConfigContainer;
 import tn.eluea.kgpt.core.ui.dialog.DialogBoxManager;
 import tn.eluea.kgpt.core.ui.dialog.DialogType;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.settings.OtherSettingsType;
 
 import android.view.ContextThemeWrapper;
@@ -98,6 +110,19 @@ public class OtherSettingsDialogBox extends DialogBox {
                 });
 
                 settingsContainer.addView(itemView);
+            } else if (type == OtherSettingsType.HedgeLanguageModel) {
+                settingsContainer.addView(buildModelPicker(themedContext, settingsContainer, type,
+                        otherSettingsInput));
+            } else if (type == OtherSettingsType.HedgeMaxPercent) {
+                settingsContainer.addView(buildNumberField(themedContext, settingsContainer, type,
+                        otherSettingsInput, 100));
+            } else if (type == OtherSettingsType.ResponseCacheMaxTemperature) {
+                // In hundredths, no provider goes above 2.0
+                settingsContainer.addView(buildNumberField(themedContext, settingsContainer, type,
+                        otherSettingsInput, 200));
+            } else if (type == OtherSettingsType.FallbackLanguageModels) {
+                settingsContainer.addView(buildModelListEditor(themedContext, settingsContainer, type,
+                        otherSettingsInput));
             }
         }
 
@@ -136,4 +161,222 @@ public class OtherSettingsDialogBox extends DialogBox {
         sheet.setContentView(layout);
         return sheet;
     }
+
+    /**
+     * Row opening a choice of the models that have an API key, or none.
+     */
+    private View buildModelPicker(Context themedContext, LinearLayout container, OtherSettingsType type,
+            Bundle otherSettingsInput) {
+        View itemView = android.view.LayoutInflater.from(themedContext).inflate(R.layout.listview_item_value,
+                container, false);
+        TextView titleView = itemView.findViewById(R.id.text_title);
+        TextView descView = itemView.findViewById(R.id.text_desc);
+        TextView valueView = itemView.findViewById(R.id.text_value);
+
+        titleView.setText(type.titleResId);
+        descView.setText(type.descriptionResId);
+        LanguageModel current = SPManager.parseLanguageModel(
+                otherSettingsInput.getString(type.name(), (String) type.defaultValue));
+        valueView.setText(current != null ? current.label : themedContext.getString(R.string.setting_value_none));
+
+        itemView.setOnClickListener(v -> {
+            List<LanguageModel> models = getModelsWithApiKey();
+            if (models.isEmpty()) {
+                Toast.makeText(themedContext, R.string.setting_no_models_with_key, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String[] labels = new String[models.size() + 1];
+            labels[0] = themedContext.getString(R.string.setting_value_none);
+            for (int i = 0; i < models.size(); i++) {
+                labels[i + 1] = models.get(i).label;
+            }
+            LanguageModel selected = SPManager.parseLanguageModel(
+                    getConfig().otherExtras.getString(type.name(),
+                            otherSettingsInput.getString(type.name(), (String) type.defaultValue)));
+
+            new AlertDialog.Builder(themedContext)
+                    .setTitle(type.titleResId)
+                    .setSingleChoiceItems(labels, models.indexOf(selected) + 1, (dialog, which) -> {
+                        getConfig().otherExtras.putString(type.name(),
+                                which == 0 ? "" : models.get(which - 1).name());
+                        valueView.setText(labels[which]);
+                        dialog.dismiss();
+                    })
+                    .setNegativeButton(R.string.cancel, null)
+                    .show();
+        });
+        return itemView;
+    }
+
+    /**
+     * Row opening an ordered list of models with an API key, each can be
+     * added, moved up or removed. Saved as names separated by commas.
+     */
+    private View buildModelListEditor(Context themedContext, LinearLayout container, OtherSettingsType type,
+            Bundle otherSettingsInput) {
+        View itemView = android.view.LayoutInflater.from(themedContext).inflate(R.layout.listview_item_value,
+                container, false);
+        TextView titleView = itemView.findViewById(R.id.text_title);
+        TextView descView = itemView.findViewById(R.id.text_desc);
+        TextView valueView = itemView.findViewById(R.id.text_value);
+
+        titleView.setText(type.titleResId);
+        descView.setText(type.descriptionResId);
+        valueView.setText(modelListLabel(themedContext, SPManager.parseLanguageModels(
+                otherSettingsInput.getString(type.name(), (String) type.defaultValue))));
+
+        itemView.setOnClickListener(v -> {
+            List<LanguageModel> available = getModelsWithApiKey();
+            if (available.isEmpty()) {
+                Toast.makeText(themedContext, R.string.setting_no_models_with_key, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            List<LanguageModel> chosen = SPManager.parseLanguageModels(getConfig().otherExtras.getString(
+                    type.name(), otherSettingsInput.getString(type.name(), (String) type.defaultValue)));
+            // A model whose key was removed since can't be sent anything
+            chosen.retainAll(available);
+
+            LinearLayout list = new LinearLayout(themedContext);
+            list.setOrientation(LinearLayout.VERTICAL);
+            fillModelList(themedContext, list, chosen, available);
+
+            new AlertDialog.Builder(themedContext)
+                    .setTitle(type.titleResId)
+                    .setView(list)
+                    .setPositiveButton(R.string.save, (dialog, which) -> {
+                        List<String> names = new ArrayList<>();
+                        for (LanguageModel model : chosen) {
+                            names.add(model.name());
+                        }
+                        getConfig().otherExtras.putString(type.name(), String.join(",", names));
+                        valueView.setText(modelListLabel(themedContext, chosen));
+                    })
+                    .setNegativeButton(R.string.cancel, null)
+                    .show();
+        });
+        return itemView;
+    }
+
+    /**
+     * Rows of the chosen models in order, then the ones that can be added.
+     */
+    private void fillModelList(Context themedContext, LinearLayout list, List<LanguageModel> chosen,
+            List<LanguageModel> available) {
+        list.removeAllViews();
+        for (int i = 0; i < chosen.size(); i++) {
+            LanguageModel model = chosen.get(i);
+            View row = android.view.LayoutInflater.from(themedContext).inflate(R.layout.item_fallback_model,
+                    list, false);
+            TextView nameView = row.findViewById(R.id.tv_model_name);
+            MaterialButton btnMoveUp = row.findViewById(R.id.btn_move_up);
+            MaterialButton btnAction = row.findViewById(R.id.btn_action);
+
+            nameView.setText((i + 1) + ". " + model.label);
+            int index = i;
+            btnMoveUp.setEnabled(i > 0);
+            btnMoveUp.setOnClickListener(v -> {
+                chosen.add(index - 1, chosen.remove(index));
+                fillModelList(themedContext, list, chosen, available);
+            });
+            btnAction.setIconResource(R.drawable.ic_close);
+            btnAction.setContentDescription(themedContext.getString(R.string.setting_fallback_remove));
+            btnAction.setOnClickListener(v -> {
+                chosen.remove(index);
+                fillModelList(themedContext, list, chosen, available);
+            });
+            list.addView(row);
+        }
+        for (LanguageModel model : available) {
+            if (chosen.contains(model)) {
+                continue;
+            }
+            View row = android.view.LayoutInflater.from(themedContext).inflate(R.layout.item_fallback_model,
+                    list, false);
+            TextView nameView = row.findViewById(R.id.tv_model_name);
+            MaterialButton btnAction = row.findViewById(R.id.btn_action);
+
+            nameView.setText(model.label);
+            nameView.setAlpha(0.6f);
+            row.findViewById(R.id.btn_move_up).setVisibility(View.INVISIBLE);
+            btnAction.setIconResource(R.drawable.ic_add);
+            btnAction.setContentDescription(themedContext.getString(R.string.add));
+            btnAction.setOnClickListener(v -> {
+                chosen.add(model);
+                fillModelList(themedContext, list, chosen, available);
+            });
+            list.addView(row);
+        }
+    }
+
+    private static String modelListLabel(Context context, List<LanguageModel> models) {
+        if (models.isEmpty()) {
+            return context.getString(R.string.setting_value_none);
+        }
+        List<String> labels = new ArrayList<>();
+        for (LanguageModel model : models) {
+            labels.add(model.label);
+        }
+        return String.join(", ", labels);
+    }
+
+    /**
+     * Field taking a whole number from 0 to {@code max}, nothing is saved
+     * while it holds anything else.
+     */
+    private View buildNumberField(Context themedContext, LinearLayout container, OtherSettingsType type,
+            Bundle otherSettingsInput, int max) {
+        View fieldView = android.view.LayoutInflater.from(themedContext).inflate(
+                R.layout.dialog_configure_model_field, container, false);
+        TextInputLayout inputLayout = fieldView.findViewById(R.id.field_layout);
+        TextInputEditText editText = fieldView.findViewById(R.id.field_edit);
+
+        inputLayout.setHint(themedContext.getString(type.titleResId));
+        inputLayout.setHelperText(themedContext.getString(type.descriptionResId));
+        editText.setInputType(InputType.TYPE_CLASS_NUMBER);
+        editText.setText(String.valueOf(otherSettingsInput.getInt(type.name(), (Integer) type.defaultValue)));
+
+        editText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                int value;
+                try {
+                    value = Integer.parseInt(s.toString());
+                } catch (NumberFormatException e) {
+                    value = -1;
+                }
+                if (value >= 0 && value <= max) {
+                    inputLayout.setError(null);
+                    getConfig().otherExtras.putInt(type.name(), value);
+                } else {
+                    inputLayout.setError(themedContext.getString(R.string.setting_error_number_range, max));
+                    getConfig().otherExtras.remove(type.name());
+                }
+            }
+        });
+        return fieldView;
+    }
+
+    /**
+     * Models the user gave an API key, the only ones requests can go to.
+     */
+    private List<LanguageModel> getModelsWithApiKey() {
+        safeguardModelData();
+        List<LanguageModel> models = new ArrayList<>();
+        for (LanguageModel model : LanguageModel.values()) {
+            Bundle modelConfig = getConfig().languageModelsConfig.getBundle(model.name());
+            String apiKey = modelConfig != null ? modelConfig.getString(LanguageModelField.ApiKey.name) : null;
+            if (apiKey != null && !apiKey.trim().isEmpty()) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
 }
@@ -36,6 +36,8 @@ import android.view.inputmethod.InputConnection;
 import androidx.core.content.ContextCompat;
 
 import tn.eluea.kgpt.features.textactions.ui.TextActionsMenuActivity;
+import tn.eluea.kgpt.provider.ConfigSnapshot;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 
 /**
@@ -153,6 +155,10 @@ public class SelectionHandler {
      * Check if the text actions feature is enabled.
      */
     public boolean isEnabled() {
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getBoolean(PREF_TEXT_ACTIONS_ENABLED, true);
+        }
         return XposedConfigReader.getBoolean(PREF_TEXT_ACTIONS_ENABLED, true);
     }
 
@@ -21,8 +21,10 @@
 package tn.eluea.kgpt.features.textactions;
 
 import tn.eluea.kgpt.features.textactions.domain.TextAction;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -146,6 +148,13 @@ public class TextActionCommands {
                 .toArray(String[]::new);
     }
 
+    /**
+     * Get every command trigger (without the leading $).
+     */
+    public static Set<String> getCommandTriggers() {
+        return Collections.unmodifiableSet(COMMAND_MAP.keySet());
+    }
+
     /**
      * Get a formatted help string showing all available commands.
      */
@@ -67,6 +67,7 @@ public class TextActionsMenuActivity extends AppCompatActivity
     private TextActionsUiComposer uiComposer;
     private Handler mainHandler;
     private StringBuilder responseBuilder;
+    private SimpleAIController aiController;
 
     // State
     private TextAction currentAction;
@@ -127,6 +128,11 @@ public class TextActionsMenuActivity extends AppCompatActivity
         showMainMenu();
         uiComposer.animateIn();
 
+        aiController = new SimpleAIController();
+        aiController.addListener(this);
+        // An action is likely to be picked, open the connection meanwhile
+        aiController.prewarm(getApplicationContext());
+
         if (this instanceof androidx.activity.ComponentActivity) {
             ((androidx.activity.ComponentActivity) this).getOnBackPressedDispatcher().addCallback(this,
                     new androidx.activity.OnBackPressedCallback(true) {
@@ -228,8 +234,8 @@ public class TextActionsMenuActivity extends AppCompatActivity
         }
         String prompt = TextActionPrompts.buildPrompt(action, selectedText);
 
-        SimpleAIController aiController = new SimpleAIController();
-        aiController.addListener(this);
+        // A response still running for a previous action is not wanted anymore
+        aiController.cancel();
 
         new Thread(() -> {
             aiController.generateResponse(prompt, systemMessage);
@@ -246,8 +252,8 @@ public class TextActionsMenuActivity extends AppCompatActivity
         // For custom actions, we just send the text as user prompt.
         String prompt = "Text: \"" + selectedText + "\"";
 
-        SimpleAIController aiController = new SimpleAIController();
-        aiController.addListener(this);
+        // A response still running for a previous action is not wanted anymore
+        aiController.cancel();
 
         new Thread(() -> {
             aiController.generateResponse(prompt, systemMessage);
@@ -333,6 +339,11 @@ public class TextActionsMenuActivity extends AppCompatActivity
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (aiController != null) {
+            // Dismissed, drop the request instead of letting it run to the end
+            aiController.removeListener(this);
+            aiController.cancel();
+        }
         uiComposer.cancelLoading();
     }
 
@@ -41,6 +41,8 @@ import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 import de.robv.android.xposed.callbacks.XC_LoadPackage;
 import tn.eluea.kgpt.features.textactions.ui.TextActionsMenuActivity;
+import tn.eluea.kgpt.provider.ConfigSnapshot;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 import tn.eluea.kgpt.features.textactions.domain.TextAction;
 
@@ -323,6 +325,11 @@ public class TextSelectionHook {
      * Check if text actions feature is enabled.
      */
     private static boolean isEnabled() {
+        // Only the keyboard process holds a config snapshot
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getBoolean(PREF_TEXT_ACTIONS_ENABLED, false);
+        }
         return XposedConfigReader.getBoolean(PREF_TEXT_ACTIONS_ENABLED, false);
     }
 
@@ -8,5 +8,16 @@
 package tn.eluea.kgpt.listener;
 
 public interface InputEventListener {
-    void onTextUpdate(String text, int cursor);
+    /**
+     * @param text     the text before the cursor, only valid during the call
+     * @param cursor   the cursor position in {@code text}
+     * @param inserted whether the update comes from text inserted at the cursor
+     */
+    void onTextUpdate(CharSequence text, int cursor, boolean inserted);
+
+    /**
+     * The user pressed backspace while the input was locked for a response.
+     */
+    default void onInterrupt() {
+    }
 }
@@ -18,14 +18,22 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
+import tn.eluea.kgpt.llm.cache.InFlightRequests;
+import tn.eluea.kgpt.llm.cache.ResponseCache;
 import tn.eluea.kgpt.llm.client.LanguageModelClient;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
-import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.internet.PooledInternetProvider;
+import tn.eluea.kgpt.llm.publisher.IncompleteResponseException;
 import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
 import tn.eluea.kgpt.llm.service.ExternalInternetProvider;
 import tn.eluea.kgpt.settings.OtherSettingsType;
@@ -39,7 +47,21 @@ public class GenerativeAIController implements ConfigChangeListener {
     private ExternalInternetProvider mExternalClient = null;
 
     private List<GenerativeAIListener> mListeners = new ArrayList<>();
-    private InternetProvider mInternetProvider = new SimpleInternetProvider();
+    private InternetProvider mInternetProvider = new PooledInternetProvider();
+
+    // Bumped by cancel(), responses of an older generation are dropped
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Responses being received, cancelling them releases their share of the request
+    private final Set<Subscription> mSubscriptions = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean mResponseCacheEnabled;
+    private volatile double mResponseCacheMaxTemperature;
+
+    // Second model slow requests are hedged to, null when hedging is off
+    private volatile LanguageModelClient mHedgeClient = null;
+    private volatile int mHedgeMaxPercent;
+    // Models tried in order when the selected one is unavailable
+    private volatile List<LanguageModelClient> mFallbackClients = Collections.emptyList();
 
     public GenerativeAIController() {
         mSPManager = SPManager.getInstance();
@@ -53,6 +75,12 @@ public class GenerativeAIController implements ConfigChangeListener {
         }
 
         updateInternetProvider();
+
+        mResponseCacheEnabled = mSPManager.getEnableResponseCache();
+        mResponseCacheMaxTemperature = mSPManager.getResponseCacheMaxTemperature();
+        setHedgeModel(mSPManager.getHedgeLanguageModel());
+        mHedgeMaxPercent = mSPManager.getHedgeMaxPercent();
+        setFallbackModels(mSPManager.getFallbackLanguageModels());
     }
 
     private void updateInternetProvider() {
@@ -71,13 +99,20 @@ public class GenerativeAIController implements ConfigChangeListener {
             }
             mInternetProvider = mExternalClient;
         } else {
-            tn.eluea.kgpt.util.Logger.log("Using SimpleInternetProvider");
-            mInternetProvider = new SimpleInternetProvider();
+            tn.eluea.kgpt.util.Logger.log("Using PooledInternetProvider");
+            mInternetProvider = new PooledInternetProvider();
         }
 
         if (mModelClient != null) {
             mModelClient.setInternetProvider(mInternetProvider);
         }
+        LanguageModelClient hedgeClient = mHedgeClient;
+        if (hedgeClient != null) {
+            hedgeClient.setInternetProvider(mInternetProvider);
+        }
+        for (LanguageModelClient fallbackClient : mFallbackClients) {
+            fallbackClient.setInternetProvider(mInternetProvider);
+        }
     }
 
     public boolean needModelClient() {
@@ -90,11 +125,28 @@ public class GenerativeAIController implements ConfigChangeListener {
 
     private void setModel(LanguageModel model) {
         tn.eluea.kgpt.util.Logger.log("setModel " + model.label);
-        mModelClient = LanguageModelClient.forModel(model);
+        mModelClient = createClient(model);
+    }
+
+    private void setHedgeModel(LanguageModel model) {
+        mHedgeClient = model != null ? createClient(model) : null;
+    }
+
+    private void setFallbackModels(List<LanguageModel> models) {
+        List<LanguageModelClient> clients = new ArrayList<>();
+        for (LanguageModel model : models) {
+            clients.add(createClient(model));
+        }
+        mFallbackClients = clients;
+    }
+
+    private LanguageModelClient createClient(LanguageModel model) {
+        LanguageModelClient client = LanguageModelClient.forModel(model);
         for (LanguageModelField field : LanguageModelField.values()) {
-            mModelClient.setField(field, mSPManager.getLanguageModelField(model, field));
+            client.setField(field, mSPManager.getLanguageModelField(model, field));
         }
-        mModelClient.setInternetProvider(mInternetProvider);
+        client.setInternetProvider(mInternetProvider);
+        return client;
     }
 
     @Override
@@ -109,6 +161,15 @@ public class GenerativeAIController implements ConfigChangeListener {
         if (mModelClient != null && mModelClient.getLanguageModel() == model) {
             mModelClient.setField(field, value);
         }
+        LanguageModelClient hedgeClient = mHedgeClient;
+        if (hedgeClient != null && hedgeClient.getLanguageModel() == model) {
+            hedgeClient.setField(field, value);
+        }
+        for (LanguageModelClient fallbackClient : mFallbackClients) {
+            if (fallbackClient.getLanguageModel() == model) {
+                fallbackClient.setField(field, value);
+            }
+        }
     }
 
     @Override
@@ -127,6 +188,38 @@ public class GenerativeAIController implements ConfigChangeListener {
             boolean enableExternalInternet = otherSettings.getBoolean(enableInternetKey);
             updateInternetProvider(enableExternalInternet);
         }
+
+        String enableCacheKey = OtherSettingsType.EnableResponseCache.name();
+        if (otherSettings.containsKey(enableCacheKey)) {
+            mResponseCacheEnabled = otherSettings.getBoolean(enableCacheKey);
+        }
+        String maxTemperatureKey = OtherSettingsType.ResponseCacheMaxTemperature.name();
+        if (otherSettings.containsKey(maxTemperatureKey)) {
+            mResponseCacheMaxTemperature = otherSettings.getInt(maxTemperatureKey) / 100.0;
+        }
+
+        String hedgeModelKey = OtherSettingsType.HedgeLanguageModel.name();
+        if (otherSettings.containsKey(hedgeModelKey)) {
+            setHedgeModel(SPManager.parseLanguageModel(otherSettings.getString(hedgeModelKey)));
+        }
+        String hedgePercentKey = OtherSettingsType.HedgeMaxPercent.name();
+        if (otherSettings.containsKey(hedgePercentKey)) {
+            mHedgeMaxPercent = otherSettings.getInt(hedgePercentKey);
+        }
+        String fallbackModelsKey = OtherSettingsType.FallbackLanguageModels.name();
+        if (otherSettings.containsKey(fallbackModelsKey)) {
+            setFallbackModels(SPManager.parseLanguageModels(otherSettings.getString(fallbackModelsKey)));
+        }
+    }
+
+    /**
+     * Open a connection to the current model's host ahead of a likely request.
+     */
+    public void prewarm() {
+        if (mModelClient == null || needApiKey()) {
+            return;
+        }
+        mInternetProvider.prewarm(mInteractor.getContext(), mModelClient.getBaseUrl());
     }
 
     public void addListener(GenerativeAIListener listener) {
@@ -142,27 +235,65 @@ public class GenerativeAIController implements ConfigChangeListener {
     }
 
     public void generateResponse(String prompt, String systemMessage) {
+        generateResponse(prompt, systemMessage, getGeneration());
+    }
+
+    /**
+     * Current generation, to pass to {@link #generateResponse(String, String, int)}
+     * when the request is queued before being sent.
+     */
+    public int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Cancel the responses being generated, down to their connection unless
+     * an identical request still shares it.
+     * Listeners get no further callback for them, including ones already
+     * posted.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+        for (Subscription subscription : mSubscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * @param generation the value of {@link #getGeneration()} when the request
+     *                   was made, it is dropped if cancel() was called since
+     */
+    public void generateResponse(String prompt, String systemMessage, int generation) {
         tn.eluea.kgpt.util.Logger.log("Getting response for text \"" + prompt + "\"");
 
-        if (prompt.isEmpty()) {
+        if (prompt.isEmpty() || generation != mGeneration.get()) {
             return;
         }
 
-        mInteractor.post(() -> mListeners.forEach(GenerativeAIListener::onAIPrepare));
+        post(generation, () -> mListeners.forEach(GenerativeAIListener::onAIPrepare));
 
         Publisher<String> publisher;
         if (needModelClient()) {
             publisher = new SimpleStringPublisher("Missing API Key");
         } else {
-            publisher = mModelClient.submitPrompt(prompt, systemMessage);
+            publisher = submitPrompt(mModelClient, prompt, systemMessage);
         }
 
         publisher.subscribe(new Subscriber<String>() {
             boolean completed = false;
             boolean hasError = false;
+            Subscription subscription;
 
             @Override
             public void onSubscribe(Subscription s) {
+                subscription = s;
+                // Added before the check, so a concurrent cancel() can't miss it
+                mSubscriptions.add(s);
+                if (generation != mGeneration.get()) {
+                    mSubscriptions.remove(s);
+                    s.cancel();
+                    return;
+                }
                 s.request(Long.MAX_VALUE);
             }
 
@@ -174,23 +305,30 @@ public class GenerativeAIController implements ConfigChangeListener {
 
                 tn.eluea.kgpt.util.Logger.log("onNext: string with length " + s.length());
 
-                mInteractor.post(() -> mListeners.forEach(
+                post(generation, () -> mListeners.forEach(
                         l -> l.onAINext(s)));
             }
 
             @Override
             public void onError(Throwable t) {
+                if (t instanceof IncompleteResponseException) {
+                    // The text shown so far stays, it just won't be cached
+                    tn.eluea.kgpt.util.Logger.log("Response incomplete - " + t.getMessage());
+                    onComplete();
+                    return;
+                }
                 if (completed || hasError) {
                     tn.eluea.kgpt.util.Logger.log("Skipping duplicate onError");
                     return;
                 }
                 hasError = true;
                 completed = true;
+                mSubscriptions.remove(subscription);
 
                 tn.eluea.kgpt.util.Logger.error(t.getMessage());
 
                 // Notify listeners about the error
-                mInteractor.post(() -> {
+                post(generation, () -> {
                     mListeners.forEach(l -> l.onAIError(t));
                 });
                 tn.eluea.kgpt.util.Logger.log("Error handled");
@@ -203,13 +341,41 @@ public class GenerativeAIController implements ConfigChangeListener {
                     return;
                 }
                 completed = true;
+                mSubscriptions.remove(subscription);
 
-                mInteractor.post(() -> mListeners.forEach(GenerativeAIListener::onAIComplete));
+                post(generation, () -> mListeners.forEach(GenerativeAIListener::onAIComplete));
                 tn.eluea.kgpt.util.Logger.log("Done");
             }
         });
     }
 
+    /**
+     * Send the prompt, or replay the cached response to it when the model's
+     * settings make it reusable. Identical prompts sent while it runs share
+     * its response. A slow one is hedged to the backup model and an
+     * unavailable model's is sent to the fallback models, if any.
+     */
+    private Publisher<String> submitPrompt(LanguageModelClient client, String prompt, String systemMessage) {
+        String key = ResponseCache.keyFor(client, prompt, systemMessage);
+        if (!mResponseCacheEnabled || !ResponseCache.isCacheable(client, mResponseCacheMaxTemperature)) {
+            return InFlightRequests.share(key, RequestRouter.route(client, mFallbackClients, mHedgeClient,
+                    mHedgeMaxPercent, prompt, systemMessage, UnaryOperator.identity()));
+        }
+        ResponseCache cache = ResponseCache.getInstance(mInteractor.getContext());
+        // The key is the selected model's, answers of the others aren't stored
+        Publisher<String> shared = InFlightRequests.share(key, RequestRouter.route(client, mFallbackClients,
+                mHedgeClient, mHedgeMaxPercent, prompt, systemMessage, response -> cache.recording(key, response)));
+        return cache.publisherFor(key, () -> shared);
+    }
+
+    private void post(int generation, Runnable callback) {
+        mInteractor.post(() -> {
+            if (generation == mGeneration.get()) {
+                callback.run();
+            }
+        });
+    }
+
     public LanguageModel getLanguageModel() {
         return mModelClient.getLanguageModel();
     }
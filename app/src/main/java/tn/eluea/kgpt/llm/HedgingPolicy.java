@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm;
+
+import org.reactivestreams.Publisher;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.health.ModelHealth;
+import tn.eluea.kgpt.llm.publisher.HedgedPublisher;
+
+/**
+ * When to send a prompt to a second model because the first one is slow to
+ * answer.
+ *
+ * The hedge is sent once the primary model went longer without a first
+ * chunk than {@link #PERCENTILE} of its recent ones, so only its slowest
+ * responses get one. Hedges draw from a budget that each request refills by
+ * the configured percentage, so they never exceed that share of the
+ * traffic, and an idle period can't bank more than {@link #MAX_CREDITS}.
+ */
+public final class HedgingPolicy {
+    private static final int SAMPLES = 32;
+    // Below that many samples the percentile means little, use the default
+    private static final int MIN_SAMPLES = 5;
+    private static final double PERCENTILE = 0.95;
+    private static final long DEFAULT_DELAY_MS = 2_000;
+    private static final long MIN_DELAY_MS = 250;
+    private static final long MAX_DELAY_MS = 10_000;
+    private static final double MAX_CREDITS = 2;
+
+    private static final HedgingPolicy sInstance = new HedgingPolicy();
+
+    private final Map<LanguageModel, TtftSamples> mSamples = new EnumMap<>(LanguageModel.class);
+    private double mCredits = 0;
+
+    /**
+     * Recent times to first chunk of one model, oldest overwritten first.
+     */
+    private static final class TtftSamples {
+        final long[] values = new long[SAMPLES];
+        int count = 0;
+        int next = 0;
+
+        void add(long ms) {
+            values[next] = ms;
+            next = (next + 1) % SAMPLES;
+            count = Math.min(count + 1, SAMPLES);
+        }
+
+        long percentile(double p) {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(p * count) - 1];
+        }
+    }
+
+    HedgingPolicy() {
+    }
+
+    public static HedgingPolicy getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Whether requests of {@code primary} can be hedged to {@code secondary}:
+     * another model, with an API key, that isn't failing.
+     */
+    public static boolean canHedge(LanguageModelClient primary, LanguageModelClient secondary) {
+        if (secondary == null || secondary.getLanguageModel() == primary.getLanguageModel()) {
+            return false;
+        }
+        // Not worth a hedge while it's failing
+        return RequestRouter.isUsable(secondary)
+                && ModelHealth.forModel(secondary.getLanguageModel()).getState() == ModelHealth.State.CLOSED;
+    }
+
+    /**
+     * Send {@code prompt} to {@code primary} through {@code primaryRequest},
+     * hedged to {@code secondary}.
+     *
+     * @param maxPercent most hedges per hundred requests
+     */
+    public Publisher<String> submit(LanguageModelClient primary, Supplier<Publisher<String>> primaryRequest,
+            LanguageModelClient secondary, String prompt, String systemMessage, int maxPercent) {
+        LanguageModel primaryModel = primary.getLanguageModel();
+        LanguageModel secondaryModel = secondary.getLanguageModel();
+        earnCredits(maxPercent);
+        return new HedgedPublisher(
+                primaryRequest,
+                () -> secondary.submitPrompt(prompt, systemMessage),
+                hedgeDelayMs(primaryModel),
+                this::tryAcquire,
+                new HedgedPublisher.Observer() {
+                    @Override
+                    public void onFirstChunk(boolean hedge, long elapsedMs) {
+                        record(hedge ? secondaryModel : primaryModel, elapsedMs);
+                    }
+
+                    @Override
+                    public void onAbandoned(boolean hedge, long elapsedMs) {
+                        // A lower bound of its time to first chunk, dropping it
+                        // would make the slow model look faster than it is
+                        record(hedge ? secondaryModel : primaryModel, elapsedMs);
+                    }
+                });
+    }
+
+    /**
+     * How long to wait for the first chunk of {@code model} before hedging.
+     */
+    synchronized long hedgeDelayMs(LanguageModel model) {
+        TtftSamples samples = mSamples.get(model);
+        if (samples == null || samples.count < MIN_SAMPLES) {
+            return DEFAULT_DELAY_MS;
+        }
+        return Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, samples.percentile(PERCENTILE)));
+    }
+
+    synchronized void record(LanguageModel model, long ttftMs) {
+        TtftSamples samples = mSamples.get(model);
+        if (samples == null) {
+            samples = new TtftSamples();
+            mSamples.put(model, samples);
+        }
+        samples.add(ttftMs);
+    }
+
+    synchronized void earnCredits(int maxPercent) {
+        mCredits = Math.min(MAX_CREDITS, mCredits + Math.max(0, maxPercent) / 100.0);
+    }
+
+    synchronized boolean tryAcquire() {
+        if (mCredits < 1) {
+            return false;
+        }
+        mCredits -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm;
+
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.health.ModelHealth;
+import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
+import tn.eluea.kgpt.llm.publisher.FailoverPublisher;
+import tn.eluea.kgpt.llm.publisher.RequestFailedException;
+
+/**
+ * Decides which models a prompt goes to: the selected one, hedged to the
+ * backup model when it is slow, again with its other API keys when it is
+ * rate limited, then the fallback models in the user's order when it is
+ * unavailable. A model whose circuit is open (see
+ * {@link ModelHealth}) is skipped without sending anything.
+ */
+public final class RequestRouter {
+    // Resends to the selected model with another of its API keys
+    private static final int MAX_KEY_RETRIES = 2;
+
+    private RequestRouter() {
+    }
+
+    /**
+     * Request for {@code prompt}, sent once subscribed.
+     *
+     * @param fallbacks     models to fail over to, in order
+     * @param hedge         model to hedge slow requests to, null for none
+     * @param primaryOutput applied to every response of {@code primary}
+     *                      itself, not to those of the other models, so
+     *                      what is cached for it is its own answer
+     */
+    public static Supplier<Publisher<String>> route(LanguageModelClient primary, List<LanguageModelClient> fallbacks,
+            LanguageModelClient hedge, int hedgeMaxPercent, String prompt, String systemMessage,
+            UnaryOperator<Publisher<String>> primaryOutput) {
+        Supplier<Publisher<String>> primaryRequest = () -> primaryOutput.apply(
+                primary.submitPrompt(prompt, systemMessage));
+        List<Supplier<Publisher<String>>> sources = new ArrayList<>();
+        if (HedgingPolicy.canHedge(primary, hedge)) {
+            sources.add(guarded(primary, () -> HedgingPolicy.getInstance().submit(primary, primaryRequest, hedge,
+                    prompt, systemMessage, hedgeMaxPercent)));
+        } else {
+            sources.add(guarded(primary, primaryRequest));
+        }
+        // A rate limited key backs off alone, the retry goes out with the next
+        // key (see ApiKeyPool) or is refused at once if none is free
+        int keyRetries = Math.min(primary.getApiKeys().size() - 1, MAX_KEY_RETRIES);
+        for (int i = 0; i < keyRetries; i++) {
+            sources.add(guarded(primary, primaryRequest));
+        }
+        for (LanguageModelClient fallback : fallbacks) {
+            if (isUsable(fallback) && fallback.getLanguageModel() != primary.getLanguageModel()) {
+                sources.add(guarded(fallback, () -> fallback.submitPrompt(prompt, systemMessage)));
+            }
+        }
+
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return () -> new FailoverPublisher(sources);
+    }
+
+    /**
+     * Whether {@code client} has what it takes to be sent requests.
+     */
+    static boolean isUsable(LanguageModelClient client) {
+        String apiKey = client != null ? client.getApiKey() : null;
+        return apiKey != null && !apiKey.isEmpty();
+    }
+
+    private static Supplier<Publisher<String>> guarded(LanguageModelClient client,
+            Supplier<Publisher<String>> request) {
+        return () -> {
+            ModelHealth health = ModelHealth.forModel(client.getLanguageModel());
+            if (!health.allowRequest()) {
+                long retryInSeconds = (health.retryInMs() + 999) / 1000;
+                return new ExceptionPublisher(new RequestFailedException(0,
+                        client.getLanguageModel().label + " is unavailable, try again in " + retryInSeconds + " s",
+                        null));
+            }
+            return request.get();
+        };
+    }
+}
@@ -30,11 +30,20 @@ import org.reactivestreams.Subscription;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
+import tn.eluea.kgpt.KGPTApplication;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
+import tn.eluea.kgpt.llm.cache.InFlightRequests;
+import tn.eluea.kgpt.llm.cache.ResponseCache;
 import tn.eluea.kgpt.llm.client.LanguageModelClient;
-import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.internet.ConnectionPrewarmer;
+import tn.eluea.kgpt.llm.internet.PooledInternetProvider;
+import tn.eluea.kgpt.llm.publisher.IncompleteResponseException;
 import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
 
 /**
@@ -45,9 +54,17 @@ public class SimpleAIController {
     private static final String TAG = "KGPT_SimpleAI";
 
     private LanguageModelClient mModelClient = null;
+    // Second model slow requests are hedged to, null when hedging is off
+    private LanguageModelClient mHedgeClient = null;
+    // Models tried in order when the selected one is unavailable
+    private final List<LanguageModelClient> mFallbackClients = new ArrayList<>();
     private final SPManager mSPManager;
     private final Handler mMainHandler;
     private final List<GenerativeAIListener> mListeners = new ArrayList<>();
+    // Bumped by cancel(), responses of an older generation are dropped
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Responses being received, cancelling them releases their share of the request
+    private final Set<Subscription> mSubscriptions = ConcurrentHashMap.newKeySet();
 
     public SimpleAIController() {
         mSPManager = SPManager.getInstance();
@@ -61,17 +78,30 @@ public class SimpleAIController {
 
         // Set internet provider
         if (mModelClient != null) {
-            mModelClient.setInternetProvider(new SimpleInternetProvider());
+            mModelClient.setInternetProvider(new PooledInternetProvider());
+        }
+
+        LanguageModel hedgeModel = mSPManager.getHedgeLanguageModel();
+        if (hedgeModel != null) {
+            mHedgeClient = createClient(hedgeModel);
+        }
+        for (LanguageModel fallbackModel : mSPManager.getFallbackLanguageModels()) {
+            mFallbackClients.add(createClient(fallbackModel));
         }
     }
 
     private void setModel(LanguageModel model) {
         Log.d(TAG, "setModel " + model.label);
-        mModelClient = LanguageModelClient.forModel(model);
+        mModelClient = createClient(model);
+    }
+
+    private LanguageModelClient createClient(LanguageModel model) {
+        LanguageModelClient client = LanguageModelClient.forModel(model);
         for (LanguageModelField field : LanguageModelField.values()) {
-            mModelClient.setField(field, mSPManager.getLanguageModelField(model, field));
+            client.setField(field, mSPManager.getLanguageModelField(model, field));
         }
-        mModelClient.setInternetProvider(new SimpleInternetProvider());
+        client.setInternetProvider(new PooledInternetProvider());
+        return client;
     }
 
     public boolean needModelClient() {
@@ -84,6 +114,16 @@ public class SimpleAIController {
                 mModelClient.getApiKey().isEmpty();
     }
 
+    /**
+     * Open a connection to the current model's host ahead of a likely request.
+     */
+    public void prewarm(android.content.Context context) {
+        if (needApiKey()) {
+            return;
+        }
+        ConnectionPrewarmer.prewarm(context, mModelClient.getBaseUrl());
+    }
+
     public void addListener(GenerativeAIListener listener) {
         mListeners.add(listener);
     }
@@ -96,15 +136,28 @@ public class SimpleAIController {
         generateResponse(prompt, null);
     }
 
+    /**
+     * Cancel the responses being generated, down to their connection unless
+     * an identical request still shares it.
+     * Listeners get no further callback for them.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+        for (Subscription subscription : mSubscriptions) {
+            subscription.cancel();
+        }
+    }
+
     public void generateResponse(String prompt, String systemMessage) {
         Log.d(TAG, "Getting response for text length: " + prompt.length());
 
         if (prompt.isEmpty()) {
             return;
         }
+        final int generation = mGeneration.get();
 
         // Notify prepare on main thread
-        mMainHandler.post(() -> {
+        post(generation, () -> {
             for (GenerativeAIListener l : mListeners) {
                 l.onAIPrepare();
             }
@@ -123,15 +176,24 @@ public class SimpleAIController {
             }
             publisher = new SimpleStringPublisher(missingKeyMsg);
         } else {
-            publisher = mModelClient.submitPrompt(prompt, systemMessage);
+            publisher = submitPrompt(mModelClient, prompt, systemMessage);
         }
 
         publisher.subscribe(new Subscriber<String>() {
             boolean completed = false;
             boolean hasError = false;
+            Subscription subscription;
 
             @Override
             public void onSubscribe(Subscription s) {
+                subscription = s;
+                // Added before the check, so a concurrent cancel() can't miss it
+                mSubscriptions.add(s);
+                if (generation != mGeneration.get()) {
+                    mSubscriptions.remove(s);
+                    s.cancel();
+                    return;
+                }
                 s.request(Long.MAX_VALUE);
             }
 
@@ -143,7 +205,7 @@ public class SimpleAIController {
 
                 Log.d(TAG, "onNext: string with length " + s.length());
 
-                mMainHandler.post(() -> {
+                post(generation, () -> {
                     for (GenerativeAIListener l : mListeners) {
                         l.onAINext(s);
                     }
@@ -152,17 +214,24 @@ public class SimpleAIController {
 
             @Override
             public void onError(Throwable t) {
+                if (t instanceof IncompleteResponseException) {
+                    // The text shown so far stays, it just won't be cached
+                    Log.w(TAG, "Response incomplete - " + t.getMessage());
+                    onComplete();
+                    return;
+                }
                 if (completed || hasError) {
                     Log.d(TAG, "Skipping duplicate onError");
                     return;
                 }
                 hasError = true;
                 completed = true;
+                mSubscriptions.remove(subscription);
 
                 Log.e(TAG, "AI Error", t);
 
                 // Notify listeners about the error on main thread
-                mMainHandler.post(() -> {
+                post(generation, () -> {
                     for (GenerativeAIListener l : mListeners) {
                         l.onAIError(t);
                     }
@@ -176,10 +245,11 @@ public class SimpleAIController {
                     return;
                 }
                 completed = true;
+                mSubscriptions.remove(subscription);
 
                 Log.d(TAG, "Done");
 
-                mMainHandler.post(() -> {
+                post(generation, () -> {
                     for (GenerativeAIListener l : mListeners) {
                         l.onAIComplete();
                     }
@@ -188,6 +258,35 @@ public class SimpleAIController {
         });
     }
 
+    /**
+     * Send the prompt, or replay the cached response to it when the model's
+     * settings make it reusable. Identical prompts sent while it runs share
+     * its response. A slow one is hedged to the backup model and an
+     * unavailable model's is sent to the fallback models, if any.
+     */
+    private Publisher<String> submitPrompt(LanguageModelClient client, String prompt, String systemMessage) {
+        String key = ResponseCache.keyFor(client, prompt, systemMessage);
+        int hedgeMaxPercent = mSPManager.getHedgeMaxPercent();
+        if (!mSPManager.getEnableResponseCache()
+                || !ResponseCache.isCacheable(client, mSPManager.getResponseCacheMaxTemperature())) {
+            return InFlightRequests.share(key, RequestRouter.route(client, mFallbackClients, mHedgeClient,
+                    hedgeMaxPercent, prompt, systemMessage, UnaryOperator.identity()));
+        }
+        ResponseCache cache = ResponseCache.getInstance(KGPTApplication.getContext());
+        // The key is the selected model's, answers of the others aren't stored
+        Publisher<String> shared = InFlightRequests.share(key, RequestRouter.route(client, mFallbackClients,
+                mHedgeClient, hedgeMaxPercent, prompt, systemMessage, response -> cache.recording(key, response)));
+        return cache.publisherFor(key, () -> shared);
+    }
+
+    private void post(int generation, Runnable callback) {
+        mMainHandler.post(() -> {
+            if (generation == mGeneration.get()) {
+                callback.run();
+            }
+        });
+    }
+
     public LanguageModel getLanguageModel() {
         return mModelClient != null ? mModelClient.getLanguageModel() : LanguageModel.Gemini;
     }
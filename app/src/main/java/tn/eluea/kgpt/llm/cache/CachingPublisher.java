@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.llm.publisher.Schedulers;
+import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
+
+/**
+ * Replays a cached response as a single chunk, or sends the request.
+ *
+ * A memory hit is replayed on the subscribing thread. Otherwise the disk
+ * lookup, and on a miss the request, happen on a {@link Schedulers#io()}
+ * thread so the caller never waits on the file system. Nothing is stored
+ * here, the request records the responses that may be reused (see
+ * {@link RecordingPublisher}).
+ */
+final class CachingPublisher implements Publisher<String> {
+    private final ResponseCache mCache;
+    private final String mKey;
+    private final Supplier<Publisher<String>> mUpstream;
+
+    CachingPublisher(ResponseCache cache, String key, Supplier<Publisher<String>> upstream) {
+        mCache = cache;
+        mKey = key;
+        mUpstream = upstream;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        String cached = mCache.getFromMemory(mKey);
+        if (cached != null) {
+            new SimpleStringPublisher(cached).subscribe(subscriber);
+            return;
+        }
+        Schedulers.io().execute(() -> {
+            String stored = mCache.get(mKey);
+            if (stored != null) {
+                new SimpleStringPublisher(stored).subscribe(subscriber);
+            } else {
+                mUpstream.get().subscribe(subscriber);
+            }
+        });
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk tier of the {@link ResponseCache}: one file per response, named by
+ * its key and holding its expiry time then its text.
+ *
+ * A file is written under a temporary name then renamed, so a reader never
+ * sees half of one. The last modified time of a file is bumped when it is
+ * read, and the least recently used files are deleted once the directory
+ * grows past its size cap.
+ */
+final class DiskCache {
+    private static final String TAG = "KGPT_DiskCache";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    static final class Entry {
+        final String text;
+        final long expiresAt;
+
+        Entry(String text, long expiresAt) {
+            this.text = text;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    DiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    synchronized Entry get(String key, long now) {
+        File file = new File(mDirectory, key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long expiresAt = in.readLong();
+            if (now >= expiresAt) {
+                in.close();
+                deleteFile(file);
+                return null;
+            }
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                text.write(buffer, 0, read);
+            }
+            file.setLastModified(now);
+            return new Entry(new String(text.toByteArray(), StandardCharsets.UTF_8), expiresAt);
+        } catch (IOException e) {
+            Log.d(TAG, "Dropping unreadable entry - " + e.getMessage());
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    synchronized void put(String key, String text, long expiresAt) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Can't create " + mDirectory);
+            return;
+        }
+        File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeLong(expiresAt);
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Can't write entry - " + e.getMessage());
+            deleteFile(temp);
+            return;
+        }
+        if (!temp.renameTo(new File(mDirectory, key))) {
+            deleteFile(temp);
+            return;
+        }
+        trim();
+    }
+
+    synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            deleteFile(file);
+        }
+    }
+
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= mMaxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= mMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (deleteFile(file)) {
+                total -= length;
+            }
+        }
+    }
+
+    private static boolean deleteFile(File file) {
+        return file.delete() || !file.exists();
+    }
+}
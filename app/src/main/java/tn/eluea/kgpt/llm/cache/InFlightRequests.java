@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.llm.publisher.MulticastPublisher;
+
+/**
+ * Sends identical requests of the process only once while they run.
+ *
+ * A request whose key (see {@link ResponseCache#keyFor}) matches one still
+ * running joins it instead of opening its own connection: it gets the chunks
+ * already received, then the rest as they arrive. A response leaves the
+ * registry once it ended or all of its subscribers cancelled, the next
+ * identical request is sent again (or comes from the {@link ResponseCache}).
+ */
+public final class InFlightRequests {
+    private static final Map<String, MulticastPublisher> sRequests = new ConcurrentHashMap<>();
+
+    private InFlightRequests() {
+    }
+
+    /**
+     * Publisher of the response for {@code key}, shared with any identical
+     * request running when it is subscribed.
+     */
+    public static Publisher<String> share(String key, Supplier<Publisher<String>> upstream) {
+        return subscriber -> join(key, upstream, subscriber);
+    }
+
+    private static void join(String key, Supplier<Publisher<String>> upstream,
+            Subscriber<? super String> subscriber) {
+        while (true) {
+            MulticastPublisher[] created = new MulticastPublisher[1];
+            MulticastPublisher request = sRequests.computeIfAbsent(key, k -> {
+                created[0] = new MulticastPublisher(upstream, () -> sRequests.remove(k, created[0]));
+                return created[0];
+            });
+            if (request.trySubscribe(subscriber)) {
+                return;
+            }
+            // Cancelled by all its subscribers in the meantime, start over
+            sRequests.remove(key, request);
+        }
+    }
+
+    static int size() {
+        return sRequests.size();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Stores the response of one request once it completed.
+ *
+ * The response is stored only when the upstream completed and the
+ * subscriber never cancelled. Clients end a stream the provider didn't
+ * finish with an {@link tn.eluea.kgpt.llm.publisher.IncompleteResponseException},
+ * so a partial answer is never stored.
+ */
+final class RecordingPublisher implements Publisher<String> {
+    private final ResponseCache mCache;
+    private final String mKey;
+    private final Publisher<String> mUpstream;
+
+    RecordingPublisher(ResponseCache cache, String key, Publisher<String> upstream) {
+        mCache = cache;
+        mKey = key;
+        mUpstream = upstream;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        mUpstream.subscribe(new Recorder(subscriber));
+    }
+
+    private final class Recorder implements Subscriber<String>, Subscription {
+        private final Subscriber<? super String> mDownstream;
+        private final StringBuilder mText = new StringBuilder();
+        private volatile Subscription mSubscription;
+        private volatile boolean mCancelled = false;
+
+        Recorder(Subscriber<? super String> downstream) {
+            mDownstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            mSubscription = s;
+            mDownstream.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            mSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            mSubscription.cancel();
+        }
+
+        @Override
+        public void onNext(String s) {
+            if (s != null) {
+                mText.append(s);
+            }
+            mDownstream.onNext(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            mDownstream.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (!mCancelled && mText.length() > 0) {
+                mCache.put(mKey, mText.toString());
+            }
+            mDownstream.onComplete();
+        }
+    }
+}
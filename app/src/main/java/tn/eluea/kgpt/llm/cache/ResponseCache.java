@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import android.content.Context;
+
+import org.reactivestreams.Publisher;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.publisher.Schedulers;
+
+/**
+ * Remembers complete responses so running the same text action on the same
+ * input again (fix, translate, summarize...) doesn't cost a round trip.
+ *
+ * Two tiers: a small LRU in memory, and files in the app's cache dir capped
+ * in total size, dropping the least recently used first. Entries expire
+ * after {@link #TTL_MS} in both. Only responses that completed are stored,
+ * a cancelled or failed one never is (see {@link RecordingPublisher}).
+ *
+ * Responses are keyed by a hash of everything that shapes them, and only
+ * cached when the model's temperature is low enough for the same request to
+ * give the same answer. Only the responses of the model the key was made
+ * for are recorded, not those of a model that stood in for it.
+ */
+public final class ResponseCache {
+    private static final String DIRECTORY = "responses";
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final long MAX_DISK_BYTES = 4L * 1024 * 1024;
+    private static final long TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static volatile ResponseCache sInstance;
+
+    private final Map<String, Entry> mMemory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    // Null when there was no context to find the cache dir, memory only then
+    private final DiskCache mDisk;
+    private final long mTtlMs;
+    private final LongSupplier mClock;
+
+    private static final class Entry {
+        final String text;
+        final long expiresAt;
+
+        Entry(String text, long expiresAt) {
+            this.text = text;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    ResponseCache(File directory, long maxDiskBytes, long ttlMs, LongSupplier clock) {
+        mDisk = directory != null ? new DiskCache(directory, maxDiskBytes) : null;
+        mTtlMs = ttlMs;
+        mClock = clock;
+    }
+
+    /**
+     * Cache of the process, on disk under the cache dir of {@code context}.
+     */
+    public static ResponseCache getInstance(Context context) {
+        ResponseCache cache = sInstance;
+        if (cache == null || (cache.mDisk == null && context != null)) {
+            synchronized (ResponseCache.class) {
+                cache = sInstance;
+                if (cache == null || (cache.mDisk == null && context != null)) {
+                    File directory = context != null ? new File(context.getCacheDir(), DIRECTORY) : null;
+                    cache = new ResponseCache(directory, MAX_DISK_BYTES, TTL_MS, System::currentTimeMillis);
+                    sInstance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Whether responses of {@code client} are stable enough to be reused.
+     */
+    public static boolean isCacheable(LanguageModelClient client, double maxTemperature) {
+        return client.getDoubleField(LanguageModelField.Temperature) <= maxTemperature;
+    }
+
+    /**
+     * Key of a request: the model and endpoint, the sampling settings and the
+     * messages. Fields are length prefixed so no two requests share a key.
+     */
+    public static String keyFor(LanguageModelClient client, String prompt, String systemMessage) {
+        StringBuilder material = new StringBuilder();
+        appendField(material, client.getLanguageModel().name());
+        appendField(material, client.getBaseUrl());
+        appendField(material, client.getSubModel());
+        appendField(material, String.valueOf(client.getDoubleField(LanguageModelField.Temperature)));
+        appendField(material, String.valueOf(client.getDoubleField(LanguageModelField.TopP)));
+        appendField(material, String.valueOf(client.getIntField(LanguageModelField.MaxTokens)));
+        appendField(material, systemMessage);
+        appendField(material, prompt);
+        return sha256(material.toString());
+    }
+
+    private static void appendField(StringBuilder material, String value) {
+        if (value == null) {
+            material.append("-1:");
+        } else {
+            material.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Publisher of the response for {@code key}: the cached one if any,
+     * otherwise the one of {@code upstream}. The upstream stores what should
+     * be reused through {@link #recording}.
+     */
+    public Publisher<String> publisherFor(String key, Supplier<Publisher<String>> upstream) {
+        return new CachingPublisher(this, key, upstream);
+    }
+
+    /**
+     * {@code response}, stored under {@code key} once it completed. Only for
+     * responses of the model {@code key} was made for.
+     */
+    public Publisher<String> recording(String key, Publisher<String> response) {
+        return new RecordingPublisher(this, key, response);
+    }
+
+    String getFromMemory(String key) {
+        long now = mClock.getAsLong();
+        synchronized (mMemory) {
+            Entry entry = mMemory.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now >= entry.expiresAt) {
+                mMemory.remove(key);
+                return null;
+            }
+            return entry.text;
+        }
+    }
+
+    /**
+     * Look the key up in memory then on disk, which blocks on file I/O.
+     */
+    String get(String key) {
+        String text = getFromMemory(key);
+        if (text != null || mDisk == null) {
+            return text;
+        }
+        DiskCache.Entry entry = mDisk.get(key, mClock.getAsLong());
+        if (entry == null) {
+            return null;
+        }
+        synchronized (mMemory) {
+            mMemory.put(key, new Entry(entry.text, entry.expiresAt));
+        }
+        return entry.text;
+    }
+
+    /**
+     * Store a complete response, in memory right away and on disk in the
+     * background.
+     */
+    void put(String key, String text) {
+        long expiresAt = mClock.getAsLong() + mTtlMs;
+        synchronized (mMemory) {
+            mMemory.put(key, new Entry(text, expiresAt));
+        }
+        if (mDisk != null) {
+            Schedulers.io().execute(() -> mDisk.put(key, text, expiresAt));
+        }
+    }
+
+    /**
+     * Forget every response, in memory and on disk.
+     */
+    public void clear() {
+        synchronized (mMemory) {
+            mMemory.clear();
+        }
+        if (mDisk != null) {
+            mDisk.clear();
+        }
+    }
+}
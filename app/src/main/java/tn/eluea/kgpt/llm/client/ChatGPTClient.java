@@ -39,7 +39,7 @@ public class ChatGPTClient extends LanguageModelClient {
             con = (HttpURLConnection) java.net.URI.create(url).toURL().openConnection();
             con.setRequestMethod("POST");
             con.setRequestProperty("Content-Type", "application/json");
-            con.setRequestProperty("Authorization", "Bearer " + getApiKey());
+            con.setRequestProperty("Accept", "text/event-stream");
 
             JSONArray messagesJson = new JSONArray();
             messagesJson.put(new JSONObject()
@@ -51,36 +51,13 @@ public class ChatGPTClient extends LanguageModelClient {
             JSONObject rootJson = new JSONObject();
             rootJson.put("model", getSubModel());
             rootJson.put("messages", messagesJson);
-            rootJson.put("stream", false);
+            rootJson.put("stream", true);
             rootJson.put("max_tokens", getIntField(LanguageModelField.MaxTokens));
             rootJson.put("temperature", getDoubleField(LanguageModelField.Temperature));
             rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
 
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
-                        String response = reader.lines().collect(Collectors.joining(""));
-                        JSONObject responseJson = new JSONObject(response);
-                        if (responseJson.has("choices")) {
-                            JSONArray choices = responseJson.getJSONArray("choices");
-                            for (int i = 0; i < choices.length(); i++) {
-                                JSONObject choice = choices.getJSONObject(i).getJSONObject("message");
-                                if (choice.has("role") && "assistant".equals(choice.getString("role"))) {
-                                    s.onNext(choice
-                                            .getString("content"));
-                                    return;
-                                }
-                            }
-                            if (choices.length() > 0) {
-                                s.onNext(choices.getJSONObject(0)
-                                        .getJSONObject("message")
-                                        .getString("content"));
-                            } else {
-                                throw new JSONException("choices has length 0");
-                            }
-                        } else {
-                            throw new JSONException("no \"choices\" attribute found");
-                        }
-                    },
+                    new OpenAIStreamCallback(),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
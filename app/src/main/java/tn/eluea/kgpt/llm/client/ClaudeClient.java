@@ -12,20 +12,162 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.reactivestreams.Publisher;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 
-import tn.eluea.kgpt.MainHook;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
-import tn.eluea.kgpt.llm.publisher.InputStreamPublisher;
+import tn.eluea.kgpt.llm.publisher.IncompleteResponseException;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+import tn.eluea.kgpt.llm.publisher.ServerSentEvents;
+
+/**
+ * Client for Anthropic's Messages API, streamed.
+ *
+ * System messages long enough to be cached (command tweak messages, text
+ * action prompts) get a cache_control breakpoint, so a command used again
+ * within the cache lifetime skips most of its prefill.
+ */
+public class ClaudeClient extends LanguageModelClient {
+    private static final String API_VERSION = "2023-06-01";
+    // Anthropic doesn't cache prompts under ~1024 tokens, roughly 4 chars each
+    private static final int MIN_CACHED_SYSTEM_LENGTH = 4096;
+
+    @Override
+    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+        if (getApiKey() == null || getApiKey().isEmpty()) {
+            return LanguageModelClient.MISSING_API_KEY_PUBLISHER;
+        }
+
+        if (systemMessage == null) {
+            systemMessage = getDefaultSystemMessage();
+        }
+
+        String url = getBaseUrl() + "/messages";
+        HttpURLConnection con;
+        try {
+            con = (HttpURLConnection) new URL(url).openConnection();
+            con.setRequestMethod("POST");
+            con.setRequestProperty("Content-Type", "application/json");
+            con.setRequestProperty("Accept", "text/event-stream");
+            con.setRequestProperty("anthropic-version", API_VERSION);
+
+            JSONObject systemJson = new JSONObject()
+                    .put("type", "text")
+                    .put("text", systemMessage);
+            if (systemMessage.length() >= MIN_CACHED_SYSTEM_LENGTH) {
+                systemJson.put("cache_control", new JSONObject().put("type", "ephemeral"));
+            }
+
+            JSONArray messagesJson = new JSONArray();
+            messagesJson.put(new JSONObject()
+                    .put("role", "user")
+                    .put("content", prompt));
+            JSONObject rootJson = new JSONObject();
+            rootJson.put("model", getSubModel());
+            rootJson.put("system", new JSONArray().put(systemJson));
+            rootJson.put("messages", messagesJson);
+            rootJson.put("stream", true);
+            rootJson.put("max_tokens", getIntField(LanguageModelField.MaxTokens));
+            // Recent models reject temperature and top_p together, send the one that was changed
+            double temperature = getDoubleField(LanguageModelField.Temperature);
+            double topP = getDoubleField(LanguageModelField.TopP);
+            if (topP < 1.0 && temperature == 1.0) {
+                rootJson.put("top_p", topP);
+            } else {
+                rootJson.put("temperature", temperature);
+            }
+
+            InternetRequestPublisher publisher = new InternetRequestPublisher(
+                    (s, reader) -> {
+                        boolean[] emitted = { false };
+                        boolean[] stopped = { false };
+                        String[] error = { null };
+                        String body = ServerSentEvents.read(reader, data -> {
+                            JSONObject event = new JSONObject(data);
+                            String type = event.optString("type");
+                            if ("content_block_delta".equals(type)) {
+                                JSONObject delta = event.getJSONObject("delta");
+                                if ("text_delta".equals(delta.optString("type"))) {
+                                    String text = delta.optString("text", "");
+                                    if (!text.isEmpty()) {
+                                        s.onNext(text);
+                                        emitted[0] = true;
+                                    }
+                                }
+                            } else if ("message_stop".equals(type)) {
+                                stopped[0] = true;
+                            } else if ("error".equals(type)) {
+                                if (!emitted[0]) {
+                                    throw new RuntimeException(userMessage(event, data));
+                                }
+                                // Keep the text already shown
+                                error[0] = userMessage(event, data);
+                            }
+                        });
+                        if (body != null && !body.trim().isEmpty()) {
+                            // Not streamed, read the content blocks of the whole message
+                            JSONArray content = new JSONObject(body).getJSONArray("content");
+                            for (int i = 0; i < content.length(); i++) {
+                                JSONObject block = content.getJSONObject(i);
+                                if ("text".equals(block.optString("type"))) {
+                                    s.onNext(block.getString("text"));
+                                }
+                            }
+                        } else if (emitted[0] && (error[0] != null || !stopped[0])) {
+                            throw new IncompleteResponseException(error[0] != null
+                                    ? error[0] : "Stream ended without message_stop");
+                        }
+                    },
+                    (s, reader) -> {
+                        String response = reader.lines().collect(Collectors.joining(""));
+                        JSONObject responseJson;
+                        try {
+                            responseJson = new JSONObject(response);
+                        } catch (JSONException e) {
+                            throw new RuntimeException(response);
+                        }
+                        throw new RuntimeException(userMessage(responseJson, response));
+                    });
+            InputStream inputStream = sendRequest(con, rootJson.toString(), publisher);
+            publisher.setInputStream(inputStream);
+            return publisher;
+        } catch (Throwable t) {
+            return new ExceptionPublisher(t);
+        }
+    }
+
+    private String userMessage(JSONObject responseJson, String response) {
+        JSONObject errorJson = responseJson.optJSONObject("error");
+        if (errorJson == null) {
+            return response;
+        }
+        String message = errorJson.optString("message", response);
+        String type = errorJson.optString("type", "");
+
+        // Provide user-friendly error messages
+        if ("authentication_error".equals(type)) {
+            return "Invalid API key. Please check your Anthropic API key";
+        } else if ("not_found_error".equals(type) && message.contains("model")) {
+            return "Model not found: " + getSubModel() + ". Please check the model name";
+        } else if ("rate_limit_error".equals(type)) {
+            return "Rate limit exceeded. Please wait and try again";
+        } else if ("overloaded_error".equals(type)) {
+            return "Anthropic is overloaded. Please try again shortly";
+        } else if (message.contains("credit balance")) {
+            return "API credits exhausted. Check your Anthropic billing or use a different model";
+        }
+        return "Claude Error: " + message;
+    }
+
+    @Override
+    protected void setApiKeyHeader(HttpURLConnection con, String apiKey) {
+        con.setRequestProperty("x-api-key", apiKey);
+    }
 
-public class ClaudeClient extends ChatGPTClient {
     @Override
     public LanguageModel getLanguageModel() {
         return LanguageModel.Claude;
@@ -10,19 +10,27 @@ package tn.eluea.kgpt.llm.client;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
 
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.stream.Collectors;
 
+import android.util.Log;
+
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
+import tn.eluea.kgpt.llm.publisher.IncompleteResponseException;
 import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+import tn.eluea.kgpt.llm.publisher.ServerSentEvents;
 
 public class GeminiClient extends LanguageModelClient {
+    private static final String TAG = "KGPT_Gemini";
+
     @Override
     public Publisher<String> submitPrompt(String prompt, String systemMessage) {
         if (getApiKey() == null || getApiKey().isEmpty()) {
@@ -33,13 +41,13 @@ public class GeminiClient extends LanguageModelClient {
             systemMessage = getDefaultSystemMessage();
         }
 
-        String url = String.format("%s/models/%s:generateContent", getBaseUrl(), getSubModel());
+        String url = String.format("%s/models/%s:streamGenerateContent?alt=sse", getBaseUrl(), getSubModel());
         HttpURLConnection con;
         try {
             con = (HttpURLConnection) new URL(url).openConnection();
             con.setRequestMethod("POST");
             con.setRequestProperty("Content-Type", "application/json");
-            con.setRequestProperty("x-goog-api-key", getApiKey());
+            con.setRequestProperty("Accept", "text/event-stream");
 
             // Build contents array with proper format
             JSONArray contentsJson = new JSONArray();
@@ -93,29 +101,28 @@ public class GeminiClient extends LanguageModelClient {
 
             InternetRequestPublisher publisher = new InternetRequestPublisher(
                     (s, reader) -> {
-                        String response = reader.lines().collect(Collectors.joining(""));
-                        JSONObject responseJson = new JSONObject(response);
-                        if (responseJson.has("candidates")) {
-                            JSONArray candidates = responseJson.getJSONArray("candidates");
-                            for (int i = 0; i < candidates.length(); i++) {
-                                JSONObject candidate = candidates.getJSONObject(i);
-                                if (candidate.has("content")) {
-                                    JSONObject content = candidate.getJSONObject("content");
-                                    if (content.has("parts")) {
-                                        JSONArray parts = content.getJSONArray("parts");
-                                        if (parts.length() > 0) {
-                                            s.onNext(parts.getJSONObject(0).getString("text"));
-                                            return;
-                                        }
-                                    }
-                                }
+                        StreamState state = new StreamState();
+                        String body = ServerSentEvents.read(reader,
+                                data -> onResponseChunk(s, new JSONObject(data), state));
+                        if (body != null && !body.trim().isEmpty()) {
+                            // Without alt=sse the stream is one JSON array of chunks
+                            Object json = new JSONTokener(body).nextValue();
+                            JSONArray chunks = json instanceof JSONArray
+                                    ? (JSONArray) json : new JSONArray().put(json);
+                            for (int i = 0; i < chunks.length(); i++) {
+                                onResponseChunk(s, chunks.getJSONObject(i), state);
+                            }
+                        }
+                        if (!state.emitted) {
+                            if (state.stopReason != null) {
+                                throw new RuntimeException("Response blocked by Gemini (" + state.stopReason + ")");
                             }
                             throw new JSONException("No valid response found in candidates");
-                        } else if (responseJson.has("error")) {
-                            JSONObject error = responseJson.getJSONObject("error");
-                            throw new RuntimeException("API Error: " + error.optString("message", "Unknown error"));
-                        } else {
-                            throw new JSONException("No \"candidates\" attribute found in response");
+                        }
+                        if (!state.finished || state.stopped) {
+                            throw new IncompleteResponseException(state.stopReason != null
+                                    ? "Stream stopped early (" + state.stopReason + ")"
+                                    : "Stream ended without a finish reason");
                         }
                     },
                     (s, reader) -> {
@@ -161,6 +168,81 @@ public class GeminiClient extends LanguageModelClient {
         }
     }
 
+    /**
+     * Emit the text parts of one streamed GenerateContentResponse. Text already
+     * emitted is kept when the stream stops early for safety or another
+     * reason, an error is only raised if nothing could be emitted at all.
+     * Only a STOP or MAX_TOKENS finish reason marks the stream as finished.
+     */
+    private static void onResponseChunk(Subscriber<? super String> s, JSONObject chunk, StreamState state)
+            throws JSONException {
+        if (chunk.has("error")) {
+            String message = chunk.getJSONObject("error").optString("message", "Unknown error");
+            if (!state.emitted) {
+                throw new RuntimeException("API Error: " + message);
+            }
+            Log.w(TAG, "Stream ended with an error: " + message);
+            state.stopReason = message;
+            state.stopped = true;
+            return;
+        }
+        if (state.stopped) {
+            return;
+        }
+
+        JSONObject promptFeedback = chunk.optJSONObject("promptFeedback");
+        if (promptFeedback != null && promptFeedback.has("blockReason")) {
+            state.stopReason = promptFeedback.getString("blockReason");
+            state.stopped = true;
+            return;
+        }
+
+        JSONArray candidates = chunk.optJSONArray("candidates");
+        if (candidates == null || candidates.length() == 0) {
+            return;
+        }
+        // Only the first candidate is shown, candidateCount is never set
+        JSONObject candidate = candidates.getJSONObject(0);
+        JSONObject content = candidate.optJSONObject("content");
+        JSONArray parts = content != null ? content.optJSONArray("parts") : null;
+        if (parts != null) {
+            for (int i = 0; i < parts.length(); i++) {
+                JSONObject part = parts.getJSONObject(i);
+                if (part.optBoolean("thought", false)) {
+                    continue;
+                }
+                String text = part.optString("text", "");
+                if (!text.isEmpty()) {
+                    s.onNext(text);
+                    state.emitted = true;
+                }
+            }
+        }
+
+        String finishReason = candidate.optString("finishReason", "");
+        if ("STOP".equals(finishReason) || "MAX_TOKENS".equals(finishReason)) {
+            state.finished = true;
+        } else if (!finishReason.isEmpty()) {
+            Log.w(TAG, "Stream finished early: " + finishReason);
+            state.stopReason = finishReason;
+            state.stopped = true;
+        }
+    }
+
+    private static final class StreamState {
+        boolean emitted;
+        // Set once the stream was cut short, later chunks are ignored
+        boolean stopped;
+        String stopReason;
+        // Set once a chunk ended the answer with STOP or MAX_TOKENS
+        boolean finished;
+    }
+
+    @Override
+    protected void setApiKeyHeader(HttpURLConnection con, String apiKey) {
+        con.setRequestProperty("x-goog-api-key", apiKey);
+    }
+
     @Override
     public LanguageModel getLanguageModel() {
         return LanguageModel.Gemini;
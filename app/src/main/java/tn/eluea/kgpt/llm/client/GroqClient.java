@@ -43,7 +43,7 @@ public class GroqClient extends ChatGPTClient {
             con = (HttpURLConnection) new URL(url).openConnection();
             con.setRequestMethod("POST");
             con.setRequestProperty("Content-Type", "application/json");
-            con.setRequestProperty("Authorization", "Bearer " + getApiKey());
+            con.setRequestProperty("Accept", "text/event-stream");
 
             JSONArray messagesJson = new JSONArray();
             messagesJson.put(new JSONObject()
@@ -61,26 +61,7 @@ public class GroqClient extends ChatGPTClient {
             rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
 
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            line = line.trim();
-                            if (line.isEmpty() || line.endsWith("[DONE]")) {
-                                continue;
-                            }
-                            if (line.startsWith("data:")) {
-                                line = line.substring("data:".length()).trim();
-                            }
-                            JSONObject choice = new JSONObject(line)
-                                    .getJSONArray("choices")
-                                    .getJSONObject(0);
-                            if (choice.has("delta")) {
-                                s.onNext(extractContent(choice.getJSONObject("delta")));
-                            } else {
-                                s.onNext(extractContent(choice.getJSONObject("message")));
-                            }
-                        }
-                    },
+                    new OpenAIStreamCallback(),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
@@ -105,12 +86,4 @@ public class GroqClient extends ChatGPTClient {
         }
     }
 
-    private String extractContent(JSONObject message) throws JSONException {
-        if (!message.has("content")) {
-            return "";
-        }
-
-        return message.getString("content");
-    }
-
 }
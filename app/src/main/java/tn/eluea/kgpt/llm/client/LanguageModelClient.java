@@ -14,22 +14,34 @@ import org.reactivestreams.Publisher;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.util.Log;
 
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.health.ModelHealth;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
-import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.internet.PooledInternetProvider;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
+import tn.eluea.kgpt.llm.ratelimit.ApiKeyPool;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
 public abstract class LanguageModelClient {
     private static final String TAG = "KGPT_LMClient";
     private Map<LanguageModelField, String> mFields = new HashMap<>();
 
-    private InternetProvider mInternetProvider = new SimpleInternetProvider();
+    private InternetProvider mInternetProvider = new PooledInternetProvider();
+    // Requests whose response hasn't been read to the end yet
+    private final Set<InternetRequestPublisher> mPendingRequests = ConcurrentHashMap.newKeySet();
 
     abstract public Publisher<String> submitPrompt(String prompt, String systemMessage);
 
@@ -71,9 +83,38 @@ public abstract class LanguageModelClient {
         return getField(LanguageModelField.SubModel);
     }
 
+    /**
+     * First of the API keys, null without any.
+     */
     public String getApiKey() {
-        String key = getField(LanguageModelField.ApiKey);
-        return key != null ? key.trim() : null;
+        List<String> keys = getApiKeys();
+        return keys.isEmpty() ? null : keys.get(0);
+    }
+
+    /**
+     * API keys of the model, the field takes several separated by commas or
+     * whitespace. Requests are spread over them by the model's
+     * {@link ApiKeyPool}.
+     */
+    public List<String> getApiKeys() {
+        List<String> keys = new ArrayList<>();
+        String field = getField(LanguageModelField.ApiKey);
+        if (field != null) {
+            for (String key : field.split("[\\s,]+")) {
+                if (!key.isEmpty()) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Authenticate {@code con} with {@code apiKey}, as a bearer token unless
+     * the provider wants it otherwise.
+     */
+    protected void setApiKeyHeader(HttpURLConnection con, String apiKey) {
+        con.setRequestProperty("Authorization", "Bearer " + apiKey);
     }
 
     public String getBaseUrl() {
@@ -104,10 +145,7 @@ public abstract class LanguageModelClient {
         }
     }
 
-    static Publisher<String> MISSING_API_KEY_PUBLISHER = subscriber -> {
-        subscriber.onNext("Missing API Key");
-        subscriber.onComplete();
-    };
+    static Publisher<String> MISSING_API_KEY_PUBLISHER = new SimpleStringPublisher("Missing API Key");
 
     @NonNull
     @Override
@@ -119,12 +157,100 @@ public abstract class LanguageModelClient {
         return "You are a helpful assistant integrated inside a keyboard.";
     }
 
+    /**
+     * Rough token count of a request body, about four characters a token.
+     * Providers' rate limit headers correct the estimate after every response.
+     */
+    private static long estimateTokens(String body) {
+        return body != null ? body.length() / 4 : 0;
+    }
+
     public void setInternetProvider(InternetProvider internetProvider) {
         mInternetProvider = internetProvider;
     }
 
-    protected InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl)
+    /**
+     * Send the request of {@code publisher}, which can then be aborted by
+     * cancelling it or through {@link #cancelRequests()}.
+     *
+     * Timeouts come from the model's {@link ModelHealth}, which is told how
+     * the request went once its status code arrives. The API key is taken
+     * from the model's {@link ApiKeyPool} and set here, a request no key can
+     * take fails with a 429 {@link tn.eluea.kgpt.llm.publisher.RequestFailedException}
+     * without being sent.
+     */
+    protected InputStream sendRequest(HttpURLConnection con, String body, InternetRequestPublisher publisher)
             throws IOException {
-        return mInternetProvider.sendRequest(con, body, irl);
+        InternetProvider internetProvider = mInternetProvider;
+        ModelHealth health = ModelHealth.forModel(getLanguageModel());
+        List<String> apiKeys = getApiKeys();
+        ApiKeyPool.Lease lease;
+        try {
+            lease = ApiKeyPool.forModel(getLanguageModel()).acquire(apiKeys, estimateTokens(body));
+        } catch (RuntimeException e) {
+            // Not sent, a half open circuit may try again
+            health.recordAbandoned();
+            throw e;
+        }
+        setApiKeyHeader(con, lease.getKey());
+        con.setConnectTimeout(health.connectTimeoutMs());
+        con.setReadTimeout(health.readTimeoutMs());
+
+        long sentAt = System.nanoTime();
+        AtomicBoolean reported = new AtomicBoolean();
+        AtomicReference<Map<String, List<String>>> responseHeaders = new AtomicReference<>();
+        InternetRequestListener listener = new InternetRequestListener() {
+            @Override
+            public void onResponseHeaders(Map<String, List<String>> headers) {
+                responseHeaders.set(headers);
+            }
+
+            @Override
+            public void onRequestStatusCode(int code) {
+                reported.set(true);
+                if (code != 0) {
+                    lease.onResponse(code, responseHeaders.get());
+                }
+                if (publisher.isCancelled() || (code == 429 && apiKeys.size() > 1)) {
+                    // Cancelled, or one key's quota, which says nothing of the provider
+                    health.recordAbandoned();
+                } else {
+                    health.record(ModelHealth.Outcome.forStatusCode(code),
+                            (System.nanoTime() - sentAt) / 1_000_000);
+                }
+                publisher.onRequestStatusCode(code);
+            }
+
+            @Override
+            public void onRequestComplete() {
+                publisher.onRequestComplete();
+            }
+        };
+        publisher.setOnCancel(() -> internetProvider.cancel(listener));
+        publisher.setOnFinish(() -> mPendingRequests.remove(publisher));
+        mPendingRequests.add(publisher);
+        try {
+            return internetProvider.sendRequest(con, body, listener);
+        } catch (IOException | RuntimeException e) {
+            mPendingRequests.remove(publisher);
+            if (!reported.get()) {
+                if (publisher.isCancelled()) {
+                    // The cancel broke the request, not the provider
+                    health.recordAbandoned();
+                } else {
+                    health.record(ModelHealth.Outcome.NO_RESPONSE, (System.nanoTime() - sentAt) / 1_000_000);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Cancel every request sent by this client that may still be running.
+     */
+    public void cancelRequests() {
+        for (InternetRequestPublisher publisher : mPendingRequests) {
+            publisher.cancel();
+        }
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.client;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.reactivestreams.Subscriber;
+
+import java.io.BufferedReader;
+
+import tn.eluea.kgpt.llm.publisher.IncompleteResponseException;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+import tn.eluea.kgpt.llm.publisher.ServerSentEvents;
+
+/**
+ * Success callback for OpenAI compatible /chat/completions requests sent with
+ * {@code "stream": true}. Every content delta goes out as its own onNext.
+ *
+ * Servers that ignore the stream flag and answer with a single JSON body are
+ * still handled, the assistant message is then published in one piece.
+ *
+ * A stream that emitted text but ended without "[DONE]" or a finish_reason
+ * ends with an {@link IncompleteResponseException}.
+ */
+class OpenAIStreamCallback implements InternetRequestPublisher.Callback {
+
+    @Override
+    public void callback(Subscriber<? super String> subscriber, BufferedReader reader) throws Throwable {
+        boolean[] emitted = { false };
+        boolean[] finished = { false };
+        String body = ServerSentEvents.read(reader, new ServerSentEvents.EventHandler() {
+            @Override
+            public void onEvent(String data) throws Throwable {
+                JSONObject chunk = new JSONObject(data);
+                if (chunk.has("error")) {
+                    throw new RuntimeException("API Error: " + errorMessage(chunk, data));
+                }
+                JSONArray choices = chunk.optJSONArray("choices");
+                if (choices == null || choices.length() == 0) {
+                    // Usage or keep-alive chunk
+                    return;
+                }
+                JSONObject choice = choices.getJSONObject(0);
+                JSONObject delta = choice.has("delta") ? choice.optJSONObject("delta") : choice.optJSONObject("message");
+                String content = delta != null ? content(delta) : null;
+                if (content != null && !content.isEmpty()) {
+                    subscriber.onNext(content);
+                    emitted[0] = true;
+                }
+                if (!choice.isNull("finish_reason") && !choice.optString("finish_reason").isEmpty()) {
+                    finished[0] = true;
+                }
+            }
+
+            @Override
+            public void onDone() {
+                finished[0] = true;
+            }
+        });
+
+        if (body != null && !body.trim().isEmpty()) {
+            onCompleteResponse(subscriber, body);
+        } else if (emitted[0] && !finished[0]) {
+            throw new IncompleteResponseException("Stream ended without [DONE] or a finish reason");
+        }
+    }
+
+    private static void onCompleteResponse(Subscriber<? super String> subscriber, String response)
+            throws JSONException {
+        JSONObject responseJson = new JSONObject(response);
+        if (!responseJson.has("choices")) {
+            throw new JSONException("no \"choices\" attribute found");
+        }
+        JSONArray choices = responseJson.getJSONArray("choices");
+        for (int i = 0; i < choices.length(); i++) {
+            JSONObject choice = choices.getJSONObject(i).getJSONObject("message");
+            if (choice.has("role") && "assistant".equals(choice.getString("role"))) {
+                subscriber.onNext(choice.getString("content"));
+                return;
+            }
+        }
+        if (choices.length() > 0) {
+            subscriber.onNext(choices.getJSONObject(0)
+                    .getJSONObject("message")
+                    .getString("content"));
+        } else {
+            throw new JSONException("choices has length 0");
+        }
+    }
+
+    private static String content(JSONObject message) {
+        // Role-only and tool-call deltas carry no content, or a JSON null
+        if (!message.has("content") || message.isNull("content")) {
+            return null;
+        }
+        return message.optString("content");
+    }
+
+    private static String errorMessage(JSONObject chunk, String data) {
+        JSONObject error = chunk.optJSONObject("error");
+        return error != null ? error.optString("message", data) : chunk.optString("error", data);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.health;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.publisher.RequestFailedException;
+
+/**
+ * How one model's provider has been answering lately, and what follows from
+ * it: whether to send it requests at all, and how long to wait for it.
+ *
+ * A circuit breaker: after {@link #FAILURE_THRESHOLD} failures in a row
+ * (no answer, rate limit, server error) the circuit opens and requests are
+ * refused right away for a cooldown, which doubles every time a trial fails.
+ * Once it passed one trial request goes through (half open), its success
+ * closes the circuit again. Client errors, like a bad key, say nothing of
+ * the provider's health and are only counted.
+ *
+ * Connect and read timeouts follow the time the provider took to send its
+ * response headers, several times its slowest recent ones, so a dead
+ * provider is given up on in seconds rather than the worst case allowed
+ * for any provider.
+ */
+public final class ModelHealth {
+    private static final String TAG = "KGPT_ModelHealth";
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long BASE_COOLDOWN_MS = 30_000;
+    static final long MAX_COOLDOWN_MS = 5 * 60_000;
+
+    private static final int SAMPLES = 32;
+    private static final int MIN_SAMPLES = 5;
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 60_000;
+    private static final int MIN_CONNECT_TIMEOUT_MS = 3_000;
+    private static final int MIN_READ_TIMEOUT_MS = 10_000;
+    // Room above the slowest recent response before calling it dead
+    private static final int TIMEOUT_FACTOR = 3;
+
+    private static final Map<LanguageModel, ModelHealth> sHealth = new EnumMap<>(LanguageModel.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        CLIENT_ERROR,
+        RATE_LIMITED,
+        SERVER_ERROR,
+        NO_RESPONSE;
+
+        public static Outcome forStatusCode(int statusCode) {
+            if (statusCode >= 200 && statusCode < 400) {
+                return SUCCESS;
+            } else if (statusCode == 429) {
+                return RATE_LIMITED;
+            } else if (statusCode == 0 || statusCode == 408) {
+                return NO_RESPONSE;
+            } else if (RequestFailedException.isTransient(statusCode)) {
+                return SERVER_ERROR;
+            }
+            return CLIENT_ERROR;
+        }
+
+        boolean isFailure() {
+            return this != SUCCESS && this != CLIENT_ERROR;
+        }
+    }
+
+    private final LanguageModel mModel;
+    private final LongSupplier mClock;
+    private final Map<Outcome, Integer> mOutcomes = new EnumMap<>(Outcome.class);
+    private final long[] mLatencies = new long[SAMPLES];
+    private int mLatencyCount = 0;
+    private int mNextLatency = 0;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures = 0;
+    private long mCooldownMs = BASE_COOLDOWN_MS;
+    private long mOpenUntil = 0;
+    private boolean mTrialInFlight = false;
+
+    ModelHealth(LanguageModel model, LongSupplier clock) {
+        mModel = model;
+        mClock = clock;
+    }
+
+    public static ModelHealth forModel(LanguageModel model) {
+        synchronized (sHealth) {
+            ModelHealth health = sHealth.get(model);
+            if (health == null) {
+                health = new ModelHealth(model, SystemClock::elapsedRealtime);
+                sHealth.put(model, health);
+            }
+            return health;
+        }
+    }
+
+    /**
+     * Whether a request may be sent now. In half open state this takes the
+     * single trial, the caller must send the request and record its outcome.
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case OPEN:
+                if (mClock.getAsLong() < mOpenUntil) {
+                    return false;
+                }
+                mState = State.HALF_OPEN;
+                mTrialInFlight = true;
+                Log.d(TAG, mModel.name() + " half open, sending a trial request");
+                return true;
+            case HALF_OPEN:
+                if (mTrialInFlight) {
+                    return false;
+                }
+                mTrialInFlight = true;
+                return true;
+            case CLOSED:
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Milliseconds until requests are allowed again, 0 if they are.
+     */
+    public synchronized long retryInMs() {
+        if (mState != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, mOpenUntil - mClock.getAsLong());
+    }
+
+    /**
+     * Record how a request ended.
+     *
+     * @param latencyMs time until the status code arrived
+     */
+    public synchronized void record(Outcome outcome, long latencyMs) {
+        mOutcomes.merge(outcome, 1, Integer::sum);
+        if (outcome == Outcome.SUCCESS || outcome == Outcome.CLIENT_ERROR) {
+            addLatency(latencyMs);
+        }
+
+        if (!outcome.isFailure()) {
+            if (mState != State.CLOSED) {
+                Log.d(TAG, mModel.name() + " recovered, closing circuit");
+            }
+            mState = State.CLOSED;
+            mConsecutiveFailures = 0;
+            mCooldownMs = BASE_COOLDOWN_MS;
+            mTrialInFlight = false;
+            return;
+        }
+
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN) {
+            // The trial failed, wait longer this time
+            mCooldownMs = Math.min(MAX_COOLDOWN_MS, mCooldownMs * 2);
+            open(outcome);
+        } else if (mState == State.CLOSED && mConsecutiveFailures >= FAILURE_THRESHOLD) {
+            open(outcome);
+        }
+    }
+
+    /**
+     * Record a request that was cancelled before its outcome was known, so
+     * a half open circuit doesn't wait for it forever.
+     */
+    public synchronized void recordAbandoned() {
+        if (mState == State.HALF_OPEN) {
+            mTrialInFlight = false;
+        }
+    }
+
+    private void open(Outcome cause) {
+        mState = State.OPEN;
+        mTrialInFlight = false;
+        mOpenUntil = mClock.getAsLong() + mCooldownMs;
+        Log.w(TAG, mModel.name() + " circuit open for " + mCooldownMs + " ms after " + cause + ", "
+                + mOutcomes);
+    }
+
+    private void addLatency(long latencyMs) {
+        mLatencies[mNextLatency] = latencyMs;
+        mNextLatency = (mNextLatency + 1) % SAMPLES;
+        mLatencyCount = Math.min(mLatencyCount + 1, SAMPLES);
+    }
+
+    private long latencyPercentile(double p) {
+        long[] sorted = Arrays.copyOf(mLatencies, mLatencyCount);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(p * mLatencyCount) - 1];
+    }
+
+    public synchronized int connectTimeoutMs() {
+        if (mLatencyCount < MIN_SAMPLES) {
+            return DEFAULT_CONNECT_TIMEOUT_MS;
+        }
+        return clamp(latencyPercentile(0.9) * TIMEOUT_FACTOR, MIN_CONNECT_TIMEOUT_MS, DEFAULT_CONNECT_TIMEOUT_MS);
+    }
+
+    public synchronized int readTimeoutMs() {
+        if (mLatencyCount < MIN_SAMPLES) {
+            return DEFAULT_READ_TIMEOUT_MS;
+        }
+        return clamp(latencyPercentile(0.99) * TIMEOUT_FACTOR, MIN_READ_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    public synchronized int getCount(Outcome outcome) {
+        return mOutcomes.getOrDefault(outcome, 0);
+    }
+}
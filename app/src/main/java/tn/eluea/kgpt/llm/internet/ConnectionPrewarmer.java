@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens a pooled connection to the model's host ahead of the request, when a
+ * leading signal shows one is likely coming (a range start symbol or the
+ * inline ask prefix was typed, the text actions menu opened).
+ *
+ * The connection is opened with a HEAD request on the shared
+ * {@link HttpTransport} client, whose response is discarded; what matters is
+ * that DNS, TCP and TLS are done and the socket sits in the pool. At most one
+ * prewarm per host every {@link #MIN_INTERVAL_MS}, and none in battery saver
+ * or on a metered network.
+ */
+public final class ConnectionPrewarmer {
+    private static final String TAG = "KGPT_Prewarm";
+    // Well under the pool's keep-alive, so a warm connection gets refreshed
+    private static final long MIN_INTERVAL_MS = 30_000;
+
+    private static final Map<String, Long> sLastPrewarm = new ConcurrentHashMap<>();
+
+    private ConnectionPrewarmer() {
+    }
+
+    /**
+     * Warm up a connection to the host of {@code baseUrl} in this process.
+     */
+    public static void prewarm(Context context, String baseUrl) {
+        HttpUrl origin = origin(baseUrl);
+        if (origin == null || !acquire(origin.host()) || !isAllowed(context)) {
+            return;
+        }
+
+        Log.d(TAG, "Prewarming " + origin.host());
+        Request request = new Request.Builder().url(origin).head().build();
+        HttpTransport.client().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                // Closing returns the connection to the pool
+                response.close();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Prewarm of " + call.request().url().host() + " failed - " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Rate limit check, true at most once per host and interval. Used by
+     * providers that forward the prewarm to another process.
+     */
+    public static boolean tryAcquire(String baseUrl) {
+        HttpUrl origin = origin(baseUrl);
+        return origin != null && acquire(origin.host());
+    }
+
+    private static boolean acquire(String host) {
+        long now = SystemClock.elapsedRealtime();
+        Long last = sLastPrewarm.get(host);
+        if (last != null && now - last < MIN_INTERVAL_MS) {
+            return false;
+        }
+        sLastPrewarm.put(host, now);
+        return true;
+    }
+
+    private static boolean isAllowed(Context context) {
+        if (context == null) {
+            return false;
+        }
+        try {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isPowerSaveMode()) {
+                return false;
+            }
+            ConnectivityManager connectivityManager = (ConnectivityManager) context
+                    .getSystemService(Context.CONNECTIVITY_SERVICE);
+            return connectivityManager != null && !connectivityManager.isActiveNetworkMetered();
+        } catch (SecurityException e) {
+            // The hooked app may lack ACCESS_NETWORK_STATE, don't guess
+            return false;
+        }
+    }
+
+    private static HttpUrl origin(String url) {
+        HttpUrl parsed = url != null ? HttpUrl.parse(url) : null;
+        if (parsed == null) {
+            return null;
+        }
+        return new HttpUrl.Builder().scheme(parsed.scheme()).host(parsed.host()).port(parsed.port()).build();
+    }
+}
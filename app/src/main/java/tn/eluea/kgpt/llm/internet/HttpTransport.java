@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * HTTP client shared by every request of the process.
+ *
+ * Connections are pooled and kept alive between requests, HTTP/2 is
+ * negotiated through ALPN where the server supports it (so concurrent
+ * requests to one provider share a connection), and TLS sessions are cached
+ * by the platform's SSL context so reconnecting resumes them. A second
+ * request to the same provider then skips DNS, TCP and TLS setup.
+ */
+public final class HttpTransport {
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // Streamed responses hold their call for their whole length, the
+    // dispatcher's default of 5 per host would queue concurrent generations
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+
+    private static volatile OkHttpClient sClient;
+
+    private HttpTransport() {
+    }
+
+    public static OkHttpClient client() {
+        OkHttpClient client = sClient;
+        if (client == null) {
+            synchronized (HttpTransport.class) {
+                client = sClient;
+                if (client == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+                    client = new OkHttpClient.Builder()
+                            .dispatcher(dispatcher)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                                    TimeUnit.MINUTES))
+                            .connectTimeout(30, TimeUnit.SECONDS)
+                            .readTimeout(60, TimeUnit.SECONDS)
+                            .retryOnConnectionFailure(true)
+                            .build();
+                    sClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Send a request and return once the response headers are in. The caller
+     * must close the response (or its body stream) to give the connection
+     * back to the pool.
+     */
+    public static Response execute(URL url, String method, Map<String, List<String>> headers, String body)
+            throws IOException {
+        return newCall(url, method, headers, body).execute();
+    }
+
+    /**
+     * Prepare a request without sending it, for callers that need the Call to
+     * set a deadline on it or cancel it.
+     */
+    public static Call newCall(URL url, String method, Map<String, List<String>> headers, String body) {
+        return client().newCall(buildRequest(url, method, headers, body));
+    }
+
+    /**
+     * Like {@link #newCall(URL, String, Map, String)}, with the given connect
+     * and read timeouts instead of the shared client's. 0 keeps the shared
+     * client's. The call still goes through the shared pool and dispatcher.
+     */
+    public static Call newCall(URL url, String method, Map<String, List<String>> headers, String body,
+            int connectTimeoutMs, int readTimeoutMs) {
+        OkHttpClient client = client();
+        if (connectTimeoutMs > 0 || readTimeoutMs > 0) {
+            OkHttpClient.Builder builder = client.newBuilder();
+            if (connectTimeoutMs > 0) {
+                builder.connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            if (readTimeoutMs > 0) {
+                builder.readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            client = builder.build();
+        }
+        return client.newCall(buildRequest(url, method, headers, body));
+    }
+
+    private static Request buildRequest(URL url, String method, Map<String, List<String>> headers, String body) {
+        Request.Builder builder = new Request.Builder().url(url);
+        MediaType contentType = null;
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if ("Content-Type".equalsIgnoreCase(entry.getKey())) {
+                    // OkHttp takes the content type from the body
+                    if (!entry.getValue().isEmpty()) {
+                        contentType = MediaType.parse(entry.getValue().get(0));
+                    }
+                    continue;
+                }
+                for (String value : entry.getValue()) {
+                    builder.addHeader(entry.getKey(), value);
+                }
+            }
+        }
+
+        if (method == null) {
+            method = body != null ? "POST" : "GET";
+        }
+        RequestBody requestBody = null;
+        if (body != null || "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)) {
+            requestBody = RequestBody.create(body != null ? body : "", contentType);
+        }
+        builder.method(method, requestBody);
+
+        return builder.build();
+    }
+}
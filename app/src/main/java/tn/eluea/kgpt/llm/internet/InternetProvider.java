@@ -7,6 +7,8 @@
  */
 package tn.eluea.kgpt.llm.internet;
 
+import android.content.Context;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -15,4 +17,18 @@ import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
 public interface InternetProvider {
     InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException;
+
+    /**
+     * Hint that a request to {@code baseUrl} is likely to follow shortly, so a
+     * connection can be opened ahead of it. Does nothing by default.
+     */
+    default void prewarm(Context context, String baseUrl) {
+    }
+
+    /**
+     * Abort the request sent with {@code irl}, whether it is still connecting
+     * or streaming its response. Does nothing if it already ended.
+     */
+    default void cancel(InternetRequestListener irl) {
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Stream of a response body that hasn't arrived yet, returned right away so
+ * sending a request doesn't block. Reads wait until the body is set; the
+ * publisher only reads once the status code was reported, by then it is.
+ */
+class PendingInputStream extends InputStream {
+    private InputStream mStream = null;
+    private boolean mClosed = false;
+    private final Runnable mOnClose;
+
+    /**
+     * @param onClose run once when the stream is closed
+     */
+    PendingInputStream(Runnable onClose) {
+        mOnClose = onClose;
+    }
+
+    /**
+     * Set the body, closed right away if this stream already was.
+     */
+    void setStream(InputStream stream) {
+        synchronized (this) {
+            if (!mClosed) {
+                mStream = stream;
+                notifyAll();
+                return;
+            }
+        }
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // Nobody reads it anymore
+        }
+    }
+
+    private synchronized InputStream await() throws IOException {
+        while (mStream == null && !mClosed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        return mStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return await().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return await().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        InputStream stream;
+        synchronized (this) {
+            stream = mStream;
+        }
+        return stream != null ? stream.available() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        InputStream stream;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            stream = mStream;
+            notifyAll();
+        }
+        mOnClose.run();
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
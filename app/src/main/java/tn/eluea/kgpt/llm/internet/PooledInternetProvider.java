@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.Context;
+import android.util.Log;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import tn.eluea.kgpt.core.network.InternetService;
+import tn.eluea.kgpt.llm.service.InternetRequestListener;
+
+/**
+ * Sends requests through the shared {@link HttpTransport} pool.
+ *
+ * The HttpURLConnection built by the client is only used to describe the
+ * request (URL, method, headers) and is never connected. The request is
+ * enqueued on the client's dispatcher and the response stream returned right
+ * away, the body is plugged into it once the headers are in. Error bodies go
+ * to the client's error callback instead of being turned into an IOException
+ * here, and a failed call is reported as status 0 with an error body, like
+ * the external provider does.
+ *
+ * Cancelling a request cancels its Call, which closes the socket (or resets
+ * the HTTP/2 stream) and fails a blocked connect or read right away.
+ */
+public class PooledInternetProvider implements InternetProvider {
+    private static final String TAG = "KGPT_PooledInternet";
+
+    // Calls in flight, until their response body is closed
+    private final Map<InternetRequestListener, Call> mCalls = new ConcurrentHashMap<>();
+
+    @Override
+    public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
+        Log.d(TAG, "Sending request to " + con.getURL());
+
+        // Timeouts set by the client on the connection apply to the call
+        Call call = HttpTransport.newCall(con.getURL(), con.getRequestMethod(),
+                InternetService.extractHeaders(con), body, con.getConnectTimeout(), con.getReadTimeout());
+        PendingInputStream responseStream = new PendingInputStream(() -> mCalls.remove(irl, call));
+        mCalls.put(irl, call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                Log.d(TAG, "Response code = " + response.code() + " (" + response.protocol() + ")");
+                ResponseBody responseBody = response.body();
+                if (responseBody == null) {
+                    response.close();
+                    responseStream.setStream(new ByteArrayInputStream(new byte[0]));
+                } else {
+                    // Closing the body stream releases the connection to the pool
+                    responseStream.setStream(responseBody.byteStream());
+                }
+                irl.onResponseHeaders(response.headers().toMultimap());
+                irl.onRequestStatusCode(response.code());
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Request to " + call.request().url().host() + " failed - " + e.getMessage());
+                String message = call.isCanceled() ? "Request cancelled" : e.getMessage();
+                responseStream.setStream(new ByteArrayInputStream(
+                        InternetService.errorBody(message).getBytes(StandardCharsets.UTF_8)));
+                irl.onRequestStatusCode(0);
+            }
+        });
+        return responseStream;
+    }
+
+    @Override
+    public void cancel(InternetRequestListener irl) {
+        Call call = mCalls.remove(irl);
+        if (call != null) {
+            Log.d(TAG, "Cancelling request to " + call.request().url().host());
+            call.cancel();
+        }
+    }
+
+    @Override
+    public void prewarm(Context context, String baseUrl) {
+        ConnectionPrewarmer.prewarm(context, baseUrl);
+    }
+}
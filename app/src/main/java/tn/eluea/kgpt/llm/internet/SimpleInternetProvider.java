@@ -8,6 +8,7 @@
 package tn.eluea.kgpt.llm.internet;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -16,47 +17,78 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import android.util.Log;
 
+import tn.eluea.kgpt.core.network.InternetService;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
+/**
+ * Sends each request on its own HttpURLConnection.
+ *
+ * Like the other providers it never throws for a failed request: a connect
+ * or read failure is reported as status 0 with an error body, and an error
+ * status comes with the server's error body, both for the client's error
+ * callback to read.
+ */
 public class SimpleInternetProvider implements InternetProvider {
     private static final String TAG = "KGPT_SimpleInternet";
+    // Used when the client set no timeout of its own
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 30_000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 60_000;
     ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Map<InternetRequestListener, HttpURLConnection> mConnections = new ConcurrentHashMap<>();
 
     @Override
     public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
         Log.d(TAG, "Sending request to " + con.getURL());
+        mConnections.put(irl, con);
 
         con.setDoOutput(true);
-        con.setConnectTimeout(30000);
-        con.setReadTimeout(60000);
-
-        try (OutputStream os = con.getOutputStream()) {
-            byte[] input = body.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+        if (con.getConnectTimeout() == 0) {
+            con.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT_MS);
+        }
+        if (con.getReadTimeout() == 0) {
+            con.setReadTimeout(DEFAULT_READ_TIMEOUT_MS);
         }
 
-        int responseCode = con.getResponseCode();
+        int responseCode;
+        InputStream responseStream;
+        try {
+            try (OutputStream os = con.getOutputStream()) {
+                byte[] input = body.getBytes(StandardCharsets.UTF_8);
+                os.write(input, 0, input.length);
+            }
+            responseCode = con.getResponseCode();
+            responseStream = responseCode < 400 ? con.getInputStream() : null;
+        } catch (IOException e) {
+            // Removed already if cancel() disconnected it
+            String message = mConnections.remove(irl, con) ? e.getMessage() : "Request cancelled";
+            Log.d(TAG, "Request to " + con.getURL().getHost() + " failed - " + message);
+            irl.onRequestStatusCode(0);
+            return toStream(InternetService.errorBody(message));
+        }
         Log.d(TAG, "Response code = " + responseCode);
-        irl.onRequestStatusCode(responseCode);
+        irl.onResponseHeaders(con.getHeaderFields());
 
-        // Handle error responses immediately
         if (responseCode >= 400) {
+            // Read whole so the connection is released right away
             String errorMessage = readStreamFully(con.getErrorStream());
+            mConnections.remove(irl, con);
             Log.e(TAG, "Request failed with code " + responseCode + ": " + errorMessage);
-            throw new IOException("API Error " + responseCode + ": " + errorMessage);
+            irl.onRequestStatusCode(responseCode);
+            return toStream(errorMessage);
         }
+        irl.onRequestStatusCode(responseCode);
 
         PipedInputStream inputStream = new PipedInputStream();
         PipedOutputStream outputStream = new PipedOutputStream(inputStream);
 
         // For successful responses, stream the content
-        InputStream responseStream = con.getInputStream();
-
         executor.execute(() -> {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(responseStream))) {
                 String line;
@@ -71,12 +103,27 @@ public class SimpleInternetProvider implements InternetProvider {
                     outputStream.close();
                 } catch (IOException ignored) {
                 }
+            } finally {
+                mConnections.remove(irl, con);
             }
         });
 
         return inputStream;
     }
 
+    @Override
+    public void cancel(InternetRequestListener irl) {
+        HttpURLConnection con = mConnections.remove(irl);
+        if (con != null) {
+            // Closes the socket, a blocked read fails with an IOException
+            con.disconnect();
+        }
+    }
+
+    private static InputStream toStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
     private String readStreamFully(InputStream stream) {
         if (stream == null)
             return "Unknown Error";
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscription between a producer and one subscriber.
+ *
+ * The producer hands over items and the terminal signal from any thread,
+ * they are queued and passed to the subscriber only as far as its demand
+ * goes. Signals are serialized: whichever thread finds the subscription idle
+ * drains it, the others only add work for it. Nothing is sent after a
+ * cancel, and request() never blocks.
+ */
+final class BufferedSubscription implements Subscription {
+    private final Subscriber<? super String> mSubscriber;
+    private final Runnable mOnStart;
+    private final Runnable mOnCancel;
+
+    private final Queue<String> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong mRequested = new AtomicLong();
+    private final AtomicInteger mWip = new AtomicInteger();
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+    private final AtomicBoolean mCancelled = new AtomicBoolean();
+    private volatile boolean mDone = false;
+    private volatile Throwable mError = null;
+
+    /**
+     * @param onStart  run once on the first request, to start producing
+     * @param onCancel run once when the subscriber cancels
+     */
+    BufferedSubscription(Subscriber<? super String> subscriber, Runnable onStart, Runnable onCancel) {
+        mSubscriber = subscriber;
+        mOnStart = onStart;
+        mOnCancel = onCancel;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            error(new IllegalArgumentException("Demand must be positive"));
+            return;
+        }
+        long current;
+        long next;
+        do {
+            current = mRequested.get();
+            if (current == Long.MAX_VALUE) {
+                break;
+            }
+            next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+        } while (!mRequested.compareAndSet(current, next));
+
+        if (mStarted.compareAndSet(false, true) && mOnStart != null) {
+            mOnStart.run();
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        if (mCancelled.compareAndSet(false, true)) {
+            mQueue.clear();
+            if (mOnCancel != null) {
+                mOnCancel.run();
+            }
+        }
+    }
+
+    /**
+     * Whether the producer can stop, the subscriber won't take more items.
+     */
+    boolean isStopped() {
+        return mCancelled.get() || mDone;
+    }
+
+    void emit(String item) {
+        if (isStopped()) {
+            return;
+        }
+        mQueue.offer(item);
+        drain();
+    }
+
+    void complete() {
+        mDone = true;
+        drain();
+    }
+
+    void error(Throwable t) {
+        if (mDone) {
+            return;
+        }
+        mError = t;
+        mDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (mWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            long requested = mRequested.get();
+            long emitted = 0;
+            while (emitted != requested) {
+                if (mCancelled.get()) {
+                    mQueue.clear();
+                    return;
+                }
+                boolean done = mDone;
+                if (done && mError != null) {
+                    // Errors don't wait behind the queue
+                    terminate();
+                    return;
+                }
+                String item = mQueue.poll();
+                if (item == null) {
+                    if (done) {
+                        terminate();
+                        return;
+                    }
+                    break;
+                }
+                mSubscriber.onNext(item);
+                emitted++;
+            }
+            if (mCancelled.get()) {
+                mQueue.clear();
+                return;
+            }
+            // Terminal signals need no demand
+            if (mDone && (mError != null || mQueue.isEmpty())) {
+                terminate();
+                return;
+            }
+            if (emitted != 0 && requested != Long.MAX_VALUE) {
+                mRequested.addAndGet(-emitted);
+            }
+            missed = mWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void terminate() {
+        // Past this point the subscription is void, per rule 1.7 of the spec
+        mCancelled.set(true);
+        mQueue.clear();
+        Throwable error = mError;
+        if (error != null) {
+            mSubscriber.onError(error);
+        } else {
+            mSubscriber.onComplete();
+        }
+    }
+}
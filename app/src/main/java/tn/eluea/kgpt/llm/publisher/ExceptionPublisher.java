@@ -10,6 +10,9 @@ package tn.eluea.kgpt.llm.publisher;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+/**
+ * Fails every subscriber with the same error, which needs no demand.
+ */
 public class ExceptionPublisher implements Publisher<String> {
     private final Throwable mThrowable;
 
@@ -19,7 +22,8 @@ public class ExceptionPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> s) {
-        s.onError(mThrowable);
-        s.onComplete();
+        BufferedSubscription subscription = new BufferedSubscription(s, null, null);
+        s.onSubscribe(subscription);
+        subscription.error(mThrowable);
     }
 }
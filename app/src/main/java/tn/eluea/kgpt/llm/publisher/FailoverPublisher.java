@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import android.util.Log;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Tries sources in order until one answers. The next source is only tried
+ * when the current one failed transiently (see
+ * {@link RequestFailedException#isTransient()}) before producing anything;
+ * once a chunk went to the subscriber the response is that source's to
+ * finish. An error that retrying won't fix ends the response as is; when
+ * every source failed transiently the first source's error is reported, it's
+ * the one the user asked for.
+ */
+public class FailoverPublisher implements Publisher<String> {
+    private static final String TAG = "KGPT_Failover";
+
+    private final List<Supplier<Publisher<String>>> mSources;
+
+    public FailoverPublisher(List<Supplier<Publisher<String>>> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No source to try");
+        }
+        mSources = sources;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        Chain chain = new Chain();
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, () -> chain.attempt(0),
+                chain::cancel);
+        chain.mDownstream = subscription;
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class Chain {
+        private BufferedSubscription mDownstream;
+        private volatile Attempt mCurrent;
+        private volatile boolean mCancelled = false;
+        private Throwable mFirstError;
+
+        void attempt(int index) {
+            if (mCancelled) {
+                return;
+            }
+            Attempt attempt = new Attempt(index);
+            mCurrent = attempt;
+            mSources.get(index).get().subscribe(attempt);
+        }
+
+        void cancel() {
+            mCancelled = true;
+            Attempt attempt = mCurrent;
+            if (attempt != null) {
+                attempt.cancel();
+            }
+        }
+
+        private class Attempt implements Subscriber<String> {
+            private final int mIndex;
+            private volatile Subscription mSubscription;
+            private boolean mProduced = false;
+
+            Attempt(int index) {
+                mIndex = index;
+            }
+
+            void cancel() {
+                Subscription subscription = mSubscription;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                mSubscription = s;
+                if (mCancelled) {
+                    s.cancel();
+                    return;
+                }
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                mProduced = true;
+                mDownstream.emit(s);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (mFirstError == null) {
+                    mFirstError = t;
+                }
+                boolean isTransient = t instanceof RequestFailedException
+                        && ((RequestFailedException) t).isTransient();
+                if (isTransient && !mProduced && mIndex + 1 < mSources.size() && !mCancelled) {
+                    Log.d(TAG, "Source " + mIndex + " failed (" + t.getMessage() + "), trying the next");
+                    attempt(mIndex + 1);
+                    return;
+                }
+                mDownstream.error(isTransient && !mProduced ? mFirstError : t);
+            }
+
+            @Override
+            public void onComplete() {
+                mDownstream.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends a request, and the same request to a second source if the first one
+ * hasn't produced anything after a delay. Whichever produces a chunk first
+ * wins: its response goes to the subscriber and the other is cancelled.
+ *
+ * A source that fails before producing anything leaves the race to the
+ * other; the subscriber only gets an error once no source is left, the
+ * first source's error then. A failure before the hedge was sent ends the
+ * race, hedging cuts latency and is not a retry.
+ */
+public class HedgedPublisher implements Publisher<String> {
+    static final int PRIMARY = 0;
+    static final int SECONDARY = 1;
+
+    private final Supplier<Publisher<String>> mPrimary;
+    private final Supplier<Publisher<String>> mSecondary;
+    private final long mDelayMs;
+    private final BooleanSupplier mMayHedge;
+    private final Observer mObserver;
+    private final ScheduledExecutorService mTimer;
+
+    /**
+     * Told how long each source took, for the policy to adapt its delay.
+     */
+    public interface Observer {
+        /**
+         * @param secondary whether the source is the hedge
+         */
+        void onFirstChunk(boolean secondary, long elapsedMs);
+
+        /**
+         * The source was cancelled after {@code elapsedMs} without producing
+         * anything, its first chunk would have taken longer.
+         */
+        void onAbandoned(boolean secondary, long elapsedMs);
+    }
+
+    /**
+     * @param mayHedge asked once the delay passed, false to not send the hedge
+     */
+    public HedgedPublisher(Supplier<Publisher<String>> primary, Supplier<Publisher<String>> secondary,
+            long delayMs, BooleanSupplier mayHedge, Observer observer) {
+        this(primary, secondary, delayMs, mayHedge, observer, Schedulers.timer());
+    }
+
+    HedgedPublisher(Supplier<Publisher<String>> primary, Supplier<Publisher<String>> secondary,
+            long delayMs, BooleanSupplier mayHedge, Observer observer, ScheduledExecutorService timer) {
+        mPrimary = primary;
+        mSecondary = secondary;
+        mDelayMs = delayMs;
+        mMayHedge = mayHedge;
+        mObserver = observer;
+        mTimer = timer;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        Race race = new Race();
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, race::start, race::cancel);
+        race.mDownstream = subscription;
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class Race {
+        private final Object mLock = new Object();
+        private final Contestant[] mContestants = new Contestant[2];
+        private BufferedSubscription mDownstream;
+        private ScheduledFuture<?> mHedgeTimer;
+        private int mWinner = -1;
+        private boolean mFinished = false;
+
+        void start() {
+            launch(PRIMARY);
+            synchronized (mLock) {
+                if (!mFinished && mWinner == -1) {
+                    mHedgeTimer = mTimer.schedule(this::hedge, mDelayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        private void hedge() {
+            synchronized (mLock) {
+                if (mFinished || mWinner != -1 || mContestants[SECONDARY] != null) {
+                    return;
+                }
+            }
+            if (mMayHedge.getAsBoolean()) {
+                // The supplier may build a connection, keep it off the timer thread
+                Schedulers.io().execute(() -> launch(SECONDARY));
+            }
+        }
+
+        private void launch(int index) {
+            Contestant contestant = new Contestant(index);
+            synchronized (mLock) {
+                if (mFinished || mWinner != -1) {
+                    return;
+                }
+                mContestants[index] = contestant;
+            }
+            (index == PRIMARY ? mPrimary : mSecondary).get().subscribe(contestant);
+        }
+
+        void cancel() {
+            Contestant[] contestants;
+            synchronized (mLock) {
+                mFinished = true;
+                contestants = mContestants.clone();
+                cancelTimer();
+            }
+            for (Contestant contestant : contestants) {
+                if (contestant != null) {
+                    contestant.cancel();
+                }
+            }
+        }
+
+        private void cancelTimer() {
+            if (mHedgeTimer != null) {
+                mHedgeTimer.cancel(false);
+                mHedgeTimer = null;
+            }
+        }
+
+        /**
+         * Make {@code contestant} the winner if there is none yet.
+         *
+         * @return whether it is the winner
+         */
+        private boolean win(Contestant contestant) {
+            Contestant loser;
+            synchronized (mLock) {
+                if (mWinner != -1 || mFinished) {
+                    return mWinner == contestant.mIndex && !mFinished;
+                }
+                mWinner = contestant.mIndex;
+                loser = mContestants[1 - contestant.mIndex];
+                cancelTimer();
+            }
+            if (loser != null) {
+                loser.cancel();
+                mObserver.onAbandoned(loser.mIndex == SECONDARY, loser.elapsedMs());
+            }
+            return true;
+        }
+
+        private void onFailed(Contestant contestant, Throwable t) {
+            Throwable error;
+            synchronized (mLock) {
+                if (mFinished || (mWinner != -1 && mWinner != contestant.mIndex)) {
+                    return;
+                }
+                contestant.mError = t;
+                Contestant other = mContestants[1 - contestant.mIndex];
+                if (mWinner == -1 && other != null && other.mError == null) {
+                    // The other source may still answer
+                    return;
+                }
+                mFinished = true;
+                cancelTimer();
+                Contestant primary = mContestants[PRIMARY];
+                error = mWinner == -1 && primary.mError != null ? primary.mError : t;
+            }
+            mDownstream.error(error);
+        }
+
+        private class Contestant implements Subscriber<String> {
+            private final int mIndex;
+            private final long mStartNanos = System.nanoTime();
+            private volatile Subscription mSubscription;
+            private volatile boolean mCancelled = false;
+            private boolean mProduced = false;
+            private boolean mWon = false;
+            private Throwable mError;
+
+            Contestant(int index) {
+                mIndex = index;
+            }
+
+            long elapsedMs() {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos);
+            }
+
+            void cancel() {
+                mCancelled = true;
+                Subscription subscription = mSubscription;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                mSubscription = s;
+                if (mCancelled) {
+                    s.cancel();
+                    return;
+                }
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                if (!mProduced) {
+                    mProduced = true;
+                    mWon = win(this);
+                    if (mWon) {
+                        mObserver.onFirstChunk(mIndex == SECONDARY, elapsedMs());
+                    }
+                }
+                if (mWon && !mCancelled) {
+                    mDownstream.emit(s);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                onFailed(this, t);
+            }
+
+            @Override
+            public void onComplete() {
+                if (!mProduced) {
+                    // An empty response still ends the race
+                    mProduced = true;
+                    mWon = win(this);
+                }
+                if (mWon && !mCancelled) {
+                    mDownstream.complete();
+                }
+            }
+        }
+    }
+}
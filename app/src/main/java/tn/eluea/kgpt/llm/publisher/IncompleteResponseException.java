@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+/**
+ * A streamed response that stopped after some text was emitted, without the
+ * end the provider sends when the answer is done: the stream was cut, the
+ * provider reported an error, or it stopped the answer early.
+ *
+ * Controllers keep the emitted text and treat it as complete, only the
+ * response cache tells it apart from a clean end, so a partial answer is
+ * never stored.
+ */
+public class IncompleteResponseException extends RuntimeException {
+
+    public IncompleteResponseException(String message) {
+        super(message);
+    }
+}
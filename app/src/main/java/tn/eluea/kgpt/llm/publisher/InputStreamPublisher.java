@@ -9,20 +9,20 @@ package tn.eluea.kgpt.llm.publisher;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
+/**
+ * Publishes the lines of a stream, read on a {@link Schedulers#io()} thread
+ * once the subscriber requested them.
+ */
 public class InputStreamPublisher implements Publisher<String> {
     private final InputStream mInputStream;
     private final Function<String, String> mReplace;
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
     public InputStreamPublisher(InputStream inputStream, Function<String, String> replace) {
         mInputStream = inputStream;
@@ -31,41 +31,21 @@ public class InputStreamPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> subscriber) {
-        Subscription subscription = new Subscription() {
-            private volatile boolean cancelled = false;
-
-            @Override
-            public void request(long n) {
-                if (n <= 0) {
-                    subscriber.onError(new IllegalArgumentException("Demand must be positive"));
-                    return;
-                }
-
-                executor.submit(() -> {
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream))) {
-                        String line;
-                        while (!cancelled && (line = reader.readLine()) != null) {
-                            subscriber.onNext(mReplace.apply(line));
-                        }
-                        if (!cancelled) {
-                            subscriber.onComplete();
-                        }
-                    } catch (IOException e) {
-                        if (!cancelled) {
-                            subscriber.onError(e);
-                        }
-                    }
-                });
-            }
+        BufferedSubscription[] subscription = new BufferedSubscription[1];
+        subscription[0] = new BufferedSubscription(subscriber,
+                () -> Schedulers.io().execute(() -> read(subscription[0])), null);
+        subscriber.onSubscribe(subscription[0]);
+    }
 
-            @Override
-            public void cancel() {
-                cancelled = true;
-                executor.shutdown();
+    private void read(BufferedSubscription subscription) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream))) {
+            String line;
+            while (!subscription.isStopped() && (line = reader.readLine()) != null) {
+                subscription.emit(mReplace.apply(line));
             }
-
-        };
-
-        subscriber.onSubscribe(subscription);
+            subscription.complete();
+        } catch (IOException e) {
+            subscription.error(e);
+        }
     }
 }
@@ -12,25 +12,50 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.util.Log;
 
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
+/**
+ * Publishes the response of one request, parsed by the success or error
+ * callback depending on its status code.
+ *
+ * Nothing blocks the subscriber: the response is read on a
+ * {@link Schedulers#io()} thread once the subscriber requested items, the
+ * status code arrived and the response stream was set, whichever happens
+ * last. Parsed chunks are handed over as far as the subscriber's demand goes.
+ *
+ * A failure of a response with an error status is reported as a
+ * {@link RequestFailedException} carrying that status.
+ *
+ * Cancelling aborts the request through the cancel action set by the client
+ * (the internet provider disconnects it) and stops the callbacks at their
+ * next chunk. No signal is sent to the subscriber after a cancel.
+ */
 public class InternetRequestPublisher implements
         Publisher<String>, InternetRequestListener {
     private static final String TAG = "KGPT_InternetPub";
+    // Requested, status code, input stream
+    private static final int READY_CONDITIONS = 3;
+
     private final AtomicInteger mStatusCode = new AtomicInteger(-1);
-    private final Object mLock = new Object();
+    private final AtomicInteger mPendingConditions = new AtomicInteger(READY_CONDITIONS);
+    private final AtomicBoolean mCancelled = new AtomicBoolean();
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+    private final AtomicReference<BufferedSubscription> mSubscription = new AtomicReference<>();
     private final Callback mOnStatusCodeSuccess;
     private final Callback mOnStatusCodeError;
-    private InputStream mInputStream = null;
+    private volatile InputStream mInputStream = null;
+    private volatile Runnable mOnCancel = null;
+    private volatile Runnable mOnFinish = null;
 
     public InternetRequestPublisher(Callback onStatusCodeSuccess,
                                     Callback onStatusCodeError) {
@@ -40,57 +65,109 @@ public class InternetRequestPublisher implements
 
     @Override
     public void subscribe(Subscriber<? super String> subscriber) {
-        subscriber.onSubscribe(new Subscription() {
-            @Override
-            public void request(long n) {
-                if (n <= 0) {
-                    subscriber.onError(new IllegalArgumentException("Demand must be positive"));
-                    return;
-                }
-
-                synchronized (mLock) {
-                    while (mStatusCode.get() == -1) {
-                        Log.d(TAG, "Waiting for status code");
-                        try {
-                            mLock.wait();
-                        } catch (InterruptedException e) {
-                        }
-                    }
-                }
-
-                Log.d(TAG, "Received status code " + mStatusCode);
-                boolean hasError = false;
-                try {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream));
-                    if (mStatusCode.get() == 200) {
-                        mOnStatusCodeSuccess.callback(subscriber, reader);
-                    } else {
-                        mOnStatusCodeError.callback(subscriber, reader);
-                    }
-                    reader.close();
-                    mInputStream.close();
-                } catch (Throwable t) {
-                    Log.e(TAG, "Error", t);
-                    hasError = true;
-                    subscriber.onError(t);
-                }
-
-                if (!hasError) {
-                    subscriber.onComplete();
-                }
-            }
+        BufferedSubscription subscription = new BufferedSubscription(subscriber,
+                this::onConditionMet, this::cancel);
+        if (!mSubscription.compareAndSet(null, subscription)) {
+            // The response can only be read once
+            BufferedSubscription rejected = new BufferedSubscription(subscriber, null, null);
+            subscriber.onSubscribe(rejected);
+            rejected.error(new IllegalStateException("Only one subscriber is allowed"));
+            return;
+        }
+        subscriber.onSubscribe(subscription);
+    }
+
+    private void onConditionMet() {
+        if (mPendingConditions.decrementAndGet() == 0) {
+            Schedulers.io().execute(this::readResponse);
+        }
+    }
+
+    private void readResponse() {
+        BufferedSubscription subscription = mSubscription.get();
+        if (mCancelled.get() || subscription.isStopped()) {
+            closeInputStream();
+            finish();
+            return;
+        }
 
-            @Override
-            public void cancel() {
+        int statusCode = mStatusCode.get();
+        Log.d(TAG, "Received status code " + statusCode);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream))) {
+            Subscriber<String> producer = new Producer(subscription);
+            if (statusCode == 200) {
+                mOnStatusCodeSuccess.callback(producer, reader);
+            } else {
+                mOnStatusCodeError.callback(producer, reader);
             }
-        });
+            subscription.complete();
+        } catch (Throwable t) {
+            if (!mCancelled.get() && !subscription.isStopped()) {
+                Log.e(TAG, "Error", t);
+                // Tell callers what failed, the message stays the callback's
+                subscription.error(statusCode == 200 || t instanceof RequestFailedException ? t
+                        : new RequestFailedException(statusCode, t.getMessage(), t));
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Abort the request. Safe to call from any thread, before or after the
+     * response started, and more than once.
+     */
+    public void cancel() {
+        if (!mCancelled.compareAndSet(false, true)) {
+            return;
+        }
+        Log.d(TAG, "Cancelled");
+        Runnable onCancel = mOnCancel;
+        if (onCancel != null) {
+            onCancel.run();
+        }
+        BufferedSubscription subscription = mSubscription.get();
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        if (mPendingConditions.get() > 0) {
+            // The response will never be read, release it now
+            closeInputStream();
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (!mFinished.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable onFinish = mOnFinish;
+        if (onFinish != null) {
+            onFinish.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled.get();
+    }
+
+    /**
+     * Set how to abort the request on the network, run once by {@link #cancel()}.
+     */
+    public void setOnCancel(Runnable onCancel) {
+        mOnCancel = onCancel;
+    }
+
+    /**
+     * Set what to run once the response has been read or dropped.
+     */
+    public void setOnFinish(Runnable onFinish) {
+        mOnFinish = onFinish;
     }
 
     @Override
     public void onRequestStatusCode(int code) {
-        synchronized (mLock) {
-            mStatusCode.set(code);
-            mLock.notifyAll();
+        if (mStatusCode.compareAndSet(-1, code)) {
+            onConditionMet();
         }
     }
 
@@ -100,7 +177,62 @@ public class InternetRequestPublisher implements
     }
 
     public void setInputStream(InputStream inputStream) {
+        if (mInputStream != null) {
+            return;
+        }
         mInputStream = inputStream;
+        if (mCancelled.get()) {
+            // Cancelled while the request was being sent
+            closeInputStream();
+            return;
+        }
+        onConditionMet();
+    }
+
+    private void closeInputStream() {
+        InputStream inputStream = mInputStream;
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            Log.d(TAG, "Error closing response stream - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands the callbacks' chunks to the subscription until the subscriber
+     * is gone, then throws to end their read loop. The publisher sends the
+     * terminal signal itself once the callback returned or threw.
+     */
+    private class Producer implements Subscriber<String> {
+        private final BufferedSubscription mTarget;
+
+        Producer(BufferedSubscription target) {
+            mTarget = target;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+        }
+
+        @Override
+        public void onNext(String s) {
+            if (mCancelled.get() || mTarget.isStopped()) {
+                throw new CancellationException();
+            }
+            mTarget.emit(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            mTarget.error(t);
+        }
+
+        @Override
+        public void onComplete() {
+        }
     }
 
     public interface Callback {
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Shares one upstream response between any number of subscribers.
+ *
+ * The upstream is subscribed when the first subscriber arrives and read as
+ * fast as it produces. Every chunk is kept, so a subscriber arriving late
+ * first gets the chunks it missed, then follows along; each one takes them
+ * at its own demand. The upstream is cancelled only once every subscriber
+ * cancelled, after which no one can join anymore.
+ */
+public class MulticastPublisher implements Publisher<String> {
+    private final Supplier<Publisher<String>> mUpstream;
+    private final Runnable mOnDone;
+
+    private final Object mLock = new Object();
+    private final List<String> mChunks = new ArrayList<>();
+    private final List<BufferedSubscription> mSubscriptions = new ArrayList<>();
+    private boolean mStarted = false;
+    private boolean mCancelled = false;
+    private boolean mCompleted = false;
+    private Throwable mError = null;
+    private Subscription mUpstreamSubscription = null;
+
+    /**
+     * @param upstream called once, by the first subscriber
+     * @param onDone   run once when the upstream ended or was cancelled
+     */
+    public MulticastPublisher(Supplier<Publisher<String>> upstream, Runnable onDone) {
+        mUpstream = upstream;
+        mOnDone = onDone;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        if (!trySubscribe(subscriber)) {
+            BufferedSubscription rejected = new BufferedSubscription(subscriber, null, null);
+            subscriber.onSubscribe(rejected);
+            rejected.error(new CancellationException("Shared response was cancelled"));
+        }
+    }
+
+    /**
+     * Join the response, unless every subscriber already cancelled it.
+     *
+     * @return false, without signalling the subscriber, if it was cancelled
+     */
+    public boolean trySubscribe(Subscriber<? super String> subscriber) {
+        BufferedSubscription[] self = new BufferedSubscription[1];
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, null, () -> leave(self[0]));
+        self[0] = subscription;
+
+        boolean start;
+        synchronized (mLock) {
+            if (mCancelled) {
+                return false;
+            }
+            subscriber.onSubscribe(subscription);
+            for (String chunk : mChunks) {
+                subscription.emit(chunk);
+            }
+            if (mCompleted) {
+                subscription.complete();
+                return true;
+            }
+            if (mError != null) {
+                subscription.error(mError);
+                return true;
+            }
+            if (subscription.isStopped()) {
+                // Cancelled from onSubscribe
+                return true;
+            }
+            mSubscriptions.add(subscription);
+            start = !mStarted;
+            mStarted = true;
+        }
+        if (start) {
+            mUpstream.get().subscribe(new UpstreamSubscriber());
+        }
+        return true;
+    }
+
+    private void leave(BufferedSubscription subscription) {
+        Subscription upstream;
+        synchronized (mLock) {
+            if (!mSubscriptions.remove(subscription) || !mSubscriptions.isEmpty() || isTerminated()) {
+                return;
+            }
+            mCancelled = true;
+            upstream = mUpstreamSubscription;
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+        done();
+    }
+
+    private boolean isTerminated() {
+        return mCompleted || mError != null;
+    }
+
+    private void done() {
+        if (mOnDone != null) {
+            mOnDone.run();
+        }
+    }
+
+    private class UpstreamSubscriber implements Subscriber<String> {
+        @Override
+        public void onSubscribe(Subscription s) {
+            boolean cancelled;
+            synchronized (mLock) {
+                mUpstreamSubscription = s;
+                cancelled = mCancelled;
+            }
+            if (cancelled) {
+                s.cancel();
+                return;
+            }
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String s) {
+            synchronized (mLock) {
+                if (s == null || mCancelled || isTerminated()) {
+                    return;
+                }
+                mChunks.add(s);
+                for (BufferedSubscription subscription : mSubscriptions) {
+                    subscription.emit(s);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            List<BufferedSubscription> subscriptions;
+            synchronized (mLock) {
+                if (mCancelled || isTerminated()) {
+                    return;
+                }
+                mError = t;
+                subscriptions = new ArrayList<>(mSubscriptions);
+                mSubscriptions.clear();
+            }
+            done();
+            for (BufferedSubscription subscription : subscriptions) {
+                subscription.error(t);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            List<BufferedSubscription> subscriptions;
+            synchronized (mLock) {
+                if (mCancelled || isTerminated()) {
+                    return;
+                }
+                mCompleted = true;
+                subscriptions = new ArrayList<>(mSubscriptions);
+                mSubscriptions.clear();
+            }
+            done();
+            for (BufferedSubscription subscription : subscriptions) {
+                subscription.complete();
+            }
+        }
+    }
+}
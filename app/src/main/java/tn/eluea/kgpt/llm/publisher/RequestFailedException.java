@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+/**
+ * A request answered with an error status, or that got no answer at all
+ * (status 0). Keeps the message of the client's error callback, so what the
+ * user sees doesn't change.
+ */
+public class RequestFailedException extends RuntimeException {
+    private final int mStatusCode;
+
+    public RequestFailedException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        mStatusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Whether another attempt, or another provider, may well succeed: no
+     * answer, a timeout, a rate limit or a server error. Not a bad key or a
+     * bad request, which would fail the same way again.
+     */
+    public boolean isTransient() {
+        return isTransient(mStatusCode);
+    }
+
+    public static boolean isTransient(int statusCode) {
+        return statusCode == 0 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
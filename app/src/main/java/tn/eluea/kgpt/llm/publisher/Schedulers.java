@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by the publishers of the process.
+ */
+public final class Schedulers {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    // Reading a response blocks on the network, so a thread is taken per
+    // response being read and given back once it ends. Idle threads exit.
+    private static final ExecutorService IO = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "KGPT_Publisher-" + sThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Delayed actions only, they must hand any blocking work to io()
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "KGPT_Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cancelled timeouts are the common case, don't keep them queued
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private Schedulers() {
+    }
+
+    /**
+     * Executor for work that blocks on I/O, like reading a response body.
+     */
+    public static ExecutorService io() {
+        return IO;
+    }
+
+    /**
+     * Executor for short actions that run after a delay, like a timeout.
+     */
+    public static ScheduledExecutorService timer() {
+        return TIMER;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import java.io.BufferedReader;
+
+/**
+ * Incremental decoder for a text/event-stream response body.
+ *
+ * Lines are read as they arrive and the data of each event is handed over as
+ * soon as the blank line ending it is read, so a streamed completion can be
+ * published one delta at a time. Multi-line data fields are joined with '\n',
+ * comments and the event/id/retry fields are ignored, and the OpenAI style
+ * "[DONE]" sentinel ends the stream.
+ */
+public final class ServerSentEvents {
+    public static final String DONE = "[DONE]";
+
+    public interface EventHandler {
+        void onEvent(String data) throws Throwable;
+
+        /**
+         * The server sent "[DONE]", the stream ended as it should.
+         */
+        default void onDone() {
+        }
+    }
+
+    private ServerSentEvents() {
+    }
+
+    /**
+     * Read events from {@code reader} until the stream ends or sends "[DONE]".
+     *
+     * @return the lines that weren't part of the event stream, or null if
+     *         there were none. A server that ignored {@code "stream": true}
+     *         answers with a plain JSON body, which ends up here.
+     */
+    public static String read(BufferedReader reader, EventHandler handler) throws Throwable {
+        StringBuilder data = null;
+        StringBuilder other = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data != null) {
+                    String event = data.toString();
+                    data = null;
+                    if (DONE.equals(event.trim())) {
+                        handler.onDone();
+                        return toString(other);
+                    }
+                    handler.onEvent(event);
+                }
+                continue;
+            }
+
+            if (line.startsWith("data:")) {
+                String value = line.substring(5);
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+                if (data == null) {
+                    data = new StringBuilder(value);
+                } else {
+                    data.append('\n').append(value);
+                }
+            } else if (line.startsWith(":") || line.startsWith("event:")
+                    || line.startsWith("id:") || line.startsWith("retry:")) {
+                // Comments and fields we don't use
+            } else {
+                if (other == null) {
+                    other = new StringBuilder();
+                }
+                other.append(line);
+            }
+        }
+
+        // The stream may end without the last blank line
+        if (data != null) {
+            if (DONE.equals(data.toString().trim())) {
+                handler.onDone();
+            } else {
+                handler.onEvent(data.toString());
+            }
+        }
+        return toString(other);
+    }
+
+    private static String toString(StringBuilder builder) {
+        return builder != null ? builder.toString() : null;
+    }
+}
@@ -9,8 +9,10 @@ package tn.eluea.kgpt.llm.publisher;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
+/**
+ * Publishes one string then completes, once the subscriber requested it.
+ */
 public class SimpleStringPublisher implements Publisher<String> {
     private final String mString;
 
@@ -21,16 +23,9 @@ public class SimpleStringPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> s) {
-        s.onSubscribe(new Subscription() {
-            @Override
-            public void request(long n) {
-            }
-
-            @Override
-            public void cancel() {
-            }
-        });
-        s.onNext(mString);
-        s.onComplete();
+        BufferedSubscription subscription = new BufferedSubscription(s, null, null);
+        s.onSubscribe(subscription);
+        subscription.emit(mString);
+        subscription.complete();
     }
 }
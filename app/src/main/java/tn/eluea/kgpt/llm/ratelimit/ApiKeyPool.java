@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.ratelimit;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.publisher.RequestFailedException;
+
+/**
+ * Spreads one model's requests over its API keys.
+ *
+ * Keys are taken round robin, skipping those that would go over the
+ * provider's limits: each key has a bucket of requests and one of tokens,
+ * calibrated from the rate limit headers of its responses (see
+ * {@link RateLimitHeaders}). A key answered with 429 backs off alone, for
+ * as long as the server's Retry-After says, or until its exhausted limit
+ * resets, or 5 s doubling with every 429 in a row up to a minute. The other
+ * keys keep serving meanwhile.
+ *
+ * When no key can take a request it is refused right away with a 429
+ * {@link RequestFailedException}, nothing is sent.
+ */
+public final class ApiKeyPool {
+    private static final String TAG = "KGPT_ApiKeyPool";
+
+    static final long BASE_BACKOFF_MS = 5_000;
+    static final long MAX_BACKOFF_MS = 60_000;
+
+    private static final Map<LanguageModel, ApiKeyPool> sPools = new EnumMap<>(LanguageModel.class);
+
+    private final LanguageModel mModel;
+    private final LongSupplier mClock;
+    private final LongSupplier mWallClock;
+    private final Map<String, KeyState> mKeys = new HashMap<>();
+    private int mNext = 0;
+
+    ApiKeyPool(LanguageModel model, LongSupplier clock, LongSupplier wallClock) {
+        mModel = model;
+        mClock = clock;
+        mWallClock = wallClock;
+    }
+
+    public static ApiKeyPool forModel(LanguageModel model) {
+        synchronized (sPools) {
+            ApiKeyPool pool = sPools.get(model);
+            if (pool == null) {
+                pool = new ApiKeyPool(model, SystemClock::elapsedRealtime, System::currentTimeMillis);
+                sPools.put(model, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Take the next key that can send a request of about {@code tokens}.
+     *
+     * @param keys the model's keys, in the user's order
+     * @throws RequestFailedException with status 429 if every key is at its limit
+     */
+    public synchronized Lease acquire(List<String> keys, long tokens) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("No API key");
+        }
+        // Keys the user removed are forgotten
+        mKeys.keySet().retainAll(keys);
+        long now = mClock.getAsLong();
+        long retryInMs = Long.MAX_VALUE;
+        for (int i = 0; i < keys.size(); i++) {
+            int index = (mNext + i) % keys.size();
+            String key = keys.get(index);
+            KeyState state = mKeys.get(key);
+            if (state == null) {
+                state = new KeyState();
+                mKeys.put(key, state);
+            }
+            long waitMs = state.waitMs(tokens, now);
+            if (waitMs == 0 && state.requests.tryTake(1, now) && state.tokens.tryTake(tokens, now)) {
+                mNext = index + 1;
+                return new Lease(key, state, index);
+            }
+            retryInMs = Math.min(retryInMs, Math.max(waitMs, 1));
+        }
+
+        long retryInSeconds = (retryInMs + 999) / 1000;
+        String message = keys.size() > 1
+                ? "All " + keys.size() + " " + mModel.label + " API keys are rate limited, try again in "
+                        + retryInSeconds + " s"
+                : mModel.label + " is rate limited, try again in " + retryInSeconds + " s";
+        throw new RequestFailedException(429, message, null);
+    }
+
+    private synchronized void onResponse(Lease lease, int statusCode, Map<String, List<String>> headers) {
+        KeyState state = lease.mState;
+        long now = mClock.getAsLong();
+        RateLimitHeaders rateLimits = new RateLimitHeaders(headers, mWallClock.getAsLong());
+        state.requests.calibrate(rateLimits.limit(RateLimitHeaders.REQUESTS),
+                rateLimits.remaining(RateLimitHeaders.REQUESTS),
+                rateLimits.resetInMs(RateLimitHeaders.REQUESTS), now);
+        state.tokens.calibrate(rateLimits.limit(RateLimitHeaders.TOKENS),
+                rateLimits.remaining(RateLimitHeaders.TOKENS),
+                rateLimits.resetInMs(RateLimitHeaders.TOKENS), now);
+
+        if (statusCode != 429) {
+            if (statusCode >= 200 && statusCode < 300) {
+                state.consecutiveLimited = 0;
+            }
+            return;
+        }
+        state.consecutiveLimited++;
+        long backoffMs = rateLimits.retryAfterMs();
+        if (backoffMs < 0) {
+            backoffMs = Math.max(rateLimits.remaining(RateLimitHeaders.REQUESTS) == 0
+                    ? rateLimits.resetInMs(RateLimitHeaders.REQUESTS) : -1,
+                    rateLimits.remaining(RateLimitHeaders.TOKENS) == 0
+                            ? rateLimits.resetInMs(RateLimitHeaders.TOKENS) : -1);
+        }
+        if (backoffMs < 0) {
+            backoffMs = Math.min(MAX_BACKOFF_MS,
+                    BASE_BACKOFF_MS << Math.min(state.consecutiveLimited - 1, 16));
+        }
+        state.backoffUntil = now + backoffMs;
+        Log.d(TAG, mModel.name() + " key " + (lease.mIndex + 1) + " rate limited, backing off " + backoffMs
+                + " ms");
+    }
+
+    private static class KeyState {
+        final TokenBucket requests = new TokenBucket();
+        final TokenBucket tokens = new TokenBucket();
+        long backoffUntil = 0;
+        int consecutiveLimited = 0;
+
+        long waitMs(long tokenCount, long now) {
+            return Math.max(Math.max(backoffUntil - now, 0),
+                    Math.max(requests.waitMs(1, now), tokens.waitMs(tokenCount, now)));
+        }
+    }
+
+    /**
+     * A key taken for one request, to be told how the request went.
+     */
+    public final class Lease {
+        private final String mKey;
+        private final KeyState mState;
+        private final int mIndex;
+
+        private Lease(String key, KeyState state, int index) {
+            mKey = key;
+            mState = state;
+            mIndex = index;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Report the response of the request sent with this key.
+         *
+         * @param headers response headers, null if none came
+         */
+        public void onResponse(int statusCode, Map<String, List<String>> headers) {
+            ApiKeyPool.this.onResponse(this, statusCode, headers);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.ratelimit;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rate limit headers of a response, in the forms providers send them:
+ * x-ratelimit-*-requests / -tokens (OpenAI, Groq and most compatible APIs),
+ * anthropic-ratelimit-requests-* / tokens-* (Claude), x-ratelimit-* without
+ * a unit (OpenRouter, requests) and Retry-After. Gemini sends none, its
+ * keys only back off on 429.
+ */
+final class RateLimitHeaders {
+    static final int REQUESTS = 0;
+    static final int TOKENS = 1;
+
+    private static final String[][] LIMIT = {
+            { "x-ratelimit-limit-requests", "anthropic-ratelimit-requests-limit", "x-ratelimit-limit" },
+            { "x-ratelimit-limit-tokens", "anthropic-ratelimit-tokens-limit" } };
+    private static final String[][] REMAINING = {
+            { "x-ratelimit-remaining-requests", "anthropic-ratelimit-requests-remaining",
+                    "x-ratelimit-remaining" },
+            { "x-ratelimit-remaining-tokens", "anthropic-ratelimit-tokens-remaining" } };
+    private static final String[][] RESET = {
+            { "x-ratelimit-reset-requests", "anthropic-ratelimit-requests-reset", "x-ratelimit-reset" },
+            { "x-ratelimit-reset-tokens", "anthropic-ratelimit-tokens-reset" } };
+
+    // "1s", "6m0s", "59.5s", "120ms", "1h2m3s"
+    private static final Pattern DURATION = Pattern.compile("(?:\\d+(?:\\.\\d+)?(?:ms|h|m|s))+");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final String[] DATE_FORMATS = {
+            "yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "EEE, dd MMM yyyy HH:mm:ss zzz" };
+
+    private final Map<String, String> mHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final long mNowWallMs;
+
+    RateLimitHeaders(Map<String, List<String>> headers, long nowWallMs) {
+        mNowWallMs = nowWallMs;
+        if (headers == null) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            // HttpURLConnection lists the status line under a null name
+            if (entry.getKey() != null && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                mHeaders.put(entry.getKey(), entry.getValue().get(0).trim());
+            }
+        }
+    }
+
+    /**
+     * Limit of {@code unit} per window, -1 if not sent.
+     */
+    long limit(int unit) {
+        return parseCount(first(LIMIT[unit]));
+    }
+
+    long remaining(int unit) {
+        return parseCount(first(REMAINING[unit]));
+    }
+
+    /**
+     * Milliseconds until {@code unit} is back to its limit, -1 if not sent.
+     */
+    long resetInMs(int unit) {
+        return parseDelay(first(RESET[unit]));
+    }
+
+    /**
+     * Milliseconds the server asked to wait, -1 if it didn't.
+     */
+    long retryAfterMs() {
+        return parseDelay(mHeaders.get("retry-after"));
+    }
+
+    private String first(String[] names) {
+        for (String name : names) {
+            String value = mHeaders.get(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static long parseCount(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return (long) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A delay as a duration, a number of seconds, an epoch time or a date.
+     */
+    long parseDelay(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        if (DURATION.matcher(value).matches()) {
+            double ms = 0;
+            Matcher part = DURATION_PART.matcher(value);
+            while (part.find()) {
+                double amount = Double.parseDouble(part.group(1));
+                switch (part.group(2)) {
+                    case "h":
+                        ms += amount * 3_600_000;
+                        break;
+                    case "m":
+                        ms += amount * 60_000;
+                        break;
+                    case "s":
+                        ms += amount * 1_000;
+                        break;
+                    default:
+                        ms += amount;
+                        break;
+                }
+            }
+            return (long) Math.ceil(ms);
+        }
+        try {
+            double number = Double.parseDouble(value);
+            if (number > 100_000_000_000L) {
+                // Epoch milliseconds
+                return Math.max(0, (long) number - mNowWallMs);
+            } else if (number > 1_000_000_000L) {
+                // Epoch seconds
+                return Math.max(0, (long) (number * 1000) - mNowWallMs);
+            }
+            return (long) Math.ceil(number * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        for (String format : DATE_FORMATS) {
+            try {
+                long time = new SimpleDateFormat(format, Locale.US).parse(value).getTime();
+                return Math.max(0, time - mNowWallMs);
+            } catch (ParseException ignored) {
+            }
+        }
+        return -1;
+    }
+}
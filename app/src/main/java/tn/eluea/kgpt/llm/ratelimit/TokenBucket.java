@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.ratelimit;
+
+/**
+ * Allowance of one key for one kind of unit (requests or tokens), as told by
+ * the provider. Until the provider sent a limit the bucket lets everything
+ * through. Once it did, the bucket holds what remains and refills at the
+ * rate that gets it full again by the provider's reset time, whatever the
+ * provider's window is. Every response calibrates it again.
+ */
+final class TokenBucket {
+    // Refill of a limit with no reset time, per minute like most providers
+    private static final long DEFAULT_WINDOW_MS = 60_000;
+
+    private boolean mKnown = false;
+    private double mCapacity;
+    private double mLevel;
+    private double mRatePerMs;
+    private long mUpdatedAt;
+
+    /**
+     * @param resetInMs time until {@code remaining} is back to {@code limit},
+     *                  negative if unknown
+     */
+    void calibrate(long limit, long remaining, long resetInMs, long now) {
+        if (limit <= 0) {
+            return;
+        }
+        mKnown = true;
+        mCapacity = limit;
+        mLevel = Math.max(0, Math.min(limit, remaining));
+        long window = resetInMs > 0 ? resetInMs : DEFAULT_WINDOW_MS;
+        double missing = limit - mLevel;
+        mRatePerMs = missing > 0 ? missing / window : limit / (double) DEFAULT_WINDOW_MS;
+        mUpdatedAt = now;
+    }
+
+    /**
+     * Take {@code amount} if there is that much left, more than the capacity
+     * only needs a full bucket.
+     */
+    boolean tryTake(double amount, long now) {
+        if (!mKnown) {
+            return true;
+        }
+        refill(now);
+        if (mLevel < Math.min(amount, mCapacity)) {
+            return false;
+        }
+        mLevel = Math.max(0, mLevel - amount);
+        return true;
+    }
+
+    /**
+     * Milliseconds until {@link #tryTake} of {@code amount} would succeed.
+     */
+    long waitMs(double amount, long now) {
+        if (!mKnown) {
+            return 0;
+        }
+        refill(now);
+        double missing = Math.min(amount, mCapacity) - mLevel;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / mRatePerMs);
+    }
+
+    private void refill(long now) {
+        mLevel = Math.min(mCapacity, mLevel + (now - mUpdatedAt) * mRatePerMs);
+        mUpdatedAt = now;
+    }
+}
@@ -19,16 +19,26 @@ import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 import tn.eluea.kgpt.MainHook;
 
+/**
+ * Sends messages to a bound service, queued until the connection is up.
+ *
+ * Messages are sent from any thread while the connection callbacks run on
+ * the main looper, so the connection state and the queue are guarded by
+ * this client's lock. The subclass callbacks are called without it.
+ */
 public abstract class AbstractServiceClient {
+    // Guarded by this
     private Messenger serviceMessenger = null;
     private boolean bound = false;
     private boolean connecting = false;
-    public Queue<Bundle> messageQueue = new LinkedList<>();
+    private final Queue<Bundle> messageQueue = new LinkedList<>();
 
     private final Context context;
     private final String intentAction;
@@ -42,24 +52,35 @@ public abstract class AbstractServiceClient {
     private final ServiceConnection connection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
-            connecting = false;
-
-            serviceMessenger = new Messenger(service);
-            bound = true;
-            MainHook.log("Connected to service");
-
-            while (!messageQueue.isEmpty()) {
-                Bundle message = messageQueue.poll();
-                int what = message.getInt("what");
-                sendMessage(message, what);
+            List<Bundle> failed = new ArrayList<>();
+            synchronized (AbstractServiceClient.this) {
+                connecting = false;
+
+                serviceMessenger = new Messenger(service);
+                bound = true;
+                MainHook.log("Connected to service");
+
+                // Drained under the lock, so nothing sent meanwhile overtakes them
+                while (!messageQueue.isEmpty()) {
+                    Bundle message = messageQueue.poll();
+                    if (!send(message, message.getInt("what"))) {
+                        failed.add(message);
+                    }
+                }
+            }
+            for (Bundle message : failed) {
+                onSendFailed(message, message.getInt("what"));
             }
         }
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
-            serviceMessenger = null;
-            bound = false;
+            synchronized (AbstractServiceClient.this) {
+                serviceMessenger = null;
+                bound = false;
+            }
             MainHook.log("Disconnected from service");
+            onServiceDisconnected();
         }
     };
 
@@ -69,7 +90,7 @@ public abstract class AbstractServiceClient {
         this.intentPackage = intentPackage;
     }
 
-    public void connect() {
+    public synchronized void connect() {
         if (!connecting) {
             connecting = true;
             Intent intent = new Intent(intentAction);
@@ -79,7 +100,7 @@ public abstract class AbstractServiceClient {
         }
     }
 
-    public void disconnect() {
+    public synchronized void disconnect() {
         if (bound) {
             context.unbindService(connection);
             bound = false;
@@ -87,21 +108,32 @@ public abstract class AbstractServiceClient {
     }
 
     public void sendMessage(Bundle message, int what) {
-        if (!bound || serviceMessenger == null) {
-            if (!connecting) {
-                connect();
+        synchronized (this) {
+            if (!bound || serviceMessenger == null) {
+                if (!connecting) {
+                    connect();
+                }
+                queueMessage(message, what);
+                return;
+            }
+            if (send(message, what)) {
+                return;
             }
-            queueMessage(message, what);
-            return;
         }
+        onSendFailed(message, what);
+    }
 
+    // One way binder call, doesn't wait for the service
+    private boolean send(Bundle message, int what) {
         Message msg = Message.obtain(null, what);
         msg.setData(message);
         msg.replyTo = incomingMessenger;
         try {
             serviceMessenger.send(msg);
+            return true;
         } catch (RemoteException e) {
             MainHook.log(e);
+            return false;
         }
     }
 
@@ -111,4 +143,16 @@ public abstract class AbstractServiceClient {
     }
 
     protected abstract void onServiceMessage(Bundle message, int what);
+
+    /**
+     * The service died or was killed, nothing sent before will be answered.
+     */
+    protected void onServiceDisconnected() {
+    }
+
+    /**
+     * {@code message} could not be delivered to the service.
+     */
+    protected void onSendFailed(Bundle message, int what) {
+    }
 }
@@ -9,34 +9,58 @@ package tn.eluea.kgpt.llm.service;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.BlockingQueue;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import tn.eluea.kgpt.MainHook;
 import tn.eluea.kgpt.core.network.InternetService;
 import tn.eluea.kgpt.core.network.InternetServiceMessageType;
+import tn.eluea.kgpt.llm.internet.ConnectionPrewarmer;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
 
+/**
+ * Sends requests through the app's {@link InternetService}, for keyboards
+ * that can't reach the network themselves.
+ *
+ * Only control messages (status code, completion) go over the Messenger. The
+ * request body and the response body travel through pipes whose descriptors
+ * are passed along with the request, so the response is read straight from
+ * the service as it arrives and neither body is bound by Binder's
+ * transaction size.
+ *
+ * Every request has a deadline for its status code, also enforced by the
+ * service; the body can take as long as it keeps coming. A request is
+ * removed from the registry exactly once, when the service completes it or
+ * when it fails here (deadline, cancel, undeliverable message, service
+ * disconnect); failing it feeds the publisher an error body so it never
+ * waits for a status code that won't come.
+ *
+ * The end of the response pipe alone doesn't tell a finished body from one
+ * cut off after the status code. Reading it waits for the request to end
+ * and throws if it failed (an ERROR from the service, or a failure here),
+ * so a truncated response reaches the subscriber as an error.
+ */
 public class ExternalInternetProvider extends AbstractServiceClient implements InternetProvider {
-    private boolean handlerRunning = false;
+    private static final long REQUEST_DEADLINE_MS = 120_000;
+    // Leaves the service time to report its own timeout first
+    private static final long DEADLINE_GRACE_MS = 5_000;
 
     public ExternalInternetProvider(Context context) {
         super(context,
@@ -44,126 +68,290 @@ public class ExternalInternetProvider extends AbstractServiceClient implements I
                 "tn.eluea.kgpt");
     }
 
-    private long lastRequestId = -1;
-
-    private Map<Long, InternetRequestSubscriber> listeners = new HashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
 
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ConcurrentHashMap<Long, PendingRequest> requests = new ConcurrentHashMap<>();
 
-    private Queue<Bundle> messageQueue = new LinkedList<>();
+    // Handles service messages one at a time, in the order they arrived
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Writes request bodies, a large one blocks until the service reads it
+    private final ExecutorService bodyExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
 
     @Override
     public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
-        lastRequestId++;
+        long requestId = nextRequestId.getAndIncrement();
 
-        URL url = con.getURL();
-        HashMap<String, List<String>> headers = InternetService.extractHeaders(con);
-        String requestMethod = con.getRequestMethod();
+        ParcelFileDescriptor[] requestPipe = ParcelFileDescriptor.createPipe();
+        ParcelFileDescriptor[] responsePipe = ParcelFileDescriptor.createPipe();
 
-        Bundle requestBundle = new Bundle();
-        requestBundle.putSerializable("request_id", lastRequestId);
-        requestBundle.putSerializable("url", url);
-        requestBundle.putSerializable("request_headers", headers);
-        requestBundle.putString("request_method", requestMethod);
-        requestBundle.putString("request_body", body);
+        PendingRequest request = new PendingRequest(requestId, irl, requestPipe[0], responsePipe[1]);
+        requests.put(requestId, request);
+        request.deadline = deadlines.schedule(() -> {
+            cancel(requestId, "Request timed out");
+        }, REQUEST_DEADLINE_MS + DEADLINE_GRACE_MS, TimeUnit.MILLISECONDS);
 
-        listeners.put(lastRequestId, new InternetRequestSubscriber(irl));
-        sendMessage(requestBundle, InternetService.SEND_REQUEST_WHAT);
+        OutputStream requestStream = new ParcelFileDescriptor.AutoCloseOutputStream(requestPipe[1]);
+        try {
+            Bundle requestBundle = new Bundle();
+            requestBundle.putLong("request_id", requestId);
+            requestBundle.putString("url", con.getURL().toString());
+            requestBundle.putBundle("request_headers", InternetService.headersToBundle(con));
+            requestBundle.putString("request_method", con.getRequestMethod());
+            requestBundle.putLong("deadline_ms", REQUEST_DEADLINE_MS);
+            requestBundle.putInt("connect_timeout_ms", con.getConnectTimeout());
+            requestBundle.putInt("read_timeout_ms", con.getReadTimeout());
+            requestBundle.putParcelable("request_body_fd", requestPipe[0]);
+            requestBundle.putParcelable("response_body_fd", responsePipe[1]);
+            sendMessage(requestBundle, InternetService.SEND_REQUEST_WHAT);
 
-        return Objects.requireNonNull(listeners.get(lastRequestId)).is;
+            bodyExecutor.execute(() -> {
+                try (OutputStream os = requestStream) {
+                    if (body != null) {
+                        os.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    MainHook.log(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            requestStream.close();
+            fail(request, e.getMessage());
+        }
+
+        return new ResponseStream(new ParcelFileDescriptor.AutoCloseInputStream(responsePipe[0]), request);
+    }
+
+    /**
+     * Abort a request: the service disconnects it and the publisher gets
+     * {@code reason} as an error if no status code was reported yet.
+     */
+    public void cancel(long requestId, String reason) {
+        PendingRequest request = requests.get(requestId);
+        if (request == null) {
+            return;
+        }
+        Bundle cancelBundle = new Bundle();
+        cancelBundle.putLong("request_id", requestId);
+        sendMessage(cancelBundle, InternetService.CANCEL_WHAT);
+        fail(request, reason);
     }
 
-    private void serviceHandler() {
-        handlerRunning = true;
-        Bundle message;
-        while ((message = messageQueue.poll()) != null) {
-            handleServiceMessage(message, message.getInt("what"));
+    @Override
+    public void cancel(InternetRequestListener irl) {
+        for (PendingRequest request : requests.values()) {
+            if (request.irl == irl) {
+                cancel(request.requestId, "Request cancelled");
+                return;
+            }
         }
-        handlerRunning = false;
+    }
+
+    @Override
+    public void prewarm(Context context, String baseUrl) {
+        // Requests are sent by the app's InternetService, warm its pool
+        if (!ConnectionPrewarmer.tryAcquire(baseUrl)) {
+            return;
+        }
+        Bundle prewarmBundle = new Bundle();
+        prewarmBundle.putString("url", baseUrl);
+        sendMessage(prewarmBundle, InternetService.PREWARM_WHAT);
     }
 
     private void handleServiceMessage(Bundle message, int what) {
-        if (what != InternetService.REQUEST_RESULT_WHAT) {
+        if (what != InternetService.REQUEST_RESULT_WHAT || !message.containsKey("request_id")) {
             return;
         }
-        if (message.containsKey("request_id")) {
-            long requestId = message.getLong("request_id");
-            InternetRequestSubscriber irs = listeners.get(requestId);
-            if (irs != null) {
-                InternetServiceMessageType responseType = (InternetServiceMessageType)
-                        message.getSerializable("message_type");
-                if (responseType != null) {
-                    int statusCode;
-                    String chunk;
-                    switch (responseType) {
-                        case STATUS_CODE:
-                            statusCode = message.getInt("status_code");
-                            irs.irl.onRequestStatusCode(statusCode);
-                            break;
-                        case INPUT_STREAM:
-                            chunk = message.getString("inputstream_chunk");
-                            handleInputStreamChunk(chunk, irs);
-                            break;
-                        case COMPLETE:
-                            MainHook.log("Done reading, closing outputStream");
-
-                            irs.irl.onRequestComplete();
-                            disposeIrs(irs);
-                            listeners.remove(requestId);
-                            break;
-                        default:
-                            break;
-                    }
+        long requestId = message.getLong("request_id");
+        InternetServiceMessageType responseType = InternetServiceMessageType.fromOrdinal(
+                message.getInt("message_type", -1));
+        if (responseType == null) {
+            return;
+        }
+        switch (responseType) {
+            case STATUS_CODE:
+                PendingRequest request = requests.get(requestId);
+                if (request != null && request.statusReported.compareAndSet(false, true)) {
+                    request.cancelDeadline();
+                    // The service holds its own copies of the descriptors by now, only
+                    // closing ours lets the response stream reach its end
+                    request.closeSentDescriptors();
+                    request.irl.onResponseHeaders(
+                            InternetService.bundleToHeaders(message.getBundle("response_headers")));
+                    request.irl.onRequestStatusCode(message.getInt("status_code"));
                 }
-            }
+                break;
+            case ERROR:
+                PendingRequest interrupted = requests.get(requestId);
+                if (interrupted != null) {
+                    interrupted.error = message.getString("reason");
+                }
+                break;
+            case COMPLETE:
+                PendingRequest completed = requests.remove(requestId);
+                if (completed != null) {
+                    MainHook.log("Request " + requestId + " complete");
+                    completed.finish();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Take {@code request} out of the registry and end it with {@code reason},
+     * does nothing if it already ended.
+     */
+    private void fail(PendingRequest request, String reason) {
+        if (!requests.remove(request.requestId, request)) {
+            return;
         }
+        MainHook.log("Request " + request.requestId + " failed: " + reason);
+        if (request.statusReported.compareAndSet(false, true)) {
+            request.writeError(reason);
+            request.closeSentDescriptors();
+            request.irl.onRequestStatusCode(0);
+        } else {
+            // The body may be cut off
+            request.error = reason;
+        }
+        request.finish();
     }
 
     @Override
     protected void onServiceMessage(Bundle message, int what) {
-        message.putInt("what", what);
-        messageQueue.add(message);
-        if (!handlerRunning) {
-            executor.execute(this::serviceHandler);
+        executor.execute(() -> handleServiceMessage(message, what));
+    }
+
+    @Override
+    protected void onServiceDisconnected() {
+        for (PendingRequest request : requests.values()) {
+            fail(request, "Internet service disconnected");
         }
     }
 
-    private void disposeIrs(InternetRequestSubscriber irs) {
-        try {
-            if (irs.os != null) {
-                irs.os.close();
-                irs.os = null;
+    @Override
+    protected void onSendFailed(Bundle message, int what) {
+        if (what == InternetService.SEND_REQUEST_WHAT) {
+            PendingRequest request = requests.get(message.getLong("request_id"));
+            if (request != null) {
+                fail(request, "Could not reach the internet service");
             }
-            if (irs.is != null) {
-                irs.is.close();
-                irs.is = null;
+        }
+    }
+
+    private static class PendingRequest {
+        final long requestId;
+        final InternetRequestListener irl;
+        final AtomicBoolean statusReported = new AtomicBoolean();
+        volatile ScheduledFuture<?> deadline;
+        // Why the response failed after its status code, null if it didn't
+        volatile String error;
+        final CountDownLatch ended = new CountDownLatch(1);
+        // Ends of the pipes handed to the service
+        private ParcelFileDescriptor requestBodyFd;
+        private ParcelFileDescriptor responseBodyFd;
+
+        private PendingRequest(long requestId, InternetRequestListener irl, ParcelFileDescriptor requestBodyFd,
+                ParcelFileDescriptor responseBodyFd) {
+            this.requestId = requestId;
+            this.irl = irl;
+            this.requestBodyFd = requestBodyFd;
+            this.responseBodyFd = responseBodyFd;
+        }
+
+        /**
+         * Write an error body through our copy of the response pipe, for the
+         * client's error callback to read.
+         */
+        private synchronized void writeError(String reason) {
+            if (responseBodyFd == null) {
+                return;
+            }
+            try {
+                // Not closed here, closeSentDescriptors owns the descriptor
+                FileOutputStream os = new FileOutputStream(responseBodyFd.getFileDescriptor());
+                os.write(InternetService.errorBody(reason).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                MainHook.log(e);
             }
-        } catch (IOException e) {
-            MainHook.log(e);
         }
 
-    }
+        private synchronized void closeSentDescriptors() {
+            try {
+                if (requestBodyFd != null) {
+                    requestBodyFd.close();
+                    requestBodyFd = null;
+                }
+                if (responseBodyFd != null) {
+                    responseBodyFd.close();
+                    responseBodyFd = null;
+                }
+            } catch (IOException e) {
+                MainHook.log(e);
+            }
+        }
 
-    private void handleInputStreamChunk(String chunk, InternetRequestSubscriber irs) {
-        try {
-            irs.os.write((chunk + System.lineSeparator()).getBytes());
-            irs.os.flush();
-        } catch (IOException e) {
-            MainHook.log(e);
+        private void cancelDeadline() {
+            ScheduledFuture<?> future = deadline;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private void finish() {
+            cancelDeadline();
+            closeSentDescriptors();
+            ended.countDown();
+            irl.onRequestComplete();
         }
-        MainHook.log("Done handling chunk \"" + chunk + "\"");
     }
 
-    private class InternetRequestSubscriber {
-        public final InternetRequestListener irl;
-        public InputStream is;
-        public OutputStream os;
+    /**
+     * Response body that, at its end, waits for the request to end and
+     * throws if it failed.
+     */
+    private static class ResponseStream extends FilterInputStream {
+        private final PendingRequest mRequest;
 
-        private InternetRequestSubscriber(InternetRequestListener irl) throws IOException {
-            this.irl = irl;
-            PipedInputStream pipedInputStream = new PipedInputStream();
-            this.is = pipedInputStream;
-            this.os = new PipedOutputStream(pipedInputStream);
+        ResponseStream(InputStream in, PendingRequest request) {
+            super(in);
+            mRequest = request;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                checkEnded();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                checkEnded();
+            }
+            return read;
+        }
+
+        private void checkEnded() throws IOException {
+            try {
+                // The service sends COMPLETE right after closing the pipe
+                if (!mRequest.ended.await(DEADLINE_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Response ended without completing");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            String error = mRequest.error;
+            if (error != null) {
+                throw new IOException(error);
+            }
         }
     }
 }
@@ -7,7 +7,17 @@
  */
 package tn.eluea.kgpt.llm.service;
 
+import java.util.List;
+import java.util.Map;
+
 public interface InternetRequestListener {
+    /**
+     * Headers of the response, sent right before its status code when the
+     * server answered.
+     */
+    default void onResponseHeaders(Map<String, List<String>> headers) {
+    }
+
     void onRequestStatusCode(int code);
     void onRequestComplete();
 }
@@ -25,6 +25,7 @@ import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -34,7 +35,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Client for accessing ConfigProvider.
- * Uses ContentProvider for main app, XSharedPreferences for Xposed module.
+ * Uses ContentProvider for main app. In the Xposed module reads are served
+ * from the process-wide {@link HookConfig} snapshot, without IPC.
  * Thread-safe implementation using ConcurrentHashMap.
  */
 public class ConfigClient {
@@ -47,6 +49,12 @@ public class ConfigClient {
     private final Map<String, Object> mCache = new ConcurrentHashMap<>();
     private final Map<String, OnConfigChangeListener> mListeners = new ConcurrentHashMap<>();
     private ContentObserver mObserver;
+    private final OnConfigChangeListener mSnapshotListener = this::dispatchChange;
+    // Provider config version the listeners were last told about, -1 before
+    // the first listener is registered
+    private volatile long mVersion = -1;
+    // Writes of the calling thread held back by beginBatch()
+    private final ThreadLocal<Bundle> mBatch = new ThreadLocal<>();
 
     // Flag to check if we're in Xposed context (XSharedPreferences class is
     // available)
@@ -69,7 +77,13 @@ public class ConfigClient {
     public ConfigClient(Context context) {
         mContext = context;
         mResolver = context.getContentResolver();
-        setupObserver();
+        if (IS_XPOSED_CONTEXT) {
+            // The snapshot reloads itself on change and tells us which keys moved
+            HookConfig.init(context);
+            HookConfig.addListener(mSnapshotListener);
+        } else {
+            setupObserver();
+        }
     }
 
     private void setupObserver() {
@@ -79,18 +93,11 @@ public class ConfigClient {
                 if (uri != null) {
                     String key = uri.getLastPathSegment();
                     if (key != null && !key.equals("config")) {
-                        mCache.remove(key);
-                        Object newValue = getString(key, null);
-                        OnConfigChangeListener listener = mListeners.get(key);
-                        if (listener != null) {
-                            listener.onConfigChanged(key, newValue);
-                        }
-                        OnConfigChangeListener globalListener = mListeners.get("*");
-                        if (globalListener != null) {
-                            globalListener.onConfigChanged(key, newValue);
-                        }
+                        dispatchChange(key, getString(key, null));
                     } else {
+                        // A batch, ask the provider which keys it touched
                         mCache.clear();
+                        dispatchNewerChanges();
                     }
                 }
             }
@@ -103,12 +110,122 @@ public class ConfigClient {
         }
     }
 
+    private void dispatchChange(String key, Object newValue) {
+        mCache.remove(key);
+        OnConfigChangeListener listener = mListeners.get(key);
+        if (listener != null) {
+            listener.onConfigChanged(key, newValue);
+        }
+        OnConfigChangeListener globalListener = mListeners.get("*");
+        if (globalListener != null) {
+            globalListener.onConfigChanged(key, newValue);
+        }
+    }
+
+    private void dispatchNewerChanges() {
+        long version = mVersion;
+        if (version < 0 || mListeners.isEmpty()) {
+            return;
+        }
+        Bundle result;
+        try {
+            result = mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_GET_IF_NEWER,
+                    String.valueOf(version), null);
+        } catch (Exception e) {
+            Log.w(TAG, "Provider getIfNewer failed", e);
+            return;
+        }
+        if (result == null) {
+            return;
+        }
+        mVersion = result.getLong(ConfigProvider.EXTRA_VERSION);
+        Bundle values = result.getBundle(ConfigProvider.EXTRA_VALUES);
+        if (values != null) {
+            for (String key : values.keySet()) {
+                dispatchChange(key, values.getString(key));
+            }
+        }
+        java.util.List<String> removed = result.getStringArrayList(ConfigProvider.EXTRA_REMOVED);
+        if (removed != null) {
+            for (String key : removed) {
+                dispatchChange(key, null);
+            }
+        }
+    }
+
+    private void trackVersion() {
+        if (mVersion >= 0 || IS_XPOSED_CONTEXT) {
+            // Already tracked, or HookConfig does it for the whole process
+            return;
+        }
+        try {
+            Bundle result = mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_GET_VERSION, null,
+                    null);
+            if (result != null) {
+                mVersion = result.getLong(ConfigProvider.EXTRA_VERSION);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Provider getVersion failed", e);
+        }
+    }
+
     public void registerListener(String key, OnConfigChangeListener listener) {
         mListeners.put(key, listener);
+        trackVersion();
     }
 
     public void registerGlobalListener(OnConfigChangeListener listener) {
         mListeners.put("*", listener);
+        trackVersion();
+    }
+
+    /**
+     * Hold back the writes made from this thread until {@link #applyBatch()},
+     * which sends them in one call, with one commit and one change
+     * notification. Reads from this thread see the held back values. Batches
+     * don't nest.
+     */
+    public void beginBatch() {
+        if (mBatch.get() == null) {
+            mBatch.set(new Bundle());
+        }
+    }
+
+    /**
+     * Send the writes held back since {@link #beginBatch()}.
+     *
+     * @return false if the provider couldn't apply them
+     */
+    @SuppressWarnings("deprecation") // Bundle.get(String), the values are of mixed types
+    public boolean applyBatch() {
+        Bundle batch = mBatch.get();
+        mBatch.remove();
+        if (batch == null || batch.isEmpty()) {
+            return true;
+        }
+
+        boolean success = false;
+        try {
+            Bundle result = mResolver.call(ConfigProvider.CONTENT_URI, ConfigProvider.METHOD_APPLY_BATCH, null,
+                    batch);
+            success = result != null && result.getBoolean(ConfigProvider.EXTRA_SUCCESS);
+        } catch (Exception e) {
+            Log.w(TAG, "Provider applyBatch failed", e);
+        }
+
+        Map<String, String> changes = new java.util.HashMap<>();
+        for (String key : batch.keySet()) {
+            Object value = batch.get(key);
+            changes.put(key, value != null ? String.valueOf(value) : null);
+        }
+        HookConfig.putAll(changes);
+        return success;
+    }
+
+    @SuppressWarnings("deprecation")
+    private Object batchedValue(String key) {
+        Bundle batch = mBatch.get();
+        return batch != null && batch.containsKey(key) ? batch.get(key) : null;
     }
 
     public void unregisterListener(String key) {
@@ -116,6 +233,16 @@ public class ConfigClient {
     }
 
     public String getString(String key, String defaultValue) {
+        Object batched = batchedValue(key);
+        if (batched != null) {
+            return String.valueOf(batched);
+        }
+
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getString(key, defaultValue);
+        }
+
         // FORCE REFRESH: By-pass cache check for Strings to ensure freshness via
         // ContentProvider
         // Cache is only checked as a fallback if provider query fails.
@@ -172,6 +299,14 @@ public class ConfigClient {
             Log.w(TAG, "Cache operation failed for key: " + key, e);
         }
 
+        Bundle batch = mBatch.get();
+        if (batch != null) {
+            if (value != null) {
+                batch.putString(key, value);
+            }
+            return;
+        }
+
         ContentValues cv = new ContentValues();
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, value);
@@ -182,9 +317,23 @@ public class ConfigClient {
         } catch (Exception e) {
             Log.w(TAG, "Provider insert failed for: " + key, e);
         }
+        if (value != null) {
+            // The provider ignores null values as well
+            HookConfig.put(key, value);
+        }
     }
 
     public boolean getBoolean(String key, boolean defaultValue) {
+        Object batched = batchedValue(key);
+        if (batched != null) {
+            return batched instanceof Boolean ? (Boolean) batched : Boolean.parseBoolean(batched.toString());
+        }
+
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getBoolean(key, defaultValue);
+        }
+
         // Check cache first
         if (mCache.containsKey(key)) {
             Object cached = mCache.get(key);
@@ -237,6 +386,12 @@ public class ConfigClient {
     public void putBoolean(String key, boolean value) {
         mCache.put(key, value);
 
+        Bundle batch = mBatch.get();
+        if (batch != null) {
+            batch.putBoolean(key, value);
+            return;
+        }
+
         ContentValues cv = new ContentValues();
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, String.valueOf(value));
@@ -247,9 +402,20 @@ public class ConfigClient {
         } catch (Exception e) {
             Log.w(TAG, "Provider insert failed for: " + key, e);
         }
+        HookConfig.put(key, String.valueOf(value));
     }
 
     public int getInt(String key, int defaultValue) {
+        Object batched = batchedValue(key);
+        if (batched instanceof Number) {
+            return ((Number) batched).intValue();
+        }
+
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getInt(key, defaultValue);
+        }
+
         // Check cache first
         if (mCache.containsKey(key)) {
             Object cached = mCache.get(key);
@@ -309,6 +475,12 @@ public class ConfigClient {
     public void putInt(String key, int value) {
         mCache.put(key, value);
 
+        Bundle batch = mBatch.get();
+        if (batch != null) {
+            batch.putInt(key, value);
+            return;
+        }
+
         ContentValues cv = new ContentValues();
         cv.put(ConfigProvider.COLUMN_KEY, key);
         cv.put(ConfigProvider.COLUMN_VALUE, String.valueOf(value));
@@ -319,6 +491,7 @@ public class ConfigClient {
         } catch (Exception e) {
             Log.w(TAG, "Provider insert failed for: " + key, e);
         }
+        HookConfig.put(key, String.valueOf(value));
     }
 
     public boolean contains(String key) {
@@ -338,10 +511,13 @@ public class ConfigClient {
     }
 
     public void destroy() {
-        try {
-            mResolver.unregisterContentObserver(mObserver);
-        } catch (Exception e) {
-            // Ignore
+        HookConfig.removeListener(mSnapshotListener);
+        if (mObserver != null) {
+            try {
+                mResolver.unregisterContentObserver(mObserver);
+            } catch (Exception e) {
+                // Ignore
+            }
         }
         mListeners.clear();
         mCache.clear();
@@ -27,12 +27,19 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
 
 import android.annotation.SuppressLint;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * ContentProvider for KGPT configuration.
  * 
@@ -45,6 +52,12 @@ import androidx.annotation.Nullable;
  * - content://tn.eluea.kgpt.provider/config/{key} - Get/Set a single config
  * value
  * - content://tn.eluea.kgpt.provider/config - Get all config values
+ *
+ * call() methods, see {@link #call}:
+ * - getAll - every value and the current config version
+ * - getIfNewer - only what changed since a version
+ * - getVersion - the current config version
+ * - applyBatch - several writes with one commit and one notification
  */
 @SuppressLint("ApplySharedPref") // commit() is required for XSharedPreferences to work
 public class ConfigProvider extends ContentProvider {
@@ -78,8 +91,33 @@ public class ConfigProvider extends ContentProvider {
     public static final String TYPE_LONG = "long";
     public static final String TYPE_FLOAT = "float";
 
+    // call() methods
+    public static final String METHOD_GET_ALL = "getAll";
+    public static final String METHOD_GET_IF_NEWER = "getIfNewer";
+    public static final String METHOD_GET_VERSION = "getVersion";
+    public static final String METHOD_APPLY_BATCH = "applyBatch";
+
+    // call() result keys
+    public static final String EXTRA_VERSION = "version";
+    public static final String EXTRA_VALUES = "values";
+    public static final String EXTRA_REMOVED = "removed";
+    public static final String EXTRA_FULL = "full";
+    public static final String EXTRA_SUCCESS = "success";
+
     private SharedPreferences mPrefs;
 
+    // Config version, bumped by every write that goes through the provider.
+    // It starts from the clock so it keeps increasing across provider
+    // restarts; a client holding a version from before the restart is sent
+    // everything again.
+    private final Object mVersionLock = new Object();
+    private long mBaseVersion;
+    private long mVersion;
+    private final Map<String, Long> mKeyVersions = new HashMap<>();
+
+    // Binary copy of the config for the Xposed side, next to the prefs file
+    private java.io.File mSnapshotFile;
+
     private boolean mIsDeviceProtected = false;
 
     @Override
@@ -91,6 +129,8 @@ public class ConfigProvider extends ContentProvider {
             return false;
         }
 
+        mBaseVersion = System.currentTimeMillis() * 1000;
+        mVersion = mBaseVersion;
         initializePrefs(context);
         return true;
     }
@@ -122,12 +162,34 @@ public class ConfigProvider extends ContentProvider {
                 mPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
             }
             mIsDeviceProtected = false;
+            // Same directory as the prefs file, XposedConfigReader looks for it there
+            mSnapshotFile = new java.io.File(context.getSharedPreferencesPath(PREF_NAME).getParentFile(),
+                    ConfigSnapshotFile.FILE_NAME);
         }
 
         if (mPrefs != null) {
             Log.d(TAG, "SharedPreferences has " + mPrefs.getAll().size() + " entries");
             // Proactively fix permissions on startup
             fixFilePermissions();
+            synchronized (mVersionLock) {
+                publishSnapshot(mPrefs);
+            }
+        }
+    }
+
+    /**
+     * Write the binary snapshot read by XposedConfigReader. Called with
+     * mVersionLock held so the file never goes back to an older version.
+     */
+    private void publishSnapshot(SharedPreferences prefs) {
+        if (mSnapshotFile == null || mIsDeviceProtected) {
+            // Nothing outside the app can read device-protected storage
+            return;
+        }
+        try {
+            ConfigSnapshotFile.write(mSnapshotFile, prefs.getAll(), mVersion);
+        } catch (java.io.IOException e) {
+            Log.e(TAG, "Failed to publish config snapshot", e);
         }
     }
 
@@ -141,7 +203,12 @@ public class ConfigProvider extends ContentProvider {
                         .getSystemService(Context.USER_SERVICE);
                 if (userManager != null && userManager.isUserUnlocked()) {
                     Log.i(TAG, "User unlocked! Switching from Device Protected to Credential Protected storage.");
+                    synchronized (mVersionLock) {
+                        // Versions handed out so far describe the other file
+                        startNewVersionRange();
+                    }
                     initializePrefs(context);
+                    context.getContentResolver().notifyChange(CONTENT_URI, null);
                 }
             }
         }
@@ -167,8 +234,9 @@ public class ConfigProvider extends ContentProvider {
                 break;
 
             case CONFIG_ALL:
-                for (String k : prefs.getAll().keySet()) {
-                    addRowForKey(cursor, k, prefs);
+                // Copy the map once for all rows, call(METHOD_GET_ALL) is cheaper still
+                for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                    addRow(cursor, entry.getKey(), entry.getValue());
                 }
                 break;
         }
@@ -178,7 +246,10 @@ public class ConfigProvider extends ContentProvider {
     }
 
     private void addRowForKey(MatrixCursor cursor, String key, SharedPreferences prefs) {
-        Object value = prefs.getAll().get(key);
+        addRow(cursor, key, prefs.getAll().get(key));
+    }
+
+    private void addRow(MatrixCursor cursor, String key, Object value) {
         if (value != null) {
             String type = getTypeString(value);
             cursor.addRow(new Object[] { key, String.valueOf(value), type });
@@ -241,7 +312,14 @@ public class ConfigProvider extends ContentProvider {
         // immediately
         // This is essential for XSharedPreferences to pick up changes
         // LSPosed Wiki: The hooked app reads from the physical file
-        boolean success = editor.commit();
+        boolean success;
+        synchronized (mVersionLock) {
+            success = editor.commit();
+            if (success) {
+                markChanged(Collections.singleton(key));
+                publishSnapshot(prefs);
+            }
+        }
 
         if (success) {
             fixFilePermissions();
@@ -251,15 +329,178 @@ public class ConfigProvider extends ContentProvider {
 
         Uri resultUri = Uri.withAppendedPath(CONTENT_URI, key);
 
-        // Notify observers about the change
+        // Notify observers about the change, observers of CONTENT_URI get it
+        // through notifyForDescendants
         if (getContext() != null) {
             getContext().getContentResolver().notifyChange(resultUri, null);
-            getContext().getContentResolver().notifyChange(CONTENT_URI, null);
         }
 
         return resultUri;
     }
 
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        SharedPreferences prefs = getPrefs();
+        if (prefs == null) {
+            return null;
+        }
+
+        switch (method) {
+            case METHOD_GET_ALL:
+                return getAll(prefs);
+            case METHOD_GET_IF_NEWER:
+                return getIfNewer(prefs, parseVersion(arg));
+            case METHOD_GET_VERSION: {
+                Bundle result = new Bundle();
+                synchronized (mVersionLock) {
+                    result.putLong(EXTRA_VERSION, mVersion);
+                }
+                return result;
+            }
+            case METHOD_APPLY_BATCH:
+                return applyBatch(prefs, extras);
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Every value as a string, like query() returns them, and the version
+     * they correspond to.
+     */
+    private Bundle getAll(SharedPreferences prefs) {
+        Bundle values = new Bundle();
+        Bundle result = new Bundle();
+        synchronized (mVersionLock) {
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                if (entry.getValue() != null) {
+                    values.putString(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+            result.putLong(EXTRA_VERSION, mVersion);
+        }
+        result.putBundle(EXTRA_VALUES, values);
+        result.putBoolean(EXTRA_FULL, true);
+        return result;
+    }
+
+    /**
+     * The keys written after {@code version}: new values in EXTRA_VALUES,
+     * removed keys in EXTRA_REMOVED. Falls back to getAll() when the version
+     * doesn't come from this provider instance.
+     */
+    private Bundle getIfNewer(SharedPreferences prefs, long version) {
+        Bundle values = new Bundle();
+        ArrayList<String> removed = new ArrayList<>();
+        Bundle result = new Bundle();
+        synchronized (mVersionLock) {
+            if (version < mBaseVersion || version > mVersion) {
+                // From another provider instance (or the clock went back)
+                return getAll(prefs);
+            }
+            if (version < mVersion) {
+                Map<String, ?> all = prefs.getAll();
+                for (Map.Entry<String, Long> entry : mKeyVersions.entrySet()) {
+                    if (entry.getValue() <= version) {
+                        continue;
+                    }
+                    Object value = all.get(entry.getKey());
+                    if (value != null) {
+                        values.putString(entry.getKey(), String.valueOf(value));
+                    } else {
+                        removed.add(entry.getKey());
+                    }
+                }
+            }
+            result.putLong(EXTRA_VERSION, mVersion);
+        }
+        result.putBundle(EXTRA_VALUES, values);
+        result.putStringArrayList(EXTRA_REMOVED, removed);
+        result.putBoolean(EXTRA_FULL, false);
+        return result;
+    }
+
+    /**
+     * Write every entry of {@code batch} with a single commit; a null value
+     * removes the key. Observers get one notification for the whole batch.
+     */
+    @SuppressWarnings("deprecation") // Bundle.get(String), the values are of mixed types
+    private Bundle applyBatch(SharedPreferences prefs, @Nullable Bundle batch) {
+        Bundle result = new Bundle();
+        if (batch == null || batch.isEmpty()) {
+            result.putBoolean(EXTRA_SUCCESS, true);
+            return result;
+        }
+
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : batch.keySet()) {
+            Object value = batch.get(key);
+            if (value == null) {
+                editor.remove(key);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(key, (Float) value);
+            } else {
+                editor.putString(key, String.valueOf(value));
+            }
+        }
+
+        boolean success;
+        synchronized (mVersionLock) {
+            success = editor.commit();
+            if (success) {
+                markChanged(batch.keySet());
+                publishSnapshot(prefs);
+            }
+            result.putLong(EXTRA_VERSION, mVersion);
+        }
+
+        if (success) {
+            fixFilePermissions();
+            if (getContext() != null) {
+                getContext().getContentResolver().notifyChange(CONTENT_URI, null);
+            }
+        }
+
+        Log.d(TAG, "applyBatch: " + batch.size() + " keys, success=" + success);
+        result.putBoolean(EXTRA_SUCCESS, success);
+        return result;
+    }
+
+    private void markChanged(Collection<String> keys) {
+        mVersion++;
+        for (String key : keys) {
+            mKeyVersions.put(key, mVersion);
+        }
+    }
+
+    /**
+     * Make every version handed out so far older than mBaseVersion, so the
+     * clients holding one reload everything. Called with mVersionLock held.
+     */
+    private void startNewVersionRange() {
+        mBaseVersion = Math.max(mVersion + 1, System.currentTimeMillis() * 1000);
+        mVersion = mBaseVersion;
+        mKeyVersions.clear();
+    }
+
+    private static long parseVersion(@Nullable String arg) {
+        if (arg == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     private void fixFilePermissions() {
         // Manually ensure the file is world-readable
@@ -302,7 +543,12 @@ public class ConfigProvider extends ContentProvider {
             String key = uri.getLastPathSegment();
             SharedPreferences prefs = getPrefs();
             if (prefs != null) {
-                prefs.edit().remove(key).commit();
+                synchronized (mVersionLock) {
+                    if (prefs.edit().remove(key).commit()) {
+                        markChanged(Collections.singleton(key));
+                        publishSnapshot(prefs);
+                    }
+                }
                 getContext().getContentResolver().notifyChange(uri, null);
                 return 1;
             }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.provider;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tn.eluea.kgpt.instruction.command.Commands;
+import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+
+/**
+ * Immutable copy of every KGPT setting, as read in one go from ConfigProvider
+ * (or XSharedPreferences when the provider can't be reached).
+ *
+ * Values are kept as the strings the provider returns. Commands and patterns
+ * are decoded on first use and kept with the snapshot, so their JSON is
+ * decoded once per change instead of once per read. See {@link HookConfig}
+ * for how snapshots are loaded and replaced.
+ */
+public final class ConfigSnapshot {
+    private static final String PREF_GEN_AI_COMMANDS = "gen_ai_commands";
+    private static final String PREF_PARSE_PATTERNS = "parse_patterns";
+
+    private final Map<String, String> values;
+    // ConfigProvider's config version this snapshot was read at
+    private final long version;
+
+    // Decoded on first use, racing threads decode the same value
+    private volatile List<GenerativeAICommand> generativeAICommands;
+    private volatile List<ParsePattern> parsePatterns;
+
+    ConfigSnapshot(Map<String, String> values, long version) {
+        this.values = Collections.unmodifiableMap(values);
+        this.version = version;
+    }
+
+    /**
+     * Copy of this snapshot with {@code changes} applied, a null value removes
+     * the key.
+     */
+    ConfigSnapshot with(Map<String, String> changes, long version) {
+        Map<String, String> copy = new HashMap<>(values);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                copy.put(change.getKey(), change.getValue());
+            } else {
+                copy.remove(change.getKey());
+            }
+        }
+        return new ConfigSnapshot(copy, version);
+    }
+
+    Map<String, String> values() {
+        return values;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public List<GenerativeAICommand> getGenerativeAICommands() {
+        List<GenerativeAICommand> commands = generativeAICommands;
+        if (commands == null) {
+            commands = Collections.unmodifiableList(
+                    Commands.decodeCommands(getString(PREF_GEN_AI_COMMANDS, "[]")));
+            generativeAICommands = commands;
+        }
+        return commands;
+    }
+
+    public List<ParsePattern> getParsePatterns() {
+        List<ParsePattern> patterns = parsePatterns;
+        if (patterns == null) {
+            patterns = Collections.unmodifiableList(
+                    ParsePattern.decode(getString(PREF_PARSE_PATTERNS, null)));
+            parsePatterns = patterns;
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.provider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary copy of the config, written by the app next to its
+ * preferences file and memory-mapped read-only by the Xposed side, so that
+ * picking up a change doesn't mean reparsing the whole XML file.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header   magic:int format:int version:long checksum:int count:int
+ * entries  count x (keyOffset:int keyLength:int valueOffset:int valueLength:int)
+ * blobs    UTF-8 keys and values, referenced by the entries
+ * </pre>
+ * The checksum is the CRC32 of everything after the header. Values are
+ * stored as strings, the way ConfigProvider reports them. Keys are decoded
+ * when the file is mapped, values only when they are first read.
+ */
+public final class ConfigSnapshotFile {
+    public static final String FILE_NAME = "keyboard_gpt.snapshot";
+
+    private static final int MAGIC = 0x4B475043; // "KGPC"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int ENTRY_SIZE = 4 * 4;
+    private static final int VERSION_OFFSET = 8;
+
+    private final ByteBuffer buffer;
+    private final long version;
+    private final Map<String, Integer> index;
+    // Decoded values, filled in on first access
+    private final AtomicReferenceArray<String> values;
+
+    private ConfigSnapshotFile(ByteBuffer buffer, long version, Map<String, Integer> index, int count) {
+        this.buffer = buffer;
+        this.version = version;
+        this.index = index;
+        this.values = new AtomicReferenceArray<>(count);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public String getString(String key) {
+        Integer entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        String value = values.get(entry);
+        if (value == null) {
+            int position = HEADER_SIZE + entry * ENTRY_SIZE + 8;
+            value = decode(buffer, buffer.getInt(position), buffer.getInt(position + 4));
+            values.set(entry, value);
+        }
+        return value;
+    }
+
+    /**
+     * Every value, decoding the ones not read yet.
+     */
+    public Map<String, String> getAll() {
+        Map<String, String> all = new HashMap<>();
+        for (String key : index.keySet()) {
+            all.put(key, getString(key));
+        }
+        return all;
+    }
+
+    /**
+     * Write {@code values} to {@code file}. The file is replaced atomically so
+     * readers that mapped the previous one keep a consistent view.
+     */
+    public static void write(File file, Map<String, ?> values, long version) throws IOException {
+        List<byte[]> keys = new ArrayList<>(values.size());
+        List<byte[]> blobs = new ArrayList<>(values.size());
+        int blobSize = 0;
+        List<String> sortedKeys = new ArrayList<>(values.keySet());
+        Collections.sort(sortedKeys);
+        for (String key : sortedKeys) {
+            Object value = values.get(key);
+            if (value == null) {
+                continue;
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            keys.add(keyBytes);
+            blobs.add(valueBytes);
+            blobSize += keyBytes.length + valueBytes.length;
+        }
+
+        int count = keys.size();
+        int blobStart = HEADER_SIZE + count * ENTRY_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(blobStart + blobSize);
+        out.putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(0).putInt(count);
+        int offset = blobStart;
+        for (int i = 0; i < count; i++) {
+            int keyLength = keys.get(i).length;
+            int valueLength = blobs.get(i).length;
+            out.putInt(offset).putInt(keyLength).putInt(offset + keyLength).putInt(valueLength);
+            offset += keyLength + valueLength;
+        }
+        for (int i = 0; i < count; i++) {
+            out.put(keys.get(i)).put(blobs.get(i));
+        }
+        out.putInt(HEADER_SIZE - 8, checksum(out.array(), HEADER_SIZE, out.capacity() - HEADER_SIZE));
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            stream.write(out.array());
+            stream.getFD().sync();
+        }
+        // World-readable like the prefs file, for the hooked process
+        temp.setReadable(true, false);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Version in the header of {@code file}, read without mapping it.
+     *
+     * @return the version, or -1 if the file is missing or not a snapshot
+     */
+    public static long readVersion(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != FORMAT) {
+                return -1;
+            }
+            return raf.readLong();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Map {@code file} read-only and index its keys.
+     *
+     * @return the snapshot, or null if the file is missing, unreadable or corrupt
+     */
+    public static ConfigSnapshotFile map(File file) {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+
+        int size = buffer.capacity();
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+            return null;
+        }
+        long version = buffer.getLong(VERSION_OFFSET);
+        int count = buffer.getInt(HEADER_SIZE - 4);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > size) {
+            return null;
+        }
+
+        byte[] body = new byte[size - HEADER_SIZE];
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE);
+        view.get(body);
+        if (checksum(body, 0, body.length) != buffer.getInt(HEADER_SIZE - 8)) {
+            return null;
+        }
+
+        Map<String, Integer> index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * ENTRY_SIZE;
+            int keyOffset = buffer.getInt(position);
+            int keyLength = buffer.getInt(position + 4);
+            int valueOffset = buffer.getInt(position + 8);
+            int valueLength = buffer.getInt(position + 12);
+            if (!inBounds(keyOffset, keyLength, size) || !inBounds(valueOffset, valueLength, size)) {
+                return null;
+            }
+            index.put(decode(buffer, keyOffset, keyLength), i);
+        }
+        return new ConfigSnapshotFile(buffer, version, index, count);
+    }
+
+    private static boolean inBounds(int offset, int length, int size) {
+        return offset >= HEADER_SIZE && length >= 0 && (long) offset + length <= size;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
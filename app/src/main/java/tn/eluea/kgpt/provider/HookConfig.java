@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link ConfigSnapshot} of the hooked (keyboard) process.
+ *
+ * The snapshot is read from ConfigProvider in one call and then served from
+ * memory, so reading a setting costs no IPC. It is replaced when the provider
+ * notifies a change, with only the keys changed since the snapshot's version,
+ * or when the preferences file is rewritten; never on a timer. Writes made
+ * from this process are applied to the snapshot right away so they can be
+ * read back before the provider's notification arrives.
+ */
+public final class HookConfig {
+    private static final String TAG = "KGPT_HookConfig";
+
+    private static final AtomicReference<ConfigSnapshot> sSnapshot = new AtomicReference<>();
+    private static final List<ConfigClient.OnConfigChangeListener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Runnable sReloadRunnable = () -> reload(false);
+    private static final Runnable sFullReloadRunnable = () -> reload(true);
+
+    private static ContentResolver sResolver;
+    private static Handler sLoaderHandler;
+    private static Handler sMainHandler;
+    private static ContentObserver sObserver;
+    // Kept referenced, a collected FileObserver stops watching
+    private static FileObserver sFileObserver;
+
+    private HookConfig() {
+    }
+
+    /**
+     * Load the first snapshot and start listening for changes. Does nothing
+     * if already initialized.
+     */
+    public static synchronized void init(Context context) {
+        if (sResolver != null) {
+            return;
+        }
+        sResolver = context.getContentResolver();
+        HandlerThread loaderThread = new HandlerThread("KGPT_HookConfig");
+        loaderThread.start();
+        sLoaderHandler = new Handler(loaderThread.getLooper());
+        sMainHandler = new Handler(Looper.getMainLooper());
+
+        sSnapshot.set(loadAll());
+
+        sObserver = new ContentObserver(sLoaderHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                scheduleReload(sReloadRunnable);
+            }
+        };
+        try {
+            sResolver.registerContentObserver(ConfigProvider.CONTENT_URI, true, sObserver);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to register observer", e);
+        }
+
+        watchPreferencesFile();
+        Log.d(TAG, "Loaded " + sSnapshot.get().values().size() + " settings");
+    }
+
+    public static boolean isReady() {
+        return sSnapshot.get() != null;
+    }
+
+    /**
+     * The current snapshot, or null when not initialized in this process.
+     */
+    public static ConfigSnapshot get() {
+        return sSnapshot.get();
+    }
+
+    /**
+     * Register a listener called on the main thread for every key whose value
+     * differs between two snapshots.
+     */
+    public static void addListener(ConfigClient.OnConfigChangeListener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(ConfigClient.OnConfigChangeListener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Apply a write made from this process to the current snapshot.
+     */
+    static void put(String key, String value) {
+        putAll(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Apply writes made from this process to the current snapshot, a null
+     * value removes the key.
+     */
+    static void putAll(Map<String, String> changes) {
+        ConfigSnapshot previous;
+        ConfigSnapshot next;
+        do {
+            previous = sSnapshot.get();
+            if (previous == null) {
+                return;
+            }
+            // Keep the version, the provider will still report these keys as new
+            next = previous.with(changes, previous.getVersion());
+        } while (!sSnapshot.compareAndSet(previous, next));
+
+        notifyChanged(changedKeys(previous.values(), next.values(), changes.keySet()), next.values());
+    }
+
+    private static void scheduleReload(Runnable runnable) {
+        // A provider write may notify several URIs, reload once for all of them
+        sLoaderHandler.removeCallbacks(runnable);
+        sLoaderHandler.post(runnable);
+    }
+
+    private static void reload(boolean full) {
+        ConfigSnapshot previous;
+        ConfigSnapshot fresh;
+        do {
+            previous = sSnapshot.get();
+            fresh = full || previous == null ? loadAll() : loadChanges(previous);
+            // Retry if a local write slipped in, it would be lost otherwise
+        } while (!sSnapshot.compareAndSet(previous, fresh));
+
+        if (previous == null || sListeners.isEmpty()) {
+            return;
+        }
+
+        Set<String> keys = new HashSet<>(previous.values().keySet());
+        keys.addAll(fresh.values().keySet());
+        List<String> changed = changedKeys(previous.values(), fresh.values(), keys);
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        Log.d(TAG, "Reloaded, " + changed.size() + " settings changed");
+        notifyChanged(changed, fresh.values());
+    }
+
+    private static List<String> changedKeys(Map<String, String> oldValues, Map<String, String> newValues,
+            Collection<String> keys) {
+        List<String> changed = new ArrayList<>();
+        for (String key : keys) {
+            String oldValue = oldValues.get(key);
+            String newValue = newValues.get(key);
+            if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private static void notifyChanged(List<String> keys, Map<String, String> values) {
+        if (keys.isEmpty() || sListeners.isEmpty()) {
+            return;
+        }
+        sMainHandler.post(() -> {
+            for (String key : keys) {
+                String value = values.get(key);
+                for (ConfigClient.OnConfigChangeListener listener : sListeners) {
+                    listener.onConfigChanged(key, value);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read every setting at once, from ConfigProvider or else XSharedPreferences.
+     */
+    private static ConfigSnapshot loadAll() {
+        Bundle result = call(ConfigProvider.METHOD_GET_ALL, null);
+        if (result != null) {
+            return new ConfigSnapshot(toMap(result.getBundle(ConfigProvider.EXTRA_VALUES)),
+                    result.getLong(ConfigProvider.EXTRA_VERSION));
+        }
+
+        Map<String, String> values = new HashMap<>();
+        if (XposedConfigReader.isAvailable()) {
+            XposedConfigReader.forceReload();
+            for (Map.Entry<String, ?> entry : XposedConfigReader.getAll().entrySet()) {
+                if (entry.getValue() != null) {
+                    values.put(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+        }
+        // Unknown version, the next provider read sends everything
+        return new ConfigSnapshot(values, -1);
+    }
+
+    /**
+     * Fetch only the keys the provider changed since {@code previous} was read.
+     */
+    private static ConfigSnapshot loadChanges(ConfigSnapshot previous) {
+        Bundle result = call(ConfigProvider.METHOD_GET_IF_NEWER, String.valueOf(previous.getVersion()));
+        if (result == null) {
+            return loadAll();
+        }
+        long version = result.getLong(ConfigProvider.EXTRA_VERSION);
+        Map<String, String> values = toMap(result.getBundle(ConfigProvider.EXTRA_VALUES));
+        if (result.getBoolean(ConfigProvider.EXTRA_FULL)) {
+            return new ConfigSnapshot(values, version);
+        }
+        List<String> removed = result.getStringArrayList(ConfigProvider.EXTRA_REMOVED);
+        if (removed != null) {
+            for (String key : removed) {
+                values.put(key, null);
+            }
+        }
+        return previous.with(values, version);
+    }
+
+    private static Bundle call(String method, String arg) {
+        try {
+            return sResolver.call(ConfigProvider.CONTENT_URI, method, arg, null);
+        } catch (Exception e) {
+            Log.d(TAG, "Provider call " + method + " failed - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, String> toMap(Bundle bundle) {
+        Map<String, String> values = new HashMap<>();
+        if (bundle != null) {
+            for (String key : bundle.keySet()) {
+                values.put(key, bundle.getString(key));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Changes written while the provider's notifications can't reach us still
+     * land in the XSharedPreferences file, reload when it is rewritten.
+     */
+    private static void watchPreferencesFile() {
+        File file = XposedConfigReader.isAvailable() ? XposedConfigReader.getFile() : null;
+        File dir = file != null ? file.getParentFile() : null;
+        if (dir == null) {
+            return;
+        }
+        String name = file.getName();
+        sFileObserver = new FileObserver(dir.getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (name.equals(path)) {
+                    // Writes that bypassed the provider aren't versioned, read everything
+                    scheduleReload(sFullReloadRunnable);
+                }
+            }
+        };
+        try {
+            sFileObserver.startWatching();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to watch " + file, e);
+        }
+    }
+}
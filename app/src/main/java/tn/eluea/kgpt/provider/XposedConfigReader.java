@@ -36,6 +36,11 @@ import de.robv.android.xposed.XSharedPreferences;
  * - XSharedPreferences(packageName, prefFileName) must be used (NOT File constructor)
  * - reload() should be called to get fresh values
  * - getFile().canRead() should be checked before reading
+ *
+ * When ConfigProvider has published a {@link ConfigSnapshotFile} next to the
+ * preferences file, values are read from that mapping instead. Picking up a
+ * change then only costs reading the version in the snapshot's header; the
+ * XML file is only reparsed when there is no snapshot.
  */
 public class XposedConfigReader {
     private static final String TAG = "KGPT_XposedConfig";
@@ -48,6 +53,9 @@ public class XposedConfigReader {
     private static Map<String, Object> cache = new HashMap<>();
     private static long lastReload = 0;
     private static final long RELOAD_INTERVAL = 1000;
+
+    private static volatile ConfigSnapshotFile mapped = null;
+    private static long lastVersionCheck = 0;
     
     /**
      * Initialize XSharedPreferences
@@ -117,6 +125,30 @@ public class XposedConfigReader {
         }
     }
     
+    /**
+     * The mapped snapshot file, remapped when its version changed. Returns
+     * null if the app hasn't published one.
+     */
+    private static synchronized ConfigSnapshotFile mapped() {
+        if (xPrefs == null) return null;
+
+        long now = System.currentTimeMillis();
+        if (now - lastVersionCheck > RELOAD_INTERVAL) {
+            lastVersionCheck = now;
+            File dir = xPrefs.getFile() != null ? xPrefs.getFile().getParentFile() : null;
+            File file = dir != null ? new File(dir, ConfigSnapshotFile.FILE_NAME) : null;
+            long version = file != null ? ConfigSnapshotFile.readVersion(file) : -1;
+            ConfigSnapshotFile current = mapped;
+            if (version < 0) {
+                mapped = null;
+            } else if (current == null || current.getVersion() != version) {
+                mapped = ConfigSnapshotFile.map(file);
+                Log.d(TAG, "Mapped config snapshot, version " + version);
+            }
+        }
+        return mapped;
+    }
+
     /**
      * Force reload preferences immediately
      */
@@ -126,6 +158,9 @@ public class XposedConfigReader {
             return;
         }
         
+        synchronized (XposedConfigReader.class) {
+            lastVersionCheck = 0;
+        }
         try {
             xPrefs.reload();
             cache.clear();
@@ -141,6 +176,12 @@ public class XposedConfigReader {
      */
     public static String getString(String key, String defaultValue) {
         initPrefs();
+
+        ConfigSnapshotFile snapshot = mapped();
+        if (snapshot != null) {
+            String value = snapshot.getString(key);
+            return value != null ? value : defaultValue;
+        }
         
         if (!prefsAvailable || xPrefs == null) {
             return defaultValue;
@@ -172,6 +213,12 @@ public class XposedConfigReader {
      */
     public static boolean getBoolean(String key, boolean defaultValue) {
         initPrefs();
+
+        ConfigSnapshotFile snapshot = mapped();
+        if (snapshot != null) {
+            String value = snapshot.getString(key);
+            return value != null ? Boolean.parseBoolean(value) : defaultValue;
+        }
         
         if (!prefsAvailable || xPrefs == null) {
             return defaultValue;
@@ -203,6 +250,19 @@ public class XposedConfigReader {
      */
     public static int getInt(String key, int defaultValue) {
         initPrefs();
+
+        ConfigSnapshotFile snapshot = mapped();
+        if (snapshot != null) {
+            String value = snapshot.getString(key);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
         
         if (!prefsAvailable || xPrefs == null) {
             return defaultValue;
@@ -228,6 +288,40 @@ public class XposedConfigReader {
         return defaultValue;
     }
     
+    /**
+     * Get every value from XSharedPreferences in one read
+     */
+    public static Map<String, ?> getAll() {
+        initPrefs();
+
+        ConfigSnapshotFile snapshot = mapped();
+        if (snapshot != null) {
+            return snapshot.getAll();
+        }
+
+        if (!prefsAvailable || xPrefs == null) {
+            return java.util.Collections.emptyMap();
+        }
+
+        reloadIfNeeded();
+
+        try {
+            return xPrefs.getAll();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read all values", e);
+        }
+
+        return java.util.Collections.emptyMap();
+    }
+
+    /**
+     * The preferences file read by XSharedPreferences, or null if unavailable
+     */
+    public static File getFile() {
+        initPrefs();
+        return xPrefs != null ? xPrefs.getFile() : null;
+    }
+
     /**
      * Check if XSharedPreferences is available and working
      * Synchronized to ensure thread safety with initPrefs()
@@ -249,6 +343,8 @@ public class XposedConfigReader {
         sb.append("  Pref Name: ").append(PREF_NAME).append("\n");
         sb.append("  Initialized: ").append(initialized).append("\n");
         sb.append("  Available: ").append(prefsAvailable).append("\n");
+        ConfigSnapshotFile snapshot = mapped;
+        sb.append("  Snapshot version: ").append(snapshot != null ? snapshot.getVersion() : -1).append("\n");
         
         if (xPrefs != null) {
             try {
@@ -269,5 +365,8 @@ public class XposedConfigReader {
     public static void clearCache() {
         cache.clear();
         lastReload = 0;
+        synchronized (XposedConfigReader.class) {
+            lastVersionCheck = 0;
+        }
     }
 }
@@ -15,6 +15,19 @@ public enum OtherSettingsType {
         EnableExternalInternet(R.string.setting_external_internet,
                         R.string.setting_desc_external_internet,
                         Nature.Boolean, true),
+        EnableResponseCache(R.string.setting_response_cache, R.string.setting_desc_response_cache,
+                        Nature.Boolean, true),
+        // In hundredths, 50 caches up to a temperature of 0.5
+        ResponseCacheMaxTemperature(R.string.setting_response_cache_max_temperature,
+                        R.string.setting_desc_response_cache_max_temperature,
+                        Nature.Integer, 50),
+        // Name of the LanguageModel to hedge slow requests to, none when empty
+        HedgeLanguageModel(R.string.setting_hedge_model, R.string.setting_desc_hedge_model,
+                        Nature.String, ""),
+        HedgeMaxPercent(R.string.setting_hedge_max_percent, R.string.setting_desc_hedge_max_percent,
+                        Nature.Integer, 5),
+        FallbackLanguageModels(R.string.setting_fallback_models, R.string.setting_desc_fallback_models,
+                        Nature.String, ""),
         SearchEngine(R.string.setting_search_engine, R.string.setting_desc_search_engine,
                         Nature.String, "duckduckgo"),
         MaterialYouEnabled(R.string.setting_material_you, R.string.setting_desc_material_you,
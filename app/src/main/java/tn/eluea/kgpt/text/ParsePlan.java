@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.features.textactions.TextActionCommands;
+import tn.eluea.kgpt.text.parse.CommandTrie;
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
+
+/**
+ * Everything the keystroke path needs to parse text, compiled once.
+ *
+ * A plan is immutable. TextParser builds a new one whenever patterns, commands,
+ * app triggers or the inline ask prefix change and swaps it in atomically, so
+ * a parse always sees one consistent plan and never compiles a regex itself.
+ */
+public final class ParsePlan {
+    public static final String DEFAULT_TRIGGER_SYMBOL = "$";
+
+    /** Increases with every rebuild. */
+    public final long version;
+
+    public final List<ParseDirective> directives;
+    public final List<TriggerListener.TriggerInfo> triggerInfos;
+    public final boolean aiTriggerEnabled;
+    /** Start symbol of the last enabled AI pattern (CommandAI or RangeSelection). */
+    public final String triggerSymbol;
+
+    public final String inlineAskPrefix;
+    /** Whitespace, slash or start of text, the inline ask prefix, then whitespace. */
+    public final Pattern askPattern;
+    /** {@code text /ask prompt$}, see InlineAskParseResultFactory. */
+    public final Pattern inlineAskPattern;
+    /** "/" followed by the inline ask prefix. */
+    public final String inlineAskMarker;
+
+    /** Static and generative command prefixes. */
+    public final CommandTrie commands;
+
+    public final TriggerAutomaton automaton;
+
+    private ParsePlan(long version, List<ParseDirective> directives,
+            List<TriggerListener.TriggerInfo> triggerInfos, boolean aiTriggerEnabled,
+            String triggerSymbol, String inlineAskPrefix, CommandTrie commands,
+            TriggerAutomaton automaton) {
+        this.version = version;
+        this.directives = directives;
+        this.triggerInfos = triggerInfos;
+        this.aiTriggerEnabled = aiTriggerEnabled;
+        this.triggerSymbol = triggerSymbol;
+        this.inlineAskPrefix = inlineAskPrefix;
+        this.askPattern = Pattern.compile("(?:/|\\s+|^)" + Pattern.quote(inlineAskPrefix) + "\\s+",
+                Pattern.CASE_INSENSITIVE);
+        this.inlineAskPattern = Pattern.compile("(.*)\\s*/" + Pattern.quote(inlineAskPrefix)
+                + "\\s+(.+)" + Pattern.quote(triggerSymbol) + "$");
+        this.inlineAskMarker = "/" + inlineAskPrefix;
+        this.commands = commands;
+        this.automaton = automaton;
+    }
+
+    /**
+     * @param version         the version of the new plan
+     * @param parsePatterns   all patterns, disabled ones are skipped
+     * @param commandPrefixes static and generative command prefixes
+     * @param appTriggerKeys  enabled app trigger words
+     * @param inlineAskPrefix the current inline ask prefix
+     */
+    public static ParsePlan build(long version, List<ParsePattern> parsePatterns,
+            Collection<String> commandPrefixes, List<String> appTriggerKeys, String inlineAskPrefix) {
+        List<ParseDirective> directives = new ArrayList<>();
+        List<ParsePattern> enabledPatterns = new ArrayList<>();
+        for (ParsePattern parsePattern : parsePatterns) {
+            // Only add enabled patterns
+            if (parsePattern.isEnabled()) {
+                directives.add(new ParseDirective(parsePattern.getPattern(),
+                        ParseResultFactory.of(parsePattern.getType())));
+                enabledPatterns.add(parsePattern);
+            }
+        }
+
+        List<TriggerListener.TriggerInfo> triggerInfos = TriggerListener.buildTriggerInfos(enabledPatterns);
+        boolean aiTriggerEnabled = false;
+        String triggerSymbol = DEFAULT_TRIGGER_SYMBOL;
+        for (TriggerListener.TriggerInfo info : triggerInfos) {
+            // Both CommandAI and RangeSelection are AI triggers
+            if (info.type == PatternType.CommandAI || info.type == PatternType.RangeSelection) {
+                triggerSymbol = info.startSymbol;
+                aiTriggerEnabled = true;
+            }
+        }
+
+        if (inlineAskPrefix == null || inlineAskPrefix.isEmpty()) {
+            inlineAskPrefix = tn.eluea.kgpt.instruction.command.InlineAskCommand.DEFAULT_PREFIX;
+        }
+
+        TriggerAutomaton automaton = buildAutomaton(enabledPatterns, triggerInfos, triggerSymbol,
+                appTriggerKeys);
+
+        return new ParsePlan(version,
+                Collections.unmodifiableList(directives),
+                Collections.unmodifiableList(triggerInfos),
+                aiTriggerEnabled,
+                triggerSymbol,
+                inlineAskPrefix,
+                new CommandTrie(commandPrefixes),
+                automaton);
+    }
+
+    /**
+     * Build the automaton from every trigger the parse path can react to.
+     * Patterns whose trailing literal can't be extracted disable filtering for
+     * pattern triggers, so the automaton never hides a match.
+     */
+    private static TriggerAutomaton buildAutomaton(List<ParsePattern> enabledPatterns,
+            List<TriggerListener.TriggerInfo> triggerInfos, String triggerSymbol,
+            List<String> appTriggerKeys) {
+        TriggerAutomaton.Builder builder = new TriggerAutomaton.Builder();
+        for (ParsePattern parsePattern : enabledPatterns) {
+            String suffix = TriggerAutomaton.literalSuffix(parsePattern.getPattern().pattern());
+            if (suffix == null) {
+                builder.always(TriggerAutomaton.CANDIDATE_TRIGGER);
+            } else {
+                builder.add(suffix, TriggerAutomaton.CANDIDATE_TRIGGER);
+            }
+        }
+        for (TriggerListener.TriggerInfo info : triggerInfos) {
+            builder.add(info.endSymbol, TriggerAutomaton.CANDIDATE_TRIGGER);
+        }
+        builder.add(triggerSymbol, TriggerAutomaton.CANDIDATE_INLINE_ASK);
+        for (String command : TextActionCommands.getCommandTriggers()) {
+            builder.add("$" + command, TriggerAutomaton.CANDIDATE_TEXT_ACTION);
+        }
+        for (String trigger : appTriggerKeys) {
+            builder.add(trigger, TriggerAutomaton.CANDIDATE_APP_TRIGGER);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+import tn.eluea.kgpt.ui.TextMirror;
+
+/**
+ * Runs TextParser on its own thread so the keyboard's UI thread never waits
+ * for the patterns.
+ *
+ * Snapshots are coalesced: only the latest one submitted before the parser
+ * gets to it is parsed, intermediate states of a typing or autocorrect burst
+ * are dropped. Results are delivered on the main thread together with the
+ * snapshot they were parsed from, so the receiver can check that the field
+ * hasn't changed since.
+ */
+public class ParseStage {
+
+    public interface Callback {
+        /**
+         * Called on the main thread for a result that ends at the snapshot's cursor.
+         */
+        void onParsed(TextMirror.Snapshot snapshot, ParseResult result);
+    }
+
+    private final TextParser textParser;
+    private final Callback callback;
+    private final HandlerThread parseThread;
+    private final Handler parseHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Latest snapshot not taken by the parser yet
+    private final AtomicReference<TextMirror.Snapshot> pending = new AtomicReference<>();
+    private final Runnable drainRunnable = this::drain;
+
+    public ParseStage(TextParser textParser, Callback callback) {
+        this.textParser = textParser;
+        this.callback = callback;
+        parseThread = new HandlerThread("KGPT_Parser");
+        parseThread.start();
+        parseHandler = new Handler(parseThread.getLooper());
+    }
+
+    /**
+     * Queue {@code snapshot} for parsing, replacing any snapshot still waiting.
+     */
+    public void submit(TextMirror.Snapshot snapshot) {
+        if (pending.getAndSet(snapshot) == null) {
+            // The parser only needs waking up if nothing was waiting already
+            parseHandler.post(drainRunnable);
+        }
+    }
+
+    private void drain() {
+        TextMirror.Snapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        String text = snapshot.text;
+        ParseResult result = textParser.parse(text, text.length(), snapshot.inserted);
+        if (result == null || result.indexEnd != text.length()) {
+            return;
+        }
+        mainHandler.post(() -> callback.onParsed(snapshot, result));
+    }
+
+    public void quit() {
+        pending.set(null);
+        parseHandler.removeCallbacks(drainRunnable);
+        parseThread.quitSafely();
+    }
+}
@@ -11,20 +11,20 @@ import android.os.Bundle;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.text.parse.ParsePattern;
-import tn.eluea.kgpt.text.parse.PatternType;
 import tn.eluea.kgpt.features.textactions.TextActionCommands;
 import tn.eluea.kgpt.text.parse.result.InlineAskParseResult;
 import tn.eluea.kgpt.text.parse.result.InlineAskParseResultFactory;
-import tn.eluea.kgpt.text.parse.result.InlineCommandParseResult;
-import tn.eluea.kgpt.text.parse.result.InlineCommandParseResultFactory;
-import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
 import tn.eluea.kgpt.text.parse.ParseDirective;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
 import tn.eluea.kgpt.text.parse.result.AppTriggerParseResult;
@@ -32,28 +32,38 @@ import tn.eluea.kgpt.text.parse.result.TextActionParseResult;
 import tn.eluea.kgpt.features.textactions.TextActionCommands;
 import tn.eluea.kgpt.ui.UiInteractor;
 import tn.eluea.kgpt.ui.lab.apptrigger.AppTrigger;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerIndex;
 import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
 import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.instruction.command.InlineAskCommand;
 
 public class TextParser implements ConfigChangeListener {
-    private final List<ParseDirective> directives = new ArrayList<>();
-    private String currentTriggerSymbol = "$";
-    private boolean aiTriggerEnabled = false;
     private boolean textActionsEnabled = false;
     private AppTriggerManager appTriggerManager = null;
-    private java.util.Set<String> availableCommands = new java.util.HashSet<>();
-    
+
+    // Inputs of the parse plan, only touched while holding the lock
+    private List<ParsePattern> parsePatterns = Collections.emptyList();
+    private final Set<String> availableCommands = new HashSet<>();
+    private List<String> appTriggerKeys = Collections.emptyList();
+    private String inlineAskPrefix = InlineAskCommand.getPrefix();
+
+    // Compiled once per configuration change and read by every keystroke
+    private final AtomicReference<ParsePlan> plan = new AtomicReference<>();
+    private final AtomicLong planVersion = new AtomicLong();
+
     // 新增：触发器监听器
-    private TriggerListener triggerListener;
+    private final TriggerListener triggerListener = new TriggerListener();
+
+    // Candidate filter for the keystroke path, reset whenever the plan changes.
+    // Only used by the thread that calls parse (see ParseStage)
+    private TriggerAutomaton.Scanner triggerScanner;
+    private TriggerAutomaton scannerAutomaton;
 
     public TextParser() {
         UiInteractor.getInstance().registerConfigChangeListener(this);
-        List<ParsePattern> parsePatterns = SPManager.getInstance().getParsePatterns();
-        updatePatterns(parsePatterns);
+        parsePatterns = SPManager.getInstance().getParsePatterns();
         loadAvailableCommands();
-        
-        // 初始化触发器监听器
-        triggerListener = new TriggerListener();
+        rebuildPlan();
     }
 
     private void loadAvailableCommands() {
@@ -67,6 +77,21 @@ public class TextParser implements ConfigChangeListener {
 
     public void setAppTriggerManager(AppTriggerManager manager) {
         this.appTriggerManager = manager;
+        if (manager != null) {
+            manager.setTriggersChangedListener(this::updateAppTriggerKeys);
+            updateAppTriggerKeys(manager.getAppTriggers());
+        }
+    }
+
+    private synchronized void updateAppTriggerKeys(List<AppTrigger> triggers) {
+        List<String> keys = new ArrayList<>();
+        for (AppTrigger trigger : triggers) {
+            if (trigger.isEnabled() && trigger.getTrigger() != null) {
+                keys.add(trigger.getTrigger().trim());
+            }
+        }
+        appTriggerKeys = keys;
+        rebuildPlan();
     }
 
     /**
@@ -76,85 +101,137 @@ public class TextParser implements ConfigChangeListener {
         this.textActionsEnabled = enabled;
     }
 
-    private void updatePatterns(List<ParsePattern> parsePatterns) {
-        directives.clear();
-        aiTriggerEnabled = false;
+    /**
+     * Called when the inline ask prefix may have changed, the plan is only
+     * rebuilt if it actually did.
+     */
+    public synchronized void setInlineAskPrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty() || prefix.equals(inlineAskPrefix)) {
+            return;
+        }
+        inlineAskPrefix = prefix;
+        rebuildPlan();
+    }
 
-        for (ParsePattern parsePattern : parsePatterns) {
-            // Only add enabled patterns
-            if (parsePattern.isEnabled()) {
-                directives.add(new ParseDirective(parsePattern.getPattern(),
-                        ParseResultFactory.of(parsePattern.getType())));
-            }
+    /**
+     * @return the plan the next parse will use
+     */
+    public ParsePlan getParsePlan() {
+        return plan.get();
+    }
 
-            // Track AI trigger symbol and enabled state
-            // Both CommandAI and RangeSelection should be considered as AI triggers
-            if (parsePattern.getType() == PatternType.CommandAI || parsePattern.getType() == PatternType.RangeSelection) {
-                String symbol = PatternType.regexToSymbol(parsePattern.getPattern().pattern());
-                if (symbol != null && !symbol.isEmpty()) {
-                    currentTriggerSymbol = symbol;
-                }
-                // Enable AI trigger if either CommandAI or RangeSelection is enabled
-                if ((parsePattern.getType() == PatternType.CommandAI || parsePattern.getType() == PatternType.RangeSelection) && parsePattern.isEnabled()) {
-                    aiTriggerEnabled = true;
-                }
-            }
+    private synchronized void updatePatterns(List<ParsePattern> parsePatterns) {
+        this.parsePatterns = parsePatterns;
+        rebuildPlan();
+    }
+
+    private synchronized void updateCommands() {
+        loadAvailableCommands();
+        rebuildPlan();
+    }
+
+    /**
+     * Compile a new plan from the current inputs and publish it.
+     */
+    private synchronized void rebuildPlan() {
+        plan.set(ParsePlan.build(planVersion.incrementAndGet(), parsePatterns, availableCommands,
+                appTriggerKeys, inlineAskPrefix));
+    }
+
+    private int scanTriggers(ParsePlan plan, CharSequence text, int cursor) {
+        TriggerAutomaton automaton = plan.automaton;
+        if (triggerScanner == null || scannerAutomaton != automaton) {
+            triggerScanner = automaton.newScanner();
+            scannerAutomaton = automaton;
         }
-        
-        // 更新触发器监听器
-        if (triggerListener != null) {
-            triggerListener.updateTriggers(parsePatterns);
+        return triggerScanner.update(text, cursor);
+    }
+
+    /**
+     * Cheap check for the thread that receives keystrokes: false when the text
+     * before {@code cursor} can't end with any trigger, so there is no need to
+     * hand it to {@link #parse}. Never allocates.
+     */
+    public boolean mayContainTrigger(CharSequence text, int cursor) {
+        if (text == null || cursor <= 0 || cursor > text.length()) {
+            return false;
         }
+        return plan.get().automaton.mayEndWithKey(text, cursor);
     }
 
-    // 存储上一次的文本，用于检测触发器输入
-    private String lastText = "";
-    
-    public ParseResult parse(String text, int cursor) {
+    /**
+     * Whether the text before {@code cursor} just got a leading signal of a
+     * request (a range start symbol or the inline ask marker), so the
+     * connection can be warmed up before the trigger ends. Never allocates.
+     */
+    public boolean isLeadingSignal(CharSequence text, int cursor, boolean inserted) {
+        return triggerListener.isLeadingSignal(plan.get(), text, cursor, inserted);
+    }
+
+    /**
+     * @param text     the text before the cursor (a window of the field, not a copy)
+     * @param cursor   the cursor position in {@code text}
+     * @param inserted whether text was just inserted at the cursor, only then
+     *                 a freshly typed trigger symbol fires
+     */
+    public ParseResult parse(CharSequence text, int cursor, boolean inserted) {
         // Bounds check to prevent StringIndexOutOfBoundsException
-        if (text == null || text.isEmpty()) {
-            lastText = text;
+        if (text == null || text.length() == 0) {
             return null;
         }
         cursor = Math.max(0, Math.min(cursor, text.length()));
 
-        String textBeforeCursor = text.substring(0, cursor);
+        // Read once, the whole parse runs against the same plan
+        ParsePlan plan = this.plan.get();
+
+        // Almost every keystroke ends here: the last character ends no trigger.
+        // This check and everything before it must not allocate (see
+        // TextParserAllocationTest)
+        if (!plan.automaton.mayEndWithKey(text, cursor)) {
+            return null;
+        }
+
+        // Only the characters typed since the last update are fed to the automaton,
+        // the parsers below run only when it reports a possible trigger
+        int candidates = scanTriggers(plan, text, cursor);
+        if (candidates == 0) {
+            return null;
+        }
+
+        String textBeforeCursor = text.subSequence(0, cursor).toString();
 
         // Check for app triggers first (if enabled)
-        android.util.Log.d("KGPT_AppTrigger", "parse() called with text: '" + textBeforeCursor + "'");
-        AppTriggerParseResult appTriggerResult = checkAppTrigger(textBeforeCursor);
-        if (appTriggerResult != null) {
-            lastText = text;
-            return appTriggerResult;
+        if ((candidates & TriggerAutomaton.CANDIDATE_APP_TRIGGER) != 0) {
+            android.util.Log.d("KGPT_AppTrigger", "parse() called with text: '" + textBeforeCursor + "'");
+            AppTriggerParseResult appTriggerResult = checkAppTrigger(textBeforeCursor);
+            if (appTriggerResult != null) {
+                return appTriggerResult;
+            }
         }
 
         // Check for text action commands (e.g., "text $rephrase")
-        TextActionParseResult textActionResult = checkTextAction(textBeforeCursor);
-        if (textActionResult != null) {
-            lastText = text;
-            return textActionResult;
+        if ((candidates & TriggerAutomaton.CANDIDATE_TEXT_ACTION) != 0) {
+            TextActionParseResult textActionResult = checkTextAction(textBeforeCursor);
+            if (textActionResult != null) {
+                return textActionResult;
+            }
         }
 
         // 使用触发器监听器进行智能匹配
-        if (triggerListener.isAiTriggerEnabled()) {
+        if (plan.aiTriggerEnabled
+                && (candidates & TriggerAutomaton.CANDIDATE_TRIGGER) != 0) {
             // 检查是否刚刚输入了触发器
-            if (triggerListener.shouldCheckForTrigger(lastText, text, cursor)) {
-                ParseResult triggerResult = triggerListener.parseOnTrigger(text, cursor);
+            if (triggerListener.shouldCheckForTrigger(plan, textBeforeCursor, inserted)) {
+                ParseResult triggerResult = triggerListener.parseOnTrigger(plan, textBeforeCursor, cursor);
                 if (triggerResult != null) {
-                    lastText = text;
                     return triggerResult;
                 }
             }
             
             // 检查 /ask 命令（保持原有逻辑）
-            String prefix = tn.eluea.kgpt.instruction.command.InlineAskCommand.getPrefix();
-            // Regex: Whitespace OR start of line, optional slash, then 'ask', then
-            // whitespace
-            // This is safer than previous slash-enforced logic
-            String askPatternStr = "(?:/|\\s+|^)" + java.util.regex.Pattern.quote(prefix) + "\\s+";
-            java.util.regex.Pattern askPattern = java.util.regex.Pattern.compile(askPatternStr,
-                    java.util.regex.Pattern.CASE_INSENSITIVE);
-            java.util.regex.Matcher askMatcher = askPattern.matcher(textBeforeCursor);
+            // Whitespace OR start of line, optional slash, then the inline ask
+            // prefix, then whitespace
+            java.util.regex.Matcher askMatcher = plan.askPattern.matcher(textBeforeCursor);
 
             int lastAskIndex = -1;
             int lastContentStart = -1;
@@ -181,30 +258,29 @@ public class TextParser implements ConfigChangeListener {
                 String scopedText = textBeforeCursor.substring(lastContentStart);
 
                 // Check if this scoped text matches any directive
-                for (ParseDirective directive : directives) {
+                for (ParseDirective directive : plan.directives) {
                     // Pass 'lastAskIndex' as startOverride so the Result consumes the "/ask ..."
                     // part
                     // Pass 'lastContentStart' as offset for the scoped text
                     ParseResult result = directive.parseWithStartOverride(scopedText, lastContentStart, lastAskIndex);
                     if (result != null) {
-                        lastText = text;
                         return result;
                     }
                 }
             }
+        }
 
+        if (plan.aiTriggerEnabled
+                && (candidates & TriggerAutomaton.CANDIDATE_INLINE_ASK) != 0) {
             // Fallback to strict InlineAskParseResultFactory if generic shielding didn't
             // match anything
             // This handles cases specific to the Factory implementation if any
-            InlineAskParseResult inlineAskResult = InlineAskParseResultFactory.parse(
-                    textBeforeCursor, triggerListener.getCurrentTriggerSymbol());
+            InlineAskParseResult inlineAskResult = InlineAskParseResultFactory.parse(textBeforeCursor, plan);
             if (inlineAskResult != null) {
-                lastText = text;
                 return inlineAskResult;
             }
         }
 
-        lastText = text;
         return null;
     }
 
@@ -212,86 +288,29 @@ public class TextParser implements ConfigChangeListener {
      * Check if the text ends with an app trigger
      */
     private AppTriggerParseResult checkAppTrigger(String text) {
-        android.util.Log.d("KGPT_AppTrigger", "checkAppTrigger() - appTriggerManager: " + (appTriggerManager != null));
-
-        if (appTriggerManager == null || !appTriggerManager.isFeatureEnabled()) {
-            android.util.Log.d("KGPT_AppTrigger", "Feature disabled or manager null. Enabled: " +
-                    (appTriggerManager != null ? appTriggerManager.isFeatureEnabled() : "null"));
-            return null;
-        }
-
-        List<AppTrigger> triggers = appTriggerManager.getAppTriggers();
-        android.util.Log.d("KGPT_AppTrigger", "Loaded " + triggers.size() + " triggers");
-        for (AppTrigger t : triggers) {
-            android.util.Log.d("KGPT_AppTrigger", "  - Trigger: '" + t.getTrigger() + "' enabled: " + t.isEnabled());
-        }
-
-        if (triggers.isEmpty()) {
-            return null;
-        }
-
-        // Don't process empty text
-        if (text == null || text.isEmpty()) {
+        if (appTriggerManager == null || text == null || text.isEmpty()
+                || !appTriggerManager.isFeatureEnabled()) {
             return null;
         }
 
-        String trimmedText = text.trim();
-        if (trimmedText.isEmpty()) {
+        // Matches the trimmed text's tail, the trigger must start a word
+        AppTriggerIndex.Match match = appTriggerManager.getIndex().match(text, text.length());
+        if (match == null) {
             return null;
         }
 
-        // Check if the trimmed text ends with any trigger
-        // This handles both "trigger" and "trigger " cases
-        String lowerTrimmed = trimmedText.toLowerCase(java.util.Locale.ROOT);
-        android.util.Log.d("KGPT_AppTrigger", "Checking text: '" + lowerTrimmed + "'");
-
-        for (AppTrigger trigger : triggers) {
-            if (!trigger.isEnabled()) {
-                continue;
-            }
-
-            String triggerText = trigger.getTrigger().toLowerCase(java.util.Locale.ROOT);
-            android.util.Log.d("KGPT_AppTrigger", "Comparing with trigger: '" + triggerText + "'");
-
-            boolean match = false;
-            if (lowerTrimmed.equals(triggerText)) {
-                match = true;
-            } else if (lowerTrimmed.endsWith(triggerText)) {
-                // Check word boundary
-                char charBefore = lowerTrimmed.charAt(lowerTrimmed.length() - triggerText.length() - 1);
-                if (!Character.isLetterOrDigit(charBefore)) {
-                    match = true;
-                }
-            }
-
-            if (match) {
-                android.util.Log.d("KGPT_AppTrigger", "MATCH FOUND! trigger: " + triggerText);
-
-                // Find the actual position in original text
-                int triggerStartInTrimmed = trimmedText.length() - trigger.getTrigger().length();
-
-                // Find where trimmed text starts in original
-                int trimStart = 0;
-                while (trimStart < text.length() && Character.isWhitespace(text.charAt(trimStart))) {
-                    trimStart++;
-                }
-
-                int wordStart = trimStart + triggerStartInTrimmed;
-
-                // Return result that removes from word start to end of text
-                return new AppTriggerParseResult(
-                        java.util.Collections.singletonList(trigger.getTrigger()),
-                        wordStart,
-                        text.length(),
-                        trigger.getTrigger(),
-                        trigger.getPackageName(),
-                        trigger.getActivityName(),
-                        trigger.getAppName());
-            }
-        }
-
-        android.util.Log.d("KGPT_AppTrigger", "No match found");
-        return null;
+        AppTrigger trigger = match.trigger;
+        android.util.Log.d("KGPT_AppTrigger", "MATCH FOUND! trigger: " + trigger.getTrigger());
+
+        // Return result that removes from word start to end of text
+        return new AppTriggerParseResult(
+                java.util.Collections.singletonList(trigger.getTrigger()),
+                match.start,
+                text.length(),
+                trigger.getTrigger(),
+                trigger.getPackageName(),
+                trigger.getActivityName(),
+                trigger.getAppName());
     }
 
     /**
@@ -328,7 +347,7 @@ public class TextParser implements ConfigChangeListener {
 
     @Override
     public void onCommandsChange(String commandsRaw) {
-        loadAvailableCommands();
+        updateCommands();
     }
 
     @Override
@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over every trigger suffix the parser reacts to
+ * (pattern end symbols, $-commands, the inline-ask symbol and app triggers).
+ *
+ * The automaton only answers "could the text before the cursor end with a
+ * trigger of kind X?". It never produces parse results: a candidate is handed
+ * to the regular parsing code, which makes the final decision. Keys are
+ * matched case-insensitively and any whitespace matches any whitespace, and
+ * trailing whitespace after a key keeps it a candidate, so the answer is
+ * always a superset of what the parsers can match.
+ */
+public final class TriggerAutomaton {
+    /** A pattern end symbol (AI trigger, formats, web search, /ask directives). */
+    public static final int CANDIDATE_TRIGGER = 1;
+    /** A $-command from {@link tn.eluea.kgpt.features.textactions.TextActionCommands}. */
+    public static final int CANDIDATE_TEXT_ACTION = 1 << 1;
+    /** The current AI trigger symbol, used by the inline /ask fallback. */
+    public static final int CANDIDATE_INLINE_ASK = 1 << 2;
+    /** An app trigger word. */
+    public static final int CANDIDATE_APP_TRIGGER = 1 << 3;
+
+    private static final char WHITESPACE = ' ';
+
+    private final int[] mAsciiClasses = new int[128];
+    private final char[] mWideChars;
+    private final int[] mWideClasses;
+    private final int mClassCount;
+    private final int[] mTransitions;
+    private final int[] mOutputs;
+    private final int mAlwaysMask;
+    private final int mMaxKeyLength;
+
+    // Folded last character of every key: ASCII as a bitset, the rest sorted
+    private final long[] mFinalAscii = new long[2];
+    private final char[] mFinalWide;
+
+    private TriggerAutomaton(Builder builder) {
+        // Assign a column to every distinct folded character used by a key
+        char[] alphabet = new char[16];
+        int alphabetSize = 0;
+        for (String key : builder.mKeys) {
+            for (int i = 0; i < key.length(); i++) {
+                char c = fold(key.charAt(i));
+                if (indexOf(alphabet, alphabetSize, c) < 0) {
+                    if (alphabetSize == alphabet.length) {
+                        alphabet = Arrays.copyOf(alphabet, alphabetSize * 2);
+                    }
+                    alphabet[alphabetSize++] = c;
+                }
+            }
+        }
+        Arrays.sort(alphabet, 0, alphabetSize);
+
+        int wideCount = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (alphabet[i] >= 128) {
+                wideCount++;
+            }
+        }
+        mWideChars = new char[wideCount];
+        mWideClasses = new int[wideCount];
+        for (int i = 0, w = 0; i < alphabetSize; i++) {
+            // Column 0 is reserved for characters that appear in no key
+            char c = alphabet[i];
+            if (c < 128) {
+                mAsciiClasses[c] = i + 1;
+            } else {
+                mWideChars[w] = c;
+                mWideClasses[w++] = i + 1;
+            }
+        }
+        mClassCount = alphabetSize + 1;
+
+        // Build the goto trie
+        int maxStates = 1;
+        int maxKeyLength = 0;
+        for (String key : builder.mKeys) {
+            maxStates += key.length();
+            maxKeyLength = Math.max(maxKeyLength, key.length());
+        }
+        int[] trie = new int[maxStates * mClassCount];
+        Arrays.fill(trie, -1);
+        int[] outputs = new int[maxStates];
+        int stateCount = 1;
+        for (int k = 0; k < builder.mKeys.size(); k++) {
+            String key = builder.mKeys.get(k);
+            int state = 0;
+            for (int i = 0; i < key.length(); i++) {
+                int cls = classOf(fold(key.charAt(i)));
+                int next = trie[state * mClassCount + cls];
+                if (next < 0) {
+                    next = stateCount++;
+                    trie[state * mClassCount + cls] = next;
+                }
+                state = next;
+            }
+            outputs[state] |= builder.mKinds.get(k);
+        }
+
+        // Turn it into a dense DFA with breadth-first failure links
+        int[] transitions = new int[stateCount * mClassCount];
+        int[] fail = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int cls = 0; cls < mClassCount; cls++) {
+            int next = trie[cls];
+            if (next > 0) {
+                transitions[cls] = next;
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] |= outputs[fail[state]];
+            for (int cls = 0; cls < mClassCount; cls++) {
+                int next = trie[state * mClassCount + cls];
+                if (next > 0) {
+                    transitions[state * mClassCount + cls] = next;
+                    fail[next] = transitions[fail[state] * mClassCount + cls];
+                    queue[tail++] = next;
+                } else {
+                    transitions[state * mClassCount + cls] = transitions[fail[state] * mClassCount + cls];
+                }
+            }
+        }
+        // Characters outside of every key always go back to the root
+        for (int state = 0; state < stateCount; state++) {
+            transitions[state * mClassCount] = 0;
+        }
+
+        // Final characters, for the constant time reject in mayEndWithKey
+        char[] finalWide = new char[builder.mKeys.size()];
+        int finalWideCount = 0;
+        for (String key : builder.mKeys) {
+            char c = fold(key.charAt(key.length() - 1));
+            if (c < 128) {
+                mFinalAscii[c >> 6] |= 1L << c;
+            } else if (indexOf(finalWide, finalWideCount, c) < 0) {
+                finalWide[finalWideCount++] = c;
+            }
+        }
+        mFinalWide = Arrays.copyOf(finalWide, finalWideCount);
+        Arrays.sort(mFinalWide);
+
+        mTransitions = transitions;
+        mOutputs = Arrays.copyOf(outputs, stateCount);
+        mAlwaysMask = builder.mAlwaysMask;
+        mMaxKeyLength = maxKeyLength;
+    }
+
+    /**
+     * Kinds that are reported for every text because their keys are unknown
+     * (e.g. a custom pattern whose trailing literal can't be extracted).
+     */
+    public int getAlwaysMask() {
+        return mAlwaysMask;
+    }
+
+    public int getMaxKeyLength() {
+        return mMaxKeyLength;
+    }
+
+    /**
+     * Constant time pre-check for the keystroke path: false when the last
+     * non-whitespace character before {@code cursor} ends no key, in which case
+     * no scanner can report a candidate either. Never allocates.
+     */
+    public boolean mayEndWithKey(CharSequence text, int cursor) {
+        if (mAlwaysMask != 0) {
+            return true;
+        }
+        if (cursor <= 0) {
+            return false;
+        }
+        char c = fold(text.charAt(cursor - 1));
+        if (isFinal(c)) {
+            return true;
+        }
+        if (c != WHITESPACE) {
+            return false;
+        }
+        // Trailing whitespace keeps the key before it a candidate
+        int i = cursor - 1;
+        while (i > 0) {
+            c = fold(text.charAt(i - 1));
+            if (c != WHITESPACE) {
+                return isFinal(c);
+            }
+            i--;
+        }
+        return false;
+    }
+
+    private boolean isFinal(char folded) {
+        if (folded < 128) {
+            return (mFinalAscii[folded >> 6] & (1L << folded)) != 0;
+        }
+        return Arrays.binarySearch(mFinalWide, folded) >= 0;
+    }
+
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    private int classOf(char folded) {
+        if (folded < 128) {
+            return mAsciiClasses[folded];
+        }
+        int index = Arrays.binarySearch(mWideChars, folded);
+        return index >= 0 ? mWideClasses[index] : 0;
+    }
+
+    private static int indexOf(char[] chars, int size, char c) {
+        for (int i = 0; i < size; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            return WHITESPACE;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Extracts the literal text a regex must end with, or null when that can't
+     * be determined safely (alternations, quantified or non-literal endings).
+     */
+    public static String literalSuffix(String regex) {
+        if (regex == null || regex.length() < 2 || !regex.endsWith("$")
+                || regex.contains("\\Q") || hasMultilineFlag(regex) || hasTopLevelAlternation(regex)) {
+            return null;
+        }
+        int end = regex.length() - 1;
+        if (end > 0 && regex.charAt(end - 1) == '\\' && !isEscaped(regex, end - 1)) {
+            // The final "$" is itself escaped, so there is no end anchor
+            return null;
+        }
+
+        StringBuilder suffix = new StringBuilder();
+        int i = end - 1;
+        while (i >= 0) {
+            char c = regex.charAt(i);
+            if (i > 0 && regex.charAt(i - 1) == '\\' && !isEscaped(regex, i - 1)) {
+                // "\x": only escaped punctuation is a literal, "\s", "\d"... are classes
+                if (Character.isLetterOrDigit(c)) {
+                    break;
+                }
+                suffix.insert(0, c);
+                i -= 2;
+            } else if ("\\.^$|?*+()[]{}".indexOf(c) >= 0) {
+                if (c == '?' || c == '*' || c == '+' || c == '}') {
+                    // The previous literal is optional or repeated, drop it
+                    return suffix.length() > 0 ? suffix.toString() : null;
+                }
+                break;
+            } else {
+                suffix.insert(0, c);
+                i--;
+            }
+        }
+        return suffix.length() > 0 ? suffix.toString() : null;
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return (backslashes & 1) == 1;
+    }
+
+    private static boolean hasMultilineFlag(String regex) {
+        // With (?m) the "$" anchor also matches before any line break
+        for (int i = regex.indexOf("(?"); i >= 0; i = regex.indexOf("(?", i + 2)) {
+            for (int j = i + 2; j < regex.length() && Character.isLetter(regex.charAt(j)); j++) {
+                if (regex.charAt(j) == 'm') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Builder {
+        private final List<String> mKeys = new ArrayList<>();
+        private final List<Integer> mKinds = new ArrayList<>();
+        private int mAlwaysMask = 0;
+
+        public Builder add(String key, int kind) {
+            if (key == null || key.isEmpty()) {
+                return this;
+            }
+            mKeys.add(key);
+            mKinds.add(kind);
+            return this;
+        }
+
+        /**
+         * Report {@code kind} for every text, used when a key can't be extracted.
+         */
+        public Builder always(int kind) {
+            mAlwaysMask |= kind;
+            return this;
+        }
+
+        public TriggerAutomaton build() {
+            return new TriggerAutomaton(this);
+        }
+    }
+
+    /**
+     * Incremental matcher state for one text field.
+     *
+     * {@link #update(CharSequence, int)} feeds only the characters added since
+     * the previous call when the text before the previous cursor is unchanged,
+     * and otherwise resynchronizes from the last few characters. Since the
+     * state only depends on the last {@link #getMaxKeyLength()} characters, the
+     * work per update never depends on the length of the text.
+     */
+    public final class Scanner {
+        private int mState = 0;
+        private int mSettledMask = 0;
+        private int mSettledAt = -1;
+        private int mCursor = -1;
+
+        // Copy of the text the current state was computed from
+        private char[] mWindow = new char[Math.max(16, mMaxKeyLength * 2)];
+        private int mWindowStart = 0;
+
+        /**
+         * @return the candidate kinds for the text before {@code cursor}
+         */
+        public int update(CharSequence text, int cursor) {
+            if (mCursor >= 0 && cursor >= mCursor && cursor - mCursor <= mMaxKeyLength
+                    && isWindowIntact(text)) {
+                for (int i = mCursor; i < cursor; i++) {
+                    feed(text.charAt(i), i);
+                }
+            } else {
+                resync(text, cursor);
+            }
+            mCursor = cursor;
+            saveWindow(text, cursor);
+            return candidates();
+        }
+
+        public int candidates() {
+            int mask = mOutputs[mState] | mAlwaysMask;
+            if (mSettledAt >= 0 && mSettledAt < mCursor - 1) {
+                // Trailing whitespace: keys ending at the last word are still candidates
+                mask |= mSettledMask;
+            }
+            return mask;
+        }
+
+        public void reset() {
+            mState = 0;
+            mSettledMask = 0;
+            mSettledAt = -1;
+            mCursor = -1;
+        }
+
+        private void feed(char c, int index) {
+            char folded = fold(c);
+            mState = mTransitions[mState * mClassCount + classOf(folded)];
+            if (folded != WHITESPACE) {
+                mSettledMask = mOutputs[mState];
+                mSettledAt = index;
+            }
+        }
+
+        private void resync(CharSequence text, int cursor) {
+            mState = 0;
+            mSettledMask = 0;
+            mSettledAt = -1;
+
+            int settled = cursor;
+            while (settled > 0 && fold(text.charAt(settled - 1)) == WHITESPACE) {
+                settled--;
+            }
+            for (int i = Math.max(0, settled - mMaxKeyLength); i < settled; i++) {
+                feed(text.charAt(i), i);
+            }
+            if (cursor - settled > mMaxKeyLength) {
+                mState = 0;
+                for (int i = cursor - mMaxKeyLength; i < cursor; i++) {
+                    feed(text.charAt(i), i);
+                }
+            } else {
+                for (int i = settled; i < cursor; i++) {
+                    feed(text.charAt(i), i);
+                }
+            }
+        }
+
+        private int windowStart(int cursor) {
+            int start = cursor - mMaxKeyLength;
+            if (mSettledAt >= 0) {
+                start = Math.min(start, mSettledAt + 1 - mMaxKeyLength);
+            }
+            return Math.max(0, start);
+        }
+
+        private void saveWindow(CharSequence text, int cursor) {
+            int start = windowStart(cursor);
+            int length = cursor - start;
+            if (length > mWindow.length) {
+                mWindow = new char[length * 2];
+            }
+            for (int i = 0; i < length; i++) {
+                mWindow[i] = text.charAt(start + i);
+            }
+            mWindowStart = start;
+        }
+
+        private boolean isWindowIntact(CharSequence text) {
+            if (text.length() < mCursor) {
+                return false;
+            }
+            for (int i = mWindowStart; i < mCursor; i++) {
+                if (text.charAt(i) != mWindow[i - mWindowStart]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import android.util.Log;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
-import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.text.parse.ParsePattern;
 import tn.eluea.kgpt.text.parse.PatternType;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
@@ -20,10 +19,6 @@ import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
 public class TriggerListener {
     private static final String TAG = "KGPT_TriggerListener";
     
-    private final List<TriggerInfo> triggerInfos = new ArrayList<>();
-    private String currentTriggerSymbol = "$";
-    private boolean aiTriggerEnabled = false;
-    
     public static class TriggerInfo {
         public final String startSymbol;
         public final String endSymbol;
@@ -46,133 +41,47 @@ public class TriggerListener {
         }
     }
     
-    public TriggerListener() {
-        // 初始化默认触发器
-        updateTriggers(SPManager.getInstance().getParsePatterns());
-    }
-    
-    public void updateTriggers(List<ParsePattern> parsePatterns) {
-        triggerInfos.clear();
-        aiTriggerEnabled = false;
-        
-        for (ParsePattern parsePattern : parsePatterns) {
-            if (parsePattern.isEnabled()) {
-                PatternType type = parsePattern.getType();
-                String startSymbol = null;
-                String endSymbol = null;
+    /**
+     * 从已启用的模式构建触发器信息，由 ParsePlan 在配置变化时调用
+     */
+    public static List<TriggerInfo> buildTriggerInfos(List<ParsePattern> enabledPatterns) {
+        List<TriggerInfo> triggerInfos = new ArrayList<>();
+        
+        for (ParsePattern parsePattern : enabledPatterns) {
+            PatternType type = parsePattern.getType();
+            String regex = parsePattern.getPattern().pattern();
+            String startSymbol;
+            String endSymbol;
+            
+            if (type == PatternType.RangeSelection) {
+                // 尝试提取开始符和结束符
+                startSymbol = PatternType.rangeStartSymbol(regex);
+                endSymbol = PatternType.rangeEndSymbol(regex);
                 
-                if (type == PatternType.RangeSelection) {
-                    // 尝试提取开始符和结束符
-                    String regex = parsePattern.getPattern().pattern();
-                    startSymbol = extractStartSymbolFromRangeRegex(regex);
-                    endSymbol = extractEndSymbolFromRangeRegex(regex);
-                    
-                    // 如果无法提取，则使用默认符号
-                    if (startSymbol == null || startSymbol.isEmpty()) {
-                        startSymbol = type.defaultSymbol;
-                    }
-                    if (endSymbol == null || endSymbol.isEmpty()) {
-                        endSymbol = type.defaultSymbol;
-                    }
-                } else {
-                    // 非范围选择模式，开始符和结束符相同
-                    startSymbol = PatternType.regexToSymbol(parsePattern.getPattern().pattern());
-                    endSymbol = startSymbol;
+                // 如果无法提取，则使用默认符号
+                if (startSymbol == null || startSymbol.isEmpty()) {
+                    startSymbol = type.defaultSymbol;
                 }
-                
-                if (startSymbol != null && !startSymbol.isEmpty()) {
-                    if (type == PatternType.CommandAI || type == PatternType.RangeSelection) {
-                        currentTriggerSymbol = startSymbol;
-                        aiTriggerEnabled = true;
-                    }
-                    
-                    triggerInfos.add(new TriggerInfo(
-                        startSymbol,
-                        endSymbol,
-                        parsePattern.getPattern(),
-                        ParseResultFactory.of(type),
-                        type
-                    ));
+                if (endSymbol == null || endSymbol.isEmpty()) {
+                    endSymbol = type.defaultSymbol;
                 }
+            } else {
+                // 非范围选择模式，开始符和结束符相同
+                startSymbol = PatternType.regexToSymbol(regex);
+                endSymbol = startSymbol;
+            }
+            
+            if (startSymbol != null && !startSymbol.isEmpty()) {
+                triggerInfos.add(new TriggerInfo(
+                    startSymbol,
+                    endSymbol,
+                    parsePattern.getPattern(),
+                    ParseResultFactory.of(type),
+                    type
+                ));
             }
         }
-    }
-    
-    /**
-     * 从范围选择正则表达式中提取开始符
-     */
-    private String extractStartSymbolFromRangeRegex(String regex) {
-        if (regex == null || regex.isEmpty()) {
-            return null;
-        }
-        
-        // 检查是否是不同开始符和结束符的模式: startSymbol((?s).+?)endSymbol$
-        java.util.regex.Pattern rangePattern = java.util.regex.Pattern.compile("^(.+?)\\(\\(\\?s\\)\\.\\+\\?\\)(.+?)\\$$");
-        java.util.regex.Matcher rangeMatcher = rangePattern.matcher(regex);
-        if (rangeMatcher.find()) {
-            return unescapeRegex(rangeMatcher.group(1));
-        }
-        
-        // 检查是否是相同符号的模式: \$((?s).+?)\$$
-        java.util.regex.Pattern sameSymbolPattern = java.util.regex.Pattern.compile("^(\\\\.)(\\(\\(\\?s\\)\\.\\+\\?\\))\\\\\\1\\$$");
-        java.util.regex.Matcher sameSymbolMatcher = sameSymbolPattern.matcher(regex);
-        if (sameSymbolMatcher.find()) {
-            return sameSymbolMatcher.group(1).substring(1); // 移除转义反斜杠
-        }
-        
-        // 尝试通用方法
-        return PatternType.regexToSymbol(regex);
-    }
-    
-    /**
-     * 从范围选择正则表达式中提取结束符
-     */
-    private String extractEndSymbolFromRangeRegex(String regex) {
-        if (regex == null || regex.isEmpty()) {
-            return null;
-        }
-        
-        // 检查是否是不同开始符和结束符的模式: startSymbol((?s).+?)endSymbol$
-        java.util.regex.Pattern rangePattern = java.util.regex.Pattern.compile("^(.+?)\\(\\(\\?s\\)\\.\\+\\?\\)(.+?)\\$$");
-        java.util.regex.Matcher rangeMatcher = rangePattern.matcher(regex);
-        if (rangeMatcher.find()) {
-            return unescapeRegex(rangeMatcher.group(2));
-        }
-        
-        // 检查是否是相同符号的模式: \$((?s).+?)\$$
-        java.util.regex.Pattern sameSymbolPattern = java.util.regex.Pattern.compile("^(\\\\.)(\\(\\(\\?s\\)\\.\\+\\?\\))\\\\\\1\\$$");
-        java.util.regex.Matcher sameSymbolMatcher = sameSymbolPattern.matcher(regex);
-        if (sameSymbolMatcher.find()) {
-            return sameSymbolMatcher.group(1).substring(1); // 移除转义反斜杠
-        }
-        
-        // 尝试通用方法（返回开始符作为结束符）
-        return PatternType.regexToSymbol(regex);
-    }
-    
-    /**
-     * 反转义正则表达式中的特殊字符
-     */
-    private String unescapeRegex(String escaped) {
-        if (escaped == null || escaped.isEmpty()) {
-            return escaped;
-        }
-        
-        // Replace escaped special characters
-        return escaped.replace("\\$", "$")
-                     .replace("\\.", ".")
-                     .replace("\\^", "^")
-                     .replace("\\*", "*")
-                     .replace("\\+", "+")
-                     .replace("\\?", "?")
-                     .replace("\\(", "(")
-                     .replace("\\)", ")")
-                     .replace("\\[", "[")
-                     .replace("\\]", "]")
-                     .replace("\\{", "{")
-                     .replace("\\}", "}")
-                     .replace("\\|", "|")
-                     .replace("\\\\", "\\");
+        return triggerInfos;
     }
     
     /**
@@ -196,60 +105,68 @@ public class TriggerListener {
     
     /**
      * 检查是否刚刚输入了触发器
-     * @param oldText 之前的文本
-     * @param newText 新的文本
-     * @param cursor 光标位置
+     * @param plan 当前的解析计划
+     * @param textBeforeCursor 光标前的文本
+     * @param inserted 本次更新是否在光标处插入了文本
      * @return 是否检测到触发器输入
      */
-    public boolean shouldCheckForTrigger(String oldText, String newText, int cursor) {
-        if (newText == null || cursor <= 0) {
-            return false;
-        }
-        
-        // 检查是否有字符被添加
-        if (oldText != null && newText.length() <= oldText.length()) {
+    public boolean shouldCheckForTrigger(ParsePlan plan, String textBeforeCursor, boolean inserted) {
+        // 只有新输入的文本才能触发（光标移动或删除不会）
+        if (textBeforeCursor == null || textBeforeCursor.isEmpty() || !inserted) {
             return false;
         }
         
-        // 获取光标前的字符
-        String textBeforeCursor = newText.substring(0, cursor);
-        
         // 检查每个触发器
-        for (TriggerInfo info : triggerInfos) {
+        for (TriggerInfo info : plan.triggerInfos) {
             // 对于范围选择模式，只在输入结束符时触发
             if (info.isRangeSelection) {
                 if (textBeforeCursor.endsWith(info.endSymbol)) {
-                    // 确保这是新输入的结束符
-                    String oldTextBeforeCursor = "";
-                    if (oldText != null) {
-                        oldTextBeforeCursor = oldText.substring(0, Math.min(oldText.length(), cursor));
-                    }
-                    if (!oldTextBeforeCursor.endsWith(info.endSymbol)) {
-                        return true;
-                    }
-                }
-            } else {
-                // 对于普通触发器，检查是否刚输入
-                if (isTriggerJustEntered(textBeforeCursor, info.endSymbol)) {
-                    // 确保这是新输入的触发器
-                    String oldTextBeforeCursor = "";
-                    if (oldText != null) {
-                        oldTextBeforeCursor = oldText.substring(0, Math.min(oldText.length(), cursor));
-                    }
-                    if (!oldTextBeforeCursor.endsWith(info.endSymbol)) {
-                        return true;
-                    }
+                    return true;
                 }
+            } else if (isTriggerJustEntered(textBeforeCursor, info.endSymbol)) {
+                return true;
             }
         }
         
         return false;
     }
     
+    /**
+     * 检查是否刚刚输入了请求的前导信号：范围选择的起始符或内联提问前缀。
+     * 在按键线程调用，不分配内存
+     */
+    public boolean isLeadingSignal(ParsePlan plan, CharSequence text, int cursor, boolean inserted) {
+        if (!inserted || text == null || cursor <= 0 || cursor > text.length()) {
+            return false;
+        }
+        // 下标遍历，不创建迭代器
+        List<TriggerInfo> infos = plan.triggerInfos;
+        for (int i = 0; i < infos.size(); i++) {
+            TriggerInfo info = infos.get(i);
+            if (info.isRangeSelection && endsWith(text, cursor, info.startSymbol)) {
+                return true;
+            }
+        }
+        return endsWith(text, cursor, plan.inlineAskMarker);
+    }
+
+    private static boolean endsWith(CharSequence text, int end, String suffix) {
+        if (suffix == null || suffix.isEmpty() || suffix.length() > end) {
+            return false;
+        }
+        int offset = end - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (text.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 解析文本，只在触发器被输入时进行
      */
-    public ParseResult parseOnTrigger(String text, int cursor) {
+    public ParseResult parseOnTrigger(ParsePlan plan, String text, int cursor) {
         if (text == null || text.isEmpty() || cursor <= 0) {
             return null;
         }
@@ -257,7 +174,7 @@ public class TriggerListener {
         String textBeforeCursor = text.substring(0, cursor);
         
         // 首先检查范围选择模式（需要特殊处理）
-        for (TriggerInfo info : triggerInfos) {
+        for (TriggerInfo info : plan.triggerInfos) {
             if (info.isRangeSelection) {
                 ParseResult result = parseRangeSelection(textBeforeCursor, info);
                 if (result != null) {
@@ -267,7 +184,7 @@ public class TriggerListener {
         }
         
         // 然后检查普通触发器模式
-        for (TriggerInfo info : triggerInfos) {
+        for (TriggerInfo info : plan.triggerInfos) {
             if (!info.isRangeSelection) {
                 ParseResult result = parseSingleLineTrigger(textBeforeCursor, info);
                 if (result != null) {
@@ -375,12 +292,4 @@ public class TriggerListener {
         
         return info.factory.getParseResult(groups, lineStart, text.length());
     }
-    
-    public boolean isAiTriggerEnabled() {
-        return aiTriggerEnabled;
-    }
-    
-    public String getCurrentTriggerSymbol() {
-        return currentTriggerSymbol;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text.parse;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable trie of command prefixes, matched ASCII case-insensitively like
+ * the {@code (?i)} alternation it replaces.
+ *
+ * Besides plain lookups it finds inline commands ("Some text /command prompt$")
+ * with the exact semantics of
+ * {@code (?si)(.*)(?:\s+/|\s+|(?<=^)/|(?<=^))(cmd1|cmd2|...)\s+(.+)SYM$}
+ * (commands sorted longest first), without building or compiling that regex.
+ */
+public final class CommandTrie {
+
+    /**
+     * Where an inline command was found.
+     */
+    public static final class Match {
+        /** The command as it was registered, not as it was typed. */
+        public final String command;
+        /** End of the preserved text before the separator (group 1). */
+        public final int preservedEnd;
+        /** Start of the command as typed (group 2). */
+        public final int commandStart;
+        public final int commandEnd;
+        /** The prompt between the command and the symbol (group 3). */
+        public final int promptStart;
+        public final int promptEnd;
+        /** End of the whole match, before a final line terminator if any. */
+        public final int matchEnd;
+
+        Match(String command, int preservedEnd, int commandStart, int commandEnd,
+                int promptStart, int promptEnd, int matchEnd) {
+            this.command = command;
+            this.preservedEnd = preservedEnd;
+            this.commandStart = commandStart;
+            this.commandEnd = commandEnd;
+            this.promptStart = promptStart;
+            this.promptEnd = promptEnd;
+            this.matchEnd = matchEnd;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        // First registered spelling ending here, null if no command ends here
+        String command;
+    }
+
+    private final Node root = new Node();
+    private final int maxLength;
+    private final int size;
+
+    public CommandTrie(Collection<String> commands) {
+        int max = 0;
+        int count = 0;
+        if (commands != null) {
+            for (String command : commands) {
+                if (command == null || command.isEmpty()) {
+                    continue;
+                }
+                Node node = root;
+                for (int i = 0; i < command.length(); i++) {
+                    char c = fold(command.charAt(i));
+                    Node next = node.children.get(c);
+                    if (next == null) {
+                        next = new Node();
+                        node.children.put(c, next);
+                    }
+                    node = next;
+                }
+                if (node.command == null) {
+                    node.command = command;
+                    count++;
+                }
+                max = Math.max(max, command.length());
+            }
+        }
+        maxLength = max;
+        size = count;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the registered command equal to {@code text} ignoring case, or null
+     */
+    public String get(CharSequence text) {
+        Node node = root;
+        for (int i = 0; i < text.length() && node != null; i++) {
+            node = node.children.get(fold(text.charAt(i)));
+        }
+        return node == null ? null : node.command;
+    }
+
+    /**
+     * Find the last inline command followed by a prompt and {@code symbol} at the
+     * end of {@code text}.
+     *
+     * @return the match, or null if there is none
+     */
+    public Match findInline(CharSequence text, String symbol) {
+        if (size == 0 || text == null || symbol == null || symbol.isEmpty()) {
+            return null;
+        }
+        int len = text.length();
+        // Candidate symbol starts, in the order the greedy (.+) tries them
+        int[] symbolStarts = new int[3];
+        int symbolCount = 0;
+        for (int end = len; end >= len - 2 && end >= 0; end--) {
+            if (dollarMatchesAt(text, end) && endsWith(text, end, symbol)) {
+                symbolStarts[symbolCount++] = end - symbol.length();
+            }
+        }
+        if (symbolCount == 0) {
+            return null;
+        }
+
+        Node[] path = new Node[maxLength + 1];
+        // Greedy (.*): the preserved text ends as late as possible
+        for (int e = len; e >= 0; e--) {
+            int wsEnd = e;
+            while (wsEnd < len && isRegexSpace(text.charAt(wsEnd))) {
+                wsEnd++;
+            }
+            Match match;
+            // \s+/
+            if (wsEnd > e && wsEnd < len && text.charAt(wsEnd) == '/') {
+                match = matchCommandAt(text, e, wsEnd + 1, symbol, symbolStarts, symbolCount, path);
+                if (match != null) {
+                    return match;
+                }
+            }
+            // \s+ (backtracking from the longest run)
+            for (int p = wsEnd; p > e; p--) {
+                match = matchCommandAt(text, e, p, symbol, symbolStarts, symbolCount, path);
+                if (match != null) {
+                    return match;
+                }
+            }
+            if (e == 0) {
+                // (?<=^)/
+                if (len > 0 && text.charAt(0) == '/') {
+                    match = matchCommandAt(text, 0, 1, symbol, symbolStarts, symbolCount, path);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+                // (?<=^)
+                return matchCommandAt(text, 0, 0, symbol, symbolStarts, symbolCount, path);
+            }
+        }
+        return null;
+    }
+
+    private Match matchCommandAt(CharSequence text, int preservedEnd, int start, String symbol,
+            int[] symbolStarts, int symbolCount, Node[] path) {
+        int len = text.length();
+        int depth = 0;
+        Node node = root;
+        while (depth < maxLength && start + depth < len) {
+            node = node.children.get(fold(text.charAt(start + depth)));
+            if (node == null) {
+                break;
+            }
+            path[++depth] = node;
+        }
+        // Longest command first, as in the sorted alternation
+        for (int d = depth; d > 0; d--) {
+            if (path[d].command == null) {
+                continue;
+            }
+            int commandEnd = start + d;
+            int wsEnd = commandEnd;
+            while (wsEnd < len && isRegexSpace(text.charAt(wsEnd))) {
+                wsEnd++;
+            }
+            if (wsEnd == commandEnd) {
+                continue;
+            }
+            for (int i = 0; i < symbolCount; i++) {
+                int symbolStart = symbolStarts[i];
+                // \s+ gives back characters so that (.+) keeps at least one
+                if (symbolStart - commandEnd < 2) {
+                    continue;
+                }
+                int promptStart = Math.min(wsEnd, symbolStart - 1);
+                return new Match(path[d].command, preservedEnd, start, commandEnd,
+                        promptStart, symbolStart, symbolStart + symbol.length());
+            }
+        }
+        return null;
+    }
+
+    private static boolean endsWith(CharSequence text, int end, String suffix) {
+        int start = end - suffix.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (fold(text.charAt(start + i)) != fold(suffix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Non-multiline {@code $}: the end of input, or before a final line terminator.
+     */
+    private static boolean dollarMatchesAt(CharSequence text, int i) {
+        int len = text.length();
+        if (i == len) {
+            return true;
+        }
+        if (i == len - 2) {
+            return text.charAt(i) == '\r' && text.charAt(i + 1) == '\n';
+        }
+        if (i == len - 1) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return i == 0 || text.charAt(i - 1) != '\r';
+            }
+            return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+        return false;
+    }
+
+    /** {@code \s} without UNICODE_CHARACTER_CLASS. */
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** {@code (?i)} without UNICODE_CASE only folds ASCII letters. */
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -23,6 +23,14 @@ public enum PatternType {
                                                                                                       // needed
     RangeSelection(R.string.title_range_selection, 3, "\\$(.+)\\$$", true, "$", R.string.example_range_selection);
 
+    // Meta-regexes used to read symbols back from stored patterns
+    private static final java.util.regex.Pattern RANGE_PATTERN = java.util.regex.Pattern
+            .compile("^(.+?)\\(\\(\\?s\\)\\.\\+\\?\\)(.+?)\\$$");
+    private static final java.util.regex.Pattern SAME_SYMBOL_RANGE_PATTERN = java.util.regex.Pattern
+            .compile("^\\\\(.)(\\(\\(\\?s\\)\\.\\+\\?\\))\\\\\\1\\$$");
+    private static final java.util.regex.Pattern CHAR_CLASS_PATTERN = java.util.regex.Pattern
+            .compile("\\[\\^([^\\]]+)\\]");
+
     public final int titleResId;
     public final int groupCount;
     public final String defaultPattern;
@@ -99,8 +107,7 @@ public enum PatternType {
 
         // Check if it's a range selection pattern with two different symbols
         // Pattern like: startSymbol((?s).+?)endSymbol$
-        java.util.regex.Pattern rangePattern = java.util.regex.Pattern.compile("^(.+?)\\(\\(\\?s\\)\\.\\+\\?\\)(.+?)\\$$");
-        java.util.regex.Matcher rangeMatcher = rangePattern.matcher(regex);
+        java.util.regex.Matcher rangeMatcher = RANGE_PATTERN.matcher(regex);
         if (rangeMatcher.find()) {
             // For range selection, return the start symbol as the primary symbol
             return unescapeRegex(rangeMatcher.group(1));
@@ -108,16 +115,14 @@ public enum PatternType {
         
         // Check if it's a range selection pattern with same symbol (symbol at both ends)
         // Pattern like: \$((?s).+?)\$$
-        java.util.regex.Pattern sameSymbolPattern = java.util.regex.Pattern.compile("^\\\\(.)(\\(\\(\\?s\\)\\.\\+\\?\\))\\\\\\1\\$$");
-        java.util.regex.Matcher sameSymbolMatcher = sameSymbolPattern.matcher(regex);
+        java.util.regex.Matcher sameSymbolMatcher = SAME_SYMBOL_RANGE_PATTERN.matcher(regex);
         if (sameSymbolMatcher.find()) {
             return sameSymbolMatcher.group(1);
         }
         
         // For CommandCustom pattern: ([^%]+)%(?:([^ %]+))?%$ - extract the % symbol
         // Look for pattern like ([^X]+)X where X is the symbol
-        java.util.regex.Pattern charClassPattern = java.util.regex.Pattern.compile("\\[\\^([^\\]]+)\\]");
-        java.util.regex.Matcher matcher = charClassPattern.matcher(regex);
+        java.util.regex.Matcher matcher = CHAR_CLASS_PATTERN.matcher(regex);
         if (matcher.find()) {
             String charClass = matcher.group(1);
             if (charClass.length() > 0) {
@@ -183,6 +188,36 @@ public enum PatternType {
         return symbol.length() > 0 ? symbol.toString() : null;
     }
     
+    /**
+     * Extract the start symbol of a range selection regex
+     * (startSymbol((?s).+?)endSymbol$), falling back to {@link #regexToSymbol}.
+     */
+    public static String rangeStartSymbol(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+        java.util.regex.Matcher rangeMatcher = RANGE_PATTERN.matcher(regex);
+        if (rangeMatcher.find()) {
+            return unescapeRegex(rangeMatcher.group(1));
+        }
+        return regexToSymbol(regex);
+    }
+
+    /**
+     * Extract the end symbol of a range selection regex
+     * (startSymbol((?s).+?)endSymbol$), falling back to {@link #regexToSymbol}.
+     */
+    public static String rangeEndSymbol(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+        java.util.regex.Matcher rangeMatcher = RANGE_PATTERN.matcher(regex);
+        if (rangeMatcher.find()) {
+            return unescapeRegex(rangeMatcher.group(2));
+        }
+        return regexToSymbol(regex);
+    }
+
     private static String unescapeRegex(String escaped) {
         if (escaped == null || escaped.isEmpty()) {
             return escaped;
@@ -22,9 +22,8 @@ package tn.eluea.kgpt.text.parse.result;
 
 import java.util.List;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import tn.eluea.kgpt.instruction.command.InlineAskCommand;
+import tn.eluea.kgpt.text.ParsePlan;
 
 /**
  * Factory for creating InlineAskParseResult.
@@ -45,30 +44,23 @@ public class InlineAskParseResultFactory implements ParseResultFactory {
     /**
      * Parse text for inline ask command
      * 
-     * @param text          The full text to parse
-     * @param triggerSymbol The trigger symbol (default $)
+     * @param text The full text to parse
+     * @param plan The current parse plan, holding the compiled pattern for the
+     *             trigger symbol and the inline ask prefix
      * @return InlineAskParseResult if matched, null otherwise
      */
-    public static InlineAskParseResult parse(String text, String triggerSymbol) {
+    public static InlineAskParseResult parse(String text, ParsePlan plan) {
         if (text == null || text.isEmpty()) {
             return null;
         }
 
-        // Get current prefix (may have been customized by user)
-        String commandPrefix = InlineAskCommand.getPrefix();
-
-        // Build pattern with the trigger symbol and current prefix
-        String escapedSymbol = Pattern.quote(triggerSymbol);
-        Pattern pattern = Pattern
-                .compile("(.*)\\s*/" + Pattern.quote(commandPrefix) + "\\s+(.+)" + escapedSymbol + "$");
-
-        Matcher matcher = pattern.matcher(text);
+        Matcher matcher = plan.inlineAskPattern.matcher(text);
         if (matcher.find()) {
             String preservedText = matcher.group(1);
             String prompt = matcher.group(2);
 
             // Find where /command starts
-            int askStart = text.lastIndexOf("/" + commandPrefix);
+            int askStart = text.lastIndexOf(plan.inlineAskMarker);
             if (askStart < 0) {
                 return null;
             }
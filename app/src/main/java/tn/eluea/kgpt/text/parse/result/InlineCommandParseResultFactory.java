@@ -21,11 +21,10 @@
 package tn.eluea.kgpt.text.parse.result;
 
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import tn.eluea.kgpt.instruction.command.InlineAskCommand;
+import tn.eluea.kgpt.text.ParsePlan;
+import tn.eluea.kgpt.text.parse.CommandTrie;
 
 /**
  * Factory for creating InlineCommandParseResult.
@@ -39,91 +38,47 @@ public class InlineCommandParseResultFactory {
     /**
      * Parse text for inline command
      * 
-     * @param text              The full text to parse
-     * @param triggerSymbol     The trigger symbol (default $)
-     * @param availableCommands Set of available command prefixes
+     * @param text The full text to parse
+     * @param plan The current parse plan, holding the trigger symbol and the
+     *             trie of available command prefixes
      * @return InlineCommandParseResult if matched, null otherwise
      */
-    public static InlineCommandParseResult parse(String text, String triggerSymbol, Set<String> availableCommands) {
-        if (text == null || text.isEmpty() || availableCommands == null || availableCommands.isEmpty()) {
+    public static InlineCommandParseResult parse(String text, ParsePlan plan) {
+        if (text == null || text.isEmpty() || plan.commands.isEmpty()) {
             return null;
         }
 
-        String escapedSymbol = Pattern.quote(triggerSymbol);
-
-        // Sort commands by length (descending) to match longest triggers first
-        // e.g. match "fixer" before "fix"
-        List<String> sortedCommands = new java.util.ArrayList<>(availableCommands);
-        sortedCommands.sort((s1, s2) -> s2.length() - s1.length());
-
-        StringBuilder cmdPattern = new StringBuilder();
-        for (String cmd : sortedCommands) {
-            if (cmdPattern.length() > 0)
-                cmdPattern.append("|");
-            cmdPattern.append(Pattern.quote(cmd));
+        // Same match as
+        // (?si)(.*)(?:\s+/|\s+|(?<=^)/|(?<=^))(cmd1|cmd2|...)\s+(.+)SYM$
+        // with commands sorted longest first, so "fixer" wins over "fix"
+        CommandTrie.Match match = plan.commands.findInline(text, plan.triggerSymbol);
+        if (match == null) {
+            return null;
         }
 
-        // Regex Explanation:
-        // (?si) : Dot matches newline, Case insensitive
-        // (.*) : Group 1 - Preserved text (Greedy, so it finds the last command match)
-        // (?:\\s+/|\\s+|(?<=^)/|(?<=^)) : Separator (Space+slash, Space, Start+slash,
-        // Start)
-        // (" + cmdPattern + ") : Group 2 - The Command
-        // \\s+ : Required whitespace after command
-        // (.+) : Group 3 - The Prompt
-        // escapedSymbol + "$" : End identifier
-
-        String separatorPattern = "(?:\\s+/|\\s+|(?<=^)/|(?<=^))";
-
-        String regex = "(?si)(.*)" + separatorPattern + "(" + cmdPattern.toString() + ")\\s+(.+)" + escapedSymbol + "$";
-
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(text);
+        String preservedText = text.substring(0, match.preservedEnd);
+        String command = text.substring(match.commandStart, match.commandEnd);
+        String prompt = text.substring(match.promptStart, match.promptEnd);
 
-        if (matcher.find()) {
-            String preservedText = matcher.group(1);
-            String command = matcher.group(2);
-            String prompt = matcher.group(3);
-
-            // Skip if this is the InlineAskCommand (handled separately)
-            if (InlineAskCommand.isInlineAskCommand(command)) {
-                return null;
-            }
-
-            // Identify the exact matched command string
-            String matchedCommand = command;
-            for (String cmd : availableCommands) {
-                if (cmd.equalsIgnoreCase(command)) {
-                    matchedCommand = cmd;
-                    break;
-                }
-            }
-
-            // Calculate start index.
-            // We can check text between group 1 end and group 2 start to find if slash was
-            // used.
-            int g1End = matcher.end(1);
-            int g2Start = matcher.start(2);
-            String separator = text.substring(g1End, g2Start);
-
-            int commandStartPos = g2Start;
-            if (separator.contains("/")) {
-                commandStartPos = text.lastIndexOf("/", g2Start);
-                if (commandStartPos < g1End)
-                    commandStartPos = g2Start;
-            }
+        // Skip if this is the InlineAskCommand (handled separately)
+        if (InlineAskCommand.isInlineAskCommand(command)) {
+            return null;
+        }
 
-            // Return result
-            return new InlineCommandParseResult(
-                    List.of(matcher.group(0), command, prompt),
-                    0,
-                    text.length(),
-                    matchedCommand,
-                    prompt.trim(),
-                    preservedText != null ? preservedText : "",
-                    commandStartPos);
+        // The slash, if one was typed, belongs to the command
+        int commandStartPos = match.commandStart;
+        if (commandStartPos > match.preservedEnd && text.charAt(commandStartPos - 1) == '/') {
+            commandStartPos--;
         }
 
-        return null;
+        // Return result
+        return new InlineCommandParseResult(
+                List.of(text.substring(0, match.matchEnd), command, prompt),
+                0,
+                text.length(),
+                match.command,
+                prompt.trim(),
+                preservedText,
+                commandStartPos);
     }
 }
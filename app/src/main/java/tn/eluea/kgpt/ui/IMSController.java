@@ -10,8 +10,6 @@ package tn.eluea.kgpt.ui;
 import android.inputmethodservice.InputMethodService;
 import android.os.Handler;
 import android.os.Looper;
-import android.view.inputmethod.ExtractedText;
-import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
 
 import java.util.ArrayList;
@@ -23,8 +21,7 @@ public class IMSController {
     private static final long INPUT_LOCK_TIMEOUT_MS = 15000; // 15 seconds timeout (reduced from 60s)
 
     private InputMethodService ims = null;
-    private String typedText = "";
-    private int cursor = 0;
+    private final TextMirror textMirror = new TextMirror();
     private volatile boolean inputNotify = false;
     private volatile boolean inputLock = false;
     private volatile long inputLockStartTime = 0;
@@ -60,15 +57,51 @@ public class IMSController {
         }
         if (ims == null)
             return;
-        InputConnection ic = ims.getCurrentInputConnection();
-        if (ic != null) {
-            ExtractedText extractedText = ic.getExtractedText(new ExtractedTextRequest(), 0);
-            if (extractedText != null && extractedText.text != null) {
-                typedText = extractedText.text.toString();
-                cursor = newSelEnd;
-                notifyTextUpdate();
+        if (!textMirror.matches(newSelStart, newSelEnd, candidatesStart, candidatesEnd)) {
+            if (newSelStart != newSelEnd) {
+                // Nothing to parse while text is selected
+                textMirror.invalidate();
+                return;
+            }
+            InputConnection ic = ims.getCurrentInputConnection();
+            if (ic == null) {
+                return;
             }
+            textMirror.resync(ic.getTextBeforeCursor(TextMirror.WINDOW, 0),
+                    newSelEnd, candidatesStart, candidatesEnd);
+            if (!textMirror.isValid()) {
+                return;
+            }
+        }
+        notifyTextUpdate(textMirror.consumeInserted());
+    }
+
+    /**
+     * Refetch the text before the cursor and compare it with the mirror.
+     * Used before acting on a parse result, since some editors change their
+     * text without going through the keyboard.
+     *
+     * @return true if the mirror was out of date and has been refilled
+     */
+    public boolean refreshTextMirror() {
+        if (ims == null)
+            return false;
+        InputConnection ic = ims.getCurrentInputConnection();
+        if (ic == null) {
+            return false;
+        }
+        int length = textMirror.length();
+        CharSequence before = ic.getTextBeforeCursor(Math.max(length, 1), 0);
+        if (before != null && before.length() == length
+                && android.text.TextUtils.equals(before, textMirror.getText())) {
+            return false;
         }
+        textMirror.replaceBeforeCursor(before);
+        return true;
+    }
+
+    public TextMirror getTextMirror() {
+        return textMirror;
     }
 
     public void addListener(InputEventListener listener) {
@@ -79,9 +112,21 @@ public class IMSController {
         mListeners.remove(listener);
     }
 
-    private void notifyTextUpdate() {
-        for (InputEventListener listener : mListeners) {
-            listener.onTextUpdate(typedText, cursor);
+    private void notifyTextUpdate(boolean inserted) {
+        CharSequence text = textMirror.getText();
+        // Indexed loop, no iterator on the keystroke path
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onTextUpdate(text, text.length(), inserted);
+        }
+    }
+
+    /**
+     * The user deleted text while the input was locked for a response, called
+     * on the keyboard's main thread.
+     */
+    public void notifyInterrupt() {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onInterrupt();
         }
     }
 
@@ -91,6 +136,14 @@ public class IMSController {
 
     public void unregisterService(InputMethodService ims) {
         this.ims = null;
+        textMirror.reset();
+    }
+
+    /**
+     * Called when the keyboard starts working on a new field.
+     */
+    public void onStartInput() {
+        textMirror.reset();
     }
 
     public void delete(int count) {
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+/**
+ * Bounded copy of the text before the cursor of the current input field.
+ *
+ * The mirror follows the edits the keyboard sends through the hooked
+ * InputConnection (commitText, setComposingText, deleteSurroundingText...)
+ * and is checked against every onUpdateSelection. Only when the two disagree
+ * is it refilled with a single getTextBeforeCursor(WINDOW) call, so the work
+ * per keystroke depends on the window size and not on the document size.
+ *
+ * The composing region, when there is one, is always the tail of the mirror.
+ *
+ * Every change bumps a generation counter, so work done on a {@link Snapshot}
+ * off the main thread can be checked against the field before it is applied.
+ */
+public class TextMirror {
+    /** Number of characters before the cursor that are kept and fetched on resync. */
+    public static final int WINDOW = 4096;
+
+    private static final int UNKNOWN = -1;
+
+    /**
+     * Immutable copy of the text before the cursor, stamped with the generation
+     * and the cursor it was taken at.
+     */
+    public static final class Snapshot {
+        public final String text;
+        public final long generation;
+        /** Absolute cursor position in the field. */
+        public final int cursor;
+        /** Whether text was just inserted, see {@link #consumeInserted()}. */
+        public final boolean inserted;
+
+        Snapshot(String text, long generation, int cursor, boolean inserted) {
+            this.text = text;
+            this.generation = generation;
+            this.cursor = cursor;
+            this.inserted = inserted;
+        }
+    }
+
+    private final StringBuilder mText = new StringBuilder(WINDOW * 2 + 64);
+    // Absolute offset of mText.charAt(0) in the field
+    private int mBase = 0;
+    private int mComposingLength = 0;
+    private boolean mValid = false;
+
+    // Set by edits, cleared once the update has been handed to the listeners
+    private boolean mEdited = false;
+    private int mNotifiedCursor = UNKNOWN;
+
+    // Bumped by every change of the mirrored text
+    private long mGeneration = 0;
+
+    public synchronized void onCommitText(CharSequence text, int newCursorPosition) {
+        if (!canEditAtCursor(newCursorPosition)) {
+            invalidate();
+            return;
+        }
+        replaceComposing(text);
+        mComposingLength = 0;
+    }
+
+    public synchronized void onSetComposingText(CharSequence text, int newCursorPosition) {
+        if (!canEditAtCursor(newCursorPosition)) {
+            invalidate();
+            return;
+        }
+        replaceComposing(text);
+        mComposingLength = text == null ? 0 : text.length();
+    }
+
+    public synchronized void onFinishComposingText() {
+        mGeneration++;
+        mComposingLength = 0;
+    }
+
+    public synchronized void onDeleteSurroundingText(int beforeLength, int afterLength) {
+        mEdited = true;
+        mGeneration++;
+        if (!mValid || mComposingLength == UNKNOWN) {
+            return;
+        }
+        // Text after the cursor is not mirrored, and deletion skips the composing region
+        int end = mText.length() - mComposingLength;
+        int start = end - beforeLength;
+        if (start < 0) {
+            if (mBase > 0) {
+                invalidate();
+                return;
+            }
+            start = 0;
+        }
+        mText.delete(start, end);
+    }
+
+    public synchronized void onDeleteSurroundingTextInCodePoints(int beforeLength, int afterLength) {
+        if (!mValid || mComposingLength == UNKNOWN) {
+            invalidate();
+            return;
+        }
+        int end = mText.length() - mComposingLength;
+        int start = end;
+        for (int i = 0; i < beforeLength && start > 0; i++) {
+            start = Character.offsetByCodePoints(mText, start, -1);
+        }
+        if (start == 0 && mBase > 0 && beforeLength > 0) {
+            invalidate();
+            return;
+        }
+        onDeleteSurroundingText(end - start, afterLength);
+    }
+
+    /**
+     * An edit the mirror can't model (corrections, completions, replaceText...).
+     */
+    public synchronized void invalidate() {
+        mEdited = true;
+        mGeneration++;
+        mValid = false;
+    }
+
+    /**
+     * Check the mirror against the editor's selection.
+     *
+     * @return true if the mirror still ends at the cursor with the same composing region
+     */
+    public synchronized boolean matches(int selStart, int selEnd, int candidatesStart, int candidatesEnd) {
+        if (!mValid || selStart != selEnd || selEnd != cursor()) {
+            return false;
+        }
+        int composing = composingLengthAt(selEnd, candidatesStart, candidatesEnd);
+        if (composing == UNKNOWN) {
+            return false;
+        }
+        mComposingLength = composing;
+        return true;
+    }
+
+    /**
+     * Refill the mirror from the text before the cursor fetched from the editor.
+     */
+    public synchronized void resync(CharSequence textBeforeCursor, int selEnd,
+            int candidatesStart, int candidatesEnd) {
+        mGeneration++;
+        mText.setLength(0);
+        if (textBeforeCursor == null) {
+            mValid = false;
+            return;
+        }
+        mText.append(textBeforeCursor);
+        mBase = selEnd - mText.length();
+        mComposingLength = composingLengthAt(selEnd, candidatesStart, candidatesEnd);
+        mValid = mBase >= 0;
+    }
+
+    /**
+     * Replace the mirrored text while keeping the cursor where it is.
+     */
+    public synchronized void replaceBeforeCursor(CharSequence textBeforeCursor) {
+        int cursor = cursor();
+        mGeneration++;
+        mText.setLength(0);
+        if (textBeforeCursor == null) {
+            mValid = false;
+            return;
+        }
+        mText.append(textBeforeCursor);
+        mBase = cursor - mText.length();
+        if (mComposingLength == UNKNOWN || mComposingLength > mText.length()) {
+            mComposingLength = UNKNOWN;
+        }
+        mEdited = true;
+        mValid = mBase >= 0;
+    }
+
+    public synchronized boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * The text before the cursor. Only valid until the next edit, callers must
+     * copy what they want to keep.
+     */
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public synchronized int length() {
+        return mText.length();
+    }
+
+    /**
+     * @return true if text was inserted before the cursor since the last call,
+     *         i.e. the user typed rather than moved the cursor or deleted
+     */
+    public synchronized boolean consumeInserted() {
+        int cursor = cursor();
+        boolean inserted = mEdited && mNotifiedCursor != UNKNOWN && cursor > mNotifiedCursor;
+        mEdited = false;
+        mNotifiedCursor = cursor;
+        return inserted;
+    }
+
+    /**
+     * Copy the text before the cursor so it can be parsed on another thread.
+     */
+    public synchronized Snapshot snapshot(boolean inserted) {
+        return new Snapshot(mText.toString(), mGeneration, cursor(), inserted);
+    }
+
+    /**
+     * @return true if nothing changed since {@code snapshot} was taken
+     */
+    public synchronized boolean isCurrent(Snapshot snapshot) {
+        return mValid && snapshot.generation == mGeneration && snapshot.cursor == cursor();
+    }
+
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    public synchronized void reset() {
+        mGeneration++;
+        mText.setLength(0);
+        mBase = 0;
+        mComposingLength = 0;
+        mValid = false;
+        mEdited = false;
+        mNotifiedCursor = UNKNOWN;
+    }
+
+    private int cursor() {
+        return mBase + mText.length();
+    }
+
+    private boolean canEditAtCursor(int newCursorPosition) {
+        // Any other position moves the cursor away from the end of the inserted text
+        return mValid && newCursorPosition == 1 && mComposingLength != UNKNOWN;
+    }
+
+    private void replaceComposing(CharSequence text) {
+        mEdited = true;
+        mGeneration++;
+        int start = mText.length() - mComposingLength;
+        mText.setLength(start);
+        if (text != null) {
+            mText.append(text);
+        }
+        trim();
+    }
+
+    private int composingLengthAt(int cursor, int candidatesStart, int candidatesEnd) {
+        if (candidatesStart < 0 || candidatesEnd < 0 || candidatesStart == candidatesEnd) {
+            return 0;
+        }
+        int start = Math.min(candidatesStart, candidatesEnd);
+        int end = Math.max(candidatesStart, candidatesEnd);
+        if (end != cursor || start < mBase) {
+            return UNKNOWN;
+        }
+        return end - start;
+    }
+
+    private void trim() {
+        if (mText.length() <= WINDOW * 2) {
+            return;
+        }
+        int drop = mText.length() - WINDOW;
+        if (drop > mText.length() - mComposingLength) {
+            // Never cut into the composing region
+            drop = mText.length() - mComposingLength;
+        }
+        mText.delete(0, drop);
+        mBase += drop;
+    }
+}
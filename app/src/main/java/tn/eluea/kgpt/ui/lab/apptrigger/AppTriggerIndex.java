@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui.lab.apptrigger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable index of the enabled app triggers, matched against the end of the
+ * text before the cursor.
+ *
+ * Triggers are stored reversed in a character trie, so a match walks backwards
+ * from the last non-whitespace character and costs O(length of the longest
+ * trigger) whatever the number of triggers. Like the old linear scan it is
+ * case-insensitive, requires the trigger to start at a word boundary and, when
+ * several triggers end the text, picks the one that comes first in the list.
+ */
+public final class AppTriggerIndex {
+
+    public static final AppTriggerIndex EMPTY = new AppTriggerIndex(java.util.Collections.emptyList());
+
+    /**
+     * A trigger found at the end of the text.
+     */
+    public static final class Match {
+        public final AppTrigger trigger;
+        /** Where the trigger word starts in the text. */
+        public final int start;
+
+        Match(AppTrigger trigger, int start) {
+            this.trigger = trigger;
+            this.start = start;
+        }
+    }
+
+    private static final class Node {
+        // Sorted children, searched with a binary search
+        final char[] keys;
+        final Node[] children;
+        // Position in the trigger list of the first trigger ending here, -1 if none
+        final int triggerIndex;
+
+        Node(char[] keys, Node[] children, int triggerIndex) {
+            this.keys = keys;
+            this.children = children;
+            this.triggerIndex = triggerIndex;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    private static final class MutableNode {
+        final Map<Character, MutableNode> children = new TreeMap<>();
+        int triggerIndex = -1;
+
+        Node freeze() {
+            char[] keys = new char[children.size()];
+            Node[] frozen = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                frozen[i++] = entry.getValue().freeze();
+            }
+            return new Node(keys, frozen, triggerIndex);
+        }
+    }
+
+    private final AppTrigger[] triggers;
+    private final Node root;
+    private final int size;
+
+    /**
+     * @param appTriggers all triggers, disabled and empty ones are skipped
+     */
+    public AppTriggerIndex(List<AppTrigger> appTriggers) {
+        triggers = new AppTrigger[appTriggers.size()];
+        MutableNode mutableRoot = new MutableNode();
+        int count = 0;
+        for (int t = 0; t < appTriggers.size(); t++) {
+            AppTrigger trigger = appTriggers.get(t);
+            triggers[t] = trigger;
+            String word = trigger.getTrigger();
+            if (!trigger.isEnabled() || word == null || word.isEmpty()) {
+                continue;
+            }
+            MutableNode node = mutableRoot;
+            for (int i = word.length() - 1; i >= 0; i--) {
+                char c = Character.toLowerCase(word.charAt(i));
+                MutableNode next = node.children.get(c);
+                if (next == null) {
+                    next = new MutableNode();
+                    node.children.put(c, next);
+                }
+                node = next;
+            }
+            if (node.triggerIndex < 0) {
+                node.triggerIndex = t;
+                count++;
+            }
+        }
+        root = mutableRoot.freeze();
+        size = count;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the trigger that ends {@code text} before {@code cursor}, ignoring
+     * trailing whitespace. Never allocates unless there is a match.
+     *
+     * @return the match, or null if no trigger ends the text
+     */
+    public Match match(CharSequence text, int cursor) {
+        if (size == 0 || text == null) {
+            return null;
+        }
+        // Same trimming as String.trim()
+        int end = Math.min(cursor, text.length());
+        while (end > 0 && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int best = -1;
+        int bestStart = -1;
+        Node node = root;
+        for (int i = end - 1; i >= 0 && node != null; i--) {
+            node = node.child(Character.toLowerCase(text.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            if (node.triggerIndex >= 0 && (best < 0 || node.triggerIndex < best)
+                    && isWordStart(text, i)) {
+                best = node.triggerIndex;
+                bestStart = i;
+            }
+        }
+        return best < 0 ? null : new Match(triggers[best], bestStart);
+    }
+
+    private static boolean isWordStart(CharSequence text, int start) {
+        return start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+    }
+}
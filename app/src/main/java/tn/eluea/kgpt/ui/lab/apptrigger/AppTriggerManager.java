@@ -32,6 +32,8 @@ import java.util.Collections;
 import java.util.List;
 
 import tn.eluea.kgpt.provider.ConfigClient;
+import tn.eluea.kgpt.provider.ConfigSnapshot;
+import tn.eluea.kgpt.provider.HookConfig;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 
 /**
@@ -47,6 +49,10 @@ public class AppTriggerManager {
     private final Context context;
     private final ConfigClient configClient;
     private List<AppTrigger> appTriggers;
+    private String loadedEncoded;
+    // Enabled triggers for the keystroke path, rebuilt only when the stored value changes
+    private volatile AppTriggerIndex index = AppTriggerIndex.EMPTY;
+    private OnTriggersChangedListener triggersChangedListener;
 
     private static AppTriggerManager instance;
 
@@ -66,6 +72,10 @@ public class AppTriggerManager {
         Log.d(TAG, "XSharedPreferences available: " + XposedConfigReader.isAvailable());
     }
 
+    public interface OnTriggersChangedListener {
+        void onTriggersChanged(List<AppTrigger> triggers);
+    }
+
     public static AppTriggerManager getInstance() {
         return instance;
     }
@@ -73,8 +83,12 @@ public class AppTriggerManager {
     private void loadTriggers() {
         String encoded = null;
 
-        // Try XSharedPreferences first (works in both app and Xposed module)
-        if (XposedConfigReader.isAvailable()) {
+        // In the keyboard the config snapshot has it without any IPC
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            encoded = snapshot.getString(PREF_APP_TRIGGERS, null);
+        } else if (XposedConfigReader.isAvailable()) {
+            // Try XSharedPreferences first (works in both app and Xposed module)
             encoded = XposedConfigReader.getString(PREF_APP_TRIGGERS, null);
             Log.d(TAG, "loadTriggers() from XSharedPreferences: "
                     + (encoded != null ? encoded.length() + " chars" : "null"));
@@ -86,9 +100,20 @@ public class AppTriggerManager {
             Log.d(TAG, "loadTriggers() from ConfigClient: " + (encoded != null ? encoded.length() + " chars" : "null"));
         }
 
+        boolean changed = !java.util.Objects.equals(encoded, loadedEncoded);
+        if (!changed && appTriggers != null) {
+            return;
+        }
+
         appTriggers = AppTrigger.decode(encoded);
+        index = new AppTriggerIndex(appTriggers);
         Log.d(TAG, "loadTriggers() - loaded " + appTriggers.size() + " triggers");
 
+        loadedEncoded = encoded;
+        if (triggersChangedListener != null) {
+            triggersChangedListener.onTriggersChanged(appTriggers);
+        }
+
         // Log debug info
         if (appTriggers.isEmpty()) {
             Log.d(TAG, XposedConfigReader.getDebugInfo());
@@ -115,11 +140,26 @@ public class AppTriggerManager {
         // Removed Thread.sleep as it is unreliable.
     }
 
+    /**
+     * Set a listener invoked whenever the stored triggers actually change.
+     */
+    public void setTriggersChangedListener(OnTriggersChangedListener listener) {
+        this.triggersChangedListener = listener;
+    }
+
     public List<AppTrigger> getAppTriggers() {
         loadTriggers();
         return appTriggers;
     }
 
+    /**
+     * Index of the enabled triggers as last loaded. Unlike getAppTriggers() this
+     * never touches the preferences, reloads happen when the config changes.
+     */
+    public AppTriggerIndex getIndex() {
+        return index;
+    }
+
     public void addTrigger(AppTrigger trigger) {
         for (AppTrigger existing : appTriggers) {
             if (existing.getPackageName().equals(trigger.getPackageName())) {
@@ -146,6 +186,11 @@ public class AppTriggerManager {
     }
 
     public boolean isFeatureEnabled() {
+        ConfigSnapshot snapshot = HookConfig.get();
+        if (snapshot != null) {
+            return snapshot.getBoolean(PREF_APP_TRIGGERS_ENABLED, true);
+        }
+
         // Try XSharedPreferences first
         if (XposedConfigReader.isAvailable()) {
             boolean enabled = XposedConfigReader.getBoolean(PREF_APP_TRIGGERS_ENABLED, true);
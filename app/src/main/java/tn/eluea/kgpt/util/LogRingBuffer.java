@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of preallocated log records.
+ *
+ * Writers claim a slot with a single atomic increment and never block or wait
+ * for readers. When the ring is full the oldest records are overwritten. Each
+ * slot carries the sequence number of the record in it, set to
+ * {@link #WRITING} while a writer fills it, so readers can tell a complete
+ * record from one that is being replaced under them.
+ */
+public final class LogRingBuffer {
+    public static final int LEVEL_DEBUG = 0;
+    public static final int LEVEL_ERROR = 1;
+
+    private static final long WRITING = -1;
+
+    /**
+     * One log line. Fields are volatile so that a reader that sees the
+     * published sequence also sees the fields written before it.
+     */
+    private static final class Record {
+        volatile long timeMillis;
+        volatile int level;
+        volatile String tag;
+        volatile String message;
+        volatile Throwable throwable;
+    }
+
+    /**
+     * Receives records read from the buffer, see {@link #drain}.
+     */
+    public interface Sink {
+        void accept(long timeMillis, int level, String tag, String message, Throwable throwable);
+    }
+
+    private final Record[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity number of records kept, rounded up to a power of two
+     */
+    public LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        records = new Record[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            records[i] = new Record();
+            sequences.set(i, WRITING);
+        }
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return records.length;
+    }
+
+    /**
+     * Sequence number the next record will get. Records before it are either
+     * readable or have been overwritten.
+     */
+    public long head() {
+        return head.get();
+    }
+
+    public void add(int level, String tag, String message, Throwable throwable) {
+        long sequence = head.getAndIncrement();
+        int index = (int) (sequence & mask);
+        Record record = records[index];
+        sequences.set(index, WRITING);
+        record.timeMillis = System.currentTimeMillis();
+        record.level = level;
+        record.tag = tag;
+        record.message = message;
+        record.throwable = throwable;
+        sequences.set(index, sequence);
+    }
+
+    /**
+     * Hand every complete record from {@code from} up to the head to {@code sink}.
+     * Records overwritten before they could be read are skipped.
+     *
+     * @return the sequence to continue from on the next call
+     */
+    public long drain(long from, Sink sink) {
+        long end = head.get();
+        long sequence = Math.max(from, end - records.length);
+        while (sequence < end) {
+            int index = (int) (sequence & mask);
+            Record record = records[index];
+            long published = sequences.get(index);
+            if (published == WRITING || published < sequence) {
+                // The writer that claimed this slot hasn't finished yet
+                break;
+            }
+            long timeMillis = record.timeMillis;
+            int level = record.level;
+            String tag = record.tag;
+            String message = record.message;
+            Throwable throwable = record.throwable;
+            if (published == sequence && sequences.get(index) == sequence) {
+                sink.accept(timeMillis, level, tag, message, throwable);
+            }
+            sequence++;
+        }
+        return sequence;
+    }
+
+    /**
+     * Format the records still in the buffer, oldest first.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        drain(0, (timeMillis, level, tag, message, throwable) -> {
+            date.setTime(timeMillis);
+            out.append(format.format(date))
+                    .append(level == LEVEL_ERROR ? " E " : " D ")
+                    .append(tag).append(": ");
+            if (message != null) {
+                out.append(message);
+            }
+            if (throwable != null) {
+                StringWriter trace = new StringWriter();
+                throwable.printStackTrace(new PrintWriter(trace));
+                out.append('\n').append(trace);
+            }
+            out.append('\n');
+        });
+        return out.toString();
+    }
+}
@@ -8,11 +8,26 @@
 package tn.eluea.kgpt.util;
 
 import android.util.Log;
-import tn.eluea.kgpt.SPManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
 import de.robv.android.xposed.XposedBridge;
 
+/**
+ * Module logger for both the app and the Xposed context.
+ *
+ * Callers only append to an in-memory ring buffer; a background thread
+ * writes the records to XposedBridge.log (Xposed context) or logcat. Whether
+ * logging is enabled is cached and pushed by SPManager when the setting
+ * changes, so a log call never reads preferences. Use the Supplier overloads
+ * when building the message costs something.
+ */
 public class Logger {
     private static final String TAG = "KGPT";
+    private static final int BUFFER_CAPACITY = 1024;
+
     private static boolean isXposedContext = false;
 
     static {
@@ -24,63 +39,120 @@ public class Logger {
         }
     }
 
+    // Logs stay on until the setting is known, like before SPManager is ready
+    private static volatile boolean enabled = true;
+
+    private static final LogRingBuffer buffer = new LogRingBuffer(BUFFER_CAPACITY);
+    private static final AtomicBoolean drainRequested = new AtomicBoolean();
+    private static final Thread drainThread = new Thread(Logger::drainLoop, "KGPT_Logger");
+
+    static {
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Update the cached "enable logs" setting. Only applies to the Xposed
+     * context, the app always logs to logcat.
+     */
+    public static void setEnabled(boolean enabled) {
+        Logger.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return !isXposedContext || enabled;
+    }
+
     public static void log(String message) {
-        if (!isXposedContext) {
-            Log.d(TAG, message);
-            return;
-        }
+        log(TAG, message);
+    }
 
-        // In Xposed context
-        try {
-            if (!SPManager.isReady() || SPManager.getInstance().getEnableLogs()) {
-                XposedBridge.log("(" + TAG + ") " + message);
-            }
-        } catch (NoClassDefFoundError | Exception e) {
-            // Fallback for safety
-            Log.d(TAG, message);
+    public static void log(Supplier<String> message) {
+        if (isEnabled()) {
+            append(LogRingBuffer.LEVEL_DEBUG, TAG, message.get(), null);
         }
     }
 
     public static void log(String tag, String message) {
-        if (!isXposedContext) {
-            Log.d(tag, message);
-            return;
+        if (isEnabled()) {
+            append(LogRingBuffer.LEVEL_DEBUG, tag, message, null);
         }
+    }
 
-        try {
-            if (!SPManager.isReady() || SPManager.getInstance().getEnableLogs()) {
-                XposedBridge.log("(" + tag + ") " + message);
-            }
-        } catch (NoClassDefFoundError | Exception e) {
-            Log.d(tag, message);
+    public static void log(String tag, Supplier<String> message) {
+        if (isEnabled()) {
+            append(LogRingBuffer.LEVEL_DEBUG, tag, message.get(), null);
         }
     }
 
     public static void error(String message) {
-        if (!isXposedContext) {
-            Log.e(TAG, message);
-            return;
+        if (isEnabled()) {
+            append(LogRingBuffer.LEVEL_ERROR, TAG, message, null);
         }
-        try {
-            if (!SPManager.isReady() || SPManager.getInstance().getEnableLogs()) {
-                XposedBridge.log("(" + TAG + ") [ERROR] " + message);
+    }
+
+    public static void log(Throwable t) {
+        if (isEnabled()) {
+            append(LogRingBuffer.LEVEL_ERROR, TAG, "Exception", t);
+        }
+    }
+
+    /**
+     * Text of the records still held in memory, oldest first.
+     */
+    public static String dump() {
+        return buffer.dump();
+    }
+
+    private static void append(int level, String tag, String message, Throwable throwable) {
+        buffer.add(level, tag, message, throwable);
+        if (drainRequested.compareAndSet(false, true)) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private static void drainLoop() {
+        long next = 0;
+        while (true) {
+            if (!drainRequested.get()) {
+                LockSupport.park();
+                continue;
+            }
+            drainRequested.set(false);
+            next = buffer.drain(next, Logger::write);
+            if (next < buffer.head()) {
+                // A writer was still filling a slot, come back for it shortly
+                drainRequested.set(true);
+                LockSupport.parkNanos(1_000_000L);
             }
-        } catch (Throwable t) {
-            Log.e(TAG, message);
         }
     }
 
-    public static void log(Throwable t) {
-        if (!isXposedContext) {
-            Log.e(TAG, "Exception", t);
-            return;
+    private static void write(long timeMillis, int level, String tag, String message, Throwable throwable) {
+        try {
+            if (isXposedContext) {
+                if (throwable != null) {
+                    XposedBridge.log(throwable);
+                } else if (level == LogRingBuffer.LEVEL_ERROR) {
+                    XposedBridge.log("(" + tag + ") [ERROR] " + message);
+                } else {
+                    XposedBridge.log("(" + tag + ") " + message);
+                }
+                return;
+            }
+        } catch (NoClassDefFoundError | Exception e) {
+            // Fallback for safety
         }
         try {
-            if (!SPManager.isReady() || SPManager.getInstance().getEnableLogs()) {
-                XposedBridge.log(t);
+            if (throwable != null) {
+                Log.e(tag, message, throwable);
+            } else if (level == LogRingBuffer.LEVEL_ERROR) {
+                Log.e(tag, message);
+            } else {
+                Log.d(tag, message);
             }
-        } catch (Throwable th) {
-            Log.e(TAG, "Exception", t);
+        } catch (RuntimeException e) {
+            // android.util.Log is a stub in local unit tests
         }
     }
 }
@@ -9,7 +9,9 @@ package tn.eluea.kgpt.core.dispatcher;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -26,6 +28,7 @@ import tn.eluea.kgpt.core.ai.AiResponseManager;
 import tn.eluea.kgpt.instruction.command.CommandManager;
 import tn.eluea.kgpt.text.parse.result.AIParseResult;
 import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.TextMirror;
 import tn.eluea.kgpt.ui.UiInteractor;
 
 public class BrainDispatcherTest {
@@ -38,6 +41,8 @@ public class BrainDispatcherTest {
     private UiInteractor uiInteractor;
     @Mock
     private IMSController imsController;
+    @Mock
+    private TextMirror textMirror;
 
     private BrainDispatcher brainDispatcher;
     private MockedStatic<UiInteractor> mockedUiInteractor;
@@ -50,6 +55,7 @@ public class BrainDispatcherTest {
         mockedUiInteractor = Mockito.mockStatic(UiInteractor.class);
         mockedUiInteractor.when(UiInteractor::getInstance).thenReturn(uiInteractor);
         when(uiInteractor.getIMSController()).thenReturn(imsController);
+        when(imsController.getTextMirror()).thenReturn(textMirror);
 
         brainDispatcher = new BrainDispatcher(aiManager, commandManager);
     }
@@ -68,4 +74,29 @@ public class BrainDispatcherTest {
 
         verify(aiManager, times(1)).generateResponse(eq(prompt), any());
     }
+
+    @Test
+    public void dispatch_CurrentSnapshot_DeletesMatchAndDelegates() {
+        String prompt = "Test Prompt";
+        AIParseResult result = new AIParseResult(java.util.Arrays.asList("Test Prompt$", prompt), 3, 15);
+        TextMirror.Snapshot snapshot = mock(TextMirror.Snapshot.class);
+        when(textMirror.isCurrent(snapshot)).thenReturn(true);
+
+        brainDispatcher.dispatch(result, snapshot);
+
+        verify(imsController, times(1)).delete(12);
+        verify(aiManager, times(1)).generateResponse(eq(prompt), any());
+    }
+
+    @Test
+    public void dispatch_StaleSnapshot_IsDropped() {
+        AIParseResult result = new AIParseResult(java.util.Arrays.asList("match", "Test Prompt"), 0, 12);
+        TextMirror.Snapshot snapshot = mock(TextMirror.Snapshot.class);
+        when(textMirror.isCurrent(snapshot)).thenReturn(false);
+
+        brainDispatcher.dispatch(result, snapshot);
+
+        verify(imsController, never()).delete(anyInt());
+        verify(aiManager, never()).generateResponse(any(), any());
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HedgingPolicyTest {
+
+    @Test
+    public void hedgesStayWithinTheirShareOfRequests() {
+        HedgingPolicy policy = new HedgingPolicy();
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            policy.earnCredits(5);
+            // Every request slow enough to want a hedge
+            if (policy.tryAcquire()) {
+                hedges++;
+            }
+        }
+        assertTrue("hedges " + hedges, hedges <= 50);
+        assertTrue("hedges " + hedges, hedges >= 49);
+    }
+
+    @Test
+    public void delayFollowsTheSlowestRecentResponses() {
+        HedgingPolicy policy = new HedgingPolicy();
+        for (int i = 1; i <= 20; i++) {
+            policy.record(LanguageModel.Gemini, i * 100);
+        }
+        // 95th percentile of 100..2000 ms
+        assertEquals(1900, policy.hedgeDelayMs(LanguageModel.Gemini));
+        // Not enough samples yet for the other model
+        policy.record(LanguageModel.Claude, 100);
+        assertEquals(2000, policy.hedgeDelayMs(LanguageModel.Claude));
+
+        for (int i = 0; i < 32; i++) {
+            policy.record(LanguageModel.Gemini, 10);
+        }
+        assertEquals(250, policy.hedgeDelayMs(LanguageModel.Gemini));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.benchmark;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+
+/**
+ * Runs a client against the mock server and measures what the client side
+ * adds to a response: request building, the internet provider, the
+ * publisher and the response parsing.
+ *
+ * - client TTFT: time to the first chunk, minus the time the server waited
+ *   before writing it
+ * - chunk overhead: from the server writing a chunk to the subscriber
+ *   getting it, averaged over the response
+ * - throughput: chunks per second between the first and the last chunk
+ * - allocation: bytes allocated by every thread but the server's during the
+ *   response (needs HotSpot's per-thread counters, -1 elsewhere)
+ */
+final class ClientBenchmark {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ClientBenchmark() {
+    }
+
+    /**
+     * One response as the subscriber saw it.
+     */
+    static final class Sample {
+        final StringBuilder text = new StringBuilder();
+        final List<Long> chunkReceivedNanos = new ArrayList<>();
+        Throwable error;
+        boolean completed;
+        long clientTtftNanos;
+        double chunkOverheadNanos;
+        double chunksPerSecond;
+        long allocatedBytes;
+    }
+
+    /**
+     * Percentiles of the samples of one client, provider and scenario.
+     */
+    static final class Report {
+        final String label;
+        final long clientTtftP50Nanos;
+        final long clientTtftP90Nanos;
+        final double chunkOverheadP50Nanos;
+        final double chunksPerSecondP50;
+        final long allocatedBytesP50;
+
+        Report(String label, List<Sample> samples) {
+            this.label = label;
+            long[] ttft = new long[samples.size()];
+            double[] overhead = new double[samples.size()];
+            double[] throughput = new double[samples.size()];
+            long[] allocated = new long[samples.size()];
+            for (int i = 0; i < samples.size(); i++) {
+                Sample sample = samples.get(i);
+                ttft[i] = sample.clientTtftNanos;
+                overhead[i] = sample.chunkOverheadNanos;
+                throughput[i] = sample.chunksPerSecond;
+                allocated[i] = sample.allocatedBytes;
+            }
+            Arrays.sort(ttft);
+            Arrays.sort(overhead);
+            Arrays.sort(throughput);
+            Arrays.sort(allocated);
+            clientTtftP50Nanos = ttft[ttft.length / 2];
+            clientTtftP90Nanos = ttft[ttft.length * 9 / 10];
+            chunkOverheadP50Nanos = overhead[overhead.length / 2];
+            chunksPerSecondP50 = throughput[throughput.length / 2];
+            allocatedBytesP50 = allocated[allocated.length / 2];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%-34s ttft p50 %7.2f ms  p90 %7.2f ms | chunk %6.3f ms | %8.1f chunks/s | %8d KiB",
+                    label, clientTtftP50Nanos / 1e6, clientTtftP90Nanos / 1e6, chunkOverheadP50Nanos / 1e6,
+                    chunksPerSecondP50, allocatedBytesP50 / 1024);
+        }
+    }
+
+    /**
+     * Send one prompt and wait for the end of its response.
+     */
+    static Sample runOnce(LanguageModelClient client, MockLlmServer server) throws InterruptedException {
+        Sample sample = new Sample();
+        CountDownLatch done = new CountDownLatch(1);
+        long[] errorNanos = { 0 };
+
+        Map<Long, Long> allocatedBefore = allocatedBytesByThread();
+        long startNanos = System.nanoTime();
+        Publisher<String> publisher = client.submitPrompt("Say something", null);
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                sample.chunkReceivedNanos.add(System.nanoTime());
+                sample.text.append(s);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                errorNanos[0] = System.nanoTime();
+                sample.error = t;
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                sample.completed = true;
+                done.countDown();
+            }
+        });
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("No response from " + client + " within " + TIMEOUT_SECONDS + " s");
+        }
+        sample.allocatedBytes = allocatedSince(allocatedBefore);
+
+        MockLlmServer.Exchange exchange = server.takeExchange();
+        long serverWaitNanos = exchange.chunkSentNanos.isEmpty() ? 0
+                : exchange.chunkSentNanos.get(0) - exchange.requestReceivedNanos;
+        long firstSignalNanos = sample.chunkReceivedNanos.isEmpty() ? errorNanos[0]
+                : sample.chunkReceivedNanos.get(0);
+        sample.clientTtftNanos = firstSignalNanos - startNanos - serverWaitNanos;
+
+        int chunks = Math.min(sample.chunkReceivedNanos.size(), exchange.chunkSentNanos.size());
+        if (chunks > 0) {
+            long total = 0;
+            for (int i = 0; i < chunks; i++) {
+                total += sample.chunkReceivedNanos.get(i) - exchange.chunkSentNanos.get(i);
+            }
+            sample.chunkOverheadNanos = (double) total / chunks;
+        }
+        if (sample.chunkReceivedNanos.size() > 1) {
+            long span = sample.chunkReceivedNanos.get(sample.chunkReceivedNanos.size() - 1)
+                    - sample.chunkReceivedNanos.get(0);
+            sample.chunksPerSecond = span > 0 ? (sample.chunkReceivedNanos.size() - 1) * 1e9 / span : 0;
+        }
+        return sample;
+    }
+
+    /**
+     * Warm up, then measure {@code iterations} responses.
+     */
+    static Report run(String label, LanguageModelClient client, MockLlmServer server, int warmup,
+            int iterations) throws InterruptedException {
+        for (int i = 0; i < warmup; i++) {
+            runOnce(client, server);
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            samples.add(runOnce(client, server));
+        }
+        return new Report(label, samples);
+    }
+
+    /**
+     * Bytes allocated so far by each live thread but the server's, or null
+     * when the JVM has no per-thread counters. Reached through reflection,
+     * java.lang.management isn't part of android.jar.
+     */
+    private static Map<Long, Long> allocatedBytesByThread() {
+        Object threadBean;
+        Method allocatedBytes;
+        try {
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long[].class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+        if (!allocatedBytes.getDeclaringClass().isInstance(threadBean)) {
+            return null;
+        }
+
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        int count = root.enumerate(threads, true);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!isServerThread(threads[i].getName())) {
+                ids.add(threads[i].getId());
+            }
+        }
+        long[] idArray = new long[ids.size()];
+        for (int i = 0; i < idArray.length; i++) {
+            idArray[i] = ids.get(i);
+        }
+
+        long[] bytes;
+        try {
+            bytes = (long[]) allocatedBytes.invoke(threadBean, (Object) idArray);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < idArray.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(idArray[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedBytesByThread();
+        if (before == null || after == null) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long start = before.get(entry.getKey());
+            total += entry.getValue() - (start != null ? start : 0);
+        }
+        return total;
+    }
+
+    private static boolean isServerThread(String name) {
+        return name.startsWith(MockLlmServer.THREAD_PREFIX) || name.startsWith("HTTP-Dispatcher");
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.ChatGPTClient;
+import tn.eluea.kgpt.llm.client.ClaudeClient;
+import tn.eluea.kgpt.llm.client.CustomAPIClient;
+import tn.eluea.kgpt.llm.client.GeminiClient;
+import tn.eluea.kgpt.llm.client.GroqClient;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.MistralClient;
+import tn.eluea.kgpt.llm.internet.InternetProvider;
+import tn.eluea.kgpt.llm.internet.PooledInternetProvider;
+import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.publisher.RequestFailedException;
+
+/**
+ * Every client against the mock server, through both providers able to run
+ * on the JVM. Checks that responses arrive whole, then measures the
+ * client-side overhead and fails when it goes past a budget. The budgets are
+ * loose on purpose, a loopback response is a few milliseconds and they only
+ * catch regressions that are an order of magnitude off (a blocking wait, a
+ * lost flush, a copy per chunk).
+ */
+public class ClientBenchmarkTest {
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    private static final long CLIENT_TTFT_BUDGET_MS = 150;
+    private static final double CHUNK_OVERHEAD_BUDGET_MS = 20;
+    private static final long ALLOCATION_BUDGET_BYTES = 16L * 1024 * 1024;
+
+    private static MockLlmServer server;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new MockLlmServer();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+
+    private static Map<String, Supplier<LanguageModelClient>> clients() {
+        Map<String, Supplier<LanguageModelClient>> clients = new LinkedHashMap<>();
+        clients.put("ChatGPT", ChatGPTClient::new);
+        clients.put("Groq", GroqClient::new);
+        clients.put("Mistral", MistralClient::new);
+        clients.put("CustomAPI", CustomAPIClient::new);
+        clients.put("Gemini", GeminiClient::new);
+        clients.put("Claude", ClaudeClient::new);
+        return clients;
+    }
+
+    private static Map<String, Supplier<InternetProvider>> providers() {
+        Map<String, Supplier<InternetProvider>> providers = new LinkedHashMap<>();
+        providers.put("simple", SimpleInternetProvider::new);
+        providers.put("pooled", PooledInternetProvider::new);
+        return providers;
+    }
+
+    private interface ClientCase {
+        void run(String label, LanguageModelClient client) throws Exception;
+    }
+
+    private static final AtomicInteger sKeys = new AtomicInteger();
+
+    private static void forEachClient(ClientCase clientCase) throws Exception {
+        for (Map.Entry<String, Supplier<LanguageModelClient>> clientEntry : clients().entrySet()) {
+            for (Map.Entry<String, Supplier<InternetProvider>> providerEntry : providers().entrySet()) {
+                LanguageModelClient client = clientEntry.getValue().get();
+                client.setField(LanguageModelField.BaseUrl, server.baseUrl());
+                // A fresh key each run, one answered 429 would back off and not be sent
+                client.setField(LanguageModelField.ApiKey, "test-key-" + sKeys.incrementAndGet());
+                client.setInternetProvider(providerEntry.getValue().get());
+                clientCase.run(clientEntry.getKey() + "/" + providerEntry.getKey(), client);
+            }
+        }
+    }
+
+    @Test
+    public void streamedResponseArrivesChunkByChunk() throws Exception {
+        Scenario scenario = Scenario.builder("stream").chunkSize(3).build();
+        server.setScenario(scenario);
+        server.clearExchanges();
+
+        forEachClient((label, client) -> {
+            ClientBenchmark.Sample sample = ClientBenchmark.runOnce(client, server);
+            assertTrue(label + " completes", sample.completed);
+            assertEquals(label, scenario.text(), sample.text.toString());
+            assertEquals(label + " chunks", scenario.chunks.size(), sample.chunkReceivedNanos.size());
+        });
+    }
+
+    @Test
+    public void nonStreamedResponseArrivesWhole() throws Exception {
+        Scenario scenario = Scenario.builder("single body").streaming(false).build();
+        server.setScenario(scenario);
+        server.clearExchanges();
+
+        forEachClient((label, client) -> {
+            ClientBenchmark.Sample sample = ClientBenchmark.runOnce(client, server);
+            assertTrue(label + " completes", sample.completed);
+            assertEquals(label, scenario.text(), sample.text.toString());
+        });
+    }
+
+    @Test
+    public void errorStatusEndsWithOnError() throws Exception {
+        for (int statusCode : new int[] { 429, 500 }) {
+            server.setScenario(Scenario.builder("error " + statusCode).statusCode(statusCode).build());
+            server.clearExchanges();
+
+            forEachClient((label, client) -> {
+                ClientBenchmark.Sample sample = ClientBenchmark.runOnce(client, server);
+                assertTrue(label + " fails with " + statusCode,
+                        sample.error instanceof RequestFailedException);
+                assertEquals(label, statusCode, ((RequestFailedException) sample.error).getStatusCode());
+                assertFalse(label + " doesn't complete", sample.completed);
+                assertEquals(label, "", sample.text.toString());
+            });
+        }
+    }
+
+    @Test
+    public void clientOverheadStaysWithinBudget() throws Exception {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(Scenario.builder("slow start").firstChunkDelayMs(20).chunkDelayMs(2).build());
+        scenarios.add(Scenario.builder("large chunks").chunkSize(64)
+                .text(repeat("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ", 40)).build());
+
+        List<ClientBenchmark.Report> reports = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            server.setScenario(scenario);
+            server.clearExchanges();
+            forEachClient((label, client) -> reports.add(ClientBenchmark.run(label + " " + scenario,
+                    client, server, WARMUP, ITERATIONS)));
+        }
+
+        StringBuilder table = new StringBuilder("Client overhead on loopback\n");
+        for (ClientBenchmark.Report report : reports) {
+            table.append(report).append('\n');
+        }
+        System.out.print(table);
+
+        for (ClientBenchmark.Report report : reports) {
+            assertTrue(report.label + " TTFT " + report.clientTtftP50Nanos / 1e6 + " ms",
+                    report.clientTtftP50Nanos < CLIENT_TTFT_BUDGET_MS * 1_000_000);
+            assertTrue(report.label + " chunk overhead " + report.chunkOverheadP50Nanos / 1e6 + " ms",
+                    report.chunkOverheadP50Nanos < CHUNK_OVERHEAD_BUDGET_MS * 1_000_000);
+            assertTrue(report.label + " allocated " + report.allocatedBytesP50 + " bytes",
+                    report.allocatedBytesP50 < ALLOCATION_BUDGET_BYTES);
+        }
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+}
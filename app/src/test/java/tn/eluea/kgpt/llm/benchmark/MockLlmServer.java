@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripted LLM server on the loopback interface, speaking the OpenAI chat
+ * completions, Gemini and Anthropic Messages formats (picked from the
+ * request path), streamed as server-sent events or as a single body.
+ *
+ * A plain HTTP/1.1 server on a ServerSocket, so it runs against android.jar
+ * and every write goes out as soon as it is flushed (TCP_NODELAY). Each
+ * response is recorded with the times its chunks were written, taken from
+ * the same clock as the client so the time the client adds can be told apart
+ * from the time the server takes.
+ */
+final class MockLlmServer implements AutoCloseable {
+    static final String THREAD_PREFIX = "MockLlmServer-";
+
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor;
+    private final BlockingQueue<Exchange> mExchanges = new LinkedBlockingQueue<>();
+    private volatile Scenario mScenario;
+
+    /**
+     * Timeline of one response, in System.nanoTime().
+     */
+    static final class Exchange {
+        final String path;
+        long requestReceivedNanos;
+        final List<Long> chunkSentNanos = new ArrayList<>();
+
+        Exchange(String path) {
+            this.path = path;
+        }
+    }
+
+    MockLlmServer() throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mExecutor.execute(this::acceptLoop);
+    }
+
+    /**
+     * Base URL to configure the clients with.
+     */
+    String baseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/v1";
+    }
+
+    void setScenario(Scenario scenario) {
+        mScenario = scenario;
+    }
+
+    /**
+     * The next response the server finished, in order.
+     */
+    Exchange takeExchange() throws InterruptedException {
+        Exchange exchange = mExchanges.poll(5, TimeUnit.SECONDS);
+        if (exchange == null) {
+            throw new IllegalStateException("The server answered no request");
+        }
+        return exchange;
+    }
+
+    void clearExchanges() {
+        mExchanges.clear();
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket socket = mServerSocket.accept();
+                socket.setTcpNoDelay(true);
+                mExecutor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    /**
+     * Answer the requests of one connection, kept alive like a real server's.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                        contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                    }
+                }
+                for (int i = 0; i < contentLength; i++) {
+                    if (in.read() == -1) {
+                        return;
+                    }
+                }
+
+                String path = requestLine.split(" ")[1];
+                Exchange exchange = new Exchange(path);
+                exchange.requestReceivedNanos = System.nanoTime();
+                respond(out, exchange, mScenario, WireFormat.forPath(stripQuery(path)));
+                mExchanges.add(exchange);
+            }
+        } catch (Exception e) {
+            // Client went away
+        }
+    }
+
+    private static void respond(OutputStream out, Exchange exchange, Scenario scenario, WireFormat format)
+            throws Exception {
+        if (format == null) {
+            send(out, exchange, 404, "{\"error\":{\"message\":\"Unknown path\"}}");
+        } else if (scenario.isError()) {
+            sleep(scenario.firstChunkDelayMs);
+            send(out, exchange, scenario.statusCode, format.errorBody(scenario.statusCode));
+        } else if (!scenario.streaming) {
+            sleep(scenario.firstChunkDelayMs);
+            send(out, exchange, 200, format.completeBody(scenario.text()));
+        } else {
+            stream(out, exchange, scenario, format);
+        }
+    }
+
+    private static void send(OutputStream out, Exchange exchange, int statusCode, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, statusCode, "application/json", "Content-Length: " + bytes.length);
+        exchange.chunkSentNanos.add(System.nanoTime());
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static void stream(OutputStream out, Exchange exchange, Scenario scenario, WireFormat format)
+            throws Exception {
+        // Headers go out right away, like a real server's do
+        writeHead(out, 200, "text/event-stream", "Transfer-Encoding: chunked");
+        out.flush();
+        sleep(scenario.firstChunkDelayMs);
+        for (int i = 0; i < scenario.chunks.size(); i++) {
+            if (i > 0) {
+                sleep(scenario.chunkDelayMs);
+            }
+            exchange.chunkSentNanos.add(System.nanoTime());
+            writeChunk(out, "data: " + format.streamChunk(scenario.chunks.get(i)) + "\n\n");
+        }
+        String end = format.streamEnd();
+        if (end != null) {
+            writeChunk(out, "data: " + end + "\n\n");
+        }
+        out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void writeHead(OutputStream out, int statusCode, String contentType, String framing)
+            throws IOException {
+        String head = "HTTP/1.1 " + statusCode + " " + (statusCode == 200 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + framing + "\r\n"
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeChunk(OutputStream out, String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        out.write((Integer.toHexString(bytes.length).toUpperCase(Locale.ROOT) + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                String s = line.toString("US-ASCII");
+                return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+            }
+            line.write(c);
+        }
+        return line.size() > 0 ? line.toString("US-ASCII") : null;
+    }
+
+    private static String stripQuery(String path) {
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+
+    private static void sleep(long ms) throws InterruptedException {
+        if (ms > 0) {
+            Thread.sleep(ms);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        mExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the mock server answers: the text cut in chunks, how fast they come
+ * and whether the response is streamed or an error.
+ */
+final class Scenario {
+    final String name;
+    final List<String> chunks;
+    final boolean streaming;
+    final int statusCode;
+    final long firstChunkDelayMs;
+    final long chunkDelayMs;
+
+    private Scenario(Builder builder) {
+        name = builder.name;
+        chunks = Collections.unmodifiableList(split(builder.text, builder.chunkSize));
+        streaming = builder.streaming;
+        statusCode = builder.statusCode;
+        firstChunkDelayMs = builder.firstChunkDelayMs;
+        chunkDelayMs = builder.chunkDelayMs;
+    }
+
+    String text() {
+        return String.join("", chunks);
+    }
+
+    boolean isError() {
+        return statusCode != 200;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static List<String> split(String text, int chunkSize) {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + chunkSize)));
+        }
+        return chunks;
+    }
+
+    static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    static final class Builder {
+        private final String name;
+        private String text = "The quick brown fox jumps over the lazy dog. ";
+        private int chunkSize = 4;
+        private boolean streaming = true;
+        private int statusCode = 200;
+        private long firstChunkDelayMs = 0;
+        private long chunkDelayMs = 0;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        Builder text(String text) {
+            this.text = text;
+            return this;
+        }
+
+        Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        Builder statusCode(int statusCode) {
+            this.statusCode = statusCode;
+            return this;
+        }
+
+        /**
+         * Time the server "thinks" before its first chunk.
+         */
+        Builder firstChunkDelayMs(long firstChunkDelayMs) {
+            this.firstChunkDelayMs = firstChunkDelayMs;
+            return this;
+        }
+
+        Builder chunkDelayMs(long chunkDelayMs) {
+            this.chunkDelayMs = chunkDelayMs;
+            return this;
+        }
+
+        Scenario build() {
+            return new Scenario(this);
+        }
+    }
+}
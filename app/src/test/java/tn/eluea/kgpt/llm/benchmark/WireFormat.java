@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The response bodies of one provider API, as the mock server writes them.
+ */
+enum WireFormat {
+    OPENAI {
+        @Override
+        String streamChunk(String text) throws JSONException {
+            return new JSONObject()
+                    .put("object", "chat.completion.chunk")
+                    .put("choices", new JSONArray().put(new JSONObject()
+                            .put("index", 0)
+                            .put("delta", new JSONObject().put("content", text))))
+                    .toString();
+        }
+
+        @Override
+        String streamEnd() {
+            return "[DONE]";
+        }
+
+        @Override
+        String completeBody(String text) throws JSONException {
+            return new JSONObject()
+                    .put("object", "chat.completion")
+                    .put("choices", new JSONArray().put(new JSONObject()
+                            .put("index", 0)
+                            .put("message", new JSONObject()
+                                    .put("role", "assistant")
+                                    .put("content", text))))
+                    .toString();
+        }
+
+        @Override
+        String errorBody(int statusCode) throws JSONException {
+            return new JSONObject().put("error", new JSONObject()
+                    .put("message", "Mock error " + statusCode)
+                    .put("type", "server_error"))
+                    .toString();
+        }
+    },
+
+    GEMINI {
+        @Override
+        String streamChunk(String text) throws JSONException {
+            return response(new JSONObject()
+                    .put("content", content(text)));
+        }
+
+        @Override
+        String streamEnd() throws JSONException {
+            return response(new JSONObject()
+                    .put("content", content(""))
+                    .put("finishReason", "STOP"));
+        }
+
+        @Override
+        String completeBody(String text) throws JSONException {
+            return response(new JSONObject()
+                    .put("content", content(text))
+                    .put("finishReason", "STOP"));
+        }
+
+        private String response(JSONObject candidate) throws JSONException {
+            return new JSONObject()
+                    .put("candidates", new JSONArray().put(candidate))
+                    .toString();
+        }
+
+        private JSONObject content(String text) throws JSONException {
+            return new JSONObject()
+                    .put("role", "model")
+                    .put("parts", new JSONArray().put(new JSONObject().put("text", text)));
+        }
+
+        @Override
+        String errorBody(int statusCode) throws JSONException {
+            return new JSONObject().put("error", new JSONObject()
+                    .put("code", statusCode)
+                    .put("message", "Mock error " + statusCode)
+                    .put("status", "INTERNAL"))
+                    .toString();
+        }
+    },
+
+    ANTHROPIC {
+        @Override
+        String streamChunk(String text) throws JSONException {
+            return new JSONObject()
+                    .put("type", "content_block_delta")
+                    .put("index", 0)
+                    .put("delta", new JSONObject().put("type", "text_delta").put("text", text))
+                    .toString();
+        }
+
+        @Override
+        String streamEnd() throws JSONException {
+            return new JSONObject().put("type", "message_stop").toString();
+        }
+
+        @Override
+        String completeBody(String text) throws JSONException {
+            return new JSONObject()
+                    .put("type", "message")
+                    .put("role", "assistant")
+                    .put("content", new JSONArray().put(new JSONObject()
+                            .put("type", "text")
+                            .put("text", text)))
+                    .toString();
+        }
+
+        @Override
+        String errorBody(int statusCode) throws JSONException {
+            return new JSONObject()
+                    .put("type", "error")
+                    .put("error", new JSONObject()
+                            .put("type", "api_error")
+                            .put("message", "Mock error " + statusCode))
+                    .toString();
+        }
+    };
+
+    /**
+     * Data of the server-sent event carrying {@code text}.
+     */
+    abstract String streamChunk(String text) throws JSONException;
+
+    /**
+     * Data of the event closing the stream, null if the format has none.
+     */
+    abstract String streamEnd() throws JSONException;
+
+    abstract String completeBody(String text) throws JSONException;
+
+    abstract String errorBody(int statusCode) throws JSONException;
+
+    static WireFormat forPath(String path) {
+        if (path.endsWith("/chat/completions")) {
+            return OPENAI;
+        } else if (path.endsWith("/messages")) {
+            return ANTHROPIC;
+        } else if (path.contains(":streamGenerateContent") || path.contains(":generateContent")) {
+            return GEMINI;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.ChatGPTClient;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.publisher.ExceptionPublisher;
+import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
+
+public class ResponseCacheTest {
+    private static final long TTL_MS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private ResponseCache newCache(File directory) {
+        return new ResponseCache(directory, 1024 * 1024, TTL_MS, now::get);
+    }
+
+    private static class Collector implements Subscriber<String> {
+        final StringBuilder text = new StringBuilder();
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean cancelFirst;
+        Subscription subscription;
+        Throwable error;
+
+        Collector(boolean cancelFirst) {
+            this.cancelFirst = cancelFirst;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String s) {
+            text.append(s);
+            if (cancelFirst) {
+                subscription.cancel();
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Collector consume(Publisher<String> publisher, boolean cancelFirst) throws InterruptedException {
+        Collector collector = new Collector(cancelFirst);
+        publisher.subscribe(collector);
+        collector.await();
+        return collector;
+    }
+
+    @Test
+    public void keyChangesWithEverySetting() {
+        LanguageModelClient client = new ChatGPTClient();
+        client.setField(LanguageModelField.Temperature, "0.0");
+        String key = ResponseCache.keyFor(client, "fix this", "system");
+
+        assertEquals(key, ResponseCache.keyFor(client, "fix this", "system"));
+        assertNotEquals(key, ResponseCache.keyFor(client, "fix this", null));
+        assertNotEquals(key, ResponseCache.keyFor(client, "fix thi", "ssystem"));
+        client.setField(LanguageModelField.MaxTokens, "100");
+        assertNotEquals(key, ResponseCache.keyFor(client, "fix this", "system"));
+    }
+
+    @Test
+    public void hotResponsesSkipTheModel() {
+        LanguageModelClient client = new ChatGPTClient();
+        client.setField(LanguageModelField.Temperature, "0.2");
+        assertTrue(ResponseCache.isCacheable(client, 0.5));
+        client.setField(LanguageModelField.Temperature, "0.9");
+        assertTrue(!ResponseCache.isCacheable(client, 0.5));
+    }
+
+    @Test
+    public void completedResponseIsReplayedWithoutRequest() throws Exception {
+        ResponseCache cache = newCache(null);
+        AtomicInteger requests = new AtomicInteger();
+
+        Collector first = consume(cache.publisherFor("key", () -> {
+            requests.incrementAndGet();
+            return cache.recording("key", new SimpleStringPublisher("fixed text"));
+        }), false);
+        Collector second = consume(cache.publisherFor("key", () -> {
+            requests.incrementAndGet();
+            return cache.recording("key", new SimpleStringPublisher("other text"));
+        }), false);
+
+        assertEquals("fixed text", first.text.toString());
+        assertEquals("fixed text", second.text.toString());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void failedOrCancelledResponseIsNotStored() throws Exception {
+        ResponseCache cache = newCache(null);
+
+        Collector failed = consume(cache.publisherFor("key",
+                () -> cache.recording("key", new ExceptionPublisher(new Exception("Too many requests")))), false);
+        assertNotNull(failed.error);
+        assertNull(cache.getFromMemory("key"));
+
+        consume(cache.publisherFor("key",
+                () -> cache.recording("key", new SimpleStringPublisher("partial"))), true);
+        assertNull(cache.getFromMemory("key"));
+    }
+
+    @Test
+    public void responseOfAnotherModelIsNotStored() throws Exception {
+        ResponseCache cache = newCache(null);
+
+        // A fallback or the hedge answered, the router didn't record it
+        Collector collector = consume(cache.publisherFor("key",
+                () -> new SimpleStringPublisher("fallback text")), false);
+        assertEquals("fallback text", collector.text.toString());
+        assertNull(cache.getFromMemory("key"));
+    }
+
+    @Test
+    public void entriesExpire() {
+        ResponseCache cache = newCache(null);
+        cache.put("key", "text");
+        assertEquals("text", cache.getFromMemory("key"));
+
+        now.addAndGet(TTL_MS);
+        assertNull(cache.getFromMemory("key"));
+    }
+
+    @Test
+    public void diskEntriesOutliveTheProcessUntilTheyExpire() throws Exception {
+        DiskCache disk = new DiskCache(folder.getRoot(), 1024 * 1024);
+        disk.put("key", "persisted é", now.get() + TTL_MS);
+
+        DiskCache reopened = new DiskCache(folder.getRoot(), 1024 * 1024);
+        DiskCache.Entry entry = reopened.get("key", now.get());
+        assertNotNull(entry);
+        assertEquals("persisted é", entry.text);
+
+        assertNull(reopened.get("key", now.get() + TTL_MS));
+        assertTrue(!new File(folder.getRoot(), "key").exists());
+    }
+
+    @Test
+    public void diskDropsLeastRecentlyUsedPastItsCap() throws Exception {
+        DiskCache disk = new DiskCache(folder.getRoot(), 250);
+        String text = new String(new char[100]).replace('\0', 'x');
+        disk.put("a", text, Long.MAX_VALUE);
+        new File(folder.getRoot(), "a").setLastModified(1000);
+        disk.put("b", text, Long.MAX_VALUE);
+        new File(folder.getRoot(), "b").setLastModified(2000);
+        // Reading a makes b the least recently used
+        disk.get("a", 3000);
+
+        disk.put("c", text, Long.MAX_VALUE);
+
+        assertNotNull(disk.get("a", 4000));
+        assertNull(disk.get("b", 4000));
+        assertNotNull(disk.get("c", 4000));
+    }
+}
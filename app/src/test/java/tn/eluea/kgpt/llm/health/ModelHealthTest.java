@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.health;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.health.ModelHealth.Outcome;
+import tn.eluea.kgpt.llm.health.ModelHealth.State;
+
+public class ModelHealthTest {
+    private long now = 1_000;
+    private final ModelHealth health = new ModelHealth(LanguageModel.Gemini, () -> now);
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndRecoversThroughOneTrial() {
+        for (int i = 0; i < ModelHealth.FAILURE_THRESHOLD - 1; i++) {
+            health.record(Outcome.SERVER_ERROR, 0);
+        }
+        assertEquals(State.CLOSED, health.getState());
+        health.record(Outcome.RATE_LIMITED, 0);
+        assertEquals(State.OPEN, health.getState());
+        assertFalse(health.allowRequest());
+        assertEquals(ModelHealth.BASE_COOLDOWN_MS, health.retryInMs());
+
+        now += ModelHealth.BASE_COOLDOWN_MS;
+        assertTrue(health.allowRequest());
+        assertEquals(State.HALF_OPEN, health.getState());
+        assertFalse(health.allowRequest());
+
+        health.record(Outcome.SUCCESS, 500);
+        assertEquals(State.CLOSED, health.getState());
+        assertTrue(health.allowRequest());
+    }
+
+    @Test
+    public void failedTrialDoublesCooldown() {
+        for (int i = 0; i < ModelHealth.FAILURE_THRESHOLD; i++) {
+            health.record(Outcome.NO_RESPONSE, 0);
+        }
+        now += ModelHealth.BASE_COOLDOWN_MS;
+        assertTrue(health.allowRequest());
+        health.record(Outcome.SERVER_ERROR, 0);
+
+        assertEquals(State.OPEN, health.getState());
+        assertEquals(2 * ModelHealth.BASE_COOLDOWN_MS, health.retryInMs());
+    }
+
+    @Test
+    public void clientErrorsDontOpenTheCircuit() {
+        for (int i = 0; i < 2 * ModelHealth.FAILURE_THRESHOLD; i++) {
+            health.record(Outcome.CLIENT_ERROR, 100);
+        }
+        assertEquals(State.CLOSED, health.getState());
+        assertEquals(2 * ModelHealth.FAILURE_THRESHOLD, health.getCount(Outcome.CLIENT_ERROR));
+    }
+
+    @Test
+    public void timeoutsFollowObservedLatency() {
+        assertEquals(ModelHealth.DEFAULT_CONNECT_TIMEOUT_MS, health.connectTimeoutMs());
+        assertEquals(ModelHealth.DEFAULT_READ_TIMEOUT_MS, health.readTimeoutMs());
+
+        for (int i = 0; i < 10; i++) {
+            health.record(Outcome.SUCCESS, 1_000 + 100 * i);
+        }
+        // 3 x p90 (1 800 ms) and 3 x p99 (1 900 ms), the latter raised to the floor
+        assertEquals(5_400, health.connectTimeoutMs());
+        assertEquals(10_000, health.readTimeoutMs());
+    }
+}
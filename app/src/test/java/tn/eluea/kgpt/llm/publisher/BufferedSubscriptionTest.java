@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class BufferedSubscriptionTest {
+
+    private static class RecordingSubscriber implements Subscriber<String> {
+        final List<String> items = new ArrayList<>();
+        Throwable error;
+        int completions;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+        }
+
+        @Override
+        public void onNext(String s) {
+            items.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+
+    @Test
+    public void emitsOnlyAsFarAsDemandGoes() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, null, null);
+
+        subscription.emit("a");
+        subscription.emit("b");
+        subscription.emit("c");
+        subscription.complete();
+        assertEquals(Collections.emptyList(), subscriber.items);
+
+        subscription.request(2);
+        assertEquals(Arrays.asList("a", "b"), subscriber.items);
+        assertEquals(0, subscriber.completions);
+
+        subscription.request(1);
+        assertEquals(Arrays.asList("a", "b", "c"), subscriber.items);
+        assertEquals(1, subscriber.completions);
+    }
+
+    @Test
+    public void startsOnFirstRequestOnly() {
+        int[] starts = { 0 };
+        BufferedSubscription subscription = new BufferedSubscription(new RecordingSubscriber(),
+                () -> starts[0]++, null);
+
+        subscription.request(1);
+        subscription.request(Long.MAX_VALUE);
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(1, starts[0]);
+    }
+
+    @Test
+    public void errorNeedsNoDemand() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, null, null);
+        RuntimeException error = new RuntimeException("boom");
+
+        subscription.emit("a");
+        subscription.error(error);
+        assertEquals(error, subscriber.error);
+        assertEquals(Collections.emptyList(), subscriber.items);
+        assertEquals(0, subscriber.completions);
+    }
+
+    @Test
+    public void nonPositiveRequestIsAnError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, null, null);
+
+        subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void nothingIsSentAfterCancel() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        int[] cancels = { 0 };
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, null, () -> cancels[0]++);
+
+        subscription.request(Long.MAX_VALUE);
+        subscription.emit("a");
+        subscription.cancel();
+        subscription.cancel();
+        subscription.emit("b");
+        subscription.complete();
+
+        assertEquals(Collections.singletonList("a"), subscriber.items);
+        assertEquals(0, subscriber.completions);
+        assertEquals(1, cancels[0]);
+        assertTrue(subscription.isStopped());
+    }
+
+    @Test
+    public void requestFromOnNextDoesNotRecurse() {
+        List<String> received = new ArrayList<>();
+        BufferedSubscription[] subscription = new BufferedSubscription[1];
+        int[] depth = { 0, 0 };
+        subscription[0] = new BufferedSubscription(new RecordingSubscriber() {
+            @Override
+            public void onNext(String s) {
+                depth[0]++;
+                depth[1] = Math.max(depth[1], depth[0]);
+                received.add(s);
+                subscription[0].request(1);
+                depth[0]--;
+            }
+        }, null, null);
+
+        for (int i = 0; i < 5; i++) {
+            subscription[0].emit(Integer.toString(i));
+        }
+        assertFalse(subscription[0].isStopped());
+        subscription[0].request(1);
+
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), received);
+        assertEquals(1, depth[1]);
+    }
+}
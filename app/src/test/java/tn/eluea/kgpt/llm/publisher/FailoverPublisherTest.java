@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class FailoverPublisherTest {
+
+    /**
+     * Source driven by the test.
+     */
+    private static class Source implements Publisher<String> {
+        Subscriber<? super String> subscriber;
+        boolean cancelled;
+
+        @Override
+        public void subscribe(Subscriber<? super String> s) {
+            subscriber = s;
+            s.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static class Collector implements Subscriber<String> {
+        final List<String> received = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+        int completions;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String s) {
+            received.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+
+    @Test
+    public void failsOverOnTransientErrorOnly() {
+        Source first = new Source();
+        Source second = new Source();
+        Source third = new Source();
+        Collector collector = new Collector();
+        new FailoverPublisher(Arrays.asList(() -> first, () -> second, () -> third)).subscribe(collector);
+
+        first.subscriber.onError(new RequestFailedException(503, "overloaded", null));
+        RequestFailedException badKey = new RequestFailedException(401, "bad key", null);
+        second.subscriber.onError(badKey);
+
+        assertSame(badKey, collector.error);
+        assertEquals(null, third.subscriber);
+    }
+
+    @Test
+    public void reportsFirstErrorWhenAllFail() {
+        Source first = new Source();
+        Source second = new Source();
+        Collector collector = new Collector();
+        new FailoverPublisher(Arrays.asList(() -> first, () -> second)).subscribe(collector);
+
+        RequestFailedException rateLimited = new RequestFailedException(429, "slow down", null);
+        first.subscriber.onError(rateLimited);
+        second.subscriber.onError(new RequestFailedException(0, "unreachable", null));
+
+        assertSame(rateLimited, collector.error);
+    }
+
+    @Test
+    public void keepsSourceOnceItProduced() {
+        Source first = new Source();
+        Source second = new Source();
+        Collector collector = new Collector();
+        new FailoverPublisher(Arrays.asList(() -> first, () -> second)).subscribe(collector);
+
+        first.subscriber.onNext("a");
+        RequestFailedException error = new RequestFailedException(500, "broke", null);
+        first.subscriber.onError(error);
+
+        assertEquals(Collections.singletonList("a"), collector.received);
+        assertSame(error, collector.error);
+        assertEquals(null, second.subscriber);
+    }
+
+    @Test
+    public void cancelReachesCurrentSource() {
+        Source first = new Source();
+        Source second = new Source();
+        Collector collector = new Collector();
+        new FailoverPublisher(Arrays.asList(() -> first, () -> second)).subscribe(collector);
+
+        first.subscriber.onError(new RequestFailedException(502, "bad gateway", null));
+        second.subscriber.onNext("b");
+        collector.subscription.cancel();
+        second.subscriber.onComplete();
+
+        assertTrue(second.cancelled);
+        assertFalse(first.cancelled);
+        assertEquals(Collections.singletonList("b"), collector.received);
+        assertEquals(0, collector.completions);
+    }
+}
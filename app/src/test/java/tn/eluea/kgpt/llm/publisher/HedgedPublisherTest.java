@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class HedgedPublisherTest {
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void stopTimer() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Source driven by the test.
+     */
+    private static class Source implements Publisher<String> {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        volatile Subscriber<? super String> subscriber;
+        volatile boolean cancelled;
+
+        @Override
+        public void subscribe(Subscriber<? super String> s) {
+            subscriber = s;
+            s.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+            subscribed.countDown();
+        }
+
+        boolean awaitSubscribed() throws InterruptedException {
+            return subscribed.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class Collector implements Subscriber<String> {
+        final List<String> received = new ArrayList<>();
+        Throwable error;
+        int completions;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String s) {
+            received.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+
+    private static final HedgedPublisher.Observer NO_OBSERVER = new HedgedPublisher.Observer() {
+        @Override
+        public void onFirstChunk(boolean secondary, long elapsedMs) {
+        }
+
+        @Override
+        public void onAbandoned(boolean secondary, long elapsedMs) {
+        }
+    };
+
+    @Test
+    public void fastPrimaryIsNeverHedged() throws Exception {
+        Source primary = new Source();
+        Source secondary = new Source();
+        int[] asked = { 0 };
+        Collector collector = new Collector();
+        new HedgedPublisher(() -> primary, () -> secondary, 50, () -> {
+            asked[0]++;
+            return true;
+        }, NO_OBSERVER, timer).subscribe(collector);
+
+        primary.subscriber.onNext("a");
+        primary.subscriber.onComplete();
+        Thread.sleep(150);
+
+        assertEquals(Arrays.asList("a"), collector.received);
+        assertEquals(1, collector.completions);
+        assertEquals(0, asked[0]);
+        assertNull(secondary.subscriber);
+    }
+
+    @Test
+    public void firstSourceToProduceWinsAndTheOtherIsCancelled() throws Exception {
+        Source primary = new Source();
+        Source secondary = new Source();
+        boolean[] secondaryWon = { false };
+        Collector collector = new Collector();
+        new HedgedPublisher(() -> primary, () -> secondary, 10, () -> true, new HedgedPublisher.Observer() {
+            @Override
+            public void onFirstChunk(boolean isSecondary, long elapsedMs) {
+                secondaryWon[0] = isSecondary;
+            }
+
+            @Override
+            public void onAbandoned(boolean isSecondary, long elapsedMs) {
+            }
+        }, timer).subscribe(collector);
+
+        assertTrue(secondary.awaitSubscribed());
+        secondary.subscriber.onNext("b");
+        primary.subscriber.onNext("a");
+        secondary.subscriber.onComplete();
+
+        assertTrue(primary.cancelled);
+        assertFalse(secondary.cancelled);
+        assertTrue(secondaryWon[0]);
+        assertEquals(Arrays.asList("b"), collector.received);
+        assertEquals(1, collector.completions);
+    }
+
+    @Test
+    public void failureWaitsForTheOtherSource() throws Exception {
+        Source primary = new Source();
+        Source secondary = new Source();
+        Collector collector = new Collector();
+        new HedgedPublisher(() -> primary, () -> secondary, 10, () -> true, NO_OBSERVER, timer)
+                .subscribe(collector);
+        assertTrue(secondary.awaitSubscribed());
+
+        Exception primaryError = new Exception("Overloaded");
+        primary.subscriber.onError(primaryError);
+        assertNull(collector.error);
+
+        secondary.subscriber.onError(new Exception("Unauthorized"));
+        assertSame(primaryError, collector.error);
+    }
+
+    @Test
+    public void noHedgeWithoutBudget() throws Exception {
+        Source primary = new Source();
+        Source secondary = new Source();
+        CountDownLatch asked = new CountDownLatch(1);
+        new HedgedPublisher(() -> primary, () -> secondary, 10, () -> {
+            asked.countDown();
+            return false;
+        }, NO_OBSERVER, timer).subscribe(new Collector());
+
+        assertTrue(asked.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertNull(secondary.subscriber);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class MulticastPublisherTest {
+
+    /**
+     * Upstream driven by the test, counting its subscriptions and cancels.
+     */
+    private static class ManualPublisher implements Publisher<String> {
+        Subscriber<? super String> subscriber;
+        int subscriptions;
+        int cancels;
+
+        @Override
+        public void subscribe(Subscriber<? super String> s) {
+            subscriber = s;
+            subscriptions++;
+            s.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancels++;
+                }
+            });
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<String> {
+        final List<String> received = new ArrayList<>();
+        final long demand;
+        Subscription subscription;
+        Throwable error;
+        int completions;
+
+        RecordingSubscriber(long demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            if (demand > 0) {
+                s.request(demand);
+            }
+        }
+
+        @Override
+        public void onNext(String s) {
+            received.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+
+    @Test
+    public void lateSubscriberGetsMissedChunksFirst() {
+        ManualPublisher upstream = new ManualPublisher();
+        MulticastPublisher multicast = new MulticastPublisher(() -> upstream, null);
+        RecordingSubscriber first = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber second = new RecordingSubscriber(Long.MAX_VALUE);
+
+        multicast.subscribe(first);
+        upstream.subscriber.onNext("a");
+        upstream.subscriber.onNext("b");
+        multicast.subscribe(second);
+        upstream.subscriber.onNext("c");
+        upstream.subscriber.onComplete();
+
+        assertEquals(1, upstream.subscriptions);
+        assertEquals(Arrays.asList("a", "b", "c"), first.received);
+        assertEquals(Arrays.asList("a", "b", "c"), second.received);
+        assertEquals(1, first.completions);
+        assertEquals(1, second.completions);
+    }
+
+    @Test
+    public void eachSubscriberTakesChunksAtItsOwnDemand() {
+        ManualPublisher upstream = new ManualPublisher();
+        MulticastPublisher multicast = new MulticastPublisher(() -> upstream, null);
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber slow = new RecordingSubscriber(1);
+
+        multicast.subscribe(fast);
+        multicast.subscribe(slow);
+        upstream.subscriber.onNext("a");
+        upstream.subscriber.onNext("b");
+
+        assertEquals(Arrays.asList("a", "b"), fast.received);
+        assertEquals(Collections.singletonList("a"), slow.received);
+        slow.subscription.request(1);
+        assertEquals(Arrays.asList("a", "b"), slow.received);
+    }
+
+    @Test
+    public void upstreamIsCancelledByTheLastSubscriberOnly() {
+        ManualPublisher upstream = new ManualPublisher();
+        int[] done = { 0 };
+        MulticastPublisher multicast = new MulticastPublisher(() -> upstream, () -> done[0]++);
+        RecordingSubscriber first = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber second = new RecordingSubscriber(Long.MAX_VALUE);
+        multicast.subscribe(first);
+        multicast.subscribe(second);
+
+        first.subscription.cancel();
+        assertEquals(0, upstream.cancels);
+        upstream.subscriber.onNext("a");
+        assertEquals(Collections.emptyList(), first.received);
+        assertEquals(Collections.singletonList("a"), second.received);
+
+        second.subscription.cancel();
+        assertEquals(1, upstream.cancels);
+        assertEquals(1, done[0]);
+        assertFalse(multicast.trySubscribe(new RecordingSubscriber(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void errorReachesEverySubscriber() {
+        ManualPublisher upstream = new ManualPublisher();
+        int[] done = { 0 };
+        MulticastPublisher multicast = new MulticastPublisher(() -> upstream, () -> done[0]++);
+        RecordingSubscriber first = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber second = new RecordingSubscriber(0);
+        multicast.subscribe(first);
+        multicast.subscribe(second);
+
+        Exception error = new Exception("Too many requests");
+        upstream.subscriber.onError(error);
+
+        assertSame(error, first.error);
+        assertSame(error, second.error);
+        assertEquals(1, done[0]);
+
+        RecordingSubscriber late = new RecordingSubscriber(Long.MAX_VALUE);
+        assertTrue(multicast.trySubscribe(late));
+        assertSame(error, late.error);
+    }
+}
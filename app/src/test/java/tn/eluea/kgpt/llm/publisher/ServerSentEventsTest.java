@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ServerSentEventsTest {
+
+    private static List<String> events = new ArrayList<>();
+
+    private static String read(String body) throws Throwable {
+        events = new ArrayList<>();
+        return ServerSentEvents.read(new BufferedReader(new StringReader(body)), events::add);
+    }
+
+    @Test
+    public void emitsEachEventAndStopsAtDone() throws Throwable {
+        String rest = read(": keep-alive\n\n"
+                + "data: {\"a\":1}\n\n"
+                + "event: message\nid: 2\ndata:{\"a\":2}\n\n"
+                + "data: [DONE]\n\n"
+                + "data: {\"a\":3}\n\n");
+
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), events);
+        assertNull(rest);
+    }
+
+    @Test
+    public void joinsMultiLineDataAndFlushesUnterminatedEvent() throws Throwable {
+        read("data: first\ndata: second\n\ndata: last");
+
+        assertEquals(Arrays.asList("first\nsecond", "last"), events);
+    }
+
+    @Test
+    public void returnsBodyThatIsNotAnEventStream() throws Throwable {
+        String rest = read("{\"choices\":\n[]}\n");
+
+        assertEquals(0, events.size());
+        assertEquals("{\"choices\":[]}", rest);
+    }
+
+    @Test
+    public void reportsDoneOnlyWhenTheServerSentIt() throws Throwable {
+        assertTrue(endedWithDone("data: {\"a\":1}\n\ndata: [DONE]\n\n"));
+        assertTrue(endedWithDone("data: {\"a\":1}\n\ndata: [DONE]"));
+        assertFalse(endedWithDone("data: {\"a\":1}\n\n"));
+    }
+
+    private static boolean endedWithDone(String body) throws Throwable {
+        boolean[] done = { false };
+        ServerSentEvents.read(new BufferedReader(new StringReader(body)), new ServerSentEvents.EventHandler() {
+            @Override
+            public void onEvent(String data) {
+            }
+
+            @Override
+            public void onDone() {
+                done[0] = true;
+            }
+        });
+        return done[0];
+    }
+}
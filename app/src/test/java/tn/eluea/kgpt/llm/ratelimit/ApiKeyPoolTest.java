@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.publisher.RequestFailedException;
+
+public class ApiKeyPoolTest {
+    private static final long WALL_CLOCK = 1_700_000_000_000L;
+
+    private long now = 1_000;
+    private final ApiKeyPool pool = new ApiKeyPool(LanguageModel.Groq, () -> now, () -> WALL_CLOCK);
+    private final List<String> keys = Arrays.asList("a", "b", "c");
+
+    private static Map<String, List<String>> headers(String... namesAndValues) {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], Collections.singletonList(namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+
+    @Test
+    public void takesKeysRoundRobin() {
+        StringBuilder taken = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            taken.append(pool.acquire(keys, 100).getKey());
+        }
+        assertEquals("abca", taken.toString());
+    }
+
+    @Test
+    public void onlyTheLimitedKeyBacksOff() {
+        ApiKeyPool.Lease lease = pool.acquire(keys, 100);
+        lease.onResponse(429, headers("Retry-After", "20"));
+
+        StringBuilder taken = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            taken.append(pool.acquire(keys, 100).getKey());
+        }
+        assertEquals("bcbc", taken.toString());
+
+        now += 20_000;
+        assertEquals("a", pool.acquire(keys, 100).getKey());
+    }
+
+    @Test
+    public void refusesWhenEveryKeyIsAtItsLimit() {
+        List<String> single = Collections.singletonList("a");
+        pool.acquire(single, 100).onResponse(200, headers(
+                "x-ratelimit-limit-requests", "30",
+                "x-ratelimit-remaining-requests", "0",
+                "x-ratelimit-reset-requests", "2s"));
+
+        try {
+            pool.acquire(single, 100);
+            fail("Expected a rate limit");
+        } catch (RequestFailedException e) {
+            assertEquals(429, e.getStatusCode());
+            assertTrue(e.getMessage(), e.getMessage().contains("try again in 1 s"));
+        }
+
+        // Refilled to the limit over the 2 s reset, one request every 67 ms
+        now += 100;
+        pool.acquire(single, 100);
+    }
+
+    @Test
+    public void tokenLimitHoldsBackLargeRequests() {
+        List<String> single = Collections.singletonList("a");
+        pool.acquire(single, 100).onResponse(200, headers(
+                "anthropic-ratelimit-tokens-limit", "10000",
+                "anthropic-ratelimit-tokens-remaining", "500",
+                "anthropic-ratelimit-tokens-reset", "2023-11-14T22:14:20Z"));
+
+        pool.acquire(single, 400);
+        try {
+            pool.acquire(single, 400);
+            fail("Expected a rate limit");
+        } catch (RequestFailedException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void parsesDelays() {
+        RateLimitHeaders headers = new RateLimitHeaders(null, WALL_CLOCK);
+        assertEquals(360_000, headers.parseDelay("6m0s"));
+        assertEquals(59_560, headers.parseDelay("59.56s"));
+        assertEquals(120, headers.parseDelay("120ms"));
+        assertEquals(3_723_000, headers.parseDelay("1h2m3s"));
+        assertEquals(30_000, headers.parseDelay("30"));
+        assertEquals(5_000, headers.parseDelay(Long.toString(WALL_CLOCK + 5_000)));
+        assertEquals(10_000, headers.parseDelay("Tue, 14 Nov 2023 22:13:30 GMT"));
+        assertEquals(-1, headers.parseDelay("soon"));
+    }
+}
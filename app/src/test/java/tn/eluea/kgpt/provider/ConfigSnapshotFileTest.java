@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes real files and maps them, the way ConfigProvider and
+ * XposedConfigReader use the snapshot.
+ */
+public class ConfigSnapshotFileTest {
+
+    // Mirrors the layout documented in ConfigSnapshotFile
+    private static final int HEADER_SIZE = 24;
+    private static final int CHECKSUM_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void map_WrittenFile_RoundTrips() throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        values.put("ai_trigger", "$");
+        values.put("inline_ask_prefix", "اسأل");
+        values.put("system_message", "Réponds en français, s'il te plaît 🙂\nLine two");
+        values.put("日本語キー", "値");
+        values.put("max_tokens", 2048);
+        values.put("enable_logs", true);
+        values.put("temperature", 0.7f);
+        values.put("empty", "");
+        values.put("removed", null);
+
+        File file = folder.newFile(ConfigSnapshotFile.FILE_NAME);
+        ConfigSnapshotFile.write(file, values, 42L);
+
+        ConfigSnapshotFile snapshot = ConfigSnapshotFile.map(file);
+        assertNotNull(snapshot);
+        assertEquals(42L, snapshot.getVersion());
+        assertEquals("$", snapshot.getString("ai_trigger"));
+        assertEquals("اسأل", snapshot.getString("inline_ask_prefix"));
+        assertEquals("Réponds en français, s'il te plaît 🙂\nLine two", snapshot.getString("system_message"));
+        assertEquals("値", snapshot.getString("日本語キー"));
+        // Values are stored as strings, like ConfigProvider reports them
+        assertEquals("2048", snapshot.getString("max_tokens"));
+        assertEquals("true", snapshot.getString("enable_logs"));
+        assertEquals("0.7", snapshot.getString("temperature"));
+        assertEquals("", snapshot.getString("empty"));
+
+        assertFalse(snapshot.contains("removed"));
+        assertNull(snapshot.getString("removed"));
+        assertNull(snapshot.getString("missing"));
+        assertEquals(8, snapshot.getAll().size());
+        // Read twice, the second time from the decoded cache
+        assertEquals("値", snapshot.getString("日本語キー"));
+    }
+
+    @Test
+    public void map_EmptyConfig_RoundTrips() throws IOException {
+        File file = folder.newFile(ConfigSnapshotFile.FILE_NAME);
+        ConfigSnapshotFile.write(file, new HashMap<>(), 7L);
+
+        ConfigSnapshotFile snapshot = ConfigSnapshotFile.map(file);
+        assertNotNull(snapshot);
+        assertEquals(7L, snapshot.getVersion());
+        assertTrue(snapshot.getAll().isEmpty());
+    }
+
+    @Test
+    public void map_CorruptedChecksum_IsRejected() throws IOException {
+        File file = writeSample(1L);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // Flip a bit of a value, the stored checksum no longer matches
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(file.toPath(), bytes);
+        assertNull(ConfigSnapshotFile.map(file));
+
+        bytes[bytes.length - 1] ^= 0x01;
+        ByteBuffer.wrap(bytes).putInt(CHECKSUM_OFFSET, 0xDEADBEEF);
+        Files.write(file.toPath(), bytes);
+        assertNull(ConfigSnapshotFile.map(file));
+    }
+
+    @Test
+    public void map_BadMagic_IsRejected() throws IOException {
+        File file = writeSample(1L);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(bytes).putInt(0, 0x12345678);
+        Files.write(file.toPath(), bytes);
+
+        assertNull(ConfigSnapshotFile.map(file));
+        assertEquals(-1L, ConfigSnapshotFile.readVersion(file));
+    }
+
+    @Test
+    public void map_TruncatedOrMissingFile_IsRejected() throws IOException {
+        File file = writeSample(1L);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), java.util.Arrays.copyOf(bytes, HEADER_SIZE - 1));
+        assertNull(ConfigSnapshotFile.map(file));
+        assertEquals(-1L, ConfigSnapshotFile.readVersion(file));
+
+        File missing = new File(folder.getRoot(), "missing.snapshot");
+        assertNull(ConfigSnapshotFile.map(missing));
+        assertEquals(-1L, ConfigSnapshotFile.readVersion(missing));
+    }
+
+    @Test
+    public void map_OutOfBoundsOffsets_AreRejected() throws IOException {
+        File file = writeSample(1L);
+        byte[] original = Files.readAllBytes(file.toPath());
+
+        // First entry: keyOffset, keyLength, valueOffset, valueLength
+        int[][] corruptions = {
+                { 0, original.length }, // key starts past the end
+                { 0, 0 }, // key starts inside the header
+                { 4, original.length }, // key runs past the end
+                { 8, Integer.MAX_VALUE }, // value offset overflows
+                { 12, -1 }, // negative value length
+        };
+        for (int[] corruption : corruptions) {
+            byte[] bytes = original.clone();
+            ByteBuffer.wrap(bytes).putInt(HEADER_SIZE + corruption[0], corruption[1]);
+            // A valid checksum, so only the bounds check can reject it
+            Files.write(file.toPath(), withChecksum(bytes));
+            assertNull("field " + corruption[0] + " = " + corruption[1], ConfigSnapshotFile.map(file));
+        }
+
+        // More entries than the file can hold
+        byte[] bytes = original.clone();
+        ByteBuffer.wrap(bytes).putInt(COUNT_OFFSET, 1000);
+        Files.write(file.toPath(), withChecksum(bytes));
+        assertNull(ConfigSnapshotFile.map(file));
+
+        // The untouched file still maps
+        Files.write(file.toPath(), original);
+        assertNotNull(ConfigSnapshotFile.map(file));
+    }
+
+    @Test
+    public void readVersion_Rewrite_PicksUpTheNewVersion() throws IOException {
+        File file = writeSample(100L);
+        assertEquals(100L, ConfigSnapshotFile.readVersion(file));
+        ConfigSnapshotFile first = ConfigSnapshotFile.map(file);
+        assertNotNull(first);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("ai_trigger", "#");
+        ConfigSnapshotFile.write(file, values, 101L);
+
+        assertEquals(101L, ConfigSnapshotFile.readVersion(file));
+        ConfigSnapshotFile second = ConfigSnapshotFile.map(file);
+        assertNotNull(second);
+        assertEquals(101L, second.getVersion());
+        assertEquals("#", second.getString("ai_trigger"));
+        assertFalse(second.contains("language"));
+
+        // The file was replaced, the old mapping keeps its consistent view
+        assertEquals(100L, first.getVersion());
+        assertEquals("$", first.getString("ai_trigger"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    private File writeSample(long version) throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        values.put("ai_trigger", "$");
+        values.put("language", "العربية");
+        File file = new File(folder.getRoot(), ConfigSnapshotFile.FILE_NAME);
+        ConfigSnapshotFile.write(file, values, version);
+        return file;
+    }
+
+    private static byte[] withChecksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        ByteBuffer.wrap(bytes).putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+        return bytes;
+    }
+}
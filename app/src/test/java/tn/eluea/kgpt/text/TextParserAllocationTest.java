@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.ui.UiInteractor;
+
+/**
+ * The keystroke path must not allocate when the typed text can't end a trigger.
+ * Replays a typing session (with corrections) through TextParser, both the
+ * keystroke checks and a full parse, and counts the bytes allocated by the
+ * current thread.
+ */
+public class TextParserAllocationTest {
+
+    // No trigger symbol of the default patterns, '\b' is a backspace
+    private static final String SESSION = "Hello, how are you doing today? I was thinking we could meet "
+            + "tomorrow at noon.\nLet me know what worsk\b\b\bks best for you. Thanks a lot!\n"
+            + "See you soon, and say hi to everyone from me. 42 is the answer";
+
+    private static final int WARMUP_ROUNDS = 500;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private TextParser textParser;
+    private final StringBuilder text = new StringBuilder(SESSION.length() * 2);
+    private int candidates;
+
+    @Before
+    public void setUp() {
+        List<ParsePattern> patterns = new ArrayList<>();
+        for (PatternType type : PatternType.values()) {
+            patterns.add(new ParsePattern(type, type.defaultPattern).withEnabled(true));
+        }
+        SPManager spManager = mock(SPManager.class);
+        when(spManager.getParsePatterns()).thenReturn(patterns);
+        when(spManager.getGenerativeAICommands()).thenReturn(Collections.emptyList());
+
+        try (MockedStatic<UiInteractor> mockedUiInteractor = Mockito.mockStatic(UiInteractor.class);
+                MockedStatic<SPManager> mockedSPManager = Mockito.mockStatic(SPManager.class)) {
+            mockedUiInteractor.when(UiInteractor::getInstance).thenReturn(mock(UiInteractor.class));
+            mockedSPManager.when(SPManager::getInstance).thenReturn(spManager);
+            textParser = new TextParser();
+        }
+    }
+
+    @Test
+    public void parse_NoTriggerTyped_DoesNotAllocate() {
+        assertDoesNotAllocate(this::replaySession);
+    }
+
+    /**
+     * What the keystroke thread runs since parsing moved to its own thread,
+     * see KGPTBrain#onTextUpdate.
+     */
+    @Test
+    public void keystrokeChecks_NoTriggerTyped_DoNotAllocate() {
+        assertDoesNotAllocate(this::replayKeystrokeChecks);
+    }
+
+    private static void assertDoesNotAllocate(Runnable session) {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // Class loading, JIT and the first scanner all allocate once
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            session.run();
+        }
+
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        overhead = threads.getThreadAllocatedBytes(threadId) - overhead;
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            session.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals("Bytes allocated over " + MEASURED_ROUNDS + " sessions without a trigger",
+                0, Math.max(0, allocated));
+    }
+
+    @Test
+    public void mayEndWithKey_TriggerSymbols_AreNotRejected() {
+        ParsePlan plan = textParser.getParsePlan();
+        String[] typed = { "hello world$", "text%cmd%", "bold@", "search this??", "opens €",
+                "trailing $  " };
+        for (String s : typed) {
+            assertTrue(s, plan.automaton.mayEndWithKey(s, s.length()));
+        }
+        assertNull(textParser.parse("42, 43", 6, true));
+    }
+
+    private void replaySession() {
+        text.setLength(0);
+        for (int i = 0; i < SESSION.length(); i++) {
+            char c = SESSION.charAt(i);
+            boolean inserted = c != '\b';
+            if (inserted) {
+                text.append(c);
+            } else {
+                text.setLength(text.length() - 1);
+            }
+            if (textParser.parse(text, text.length(), inserted) != null) {
+                throw new AssertionError("Unexpected trigger at " + i);
+            }
+        }
+    }
+
+    private void replayKeystrokeChecks() {
+        text.setLength(0);
+        for (int i = 0; i < SESSION.length(); i++) {
+            char c = SESSION.charAt(i);
+            boolean inserted = c != '\b';
+            if (inserted) {
+                text.append(c);
+            } else {
+                text.setLength(text.length() - 1);
+            }
+            if (textParser.isLeadingSignal(text, text.length(), inserted)) {
+                throw new AssertionError("Unexpected leading signal at " + i);
+            }
+            // '?' ends the web search key, so some of the text gets through
+            if (textParser.mayContainTrigger(text, text.length())) {
+                candidates++;
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+}
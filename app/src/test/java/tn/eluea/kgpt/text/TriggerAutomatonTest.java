@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.text.parse.PatternType;
+
+/**
+ * The automaton is a pre-filter: it may report too much, never too little.
+ * Builds it the way TextParser does, from a ParsePlan.
+ */
+public class TriggerAutomatonTest {
+
+    private static final String[] APP_TRIGGERS = { "maps", "google maps", "Cam" };
+
+    @Test
+    public void candidates_EveryDefaultPattern_IsReported() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        assertEquals(0, automaton.getAlwaysMask());
+
+        String[] typed = {
+                "€", // Settings
+                "what is this$", // CommandAI
+                "hello%tr%", // CommandCustom
+                "italic|", // FormatItalic
+                "bold@", // FormatBold
+                "crossed~", // FormatCrossout
+                "underlined_", // FormatUnderline
+                "search this??", // WebSearch
+                "$selected range$", // RangeSelection
+        };
+        assertEquals(PatternType.values().length, typed.length);
+        for (String s : typed) {
+            assertTrue(s, has(scan(automaton, s), TriggerAutomaton.CANDIDATE_TRIGGER));
+            assertTrue(s, automaton.mayEndWithKey(s, s.length()));
+        }
+    }
+
+    @Test
+    public void candidates_PlainText_IsRejected() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        String[] typed = { "hello", "how are you", "the price is 42 ", "open the map", "a", "$pros" };
+        for (String s : typed) {
+            assertEquals(s, 0, scan(automaton, s));
+        }
+        // No key ends with a digit or a period
+        for (String s : new String[] { "the price is 42 ", "see you at 9.", "" }) {
+            assertFalse(s, automaton.mayEndWithKey(s, s.length()));
+        }
+    }
+
+    @Test
+    public void candidates_TextActionCommands_AreReported() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        assertTrue(has(scan(automaton, "hello world $rephrase"), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+        assertTrue(has(scan(automaton, "some text $FIX"), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+        assertTrue(has(scan(automaton, "long text $short  "), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+        assertFalse(has(scan(automaton, "hello $rephrased"), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+        assertFalse(has(scan(automaton, "hello rephrase"), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+    }
+
+    @Test
+    public void candidates_InlineAsk_EndsWithTheTriggerSymbol() {
+        ParsePlan plan = defaultPlan();
+        assertEquals("$", plan.triggerSymbol);
+        assertEquals("/ask", plan.inlineAskMarker);
+        int candidates = scan(plan.automaton, "/ask what time is it$");
+        assertTrue(has(candidates, TriggerAutomaton.CANDIDATE_INLINE_ASK));
+        assertFalse(has(scan(plan.automaton, "/ask what time is it"), TriggerAutomaton.CANDIDATE_INLINE_ASK));
+
+        // A custom AI trigger symbol moves the inline ask with it
+        List<ParsePattern> patterns = new ArrayList<>();
+        patterns.add(new ParsePattern(PatternType.CommandAI,
+                PatternType.symbolToRegex("#", PatternType.CommandAI.groupCount)).withEnabled(true));
+        ParsePlan custom = ParsePlan.build(0, patterns, Collections.emptyList(), Collections.emptyList(), "q");
+        assertEquals("#", custom.triggerSymbol);
+        assertTrue(has(scan(custom.automaton, "/q why#"), TriggerAutomaton.CANDIDATE_INLINE_ASK));
+        assertFalse(has(scan(custom.automaton, "/q why$"), TriggerAutomaton.CANDIDATE_INLINE_ASK));
+    }
+
+    @Test
+    public void candidates_AppTriggers_IgnoreCaseAndTrailingWhitespace() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        String[] typed = { "open maps", "open google maps", "MAPS", "take a cam", "open maps  ",
+                "open maps\n", "open CAM" };
+        for (String s : typed) {
+            assertTrue(s, has(scan(automaton, s), TriggerAutomaton.CANDIDATE_APP_TRIGGER));
+            assertTrue(s, automaton.mayEndWithKey(s, s.length()));
+        }
+        assertFalse(has(scan(automaton, "roadmaps!"), TriggerAutomaton.CANDIDATE_APP_TRIGGER));
+        assertFalse(has(scan(automaton, "camera"), TriggerAutomaton.CANDIDATE_APP_TRIGGER));
+    }
+
+    @Test
+    public void literalSuffix_DefaultPatterns_AreExtracted() {
+        assertEquals("€", TriggerAutomaton.literalSuffix(PatternType.Settings.defaultPattern));
+        assertEquals("$", TriggerAutomaton.literalSuffix(PatternType.CommandAI.defaultPattern));
+        assertEquals("%", TriggerAutomaton.literalSuffix(PatternType.CommandCustom.defaultPattern));
+        assertEquals("??", TriggerAutomaton.literalSuffix(PatternType.WebSearch.defaultPattern));
+        assertEquals("$", TriggerAutomaton.literalSuffix(PatternType.RangeSelection.defaultPattern));
+        for (PatternType type : PatternType.values()) {
+            assertTrue(type.name(), TriggerAutomaton.literalSuffix(type.defaultPattern) != null);
+        }
+    }
+
+    @Test
+    public void literalSuffix_NoLiteralEnding_IsNull() {
+        assertNull(TriggerAutomaton.literalSuffix("(.+)\\s$"));
+        assertNull(TriggerAutomaton.literalSuffix("(.+)(!|#)$"));
+        assertNull(TriggerAutomaton.literalSuffix("(.+)x?$"));
+        assertNull(TriggerAutomaton.literalSuffix("(.+)[!#]$"));
+        assertNull(TriggerAutomaton.literalSuffix("a$|b$"));
+        assertNull(TriggerAutomaton.literalSuffix("(?m)(.+)!$"));
+        assertNull(TriggerAutomaton.literalSuffix("(.+)!\\$"));
+        assertNull(TriggerAutomaton.literalSuffix("(.+)!"));
+    }
+
+    @Test
+    public void candidates_PatternWithoutLiteralSuffix_IsAlwaysReported() {
+        List<ParsePattern> patterns = defaultPatterns();
+        patterns.add(new ParsePattern(PatternType.FormatBold, "(.+)\\s\\d$").withEnabled(true));
+        ParsePlan plan = ParsePlan.build(0, patterns, Collections.emptyList(), Collections.emptyList(), null);
+
+        TriggerAutomaton automaton = plan.automaton;
+        assertEquals(TriggerAutomaton.CANDIDATE_TRIGGER, automaton.getAlwaysMask());
+        for (String s : new String[] { "plain text", "answer 4", "" }) {
+            assertTrue(s, automaton.mayEndWithKey(s, s.length()));
+            assertTrue(s, has(scan(automaton, s), TriggerAutomaton.CANDIDATE_TRIGGER));
+        }
+        // The other kinds keep being filtered
+        assertFalse(has(scan(automaton, "plain text"), TriggerAutomaton.CANDIDATE_TEXT_ACTION));
+    }
+
+    @Test
+    public void scanner_TypingWithDeletes_MatchesAFreshScan() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        TriggerAutomaton.Scanner scanner = automaton.newScanner();
+        // '\b' deletes the last character
+        String session = "open mapz\bs now, hello $fixx\b ok??\b\b\b  take a cam\b\b\bgoogle maps  \b\b$";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < session.length(); i++) {
+            char c = session.charAt(i);
+            if (c == '\b') {
+                text.setLength(text.length() - 1);
+            } else {
+                text.append(c);
+            }
+            assertEquals("after " + i + ": \"" + text + "\"", scan(automaton, text.toString()),
+                    scanner.update(text, text.length()));
+        }
+    }
+
+    @Test
+    public void scanner_CursorJumpsAndEdits_MatchAFreshScan() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        TriggerAutomaton.Scanner scanner = automaton.newScanner();
+        StringBuilder text = new StringBuilder("first line, open maps then some more words to read$");
+
+        int[] cursors = { text.length(), 21, 5, text.length(), 0, 21, 22, text.length() - 1 };
+        for (int cursor : cursors) {
+            assertEquals("cursor " + cursor, scanPrefix(automaton, text, cursor),
+                    scanner.update(text, cursor));
+        }
+
+        // The text before the old cursor changes without the cursor moving
+        scanner.update(text, 21);
+        text.setCharAt(20, 'x');
+        assertEquals(scanPrefix(automaton, text, 21), scanner.update(text, 21));
+        text.setCharAt(20, 's');
+        assertEquals(scanPrefix(automaton, text, 21), scanner.update(text, 21));
+
+        // The field is replaced by a shorter one
+        text.setLength(0);
+        text.append("cam");
+        assertEquals(scan(automaton, "cam"), scanner.update(text, text.length()));
+
+        // A paste longer than the longest key
+        text.append(" and a long pasted sentence that ends with maps");
+        assertEquals(scan(automaton, text.toString()), scanner.update(text, text.length()));
+
+        scanner.reset();
+        assertEquals(scan(automaton, text.toString()), scanner.update(text, text.length()));
+    }
+
+    @Test
+    public void scanner_LongWhitespaceRun_KeepsTheKeyBeforeIt() {
+        TriggerAutomaton automaton = defaultPlan().automaton;
+        TriggerAutomaton.Scanner scanner = automaton.newScanner();
+        StringBuilder text = new StringBuilder("open maps");
+        scanner.update(text, text.length());
+        for (int i = 0; i < automaton.getMaxKeyLength() * 2; i++) {
+            text.append(' ');
+            int candidates = scanner.update(text, text.length());
+            assertTrue("spaces " + (i + 1), has(candidates, TriggerAutomaton.CANDIDATE_APP_TRIGGER));
+            assertEquals(scan(automaton, text.toString()), candidates);
+        }
+    }
+
+    private static List<ParsePattern> defaultPatterns() {
+        List<ParsePattern> patterns = new ArrayList<>();
+        for (PatternType type : PatternType.values()) {
+            patterns.add(new ParsePattern(type, type.defaultPattern).withEnabled(true));
+        }
+        return patterns;
+    }
+
+    private static ParsePlan defaultPlan() {
+        return ParsePlan.build(0, defaultPatterns(), Collections.emptyList(), Arrays.asList(APP_TRIGGERS), null);
+    }
+
+    private static int scan(TriggerAutomaton automaton, String text) {
+        return automaton.newScanner().update(text, text.length());
+    }
+
+    private static int scanPrefix(TriggerAutomaton automaton, CharSequence text, int cursor) {
+        return scan(automaton, text.subSequence(0, cursor).toString());
+    }
+
+    private static boolean has(int candidates, int kind) {
+        return (candidates & kind) != 0;
+    }
+}
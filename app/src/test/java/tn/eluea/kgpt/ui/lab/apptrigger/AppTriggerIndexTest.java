@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui.lab.apptrigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class AppTriggerIndexTest {
+
+    private static final AppTrigger MAPS = trigger("maps", true);
+    private static final AppTrigger GOOGLE_MAPS = trigger("google maps", true);
+
+    @Test
+    public void match_OverlappingTriggers_FirstInListWins() {
+        AppTriggerIndex shortFirst = new AppTriggerIndex(Arrays.asList(MAPS, GOOGLE_MAPS));
+        assertMatch(shortFirst, "open google maps", MAPS, 12);
+
+        AppTriggerIndex longFirst = new AppTriggerIndex(Arrays.asList(GOOGLE_MAPS, MAPS));
+        assertMatch(longFirst, "open google maps", GOOGLE_MAPS, 5);
+        // Only the short one ends this text
+        assertMatch(longFirst, "open bing maps", MAPS, 10);
+    }
+
+    @Test
+    public void match_TriggerInsideAWord_IsIgnored() {
+        AppTriggerIndex index = new AppTriggerIndex(Arrays.asList(MAPS, GOOGLE_MAPS));
+        assertNull(index.match("roadmaps", 8));
+        assertNull(index.match("open googlemaps", 15));
+        // Punctuation is a word boundary
+        assertMatch(index, "open:maps", MAPS, 5);
+    }
+
+    @Test
+    public void match_TrailingWhitespace_IsIgnored() {
+        AppTriggerIndex index = new AppTriggerIndex(Collections.singletonList(MAPS));
+        assertMatch(index, "open maps ", MAPS, 5);
+        assertMatch(index, "open maps \t\n", MAPS, 5);
+        // Only the text before the cursor counts
+        assertMatch(index, "open maps and more", 9, MAPS, 5);
+        assertNull(index.match("open maps and more", 18));
+    }
+
+    @Test
+    public void match_LeadingWhitespaceOnly_DoesNotMatch() {
+        AppTriggerIndex index = new AppTriggerIndex(Collections.singletonList(MAPS));
+        assertNull(index.match("   ", 3));
+        assertNull(index.match("\n", 1));
+        assertNull(index.match("", 0));
+        assertNull(index.match(null, 0));
+        assertMatch(index, "  maps", MAPS, 2);
+        assertMatch(index, "maps", MAPS, 0);
+    }
+
+    @Test
+    public void match_MixedCase_IsCaseInsensitive() {
+        AppTrigger camera = trigger("CaMera", true);
+        AppTriggerIndex index = new AppTriggerIndex(Arrays.asList(camera, GOOGLE_MAPS));
+        assertMatch(index, "open camera", camera, 5);
+        assertMatch(index, "open CAMERA", camera, 5);
+        assertMatch(index, "Google Maps", GOOGLE_MAPS, 0);
+    }
+
+    @Test
+    public void match_DisabledTriggerSharingASuffix_IsSkipped() {
+        AppTrigger disabledMaps = trigger("maps", false);
+        AppTrigger disabledGoogleMaps = trigger("google maps", false);
+
+        // The disabled one comes first but must not win
+        AppTriggerIndex index = new AppTriggerIndex(Arrays.asList(disabledMaps, GOOGLE_MAPS));
+        assertMatch(index, "open google maps", GOOGLE_MAPS, 5);
+        assertNull(index.match("open bing maps", 14));
+
+        index = new AppTriggerIndex(Arrays.asList(disabledGoogleMaps, MAPS));
+        assertMatch(index, "open google maps", MAPS, 12);
+
+        index = new AppTriggerIndex(Arrays.asList(disabledMaps, disabledGoogleMaps));
+        assertTrue(index.isEmpty());
+        assertNull(index.match("open google maps", 16));
+    }
+
+    @Test
+    public void isEmpty_EmptyAndBlankTriggers() {
+        assertTrue(AppTriggerIndex.EMPTY.isEmpty());
+        assertNull(AppTriggerIndex.EMPTY.match("maps", 4));
+        assertTrue(new AppTriggerIndex(Collections.singletonList(trigger("", true))).isEmpty());
+        assertFalse(new AppTriggerIndex(Collections.singletonList(MAPS)).isEmpty());
+    }
+
+    private static void assertMatch(AppTriggerIndex index, String text, AppTrigger expected, int start) {
+        assertMatch(index, text, text.length(), expected, start);
+    }
+
+    private static void assertMatch(AppTriggerIndex index, String text, int cursor, AppTrigger expected,
+            int start) {
+        AppTriggerIndex.Match match = index.match(text, cursor);
+        assertNotNull(text, match);
+        assertSame(text, expected, match.trigger);
+        assertEquals(text, start, match.start);
+    }
+
+    private static AppTrigger trigger(String word, boolean enabled) {
+        AppTrigger trigger = new AppTrigger("com.example." + word.replace(' ', '_'), word, word);
+        trigger.setEnabled(enabled);
+        return trigger;
+    }
+}